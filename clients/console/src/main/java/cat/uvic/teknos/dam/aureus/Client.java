@@ -3,6 +3,7 @@ package cat.uvic.teknos.dam.aureus;
 import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
 import java.io.*;
 import java.net.Socket;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Scanner;
@@ -12,6 +13,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,7 +22,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 /**
  * Client application for interacting with the Aureus HTTP server.
  *
- * <p>This client opens a socket per request (simple HTTP/1.1 style),
+ * <p>This client keeps one persistent HTTP/1.1 connection to the server and
+ * reuses it for consecutive requests (reconnecting when the server closes it),
  * monitors user activity locally, and performs a graceful disconnect
  * when the client has been inactive for a configured timeout.</p>
  */
@@ -50,8 +54,29 @@ public class Client {
 
 
 
+    // Conexión persistente (keep-alive) reutilizada entre peticiones
+    private Socket socket;
+    private InputStream socketIn;
+    private OutputStream socketOut;
+    // Instante a partir del cual el servidor puede haber cerrado la conexión inactiva
+    private long keepAliveDeadline = 0;
+
     private static final String DISCONNECT_PATH = "/disconnect";
     private static final String DISCONNECT_ACK_BODY = "DISCONNECT_ACK";
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int VALIDATOR_CACHE_SIZE = 64;
+    private static final int LIST_PAGE_SIZE = 20;
+    // Métodos que se pueden reenviar sin efectos repetidos si la conexión reutilizada estaba cerrada
+    private static final Set<String> RETRYABLE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    // Última respuesta GET de cada ruta con su ETag, para revalidarla con If-None-Match
+    private final Map<String, CachedResponse> validatorCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                    return size() > VALIDATOR_CACHE_SIZE;
+                }
+            });
 
     public Client(String host, int port) {
         this.host = host;
@@ -122,7 +147,7 @@ public class Client {
             try {
                 switch (option) {
                     case "1":
-                        listAllCoins();
+                        listAllCoins(sc);
                         break;
                     case "2":
                         getCoinById(sc);
@@ -136,6 +161,21 @@ public class Client {
                     case "5":
                         deleteCoin(sc);
                         break;
+                    case "6":
+                        searchCoins(sc);
+                        break;
+                    case "7":
+                        fullTextSearch(sc);
+                        break;
+                    case "8":
+                        facetCounts(sc);
+                        break;
+                    case "9":
+                        similarCoins(sc);
+                        break;
+                    case "10":
+                        topCoins(sc);
+                        break;
                     case "0":
                         handleGracefulExit();
                         return;
@@ -204,17 +244,19 @@ public class Client {
         }
     }
 
-    // Apaga el scheduler del monitor de inactividad
+    // Apaga el scheduler del monitor de inactividad y cierra la conexión persistente
     private void shutdown() {
         scheduler.shutdownNow();
+        closeConnection();
     }
 
     /**
      * Send a simple HTTP request to the server and return the parsed response.
      *
-     * <p>The implementation opens a new TCP connection for each request,
-     * writes the HTTP request, reads headers to get Content-Length, then
-     * reads the response body. The method updates the client's lastActivityTime.</p>
+     * <p>The request is written on the persistent connection (see
+     * {@link #exchange(byte[])}), then the headers are read to get
+     * Content-Length and the response body. The method updates the
+     * client's lastActivityTime.</p>
      *
      * @param method HTTP method (e.g., GET, POST)
      * @param path   Request path starting with '/'
@@ -240,173 +282,302 @@ public class Client {
             }
         }
 
-        try (Socket socket = new Socket(host, port)) {
-            OutputStream out = socket.getOutputStream();
-            InputStream in = socket.getInputStream();
-
-            ByteArrayOutputStream reqOut = new ByteArrayOutputStream();
-            StringBuilder sb = new StringBuilder();
-            sb.append(method).append(" ").append(path).append(" HTTP/1.1\r\n");
-            sb.append("Host: ").append(host).append(":").append(port).append("\r\n");
-            if (effectiveBody != null && !effectiveBody.isEmpty()) {
-                byte[] bodyBytes = effectiveBody.getBytes(StandardCharsets.UTF_8);
-                sb.append("Content-Type: application/json\r\n");
-                sb.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
-                // Add X-Body-Hash header for message integrity (hash over the textual body content, which is hex if encrypted)
-                String bodyHash = CryptoUtils.hash(bodyBytes);
-                // Debug logging: outgoing body hash
-                LOGGER.log(Level.FINE, "Client: sending body hash = {0}", bodyHash);
-                sb.append("X-Body-Hash").append(": ").append(bodyHash).append("\r\n");
-                // add extra headers like X-Session-Id
-                for (Map.Entry<String,String> h : extraHeaders.entrySet()) {
-                    sb.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
-                }
-                sb.append("\r\n");
-                reqOut.write(sb.toString().getBytes(StandardCharsets.UTF_8));
-                reqOut.write(bodyBytes);
-            } else {
-                sb.append("Content-Length: 0\r\n");
-                sb.append("\r\n");
-                reqOut.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream reqOut = new ByteArrayOutputStream();
+        StringBuilder sb = new StringBuilder();
+        sb.append(method).append(" ").append(path).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(host).append(":").append(port).append("\r\n");
+        // Las respuestas en streaming envían X-Body-Hash como trailer
+        sb.append("TE: trailers\r\n");
+        sb.append("Accept-Encoding: ").append(ACCEPT_ENCODING).append("\r\n");
+        // Si ya tenemos una versión del recurso, el servidor puede responder 304 sin cuerpo
+        CachedResponse cached = method.equals("GET") ? validatorCache.get(path) : null;
+        if (cached != null) {
+            sb.append("If-None-Match: ").append(cached.etag).append("\r\n");
+        }
+        if (effectiveBody != null && !effectiveBody.isEmpty()) {
+            byte[] bodyBytes = effectiveBody.getBytes(StandardCharsets.UTF_8);
+            sb.append("Content-Type: application/json\r\n");
+            sb.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+            // Add X-Body-Hash header for message integrity (hash over the textual body content, which is hex if encrypted)
+            String bodyHash = CryptoUtils.hash(bodyBytes);
+            // Debug logging: outgoing body hash
+            LOGGER.log(Level.FINE, "Client: sending body hash = {0}", bodyHash);
+            sb.append("X-Body-Hash").append(": ").append(bodyHash).append("\r\n");
+            // add extra headers like X-Session-Id
+            for (Map.Entry<String,String> h : extraHeaders.entrySet()) {
+                sb.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
             }
+            sb.append("\r\n");
+            reqOut.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            reqOut.write(bodyBytes);
+        } else {
+            sb.append("Content-Length: 0\r\n");
+            sb.append("\r\n");
+            reqOut.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
 
-            out.write(reqOut.toByteArray());
-            out.flush();
+        lastActivityTime = System.currentTimeMillis();
 
+        RawResponse raw = exchange(method, reqOut.toByteArray());
+        String statusLine = raw.statusLine;
+        int statusCode = parseStatusCode(statusLine);
+        if (cached != null && statusCode == 304) {
+            LOGGER.log(Level.FINE, "Client: {0} not modified, using cached response", path);
             lastActivityTime = System.currentTimeMillis();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
-            String statusLine = reader.readLine();
-            if (statusLine == null) throw new IOException("No response from server");
-            String line;
-            int contentLength = 0;
-            String respBodyHash = null;
-            boolean respEncrypted = false;
-            String respIvHex = null;
-            String respSessionId = null;
-            Map<String,String> respHeaders = new HashMap<>();
-            while ((line = reader.readLine()) != null && !line.isEmpty()) {
-                String[] headerParts = line.split(":", 2);
-                if (headerParts.length == 2) {
-                    String name = headerParts[0].trim();
-                    String value = headerParts[1].trim();
-                    respHeaders.put(name, value);
-                    if (name.equalsIgnoreCase("Content-Length")) {
-                        try { contentLength = Integer.parseInt(value); } catch (NumberFormatException ignored) {}
-                    }
-                    if (name.equalsIgnoreCase("X-Body-Hash")) {
-                        respBodyHash = value;
-                    }
-                    if (name.equalsIgnoreCase("X-Body-Encrypted")) {
-                        respEncrypted = value.equals("1") || value.equalsIgnoreCase("true");
-                    }
-                    if (name.equalsIgnoreCase("X-Body-IV")) {
-                        respIvHex = value;
-                    }
-                    if (name.equalsIgnoreCase("X-Session-Id")) {
-                        respSessionId = value;
-                    }
-                }
+            return cached.response;
+        }
+        int contentLength = raw.body.length;
+        String respBodyHash = raw.header("X-Body-Hash");
+        String encFlag = raw.header("X-Body-Encrypted");
+        boolean respEncrypted = encFlag != null && (encFlag.equals("1") || encFlag.equalsIgnoreCase("true"));
+        String respIvHex = raw.header("X-Body-IV");
+        byte[] content = raw.body;
+
+        // If response is encrypted, verify hash over ciphertext then decrypt using session key
+        if (respEncrypted) {
+            // Verify response body hash over ciphertext
+            String computedCipherHash = CryptoUtils.hash(raw.body);
+            LOGGER.log(Level.FINE, "Client: received encrypted response hash = {0}", respBodyHash);
+            LOGGER.log(Level.FINE, "Client: computed encrypted response hash = {0}", computedCipherHash);
+            if (respBodyHash == null || !respBodyHash.equalsIgnoreCase(computedCipherHash)) {
+                throw new IOException("Invalid response body hash");
             }
-            char[] buf = new char[contentLength];
-            int read = 0;
-            while (read < contentLength) {
-                int r = reader.read(buf, read, contentLength - read);
-                if (r == -1) break;
-                read += r;
-            }
-            String bodyResp = new String(buf, 0, read);
-
-            // If response is encrypted, verify hash over ciphertext then decrypt using session key
-            if (respEncrypted) {
-                // Verify response body hash over ciphertext
-                String computedCipherHash = CryptoUtils.hash(bodyResp);
-                LOGGER.log(Level.FINE, "Client: received encrypted response hash = {0}", respBodyHash);
-                LOGGER.log(Level.FINE, "Client: computed encrypted response hash = {0}", computedCipherHash);
-                if (respBodyHash == null || !respBodyHash.equalsIgnoreCase(computedCipherHash)) {
+            if (sessionKeyHex == null || sessionKeyHex.isEmpty()) throw new IOException("Missing session key to decrypt response");
+            if (respIvHex == null || respIvHex.isEmpty()) throw new IOException("Missing IV header in encrypted response");
+            try {
+                content = CryptoUtils.decryptBytes(sessionKeyHex, respIvHex, new String(raw.body, StandardCharsets.US_ASCII));
+            } catch (Exception e) {
+                throw new IOException("Failed to decrypt response body: " + e.getMessage(), e);
+            }
+        } else {
+            // Non-encrypted response: if hash header present, validate over plaintext
+            if (contentLength > 0) {
+                String computedRespHash = CryptoUtils.hash(raw.body);
+                LOGGER.log(Level.FINE, "Client: received response body hash header = {0}", (respBodyHash == null ? "<missing>" : respBodyHash));
+                LOGGER.log(Level.FINE, "Client: computed response body hash = {0}", computedRespHash);
+                if (respBodyHash == null || !respBodyHash.equalsIgnoreCase(computedRespHash)) {
                     throw new IOException("Invalid response body hash");
                 }
-                if (sessionKeyHex == null || sessionKeyHex.isEmpty()) throw new IOException("Missing session key to decrypt response");
-                if (respIvHex == null || respIvHex.isEmpty()) throw new IOException("Missing IV header in encrypted response");
-                try {
-                    String plain = CryptoUtils.decrypt(sessionKeyHex, respIvHex, bodyResp);
-                    bodyResp = plain;
-                } catch (Exception e) {
-                    throw new IOException("Failed to decrypt response body: " + e.getMessage(), e);
-                }
-            } else {
-                // Non-encrypted response: if hash header present, validate over plaintext
-                if (contentLength > 0) {
-                    String computedRespHash = CryptoUtils.hash(bodyResp);
-                    LOGGER.log(Level.FINE, "Client: received response body hash header = {0}", (respBodyHash == null ? "<missing>" : respBodyHash));
-                    LOGGER.log(Level.FINE, "Client: computed response body hash = {0}", computedRespHash);
-                    if (respBodyHash == null || !respBodyHash.equalsIgnoreCase(computedRespHash)) {
-                        throw new IOException("Invalid response body hash");
-                    }
-                }
             }
+        }
 
-            lastActivityTime = System.currentTimeMillis();
+        // El cuerpo se comprime antes de cifrarlo: se descomprime después de descifrarlo
+        String bodyResp = decodeContent(content, raw.header("Content-Encoding"));
 
-            return new Response(statusLine, bodyResp);
+        lastActivityTime = System.currentTimeMillis();
+
+        Response response = new Response(statusLine, bodyResp, raw.header("X-Next-Cursor"));
+        String etag = raw.header("ETag");
+        if (method.equals("GET") && statusCode == 200 && etag != null) {
+            validatorCache.put(path, new CachedResponse(etag, response));
         }
+        return response;
     }
 
     // Helper used for key exchange which must not encrypt payloads (sends plain GET)
     private Response sendPlainRequest(String method, String path, String body) throws IOException {
-        try (Socket socket = new Socket(host, port)) {
-            OutputStream out = socket.getOutputStream();
-            InputStream in = socket.getInputStream();
-
-            ByteArrayOutputStream reqOut = new ByteArrayOutputStream();
-            StringBuilder sb = new StringBuilder();
-            sb.append(method).append(" ").append(path).append(" HTTP/1.1\r\n");
-            sb.append("Host: ").append(host).append(":").append(port).append("\r\n");
-            sb.append("Content-Length: 0\r\n");
-            sb.append("\r\n");
-            reqOut.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        sb.append(method).append(" ").append(path).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(host).append(":").append(port).append("\r\n");
+        sb.append("TE: trailers\r\n");
+        sb.append("Accept-Encoding: ").append(ACCEPT_ENCODING).append("\r\n");
+        sb.append("Content-Length: 0\r\n");
+        sb.append("\r\n");
+
+        RawResponse raw = exchange(method, sb.toString().getBytes(StandardCharsets.UTF_8));
+        String respBodyHash = raw.header("X-Body-Hash");
+
+        // Verify response body hash if present
+        if (raw.body.length > 0) {
+            String computedRespHash = CryptoUtils.hash(raw.body);
+            if (respBodyHash == null || !respBodyHash.equalsIgnoreCase(computedRespHash)) {
+                throw new IOException("Invalid response body hash");
+            }
+        }
+
+        return new Response(raw.statusLine, decodeContent(raw.body, raw.header("Content-Encoding")));
+    }
 
-            out.write(reqOut.toByteArray());
-            out.flush();
+    /**
+     * Undo the {@code Content-Encoding} of a response body and read it as UTF-8 text.
+     *
+     * @param body body bytes, already decrypted
+     * @param contentEncoding value of the header, or null for an uncompressed body
+     * @return the body text
+     * @throws IOException if the coding is unknown or the compressed data is corrupt
+     */
+    private static String decodeContent(byte[] body, String contentEncoding) throws IOException {
+        if (contentEncoding == null || contentEncoding.isBlank() || contentEncoding.equalsIgnoreCase("identity")) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        InputStream decoded;
+        switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip", "x-gzip" -> decoded = new GZIPInputStream(new ByteArrayInputStream(body));
+            case "deflate" -> decoded = new InflaterInputStream(new ByteArrayInputStream(body));
+            default -> throw new IOException("Unsupported response Content-Encoding: " + contentEncoding);
+        }
+        try (decoded) {
+            return new String(decoded.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Write one serialized request on the persistent connection and read its response.
+     *
+     * <p>The connection is opened lazily and reused while the server answers with
+     * {@code Connection: keep-alive}. If a reused connection reaches end of stream
+     * before any byte of the status line arrives, the server closed it (idle
+     * timeout) without processing the request, and a GET, HEAD or OPTIONS request
+     * is sent once more on a fresh connection. Any other failure, or any other
+     * method, is reported: the request may have had its effect.</p>
+     *
+     * @param method request method, which decides whether the request may be resent
+     * @param request complete HTTP request bytes (headers and body)
+     * @return raw response with status line, headers and body bytes
+     * @throws IOException on network or protocol errors
+     */
+    private synchronized RawResponse exchange(String method, byte[] request) throws IOException {
+        // Si el servidor ya habrá cerrado la conexión por inactividad, abrir una nueva directamente
+        if (socket != null && System.currentTimeMillis() >= keepAliveDeadline) {
+            closeConnection();
+        }
+        boolean reused = socket != null;
+        try {
+            return exchangeOnce(request);
+        } catch (NoResponseException e) {
+            closeConnection();
+            if (!reused || !RETRYABLE_METHODS.contains(method.toUpperCase(Locale.ROOT))) throw e;
+            LOGGER.log(Level.FINE, "Client: stale keep-alive connection, retrying: {0}", e.getMessage());
+            return exchangeOnce(request);
+        } catch (IOException e) {
+            closeConnection();
+            throw e;
+        }
+    }
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
-            String statusLine = reader.readLine();
-            if (statusLine == null) throw new IOException("No response from server");
-            String line;
+    // Fin de stream antes del primer byte de la línea de estado: el servidor no llegó a responder
+    private static final class NoResponseException extends IOException {
+        private NoResponseException() {
+            super("No response from server");
+        }
+    }
+
+    private RawResponse exchangeOnce(byte[] request) throws IOException {
+        if (socket == null) {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            socketIn = new BufferedInputStream(socket.getInputStream());
+            socketOut = new BufferedOutputStream(socket.getOutputStream());
+        }
+        socketOut.write(request);
+        socketOut.flush();
+
+        String statusLine = readLine(socketIn);
+        if (statusLine == null) throw new NoResponseException();
+        Map<String,String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(socketIn)) != null && !line.isEmpty()) {
+            String[] headerParts = line.split(":", 2);
+            if (headerParts.length == 2) {
+                headers.put(headerParts[0].trim(), headerParts[1].trim());
+            }
+        }
+        byte[] body;
+        String transferEncoding = RawResponse.header(headers, "Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")) {
+            // Respuesta en streaming: X-Body-Hash llega como trailer tras el último chunk
+            body = readChunkedBody(socketIn, headers);
+        } else {
+            // Content-Length cuenta bytes, no caracteres
             int contentLength = 0;
-            String respBodyHash = null;
-            while ((line = reader.readLine()) != null && !line.isEmpty()) {
-                String[] headerParts = line.split(":", 2);
-                if (headerParts.length == 2) {
-                    String name = headerParts[0].trim();
-                    String value = headerParts[1].trim();
-                    if (name.equalsIgnoreCase("Content-Length")) {
-                        try { contentLength = Integer.parseInt(value); } catch (NumberFormatException ignored) {}
-                    }
-                    if (name.equalsIgnoreCase("X-Body-Hash")) {
-                        respBodyHash = value;
-                    }
-                }
+            String lengthValue = RawResponse.header(headers, "Content-Length");
+            if (lengthValue != null) {
+                try { contentLength = Integer.parseInt(lengthValue); } catch (NumberFormatException ignored) {}
+            }
+            body = socketIn.readNBytes(contentLength);
+            if (body.length < contentLength) throw new IOException("Connection closed while reading response body");
+        }
+        RawResponse raw = new RawResponse(statusLine, headers, body);
+
+        String connectionHeader = raw.header("Connection");
+        if (connectionHeader != null && connectionHeader.equalsIgnoreCase("keep-alive")) {
+            keepAliveDeadline = System.currentTimeMillis() + keepAliveTimeoutMillis(raw.header("Keep-Alive"));
+        } else {
+            closeConnection();
+        }
+        return raw;
+    }
+
+    /**
+     * Read a body sent with {@code Transfer-Encoding: chunked}. Trailer fields
+     * are added to {@code headers}, so the hash check reads {@code X-Body-Hash}
+     * the same way for streamed and fixed-length responses.
+     */
+    private static byte[] readChunkedBody(InputStream in, Map<String,String> headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) throw new IOException("Connection closed while reading response body");
+            int semicolon = sizeLine.indexOf(';');
+            int size;
+            try {
+                size = Integer.parseInt((semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size in response: " + sizeLine);
             }
-            char[] buf = new char[contentLength];
-            int read = 0;
-            while (read < contentLength) {
-                int r = reader.read(buf, read, contentLength - read);
-                if (r == -1) break;
-                read += r;
+            if (size == 0) break;
+            byte[] chunk = in.readNBytes(size);
+            if (chunk.length < size) throw new IOException("Connection closed while reading response body");
+            body.write(chunk);
+            readLine(in); // CRLF tras los datos del chunk
+        }
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            String[] trailerParts = line.split(":", 2);
+            if (trailerParts.length == 2) {
+                headers.put(trailerParts[0].trim(), trailerParts[1].trim());
             }
-            String bodyResp = new String(buf, 0, read);
+        }
+        return body.toByteArray();
+    }
 
-            // Verify response body hash if present
-            if (contentLength > 0) {
-                String computedRespHash = CryptoUtils.hash(bodyResp);
-                if (respBodyHash == null || !respBodyHash.equalsIgnoreCase(computedRespHash)) {
-                    throw new IOException("Invalid response body hash");
+    // Lee una línea terminada en CRLF byte a byte para no consumir el cuerpo
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    // Extrae timeout=N de la cabecera Keep-Alive (por defecto 5 segundos), con un margen de seguridad
+    private static long keepAliveTimeoutMillis(String keepAliveHeader) {
+        long seconds = 5;
+        if (keepAliveHeader != null) {
+            for (String part : keepAliveHeader.split(",")) {
+                String[] kv = part.trim().split("=", 2);
+                if (kv.length == 2 && kv[0].trim().equalsIgnoreCase("timeout")) {
+                    try { seconds = Long.parseLong(kv[1].trim()); } catch (NumberFormatException ignored) {}
                 }
             }
+        }
+        return Math.max(0, seconds * 1000 - 500);
+    }
 
-            return new Response(statusLine, bodyResp);
+    private synchronized void closeConnection() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // la conexión ya no se usará
+            }
         }
+        socket = null;
+        socketIn = null;
+        socketOut = null;
     }
 
     // Espera a que el usuario pulse Enter (actualiza la marca de actividad)
@@ -649,13 +820,53 @@ public class Client {
         }
     }
 
+    private static class RawResponse {
+        final String statusLine;
+        final Map<String,String> headers;
+        final byte[] body;
+
+        RawResponse(String statusLine, Map<String,String> headers, byte[] body) {
+            this.statusLine = statusLine;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return header(headers, name);
+        }
+
+        static String header(Map<String,String> headers, String name) {
+            for (Map.Entry<String,String> h : headers.entrySet()) {
+                if (h.getKey().equalsIgnoreCase(name)) return h.getValue();
+            }
+            return null;
+        }
+    }
+
+    private static class CachedResponse {
+        final String etag;
+        final Response response;
+
+        CachedResponse(String etag, Response response) {
+            this.etag = etag;
+            this.response = response;
+        }
+    }
+
     private static class Response {
         public final String statusLine;
         public final String body;
+        // Cursor de la página siguiente de un listado paginado, o null
+        public final String nextCursor;
 
         public Response(String statusLine, String body) {
+            this(statusLine, body, null);
+        }
+
+        public Response(String statusLine, String body, String nextCursor) {
             this.statusLine = statusLine;
             this.body = body;
+            this.nextCursor = nextCursor;
         }
     }
 
@@ -736,7 +947,8 @@ public class Client {
 
     private void showAvailableIds() {
         try {
-            Response response = sendRequest("GET", "/coins", null);
+            // Sólo id y nombre: el servidor no lee ni envía el resto de columnas
+            Response response = sendRequest("GET", "/coins?fields=coinName", null);
             String body = response.body == null ? "" : response.body.trim();
             if (body.isEmpty()) {
                 System.out.println("(no coins)");
@@ -765,6 +977,9 @@ public class Client {
                 rows.add(Arrays.asList(id == null ? "" : String.valueOf(id), name == null ? "" : String.valueOf(name)));
             }
             printAsciiTable(headers, rows);
+            if (response.nextCursor != null) {
+                System.out.println("(more coins available; use option 1 to list them all)");
+            }
         } catch (Exception e) {
             System.out.println("Could not fetch coin list: " + e.getMessage());
         }
@@ -779,25 +994,145 @@ public class Client {
         System.out.println("3) Create coin");
         System.out.println("4) Update coin");
         System.out.println("5) Delete coin");
+        System.out.println("6) Search coins");
+        System.out.println("7) Full-text search");
+        System.out.println("8) Facet counts");
+        System.out.println("9) Similar coins");
+        System.out.println("10) Most valuable coins");
         System.out.println("0) Exit");
     }
 
-    private void listAllCoins() {
+    // El servidor pagina el listado: se muestra página a página siguiendo el cursor
+    private void listAllCoins(Scanner sc) {
         try {
-            Response r = sendRequest("GET", "/coins", null);
-            printFormattedResponse(r);
+            String path = "/coins?limit=" + LIST_PAGE_SIZE;
+            while (true) {
+                Response r = sendRequest("GET", path, null);
+                printFormattedResponse(r);
+                if (r.nextCursor == null) return;
+                System.out.print("Press Enter for the next page, or 'q' to stop: ");
+                if (sc.nextLine().trim().equalsIgnoreCase("q")) return;
+                lastActivityTime = System.currentTimeMillis();
+                path = "/coins?limit=" + LIST_PAGE_SIZE + "&cursor=" + r.nextCursor;
+            }
         } catch (Exception e) {
             System.out.println("Error listing coins: " + e.getMessage());
         }
     }
 
+    // Los filtros se aplican en el servidor (GET /coins/search); los campos vacíos no filtran
+    private void searchCoins(Scanner sc) {
+        try {
+            String[][] prompts = {
+                    {"material", "Material"},
+                    {"country", "Origin country"},
+                    {"minYear", "Minimum year"},
+                    {"maxYear", "Maximum year"},
+                    {"minValue", "Minimum value"},
+                    {"maxValue", "Maximum value"},
+                    {"collection", "Collection ID"},
+                    {"sort", "Sort by (id, name, year, value; prefix '-' for descending)"}
+            };
+            StringBuilder path = new StringBuilder("/coins/search?limit=" + LIST_PAGE_SIZE);
+            System.out.println("Leave a field blank to skip it.");
+            for (String[] prompt : prompts) {
+                System.out.print(prompt[1] + ": ");
+                String value = sc.nextLine().trim();
+                if (value.isEmpty()) continue;
+                path.append('&').append(prompt[0]).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+            lastActivityTime = System.currentTimeMillis();
+            printFormattedResponse(sendRequest("GET", path.toString(), null));
+        } catch (Exception e) {
+            System.out.println("Error searching coins: " + e.getMessage());
+        }
+    }
+
+    // Busca en nombre, historia, país y material; las monedas llegan ordenadas por relevancia
+    private void fullTextSearch(Scanner sc) {
+        try {
+            System.out.print("Words to search (end a word with '*' to match its prefix): ");
+            String text = sc.nextLine().trim();
+            if (text.isEmpty()) {
+                System.out.println("Search text required.");
+                return;
+            }
+            lastActivityTime = System.currentTimeMillis();
+            String path = "/coins/fulltext?limit=" + LIST_PAGE_SIZE + "&q=" + URLEncoder.encode(text, StandardCharsets.UTF_8);
+            printFormattedResponse(sendRequest("GET", path, null));
+        } catch (Exception e) {
+            System.out.println("Error searching coins: " + e.getMessage());
+        }
+    }
+
+    // Recuentos por material, país, siglo y colección (GET /coins/facets); varios valores separados por comas
+    private void facetCounts(Scanner sc) {
+        try {
+            String[][] prompts = {
+                    {"material", "Material(s)"},
+                    {"country", "Origin country(ies)"},
+                    {"century", "Century(ies), negative before Christ"},
+                    {"collection", "Collection ID(s)"},
+                    {"minYear", "Minimum year"},
+                    {"maxYear", "Maximum year"}
+            };
+            StringBuilder path = new StringBuilder("/coins/facets");
+            System.out.println("Leave a field blank to skip it.");
+            for (String[] prompt : prompts) {
+                System.out.print(prompt[1] + ": ");
+                String value = sc.nextLine().trim();
+                if (value.isEmpty()) continue;
+                path.append(path.indexOf("?") < 0 ? '?' : '&')
+                        .append(prompt[0]).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+            lastActivityTime = System.currentTimeMillis();
+            printFormattedResponse(sendRequest("GET", path.toString(), null));
+        } catch (Exception e) {
+            System.out.println("Error counting coins: " + e.getMessage());
+        }
+    }
+
+    // Monedas más parecidas por peso, diámetro, año y valor (GET /coins/{id}/similar)
+    private void similarCoins(Scanner sc) {
+        try {
+            String id = promptForId(sc, "Coin ID", "coin");
+            if (id.isEmpty()) {
+                System.out.println("ID required.");
+                return;
+            }
+            System.out.print("How many (default 10): ");
+            String k = sc.nextLine().trim();
+            lastActivityTime = System.currentTimeMillis();
+            String path = "/coins/" + id + "/similar" + (k.isEmpty() ? "" : "?k=" + URLEncoder.encode(k, StandardCharsets.UTF_8));
+            printFormattedResponse(sendRequest("GET", path, null));
+        } catch (Exception e) {
+            System.out.println("Error finding similar coins: " + e.getMessage());
+        }
+    }
+
+    // Monedas más valiosas, de todo el catálogo o de una colección (GET /coins/top)
+    private void topCoins(Scanner sc) {
+        try {
+            System.out.print("How many (default 100): ");
+            String n = sc.nextLine().trim();
+            String collection = promptForId(sc, "Collection ID (blank for all)", "collection");
+            StringBuilder path = new StringBuilder("/coins/top");
+            if (!n.isEmpty()) path.append("?n=").append(URLEncoder.encode(n, StandardCharsets.UTF_8));
+            if (!collection.isEmpty()) {
+                path.append(path.indexOf("?") < 0 ? '?' : '&')
+                        .append("collectionId=").append(URLEncoder.encode(collection, StandardCharsets.UTF_8));
+            }
+            lastActivityTime = System.currentTimeMillis();
+            printFormattedResponse(sendRequest("GET", path.toString(), null));
+        } catch (Exception e) {
+            System.out.println("Error listing top coins: " + e.getMessage());
+        }
+    }
+
     private void getCoinById(Scanner sc) {
         try {
-            // Show available IDs before asking for the ID
             System.out.println();
-            showAvailableIds();
-            System.out.print("Enter coin ID: ");
-            String id = sc.nextLine().trim();
+            String id = promptForId(sc, "Enter coin ID", "coin");
             if (id.isEmpty()) {
                 System.out.println("ID required.");
                 return;
@@ -827,6 +1162,36 @@ public class Client {
         }
     }
 
+    // Acepta un id o el comienzo de un nombre; con un nombre muestra las sugerencias del servidor
+    // (GET /coins/suggest) y vuelve a preguntar, en lugar de listar todas las monedas o colecciones
+    private String promptForId(Scanner sc, String label, String type) throws Exception {
+        while (true) {
+            System.out.print(label + " (or the start of a name to look it up): ");
+            String input = sc.nextLine().trim();
+            lastActivityTime = System.currentTimeMillis();
+            if (input.isEmpty() || input.matches("\\d+")) return input;
+
+            Response r = sendRequest("GET", "/coins/suggest?type=" + type + "&prefix="
+                    + URLEncoder.encode(input, StandardCharsets.UTF_8), null);
+            String body = r.body == null ? "" : r.body.trim();
+            if (parseStatusCode(r.statusLine) >= 400 || !body.startsWith("[")) {
+                System.out.println("Suggestions are not available: " + r.statusLine);
+                continue;
+            }
+            List<Map<String, Object>> list = mapper.readValue(body, new TypeReference<>(){});
+            if (list.isEmpty()) {
+                System.out.println("No " + type + " name starts with '" + input + "'.");
+                continue;
+            }
+            List<List<String>> rows = new ArrayList<>();
+            for (Map<String, Object> m : list) {
+                rows.add(Arrays.asList(String.valueOf(m.get("id")), String.valueOf(m.get("name")),
+                        String.valueOf(m.get("estimatedValue"))));
+            }
+            printAsciiTable(Arrays.asList("ID", "Name", "Value"), rows);
+        }
+    }
+
     private void showAvailableCollections() {
         try {
             Response response = sendRequest("GET", "/collections", null);
@@ -892,12 +1257,8 @@ public class Client {
             System.out.print("Description (optional): ");
             String historical = sc.nextLine().trim();
 
-            // Show available collections before asking for collectionId
             System.out.println();
-            showAvailableCollections();
-
-            System.out.print("Collection ID: ");
-            String collStr = sc.nextLine().trim();
+            String collStr = promptForId(sc, "Collection ID", "collection");
 
             Map<String,Object> payload = new LinkedHashMap<>();
             if (!name.isEmpty()) payload.put("coinName", name);
@@ -196,9 +196,17 @@ INSERT INTO `USER_DETAIL` (`USER_ID`, `BIRTHDATE`, `PHONE`, `GENDER`, `NATIONALI
 --
 -- Indices de la tabla `COIN`
 --
+-- Índices compuestos para GET /coins/search: cada filtro de igualdad va delante
+-- del rango que suele acompañarlo. idx_coin_collection_value también cubre la
+-- clave foránea fk_coin_collection_main.
+--
 ALTER TABLE `COIN`
     ADD PRIMARY KEY (`COIN_ID`),
-  ADD KEY `fk_coin_collection_main` (`COLLECTION_ID`);
+  ADD KEY `idx_coin_material_year` (`COIN_MATERIAL`,`COIN_YEAR`),
+  ADD KEY `idx_coin_country_year` (`ORIGIN_COUNTRY`,`COIN_YEAR`),
+  ADD KEY `idx_coin_collection_value` (`COLLECTION_ID`,`ESTIMATED_VALUE`),
+  ADD KEY `idx_coin_year` (`COIN_YEAR`),
+  ADD KEY `idx_coin_value` (`ESTIMATED_VALUE`);
 
 --
 -- Indices de la tabla `COIN_COLLECTION`
@@ -3,17 +3,24 @@ package cat.uvic.teknos.dam.aureus.repositories.jdbc;
 import cat.uvic.teknos.dam.aureus.Coin;
 import cat.uvic.teknos.dam.aureus.CoinCollection;
 import cat.uvic.teknos.dam.aureus.repositories.CoinRepository;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 import cat.uvic.teknos.dam.aureus.repositories.jdbc.datasources.DataSource;
 import cat.uvic.teknos.dam.aureus.repositories.jdbc.exceptions.RepositoryException;
 
 import java.sql.*;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 
 public class JdbcCoinRepository implements CoinRepository {
 
+    // Ids por consulta IN en findByIds
+    static final int IN_BATCH_SIZE = 500;
+
     private final DataSource dataSource;
 
     public JdbcCoinRepository(DataSource dataSource) {
@@ -31,7 +38,7 @@ public class JdbcCoinRepository implements CoinRepository {
             try (var conn = dataSource.getConnection();
                  var ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
                 ps.setString(1, coin.getCoinName());
-                ps.setInt(2, coin.getCoinYear());
+                ps.setObject(2, coin.getCoinYear(), java.sql.Types.INTEGER);
                 ps.setString(3, coin.getCoinMaterial());
                 ps.setBigDecimal(4, coin.getCoinWeight());
                 ps.setBigDecimal(5, coin.getCoinDiameter());
@@ -57,7 +64,7 @@ public class JdbcCoinRepository implements CoinRepository {
             try (var conn = dataSource.getConnection();
                  var ps = conn.prepareStatement(sql)) {
                 ps.setString(1, coin.getCoinName());
-                ps.setInt(2, coin.getCoinYear());
+                ps.setObject(2, coin.getCoinYear(), java.sql.Types.INTEGER);
                 ps.setString(3, coin.getCoinMaterial());
                 ps.setBigDecimal(4, coin.getCoinWeight());
                 ps.setBigDecimal(5, coin.getCoinDiameter());
@@ -105,7 +112,7 @@ public class JdbcCoinRepository implements CoinRepository {
                     coin.setId(rs.getInt("COIN_ID"));
                     coin.setCoinName(rs.getString("COIN_NAME"));
                     coin.setOriginCountry(rs.getString("ORIGIN_COUNTRY"));
-                    coin.setCoinYear(rs.getInt("COIN_YEAR"));
+                    coin.setCoinYear(rs.getObject("COIN_YEAR", Integer.class));
                     coin.setCoinMaterial(rs.getString("COIN_MATERIAL"));
                     coin.setCoinWeight(rs.getBigDecimal("COIN_WEIGHT"));
                     coin.setCoinDiameter(rs.getBigDecimal("COIN_DIAMETER"));
@@ -137,7 +144,7 @@ public class JdbcCoinRepository implements CoinRepository {
                 coin.setId(rs.getInt("COIN_ID"));
                 coin.setCoinName(rs.getString("COIN_NAME"));
                 coin.setOriginCountry(rs.getString("ORIGIN_COUNTRY"));
-                coin.setCoinYear(rs.getInt("COIN_YEAR"));
+                coin.setCoinYear(rs.getObject("COIN_YEAR", Integer.class));
                 coin.setCoinMaterial(rs.getString("COIN_MATERIAL"));
                 coin.setCoinWeight(rs.getBigDecimal("COIN_WEIGHT"));
                 coin.setCoinDiameter(rs.getBigDecimal("COIN_DIAMETER"));
@@ -170,7 +177,7 @@ public class JdbcCoinRepository implements CoinRepository {
                     coin.setId(rs.getInt("COIN_ID"));
                     coin.setCoinName(rs.getString("COIN_NAME"));
                     coin.setOriginCountry(rs.getString("ORIGIN_COUNTRY"));
-                    coin.setCoinYear(rs.getInt("COIN_YEAR"));
+                    coin.setCoinYear(rs.getObject("COIN_YEAR", Integer.class));
                     coin.setCoinMaterial(rs.getString("COIN_MATERIAL"));
                     coin.setCoinWeight(rs.getBigDecimal("COIN_WEIGHT"));
                     coin.setCoinDiameter(rs.getBigDecimal("COIN_DIAMETER"));
@@ -191,6 +198,120 @@ public class JdbcCoinRepository implements CoinRepository {
         return coins;
     }
 
+    @Override
+    public List<Coin> findPage(Integer afterId, int limit) {
+        List<Coin> coins = new ArrayList<>(limit);
+        // Sin OFFSET: el índice de la clave primaria sitúa la página directamente
+        try (var connection = dataSource.getConnection();
+             var ps = connection.prepareStatement("SELECT * FROM COIN WHERE COIN_ID > ? ORDER BY COIN_ID LIMIT ?")) {
+            ps.setInt(1, afterId == null ? Integer.MIN_VALUE : afterId);
+            ps.setInt(2, limit);
+            try (var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    coins.add(toCoin(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RepositoryException("Error getting page of Coins", e);
+        }
+        return coins;
+    }
+
+    @Override
+    public List<Coin> findByIds(Collection<Integer> ids) {
+        // Ordenados y sin duplicados: cada lote continúa donde acabó el anterior
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(ids));
+        List<Coin> coins = new ArrayList<>(sorted.size());
+        try (var connection = dataSource.getConnection()) {
+            for (int from = 0; from < sorted.size(); from += IN_BATCH_SIZE) {
+                List<Integer> batch = sorted.subList(from, Math.min(from + IN_BATCH_SIZE, sorted.size()));
+                String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+                try (var ps = connection.prepareStatement(
+                        "SELECT * FROM COIN WHERE COIN_ID IN (" + placeholders + ") ORDER BY COIN_ID")) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        ps.setInt(i + 1, batch.get(i));
+                    }
+                    try (var rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            coins.add(toCoin(rs));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RepositoryException("Error getting Coins by ids", e);
+        }
+        return coins;
+    }
+
+    @Override
+    public List<Coin> search(CoinSearchCriteria criteria) {
+        // Sólo los filtros presentes entran en el WHERE; los valores van siempre como parámetros
+        StringBuilder sql = new StringBuilder("SELECT * FROM COIN WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        addFilter(sql, params, " AND COIN_MATERIAL = ?", criteria.getMaterial());
+        addFilter(sql, params, " AND ORIGIN_COUNTRY = ?", criteria.getOriginCountry());
+        addFilter(sql, params, " AND COLLECTION_ID = ?", criteria.getCollectionId());
+        addFilter(sql, params, " AND COIN_YEAR >= ?", criteria.getMinYear());
+        addFilter(sql, params, " AND COIN_YEAR <= ?", criteria.getMaxYear());
+        addFilter(sql, params, " AND ESTIMATED_VALUE >= ?", criteria.getMinValue());
+        addFilter(sql, params, " AND ESTIMATED_VALUE <= ?", criteria.getMaxValue());
+
+        String direction = criteria.isDescending() ? " DESC" : " ASC";
+        String column = switch (criteria.getSort()) {
+            case ID -> null;
+            case NAME -> "COIN_NAME";
+            case YEAR -> "COIN_YEAR";
+            case VALUE -> "ESTIMATED_VALUE";
+        };
+        sql.append(" ORDER BY ");
+        if (column != null) sql.append(column).append(direction).append(", ");
+        sql.append("COIN_ID").append(direction).append(" LIMIT ?");
+        params.add(criteria.getLimit());
+
+        List<Coin> coins = new ArrayList<>();
+        try (var connection = dataSource.getConnection();
+             var ps = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    coins.add(toCoin(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RepositoryException("Error searching Coins", e);
+        }
+        return coins;
+    }
+
+    private static void addFilter(StringBuilder sql, List<Object> params, String condition, Object value) {
+        if (value == null) return;
+        sql.append(condition);
+        params.add(value);
+    }
+
+    private static Coin toCoin(ResultSet rs) throws SQLException {
+        var coin = new cat.uvic.teknos.dam.aureus.impl.CoinImpl();
+        coin.setId(rs.getInt("COIN_ID"));
+        coin.setCoinName(rs.getString("COIN_NAME"));
+        coin.setOriginCountry(rs.getString("ORIGIN_COUNTRY"));
+        coin.setCoinYear(rs.getObject("COIN_YEAR", Integer.class));
+        coin.setCoinMaterial(rs.getString("COIN_MATERIAL"));
+        coin.setCoinWeight(rs.getBigDecimal("COIN_WEIGHT"));
+        coin.setCoinDiameter(rs.getBigDecimal("COIN_DIAMETER"));
+        coin.setEstimatedValue(rs.getBigDecimal("ESTIMATED_VALUE"));
+        coin.setHistoricalSignificance(rs.getString("HISTORICAL_SIGNIFICANCE"));
+        Integer collectionId = (Integer) rs.getObject("COLLECTION_ID");
+        if (collectionId != null) {
+            CoinCollection collection = new cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl();
+            collection.setId(collectionId);
+            coin.setCollection(collection);
+        }
+        return coin;
+    }
+
     @Override
     public List<Coin> findByYear(Integer year) {
         List<Coin> coins = new ArrayList<>();
@@ -203,7 +324,7 @@ public class JdbcCoinRepository implements CoinRepository {
                     coin.setId(rs.getInt("COIN_ID"));
                     coin.setCoinName(rs.getString("COIN_NAME"));
                     coin.setOriginCountry(rs.getString("ORIGIN_COUNTRY"));
-                    coin.setCoinYear(rs.getInt("COIN_YEAR"));
+                    coin.setCoinYear(rs.getObject("COIN_YEAR", Integer.class));
                     coin.setCoinMaterial(rs.getString("COIN_MATERIAL"));
                     coin.setCoinWeight(rs.getBigDecimal("COIN_WEIGHT"));
                     coin.setCoinDiameter(rs.getBigDecimal("COIN_DIAMETER"));
@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 import cat.uvic.teknos.dam.aureus.repositories.jdbc.exceptions.DataSourceException;
 
 public class SingleConnectionDataSource implements DataSource, AutoCloseable {
@@ -15,6 +16,9 @@ public class SingleConnectionDataSource implements DataSource, AutoCloseable {
     private final String database;
     private final String user;
     private final String password;
+    // Protege la creación perezosa de la conexión. ReentrantLock en lugar de synchronized:
+    // DriverManager.getConnection hace E/S de red y un monitor fijaría (pin) el hilo virtual.
+    private final ReentrantLock lock = new ReentrantLock();
 
     public SingleConnectionDataSource(String format, String driver, String server, String database, String user, String password) {
         this.format = format;
@@ -52,22 +56,30 @@ public class SingleConnectionDataSource implements DataSource, AutoCloseable {
 
     @Override
     public Connection getConnection() {
+        lock.lock();
         try {
             if (connection == null || connection.isClosed()) {
                 var url = String.format(format, driver, server, database);
                 connection = DriverManager.getConnection(url, user, password);
             }
+            return connection;
         } catch (SQLException e) {
             throw new DataSourceException("Failed to get database connection", e);
+        } finally {
+            lock.unlock();
         }
-        return connection;
     }
 
     @Override
     public void close() throws Exception {
-        if (connection != null && !connection.isClosed()) {
-            connection.close();
-            connection = null;
+        lock.lock();
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+                connection = null;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
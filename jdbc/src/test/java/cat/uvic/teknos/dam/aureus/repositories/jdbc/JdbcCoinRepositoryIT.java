@@ -3,6 +3,7 @@ package cat.uvic.teknos.dam.aureus.repositories.jdbc;
 import cat.uvic.teknos.dam.aureus.Coin;
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
 import cat.uvic.teknos.dam.aureus.repositories.CoinRepository;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 import cat.uvic.teknos.dam.aureus.repositories.jdbc.datasources.TestSingleConnectionDataSource;
 
 import org.junit.jupiter.api.*;
@@ -11,6 +12,7 @@ import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -196,4 +198,104 @@ class JdbcCoinRepositoryIT {
         assertEquals(1, coins150.size());
         assertEquals("Coin150", coins150.get(0).getCoinName());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testFindPage() {
+        for (int year = 1; year <= 3; year++) {
+            Coin coin = new CoinImpl();
+            coin.setCoinName("Page" + year);
+            coin.setCoinMaterial("Bronze");
+            coin.setCoinYear(year);
+            coin.setOriginCountry("Rome");
+            coin.setCoinWeight(BigDecimal.ONE);
+            coin.setCoinDiameter(BigDecimal.ONE);
+            coin.setEstimatedValue(BigDecimal.ONE);
+            coin.setHistoricalSignificance("Page test coin");
+            repository.save(coin);
+        }
+
+        List<Coin> first = repository.findPage(null, 2);
+        assertEquals(List.of("Page1", "Page2"), first.stream().map(Coin::getCoinName).toList());
+
+        List<Coin> rest = repository.findPage(first.get(1).getId(), 2);
+        assertEquals(List.of("Page3"), rest.stream().map(Coin::getCoinName).toList());
+        assertTrue(repository.findPage(rest.get(0).getId(), 2).isEmpty());
+    }
+
+    @Test
+    void testSearch() {
+        String[][] rows = {
+                {"Aureus", "Gold", "Rome", "-20", "900"},
+                {"Solidus", "Gold", "Byzantium", "400", "700"},
+                {"Denarius", "Silver", "Rome", "-50", "120"},
+                {"Dupondius", "Bronze", "Rome", "60", "40"}
+        };
+        for (String[] row : rows) {
+            Coin coin = new CoinImpl();
+            coin.setCoinName(row[0]);
+            coin.setCoinMaterial(row[1]);
+            coin.setOriginCountry(row[2]);
+            coin.setCoinYear(Integer.parseInt(row[3]));
+            coin.setEstimatedValue(new BigDecimal(row[4]));
+            coin.setCoinWeight(BigDecimal.ONE);
+            coin.setCoinDiameter(BigDecimal.ONE);
+            coin.setHistoricalSignificance("Search test coin");
+            repository.save(coin);
+        }
+
+        CoinSearchCriteria romanByValue = new CoinSearchCriteria();
+        romanByValue.setOriginCountry("Rome");
+        romanByValue.setMinValue(new BigDecimal("100"));
+        romanByValue.setSort(CoinSearchCriteria.SortKey.VALUE);
+        romanByValue.setDescending(true);
+        assertEquals(List.of("Aureus", "Denarius"),
+                repository.search(romanByValue).stream().map(Coin::getCoinName).toList());
+
+        CoinSearchCriteria goldBefore500 = new CoinSearchCriteria();
+        goldBefore500.setMaterial("Gold");
+        goldBefore500.setMinYear(0);
+        goldBefore500.setMaxYear(500);
+        assertEquals(List.of("Solidus"),
+                repository.search(goldBefore500).stream().map(Coin::getCoinName).toList());
+
+        CoinSearchCriteria firstByYear = new CoinSearchCriteria();
+        firstByYear.setSort(CoinSearchCriteria.SortKey.YEAR);
+        firstByYear.setLimit(2);
+        assertEquals(List.of("Denarius", "Aureus"),
+                repository.search(firstByYear).stream().map(Coin::getCoinName).toList());
+    }
+
+    @Test
+    void testFindByIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Coin coin = new CoinImpl();
+            coin.setCoinName("Multi" + i);
+            coin.setCoinMaterial("Silver");
+            coin.setCoinYear(i);
+            coin.setOriginCountry("Rome");
+            coin.setCoinWeight(BigDecimal.ONE);
+            coin.setCoinDiameter(BigDecimal.ONE);
+            coin.setEstimatedValue(BigDecimal.ONE);
+            coin.setHistoricalSignificance("Multi-get test coin");
+            repository.save(coin);
+            ids.add(coin.getId());
+        }
+
+        List<Coin> found = repository.findByIds(List.of(ids.get(2), ids.get(0), ids.get(2), -1));
+        assertEquals(List.of("Multi0", "Multi2"), found.stream().map(Coin::getCoinName).toList());
+        assertTrue(repository.findByIds(List.of()).isEmpty());
+    }
+
+    @Test
+    void testUnknownYearStaysNull() {
+        Coin coin = new CoinImpl();
+        coin.setCoinName("Undated");
+        coin.setCoinMaterial("Bronze");
+        coin.setOriginCountry("Rome");
+        repository.save(coin);
+
+        assertNull(repository.get(coin.getId()).getCoinYear(), "Un año NULL no debe leerse como 0");
+        assertNull(repository.findByIds(List.of(coin.getId())).get(0).getCoinYear());
+    }
+}
@@ -9,7 +9,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "COIN")
+// Mismos índices que docs/database/db.sql, para los esquemas generados por Hibernate
+@Table(name = "COIN", indexes = {
+        @Index(name = "idx_coin_material_year", columnList = "COIN_MATERIAL, COIN_YEAR"),
+        @Index(name = "idx_coin_country_year", columnList = "ORIGIN_COUNTRY, COIN_YEAR"),
+        @Index(name = "idx_coin_collection_value", columnList = "COLLECTION_ID, ESTIMATED_VALUE"),
+        @Index(name = "idx_coin_year", columnList = "COIN_YEAR"),
+        @Index(name = "idx_coin_value", columnList = "ESTIMATED_VALUE")
+})
 @Data
 // @EqualsAndHashCode, @ToString : To avoid infinite recursion
 @EqualsAndHashCode(exclude = {"collection", "coinTransactions"})
@@ -1,19 +1,29 @@
 package cat.uvic.teknos.dam.aureus.model.jpa.repositories;
 
 import cat.uvic.teknos.dam.aureus.model.jpa.JpaCoin;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 import cat.uvic.teknos.dam.aureus.repositories.Repository;
 import cat.uvic.teknos.dam.aureus.repositories.jdbc.exceptions.*;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class JpaCoinRepository implements Repository<Integer, JpaCoin> {
+    // Ids por consulta IN en las lecturas múltiples
+    public static final int IN_BATCH_SIZE = 500;
+
     private final EntityManager entityManager;
 
     public JpaCoinRepository(EntityManager entityManager) {
@@ -104,6 +114,198 @@ public class JpaCoinRepository implements Repository<Integer, JpaCoin> {
     }
 
 
+    /**
+     * Keyset pagination on {@code COIN_ID}: the primary key index locates the
+     * page directly, however deep it is, instead of skipping rows with OFFSET.
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @return coins with an id greater than {@code afterId}, in id order
+     */
+    public List<JpaCoin> findPage(Integer afterId, int limit) {
+        if (limit < 1) {
+            throw new InvalidDataException("Page limit must be positive");
+        }
+
+        try {
+            TypedQuery<JpaCoin> query = entityManager.createQuery(
+                    "SELECT c FROM JpaCoin c WHERE c.id > :after ORDER BY c.id", JpaCoin.class);
+            query.setParameter("after", afterId == null ? Integer.MIN_VALUE : afterId);
+            query.setMaxResults(limit);
+            return new ArrayList<>(query.getResultList());
+        } catch (Exception e) {
+            throw new RepositoryException("Error retrieving page of coins", e);
+        }
+    }
+
+    /**
+     * Multi-get with one {@code IN} query per batch of {@value #IN_BATCH_SIZE} ids.
+     *
+     * @param ids coin ids; duplicates and unknown ids are ignored
+     * @return the coins found, in id order
+     */
+    public List<JpaCoin> findByIds(Collection<Integer> ids) {
+        List<JpaCoin> coins = new ArrayList<>(ids.size());
+        try {
+            for (List<Integer> batch : batches(ids)) {
+                TypedQuery<JpaCoin> query = entityManager.createQuery(
+                        "SELECT c FROM JpaCoin c WHERE c.id IN :ids ORDER BY c.id", JpaCoin.class);
+                query.setParameter("ids", batch);
+                coins.addAll(query.getResultList());
+            }
+            return coins;
+        } catch (Exception e) {
+            throw new RepositoryException("Error retrieving coins by ids", e);
+        }
+    }
+
+    /**
+     * Projection of {@link #findByIds}: only the selected columns are read,
+     * with a tuple query, and no entity is loaded.
+     *
+     * @param ids coin ids; duplicates and unknown ids are ignored
+     * @param fields columns to read
+     * @return one map per coin found, from property name to value, in id order
+     */
+    public List<Map<String, Object>> findFieldsByIds(Collection<Integer> ids, Set<CoinField> fields) {
+        List<Map<String, Object>> rows = new ArrayList<>(ids.size());
+        try {
+            for (List<Integer> batch : batches(ids)) {
+                TypedQuery<Tuple> query = fieldsQuery(fields, "c.id IN :ids");
+                query.setParameter("ids", batch);
+                rows.addAll(toMaps(query.getResultList(), fields));
+            }
+            return rows;
+        } catch (Exception e) {
+            throw new RepositoryException("Error retrieving coin fields by ids", e);
+        }
+    }
+
+    /**
+     * Projection of {@link #findPage}: only the selected columns are read.
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @param fields columns to read
+     * @return one map per coin, from property name to value, in id order
+     */
+    public List<Map<String, Object>> findPageFields(Integer afterId, int limit, Set<CoinField> fields) {
+        if (limit < 1) {
+            throw new InvalidDataException("Page limit must be positive");
+        }
+
+        try {
+            TypedQuery<Tuple> query = fieldsQuery(fields, "c.id > :after");
+            query.setParameter("after", afterId == null ? Integer.MIN_VALUE : afterId);
+            query.setMaxResults(limit);
+            return toMaps(query.getResultList(), fields);
+        } catch (Exception e) {
+            throw new RepositoryException("Error retrieving page of coin fields", e);
+        }
+    }
+
+    // SELECT c.id AS id, c.coinName AS coinName ... : los alias son los nombres de las propiedades
+    private TypedQuery<Tuple> fieldsQuery(Set<CoinField> fields, String condition) {
+        if (fields == null || fields.isEmpty()) {
+            throw new InvalidDataException("At least one field must be selected");
+        }
+        StringBuilder jpql = new StringBuilder("SELECT ");
+        String separator = "";
+        for (CoinField field : fields) {
+            jpql.append(separator).append(path(field)).append(" AS ").append(field.property());
+            separator = ", ";
+        }
+        jpql.append(" FROM JpaCoin c WHERE ").append(condition).append(" ORDER BY c.id");
+        return entityManager.createQuery(jpql.toString(), Tuple.class);
+    }
+
+    private static String path(CoinField field) {
+        return switch (field) {
+            case ID -> "c.id";
+            case NAME -> "c.coinName";
+            case YEAR -> "c.coinYear";
+            case MATERIAL -> "c.coinMaterial";
+            case WEIGHT -> "c.coinWeight";
+            case DIAMETER -> "c.coinDiameter";
+            case VALUE -> "c.estimatedValue";
+            case ORIGIN_COUNTRY -> "c.originCountry";
+            case HISTORICAL_SIGNIFICANCE -> "c.historicalSignificance";
+            // La clave foránea de COIN: no hace falta unir COLLECTION
+            case COLLECTION_ID -> "c.collection.id";
+        };
+    }
+
+    private static List<Map<String, Object>> toMaps(List<Tuple> tuples, Set<CoinField> fields) {
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (CoinField field : fields) {
+                row.put(field.property(), tuple.get(field.property()));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Ids ordenados y sin duplicados, en lotes de IN_BATCH_SIZE
+    private static List<List<Integer>> batches(Collection<Integer> ids) {
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(ids));
+        List<List<Integer>> batches = new ArrayList<>();
+        for (int from = 0; from < sorted.size(); from += IN_BATCH_SIZE) {
+            batches.add(sorted.subList(from, Math.min(from + IN_BATCH_SIZE, sorted.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * Search with the filters set in the criteria, compiled into a single
+     * parameterised JPQL query so the COIN indexes can be used.
+     *
+     * @param criteria filters, order and maximum number of results
+     * @return matching coins, at most {@code criteria.getLimit()}
+     */
+    public List<JpaCoin> search(CoinSearchCriteria criteria) {
+        if (criteria == null) {
+            throw new InvalidDataException("Search criteria cannot be null");
+        }
+
+        StringBuilder jpql = new StringBuilder("SELECT c FROM JpaCoin c WHERE 1 = 1");
+        Map<String, Object> params = new LinkedHashMap<>();
+        addFilter(jpql, params, "c.coinMaterial = :material", "material", criteria.getMaterial());
+        addFilter(jpql, params, "c.originCountry = :country", "country", criteria.getOriginCountry());
+        addFilter(jpql, params, "c.collection.id = :collection", "collection", criteria.getCollectionId());
+        addFilter(jpql, params, "c.coinYear >= :minYear", "minYear", criteria.getMinYear());
+        addFilter(jpql, params, "c.coinYear <= :maxYear", "maxYear", criteria.getMaxYear());
+        addFilter(jpql, params, "c.estimatedValue >= :minValue", "minValue", criteria.getMinValue());
+        addFilter(jpql, params, "c.estimatedValue <= :maxValue", "maxValue", criteria.getMaxValue());
+
+        String direction = criteria.isDescending() ? " DESC" : " ASC";
+        String property = switch (criteria.getSort()) {
+            case ID -> null;
+            case NAME -> "c.coinName";
+            case YEAR -> "c.coinYear";
+            case VALUE -> "c.estimatedValue";
+        };
+        jpql.append(" ORDER BY ");
+        if (property != null) jpql.append(property).append(direction).append(", ");
+        jpql.append("c.id").append(direction);
+
+        try {
+            TypedQuery<JpaCoin> query = entityManager.createQuery(jpql.toString(), JpaCoin.class);
+            params.forEach(query::setParameter);
+            query.setMaxResults(criteria.getLimit());
+            return new ArrayList<>(query.getResultList());
+        } catch (Exception e) {
+            throw new RepositoryException("Error searching coins", e);
+        }
+    }
+
+    private static void addFilter(StringBuilder jpql, Map<String, Object> params, String condition, String name, Object value) {
+        if (value == null) return;
+        jpql.append(" AND ").append(condition);
+        params.put(name, value);
+    }
+
     public List<JpaCoin> findByMaterial(String material) {
         if (material == null || material.trim().isEmpty()) {
             throw new InvalidDataException("Material cannot be null or empty");
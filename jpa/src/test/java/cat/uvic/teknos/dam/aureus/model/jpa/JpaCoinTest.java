@@ -1,6 +1,8 @@
 package cat.uvic.teknos.dam.aureus.model.jpa;
 
 import cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaCoinRepository;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 import cat.uvic.teknos.dam.aureus.repositories.jdbc.exceptions.EntityNotFoundException;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
@@ -8,7 +10,9 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 
 import java.math.BigDecimal;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -132,6 +136,54 @@ class JpaCoinTest {
 
     @Test
     @Order(6)
+    @DisplayName("Should search coins combining filters")
+    void shouldSearchWithCombinedFilters() {
+        // Arrange
+        var criteria = new CoinSearchCriteria();
+        criteria.setMaterial("Silver");
+        criteria.setOriginCountry("Spain");
+        criteria.setMinYear(2000);
+        criteria.setMaxValue(BigDecimal.valueOf(150));
+        criteria.setSort(CoinSearchCriteria.SortKey.VALUE);
+        criteria.setDescending(true);
+
+        // Act
+        List<JpaCoin> coins = repository.search(criteria);
+
+        // Assert
+        assertFalse(coins.isEmpty());
+        for (var c : coins) {
+            assertEquals("Silver", c.getCoinMaterial());
+            assertTrue(c.getCoinYear() >= 2000);
+        }
+
+        criteria.setMaxYear(1999);
+        assertTrue(repository.search(criteria).isEmpty());
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("Should read several coins and projected fields by id")
+    void shouldFindByIdsAndProjectFields() {
+        // Act
+        List<JpaCoin> coins = repository.findByIds(List.of(1, 1, 999));
+        List<Map<String, Object>> rows = repository.findFieldsByIds(List.of(999, 1),
+                EnumSet.of(CoinField.ID, CoinField.NAME, CoinField.COLLECTION_ID));
+        List<Map<String, Object>> page = repository.findPageFields(null, 10, EnumSet.of(CoinField.ID, CoinField.VALUE));
+
+        // Assert
+        assertEquals(1, coins.size());
+        assertEquals(1, coins.get(0).getId());
+        assertEquals(1, rows.size());
+        assertEquals(List.of("id", "coinName", "collectionId"), List.copyOf(rows.get(0).keySet()));
+        assertEquals("Updated Euro", rows.get(0).get("coinName"));
+        assertEquals(coins.get(0).getCollection().getId(), rows.get(0).get("collectionId"));
+        assertFalse(page.isEmpty());
+        assertEquals(List.of("id", "estimatedValue"), List.copyOf(page.get(0).keySet()));
+    }
+
+    @Test
+    @Order(8)
     @DisplayName("Should delete a coin")
     void shouldDeleteCoin() {
         // Arrange
@@ -0,0 +1,66 @@
+package cat.uvic.teknos.dam.aureus.repositories;
+
+import cat.uvic.teknos.dam.aureus.Coin;
+
+/**
+ * Coin attributes that can be selected in a projection. Each one is named
+ * after the coin property it reads, which is also its name in the JSON
+ * returned by the server.
+ */
+public enum CoinField {
+    ID("id"),
+    NAME("coinName"),
+    YEAR("coinYear"),
+    MATERIAL("coinMaterial"),
+    WEIGHT("coinWeight"),
+    DIAMETER("coinDiameter"),
+    VALUE("estimatedValue"),
+    ORIGIN_COUNTRY("originCountry"),
+    HISTORICAL_SIGNIFICANCE("historicalSignificance"),
+    // Sólo el id: la clave foránea se lee sin unir COLLECTION
+    COLLECTION_ID("collectionId");
+
+    private final String property;
+
+    CoinField(String property) {
+        this.property = property;
+    }
+
+    /**
+     * @return property name, e.g. {@code coinName}
+     */
+    public String property() {
+        return property;
+    }
+
+    /**
+     * @param coin coin to read
+     * @return value of this field in the coin, possibly null
+     */
+    public Object get(Coin coin) {
+        return switch (this) {
+            case ID -> coin.getId();
+            case NAME -> coin.getCoinName();
+            case YEAR -> coin.getCoinYear();
+            case MATERIAL -> coin.getCoinMaterial();
+            case WEIGHT -> coin.getCoinWeight();
+            case DIAMETER -> coin.getCoinDiameter();
+            case VALUE -> coin.getEstimatedValue();
+            case ORIGIN_COUNTRY -> coin.getOriginCountry();
+            case HISTORICAL_SIGNIFICANCE -> coin.getHistoricalSignificance();
+            case COLLECTION_ID -> coin.getCollection() == null ? null : coin.getCollection().getId();
+        };
+    }
+
+    /**
+     * @param property property name, case insensitive
+     * @return the field reading that property
+     * @throws IllegalArgumentException if no field has that name
+     */
+    public static CoinField fromProperty(String property) {
+        for (CoinField field : values()) {
+            if (field.property.equalsIgnoreCase(property)) return field;
+        }
+        throw new IllegalArgumentException("Unknown coin field: " + property);
+    }
+}
@@ -2,9 +2,37 @@ package cat.uvic.teknos.dam.aureus.repositories;
 
 import cat.uvic.teknos.dam.aureus.Coin;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface CoinRepository extends Repository<Integer, Coin> {
     List<Coin> findByMaterial(String material);
     List<Coin> findByYear(Integer year);
+
+    /**
+     * Keyset pagination: coins ordered by id, starting after a given id.
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @return coins with an id greater than {@code afterId}, in id order
+     */
+    List<Coin> findPage(Integer afterId, int limit);
+
+    /**
+     * Multi-get: the coins with the given ids, read with one {@code IN} query
+     * per batch of ids instead of one query per coin.
+     *
+     * @param ids coin ids; duplicates and unknown ids are ignored
+     * @return the coins found, in id order
+     */
+    List<Coin> findByIds(Collection<Integer> ids);
+
+    /**
+     * Coins matching every filter set in the criteria, in one query that the
+     * COIN indexes can answer without a full scan.
+     *
+     * @param criteria filters, order and maximum number of results
+     * @return matching coins, at most {@code criteria.getLimit()}
+     */
+    List<Coin> search(CoinSearchCriteria criteria);
 }
@@ -0,0 +1,79 @@
+package cat.uvic.teknos.dam.aureus.repositories;
+
+import java.math.BigDecimal;
+
+/**
+ * Filters of a coin search. Every filter left null is not applied; the rest
+ * are combined with AND into a single parameterised query.
+ *
+ * <p>Year and value ranges are inclusive. Results are ordered by
+ * {@link #getSort()} and then by id, so equal keys keep a stable order.</p>
+ */
+public class CoinSearchCriteria {
+
+    /**
+     * Keys a search can be ordered by.
+     */
+    public enum SortKey {
+        ID, NAME, YEAR, VALUE
+    }
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    private String material;
+    private String originCountry;
+    private Integer minYear;
+    private Integer maxYear;
+    private BigDecimal minValue;
+    private BigDecimal maxValue;
+    private Integer collectionId;
+    private SortKey sort = SortKey.ID;
+    private boolean descending;
+    private int limit = DEFAULT_LIMIT;
+
+    public String getMaterial() { return material; }
+
+    public void setMaterial(String material) { this.material = material; }
+
+    public String getOriginCountry() { return originCountry; }
+
+    public void setOriginCountry(String originCountry) { this.originCountry = originCountry; }
+
+    public Integer getMinYear() { return minYear; }
+
+    public void setMinYear(Integer minYear) { this.minYear = minYear; }
+
+    public Integer getMaxYear() { return maxYear; }
+
+    public void setMaxYear(Integer maxYear) { this.maxYear = maxYear; }
+
+    public BigDecimal getMinValue() { return minValue; }
+
+    public void setMinValue(BigDecimal minValue) { this.minValue = minValue; }
+
+    public BigDecimal getMaxValue() { return maxValue; }
+
+    public void setMaxValue(BigDecimal maxValue) { this.maxValue = maxValue; }
+
+    public Integer getCollectionId() { return collectionId; }
+
+    public void setCollectionId(Integer collectionId) { this.collectionId = collectionId; }
+
+    public SortKey getSort() { return sort; }
+
+    public void setSort(SortKey sort) { this.sort = sort == null ? SortKey.ID : sort; }
+
+    public boolean isDescending() { return descending; }
+
+    public void setDescending(boolean descending) { this.descending = descending; }
+
+    public int getLimit() { return limit; }
+
+    /**
+     * @param limit maximum number of coins returned, at least 1
+     */
+    public void setLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Search limit must be positive");
+        this.limit = limit;
+    }
+}
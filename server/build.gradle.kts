@@ -4,6 +4,8 @@
 plugins {
     java
     application
+    // Microbenchmarks JMH en src/jmh/java (./gradlew :server:jmh)
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 repositories {
@@ -17,6 +19,8 @@ application {
 
 tasks.test {
     useJUnitPlatform()
+    // Los tests detectan buffers del pool que no se devuelven
+    systemProperty("aureus.buffers.leakDetection", "true")
 }
 
 dependencies {
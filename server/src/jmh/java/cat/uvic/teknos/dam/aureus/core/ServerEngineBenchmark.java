@@ -0,0 +1,96 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import cat.uvic.teknos.dam.aureus.controller.CoinController;
+import cat.uvic.teknos.dam.aureus.http.RequestRouter;
+import cat.uvic.teknos.dam.aureus.service.CoinServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the blocking {@link Server} and the selector-based {@link NioServer}
+ * end to end over loopback.
+ *
+ * <p>{@code Mode.SampleTime} reports latency percentiles (p99 included) and
+ * {@code Mode.Throughput} the requests per second, both with 32 concurrent
+ * clients doing {@code GET /coins} against the in-memory {@link CoinServiceImpl}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(32)
+public class ServerEngineBenchmark {
+
+    private static final byte[] REQUEST = "GET /coins HTTP/1.1\r\nHost: localhost\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"blocking", "nio"})
+    public String engine;
+
+    private int port;
+    private Server blockingServer;
+    private NioServer nioServer;
+    private Thread serverThread;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        RequestRouter router = new RequestRouter(new CoinController(new CoinServiceImpl()));
+        if ("nio".equals(engine)) {
+            nioServer = new NioServer(port, router);
+            serverThread = new Thread(nioServer::start, "bench-nio-server");
+        } else {
+            blockingServer = new Server(port, router);
+            serverThread = new Thread(blockingServer::start, "bench-blocking-server");
+        }
+        serverThread.start();
+        awaitListening();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws InterruptedException {
+        if (nioServer != null) nioServer.shutdown();
+        if (blockingServer != null) blockingServer.shutdown();
+        serverThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Benchmark
+    public int getAllCoins() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buf = new byte[8192];
+            int total = 0;
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    private void awaitListening() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException notYet) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+}
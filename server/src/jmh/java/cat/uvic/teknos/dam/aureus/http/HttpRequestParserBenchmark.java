@@ -0,0 +1,153 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the incremental {@link HttpRequestParser} with the byte-at-a-time
+ * parser that {@code HttpRequest.parse} used before it (copied below as the
+ * baseline).
+ *
+ * <p>{@code stream} parses from an {@link InputStream} like the blocking server,
+ * {@code buffer} parses a {@link ByteBuffer} like the NIO event loops. Each
+ * invocation parses a typical encrypted {@code POST /coins} and a {@code GET}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class HttpRequestParserBenchmark {
+
+    private static final String BODY = "{\"coinName\":\"Aureus of Augustus\",\"coinYear\":-27,\"coinMaterial\":\"Gold\",\"coinWeight\":7.9}";
+    private static final byte[] REQUESTS = ("POST /coins HTTP/1.1\r\n"
+            + "Host: localhost:5000\r\n"
+            + "User-Agent: aureus-console/1.0\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: " + BODY.length() + "\r\n"
+            + "X-Body-Hash: 3f1a9c0e5b7d2f4a6c8e0b1d3f5a7c9e1b3d5f7a9c0e2b4d6f8a0c2e4b6d8f0a\r\n"
+            + "X-Session-Id: 7d9f3c2a-1b4e-4f6a-9c8d-2e5b7a1f3c9d\r\n"
+            + "\r\n" + BODY
+            + "GET /coins/42 HTTP/1.1\r\nHost: localhost:5000\r\nConnection: keep-alive\r\n\r\n")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final HttpRequestParser parser = new HttpRequestParser();
+    private final ByteBuffer buffer = ByteBuffer.wrap(REQUESTS);
+
+    @Benchmark
+    public int legacyStream() throws IOException {
+        InputStream in = new ByteArrayInputStream(REQUESTS);
+        return legacyParse(in).getBody().length() + legacyParse(in).getPath().length();
+    }
+
+    @Benchmark
+    public int parserStream() throws IOException {
+        InputStream in = new ByteArrayInputStream(REQUESTS);
+        HttpRequestParser streamParser = new HttpRequestParser();
+        return streamParser.parse(in).getBody().length() + streamParser.parse(in).getPath().length();
+    }
+
+    @Benchmark
+    public int parserBuffer() {
+        buffer.clear();
+        return parser.parse(buffer).getBody().length() + parser.parse(buffer).getPath().length();
+    }
+
+    // Parser anterior: lee byte a byte, divide con String.split y lee el cuerpo en bloques de 1 KB
+    private static HttpRequest legacyParse(InputStream input) throws IOException {
+        // Read bytes until the sequence CRLF CRLF is found, which marks the end of headers
+        ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream();
+        int b;
+        // We'll keep a sliding window of the last 4 bytes to detect \r\n\r\n
+        byte[] last4 = new byte[4];
+        int lastCount = 0;
+        while ((b = input.read()) != -1) {
+            headerBuffer.write(b);
+            // shift last4
+            if (lastCount < 4) {
+                last4[lastCount++] = (byte) b;
+            } else {
+                last4[0] = last4[1];
+                last4[1] = last4[2];
+                last4[2] = last4[3];
+                last4[3] = (byte) b;
+            }
+            if (lastCount == 4 && last4[0] == '\r' && last4[1] == '\n' && last4[2] == '\r' && last4[3] == '\n') {
+                break;
+            }
+        }
+
+        if (headerBuffer.size() == 0) {
+            throw new IOException("Empty request");
+        }
+
+        byte[] headerBytes = headerBuffer.toByteArray();
+        // find header end index (position of the \r\n\r\n)
+        int headerEnd = -1;
+        for (int i = 0; i < headerBytes.length - 3; i++) {
+            if (headerBytes[i] == '\r' && headerBytes[i+1] == '\n' && headerBytes[i+2] == '\r' && headerBytes[i+3] == '\n') {
+                headerEnd = i;
+                break;
+            }
+        }
+        if (headerEnd == -1) {
+            throw new IOException("Invalid HTTP header: no header-body separator");
+        }
+
+        String headerStr = new String(headerBytes, 0, headerEnd, StandardCharsets.UTF_8);
+        String[] lines = headerStr.split("\r\n");
+        if (lines.length == 0) throw new IOException("Invalid request line");
+        String requestLine = lines[0];
+        String[] parts = requestLine.split(" ", 3);
+        if (parts.length < 2) throw new IOException("Invalid request line: " + requestLine);
+        String method = parts[0];
+        String path = parts[1];
+        String version = parts.length > 2 ? parts[2].trim() : HttpRequest.HTTP_1_1;
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line == null || line.isEmpty()) continue;
+            int idx = line.indexOf(':');
+            if (idx > 0) {
+                String name = line.substring(0, idx).trim();
+                String value = line.substring(idx + 1).trim();
+                headers.put(name, value);
+            }
+        }
+
+        // Determine content length (default 0)
+        String contentLengthValue = headers.getOrDefault("Content-Length", headers.getOrDefault("content-length", "0"));
+        int contentLength = 0;
+        try { contentLength = Integer.parseInt(contentLengthValue); } catch (NumberFormatException ignored) {}
+
+        // Compute any body bytes already read after the header end
+        int alreadyRead = headerBytes.length - (headerEnd + 4);
+        ByteArrayOutputStream bodyOut = new ByteArrayOutputStream();
+        if (alreadyRead > 0) {
+            bodyOut.write(headerBytes, headerEnd + 4, alreadyRead);
+        }
+
+        // Read remaining bytes if any
+        while (bodyOut.size() < contentLength) {
+            int toRead = contentLength - bodyOut.size();
+            byte[] buf = new byte[Math.min(1024, toRead)];
+            int n = input.read(buf);
+            if (n == -1) break;
+            bodyOut.write(buf, 0, n);
+        }
+
+        String body = bodyOut.size() == 0 ? "" : new String(bodyOut.toByteArray(), StandardCharsets.UTF_8);
+        return new HttpRequest(method, path, version, headers, body);
+    }
+}
@@ -0,0 +1,79 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ResponseEncoder} with the formatting {@code ResponseEntity.writeTo}
+ * did before it: {@code String.format} for the status line and one string,
+ * one byte array and one {@code write} per header.
+ *
+ * <p>The response is a typical keep-alive JSON answer with a hashed body; the
+ * hash itself is computed once in the setup so only the encoding is measured.
+ * The sink counts the {@code write} calls that would reach the socket.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ResponseEncoderBenchmark {
+
+    private static final class CountingSink extends OutputStream {
+        private long bytes;
+        private long writes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            writes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            writes++;
+        }
+    }
+
+    private final CountingSink sink = new CountingSink();
+    private final HttpHeaders headers = new HttpHeaders();
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = "{\"id\":42,\"name\":\"Aureus\",\"material\":\"gold\",\"weight\":7.9}".getBytes(StandardCharsets.UTF_8);
+        headers.set(HeaderName.CONTENT_TYPE, "application/json");
+        headers.set(HeaderName.CONTENT_LENGTH, String.valueOf(body.length));
+        headers.set(HeaderName.CONNECTION, "keep-alive");
+        headers.set(HeaderName.KEEP_ALIVE, "timeout=5, max=99");
+        headers.set(HeaderName.X_BODY_HASH, "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+    }
+
+    @Benchmark
+    public void encoder(Blackhole bh) throws IOException {
+        ResponseEncoder.get().writeTo(sink, 200, "OK", headers, body);
+        bh.consume(sink.writes);
+    }
+
+    @Benchmark
+    public void formatted(Blackhole bh) throws IOException {
+        String statusLine = String.format("HTTP/1.1 %d %s\r\n", 200, "OK");
+        sink.write(statusLine.getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            String line = h.getKey() + ": " + h.getValue() + "\r\n";
+            sink.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+        sink.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        sink.write(body);
+        sink.flush();
+        bh.consume(sink.writes);
+    }
+}
@@ -0,0 +1,96 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link RouteTrie} with the linear scan that {@code RequestRouter.route}
+ * used before it (a list of routes, one {@link Pattern} per variable route).
+ *
+ * <p>Both tables hold the same 240 routes: 40 resources, each with
+ * collection, item and nested item endpoints for several methods. Each
+ * invocation looks up a static path near the start of the table, an item
+ * path in the middle and a nested path at the end.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class RouteTrieBenchmark {
+
+    private static final int RESOURCES = 40;
+    private static final BiFunction<HttpRequest, PathParams, ResponseEntity> NO_OP = (req, params) -> null;
+
+    private record LinearRoute(String method, String path, Pattern regex) {
+    }
+
+    private final RouteTrie trie = new RouteTrie();
+    private final List<LinearRoute> linear = new ArrayList<>();
+
+    private final String[][] lookups = {
+            {"GET", "/resource1"},
+            {"PUT", "/resource20/12345"},
+            {"DELETE", "/resource39/7/items/42"},
+    };
+
+    @Setup
+    public void setUp() {
+        for (int r = 0; r < RESOURCES; r++) {
+            String base = "/resource" + r;
+            for (String method : new String[]{"GET", "POST"}) {
+                register(method, base, null);
+            }
+            for (String method : new String[]{"GET", "PUT", "DELETE"}) {
+                register(method, base + "/{id}", Pattern.compile("^" + base + "/(\\d+)$"));
+            }
+            register("DELETE", base + "/{id}/items/{itemId}", Pattern.compile("^" + base + "/(\\d+)/items/(\\d+)$"));
+        }
+        if (trie.size() < 200) throw new IllegalStateException("Expected 200+ routes, got " + trie.size());
+    }
+
+    private void register(String method, String pattern, Pattern regex) {
+        trie.add(method, pattern, NO_OP);
+        linear.add(new LinearRoute(method, pattern, regex));
+    }
+
+    @Benchmark
+    public int trie() {
+        int found = 0;
+        for (String[] lookup : lookups) {
+            RouteTrie.Match match = trie.find(lookup[0], lookup[1]);
+            found += match.params().size();
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int linearRegex() {
+        int found = 0;
+        for (String[] lookup : lookups) {
+            found += linearFind(lookup[0], lookup[1]);
+        }
+        return found;
+    }
+
+    // Recorrido anterior: método, igualdad exacta o Pattern.matcher por cada ruta
+    private int linearFind(String method, String path) {
+        for (LinearRoute route : linear) {
+            if (!route.method().equalsIgnoreCase(method)) continue;
+            if (route.regex() == null) {
+                if (route.path().equals(path)) return 0;
+            } else {
+                Matcher matcher = route.regex().matcher(path);
+                if (matcher.matches()) return matcher.groupCount();
+            }
+        }
+        throw new IllegalStateException("No route for " + method + " " + path);
+    }
+}
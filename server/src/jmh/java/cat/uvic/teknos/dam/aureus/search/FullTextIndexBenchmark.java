@@ -0,0 +1,102 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of {@link FullTextIndex} over a large catalogue.
+ *
+ * <p>The index holds {@code coins} coins named "denomination of ruler" with
+ * one of a few materials and countries, so those terms match a large share
+ * of the catalogue, and a short history from a bigger vocabulary. The top 10
+ * hits are asked for a material, a country, a name of two words, a material
+ * and a country together and a prefix. {@code materialEveryHit} asks for
+ * every hit of the material, which scores all its postings, as the index did
+ * before queries were pruned.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FullTextIndexBenchmark {
+
+    private static final String[] DENOMINATIONS = {"Aureus", "Denarius", "Sestertius", "Dupondius", "As", "Antoninianus",
+            "Solidus", "Siliqua", "Follis", "Drachma", "Tetradrachm", "Stater", "Obol", "Dinar", "Dirham"};
+    private static final String[] RULERS = {"Augustus", "Tiberius", "Nero", "Vespasian", "Titus", "Domitian", "Trajan",
+            "Hadrian", "Antoninus Pius", "Marcus Aurelius", "Commodus", "Septimius Severus", "Caracalla", "Gordian III",
+            "Aurelian", "Diocletian", "Constantine", "Theodosius", "Justinian", "Alexander", "Philip II", "Ptolemy I"};
+    private static final String[] MATERIALS = {"Gold", "Silver", "Bronze", "Copper", "Billon"};
+    private static final String[] COUNTRIES = {"Italy", "Greece", "Spain", "Egypt", "Turkey", "France", "Syria"};
+    private static final String[] HISTORY = {"minted", "to", "pay", "the", "legions", "during", "campaign", "in", "east",
+            "celebrating", "victory", "over", "Parthia", "Dacia", "Britain", "restoration", "of", "coinage", "reform",
+            "debasement", "hoard", "found", "near", "river", "temple", "emperor", "portrait", "reverse", "shows", "goddess"};
+
+    private static final int LIMIT = 10;
+
+    @Param({"1000000"})
+    public int coins;
+
+    private FullTextIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        List<CoinImpl> catalogue = new ArrayList<>(coins);
+        for (int id = 1; id <= coins; id++) {
+            CoinImpl coin = new CoinImpl();
+            coin.setId(id);
+            coin.setCoinName(DENOMINATIONS[random.nextInt(DENOMINATIONS.length)] + " of " + RULERS[random.nextInt(RULERS.length)]);
+            coin.setCoinMaterial(MATERIALS[random.nextInt(MATERIALS.length)]);
+            coin.setOriginCountry(COUNTRIES[random.nextInt(COUNTRIES.length)]);
+            StringBuilder history = new StringBuilder();
+            for (int word = 4 + random.nextInt(12); word > 0; word--) {
+                history.append(HISTORY[random.nextInt(HISTORY.length)]).append(' ');
+            }
+            coin.setHistoricalSignificance(history.toString());
+            catalogue.add(coin);
+        }
+        index = new FullTextIndex();
+        long start = System.nanoTime();
+        index.rebuild(catalogue);
+        System.out.printf("%nFullTextIndex: %d coins built in %d ms%n", coins, (System.nanoTime() - start) / 1_000_000);
+        // Las copias por impacto se crean en la primera consulta de cada término
+        for (String query : new String[]{"silver", "spain", "denarius trajan", "gold egypt", "aur*"}) index.search(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<FullTextIndex.Hit> material() {
+        return index.search("silver", LIMIT);
+    }
+
+    @Benchmark
+    public List<FullTextIndex.Hit> country() {
+        return index.search("spain", LIMIT);
+    }
+
+    @Benchmark
+    public List<FullTextIndex.Hit> twoWordName() {
+        return index.search("denarius trajan", LIMIT);
+    }
+
+    @Benchmark
+    public List<FullTextIndex.Hit> materialAndCountry() {
+        return index.search("gold egypt", LIMIT);
+    }
+
+    @Benchmark
+    public List<FullTextIndex.Hit> prefix() {
+        return index.search("aur*", LIMIT);
+    }
+
+    @Benchmark
+    public List<FullTextIndex.Hit> materialEveryHit() {
+        return index.search("silver", Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,88 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup time and heap footprint of {@link SuggestionTrie}.
+ *
+ * <p>The trie holds {@code names} coins named "denomination of ruler, mint
+ * year" from small vocabularies, so names share prefixes and repeat as in a
+ * real catalogue. The setup prints the heap taken by the trie (the name
+ * strings themselves are not counted, the coins already hold them) and that
+ * amount per million names. Lookups use a one-letter prefix, whose node
+ * matches most names, a word in the middle of the names and a long prefix.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SuggestionTrieBenchmark {
+
+    private static final String[] DENOMINATIONS = {"Aureus", "Denarius", "Sestertius", "Dupondius", "As", "Antoninianus",
+            "Solidus", "Siliqua", "Follis", "Drachma", "Tetradrachm", "Stater", "Obol", "Dinar", "Dirham"};
+    private static final String[] RULERS = {"Augustus", "Tiberius", "Nero", "Vespasian", "Titus", "Domitian", "Trajan",
+            "Hadrian", "Antoninus Pius", "Marcus Aurelius", "Commodus", "Septimius Severus", "Caracalla", "Gordian III",
+            "Aurelian", "Diocletian", "Constantine", "Theodosius", "Justinian", "Alexander", "Philip II", "Ptolemy I"};
+    private static final String[] MINTS = {"Rome", "Lugdunum", "Antioch", "Alexandria", "Siscia", "Trier", "Nicomedia",
+            "Thessalonica", "Constantinople", "Athens", "Corinth", "Syracuse"};
+
+    @Param({"1000000"})
+    public int names;
+
+    private SuggestionTrie trie;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        List<CoinImpl> coins = new ArrayList<>(names);
+        for (int id = 1; id <= names; id++) {
+            CoinImpl coin = new CoinImpl();
+            coin.setId(id);
+            coin.setCoinName(DENOMINATIONS[random.nextInt(DENOMINATIONS.length)] + " of "
+                    + RULERS[random.nextInt(RULERS.length)] + ", " + MINTS[random.nextInt(MINTS.length)]
+                    + " " + (random.nextInt(2000) - 500));
+            coin.setEstimatedValue(BigDecimal.valueOf(random.nextInt(1_000_000), 2));
+            coins.add(coin);
+        }
+
+        long before = usedHeap();
+        trie = new SuggestionTrie();
+        long start = System.nanoTime();
+        trie.rebuild(coins, Map.of());
+        long elapsed = System.nanoTime() - start;
+        long bytes = usedHeap() - before;
+        System.out.printf("%nSuggestionTrie: %d names built in %d ms, %.1f MB of heap (%.1f MB per million names)%n",
+                names, elapsed / 1_000_000, bytes / 1e6, bytes / 1e6 * 1_000_000 / names);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public List<SuggestionTrie.Suggestion> oneLetter() {
+        return trie.suggest("d", SuggestionTrie.MAX_SUGGESTIONS, null);
+    }
+
+    @Benchmark
+    public List<SuggestionTrie.Suggestion> wordInTheMiddle() {
+        return trie.suggest("traj", SuggestionTrie.MAX_SUGGESTIONS, null);
+    }
+
+    @Benchmark
+    public List<SuggestionTrie.Suggestion> longPrefix() {
+        return trie.suggest("denarius of trajan rome 1", SuggestionTrie.MAX_SUGGESTIONS, null);
+    }
+}
@@ -1,18 +1,39 @@
 package cat.uvic.teknos.dam.aureus;
 
 import cat.uvic.teknos.dam.aureus.configuration.DependencyInjector;
+import cat.uvic.teknos.dam.aureus.core.AdmissionController;
+import cat.uvic.teknos.dam.aureus.core.ExecutionMode;
+import cat.uvic.teknos.dam.aureus.core.NioServer;
 import cat.uvic.teknos.dam.aureus.core.Server;
 
+import java.time.Duration;
+
 /**
  * Server application entry point for the AUREUS project.
  *
  * <p>Initializes dependencies via {@link cat.uvic.teknos.dam.aureus.configuration.DependencyInjector}
- * and starts the embedded HTTP server.</p>
+ * and starts the embedded HTTP server. The engine is selected with the
+ * {@code aureus.server.engine} system property: {@code blocking} (default,
+ * {@link Server}) or {@code nio} ({@link NioServer}). For the blocking engine,
+ * {@code aureus.server.threads=virtual} runs each connection on a virtual thread
+ * and {@code aureus.server.admission=adaptive} replaces the fixed admission
+ * limit with one that adapts to request latency. Database work runs on its own
+ * pool of {@code aureus.db.threads} threads (default 1).</p>
  */
 public class App {
     public static void main(String[] args) {
         int port = 5000;
-        Server server = DependencyInjector.provideServer(port);
-        server.start();
+        String engine = System.getProperty("aureus.server.engine", "blocking");
+        if ("nio".equalsIgnoreCase(engine)) {
+            NioServer server = DependencyInjector.provideNioServer(port);
+            server.start();
+        } else {
+            ExecutionMode mode = ExecutionMode.fromString(System.getProperty("aureus.server.threads", "platform"));
+            Server server = DependencyInjector.provideServer(port, mode);
+            if ("adaptive".equalsIgnoreCase(System.getProperty("aureus.server.admission", "fixed"))) {
+                server.setAdmissionController(AdmissionController.adaptive(64, 8, 1024, 128, Duration.ofMillis(250)));
+            }
+            server.start();
+        }
     }
 }
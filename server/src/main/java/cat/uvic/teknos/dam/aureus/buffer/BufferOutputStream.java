@@ -0,0 +1,97 @@
+package cat.uvic.teknos.dam.aureus.buffer;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stream that collects bytes in buffers borrowed from a {@link BufferPool}.
+ *
+ * <p>The last buffer grows into bigger size classes as needed; once it reaches
+ * {@value BufferPool#MAX_BUFFER_SIZE} bytes, further bytes go to a new pooled
+ * buffer of that size instead, so large contents are neither copied again nor
+ * held in unpooled buffers.</p>
+ *
+ * <p>{@link #toBuffers()} hands the bytes over, ready for a gathering write
+ * to a channel; the caller then owns the buffers and releases them to the
+ * pool. If the stream is closed without handing them over, the buffers are
+ * released.</p>
+ */
+public class BufferOutputStream extends OutputStream {
+
+    private final BufferPool pool;
+    // Buffers ya llenos, en orden; el último en escritura es buffer
+    private final List<ByteBuffer> full = new ArrayList<>();
+    private ByteBuffer buffer;
+
+    /**
+     * @param pool pool that lends the buffers
+     * @param initialCapacity expected size of the content
+     */
+    public BufferOutputStream(BufferPool pool, int initialCapacity) {
+        this.pool = pool;
+        this.buffer = pool.acquire(Math.min(initialCapacity, BufferPool.MAX_BUFFER_SIZE));
+    }
+
+    @Override
+    public void write(int b) {
+        ensure(1).put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            ByteBuffer current = ensure(len);
+            int count = Math.min(len, current.remaining());
+            current.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * @return the written bytes in read mode, in order; the caller must release every buffer to the pool
+     * @throws IllegalStateException if the buffers were already handed over or released
+     */
+    public ByteBuffer[] toBuffers() {
+        ByteBuffer last = owned();
+        full.add(last);
+        ByteBuffer[] content = full.toArray(new ByteBuffer[0]);
+        for (ByteBuffer chunk : content) chunk.flip();
+        full.clear();
+        buffer = null;
+        return content;
+    }
+
+    /**
+     * Release the buffers unless they were handed over with {@link #toBuffers()}.
+     */
+    @Override
+    public void close() {
+        for (ByteBuffer chunk : full) pool.release(chunk);
+        full.clear();
+        ByteBuffer content = buffer;
+        buffer = null;
+        pool.release(content);
+    }
+
+    // Buffer con sitio para al menos un byte; crece hasta la clase mayor y después encadena otro
+    private ByteBuffer ensure(int extra) {
+        ByteBuffer current = owned();
+        if (current.remaining() >= extra) return current;
+        if (current.capacity() < BufferPool.MAX_BUFFER_SIZE) {
+            current = pool.grow(current, Math.min(current.position() + extra, BufferPool.MAX_BUFFER_SIZE));
+        } else if (!current.hasRemaining()) {
+            full.add(current);
+            current = pool.acquire(BufferPool.MAX_BUFFER_SIZE);
+        }
+        buffer = current;
+        return current;
+    }
+
+    private ByteBuffer owned() {
+        if (buffer == null) throw new IllegalStateException("Buffer already handed over");
+        return buffer;
+    }
+}
@@ -0,0 +1,210 @@
+package cat.uvic.teknos.dam.aureus.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct {@link ByteBuffer}s lent to the connection read and write paths.
+ *
+ * <p>Buffers come in power-of-two size classes from {@value #MIN_BUFFER_SIZE}
+ * to {@value #MAX_BUFFER_SIZE} bytes. Each platform thread keeps a few
+ * released buffers of every class in a thread-local cache; the rest go to a
+ * shared, bounded queue per class. Virtual threads skip the thread-local
+ * cache, as they rarely live long enough to reuse it. Requests larger than the
+ * biggest class get an unpooled buffer that is simply dropped on release.</p>
+ *
+ * <p>Every buffer obtained with {@link #acquire(int)} must be handed back with
+ * {@link #release(ByteBuffer)} exactly once. With leak detection enabled
+ * (constructor flag or {@code -Daureus.buffers.leakDetection=true}, set by the
+ * test task) the pool records where each outstanding buffer was acquired,
+ * reports them through {@link #leaks()} and rejects double or foreign
+ * releases with an {@link IllegalStateException}.</p>
+ */
+public class BufferPool {
+
+    public static final String LEAK_DETECTION_PROPERTY = "aureus.buffers.leakDetection";
+    public static final int MIN_BUFFER_SIZE = 4 * 1024;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED_PER_CLASS = 256;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+    // Buffers por clase en la caché de cada hilo
+    private static final int THREAD_CACHE_SIZE = 4;
+
+    private final int maxPooledPerClass;
+    private final List<Queue<ByteBuffer>> shared;
+    private final AtomicInteger[] sharedCounts;
+    private final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+
+    // Sólo con detección de fugas: buffer prestado -> traza de quien lo pidió
+    private final Map<ByteBuffer, Throwable> lent;
+
+    private static final class ThreadCache {
+        private final ByteBuffer[][] buffers = new ByteBuffer[CLASS_COUNT][THREAD_CACHE_SIZE];
+        private final int[] sizes = new int[CLASS_COUNT];
+    }
+
+    public BufferPool() {
+        this(DEFAULT_MAX_POOLED_PER_CLASS, Boolean.getBoolean(LEAK_DETECTION_PROPERTY));
+    }
+
+    /**
+     * @param maxPooledPerClass released buffers kept in the shared queue of each size class
+     * @param leakDetection track outstanding buffers and reject invalid releases
+     */
+    public BufferPool(int maxPooledPerClass, boolean leakDetection) {
+        this.maxPooledPerClass = maxPooledPerClass;
+        List<Queue<ByteBuffer>> queues = new ArrayList<>(CLASS_COUNT);
+        this.sharedCounts = new AtomicInteger[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            sharedCounts[i] = new AtomicInteger();
+        }
+        this.shared = List.copyOf(queues);
+        this.lent = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+    }
+
+    /**
+     * Borrow a cleared direct buffer.
+     *
+     * @param minCapacity bytes the buffer must hold
+     * @return buffer with at least {@code minCapacity} bytes of capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClass(minCapacity);
+        ByteBuffer buffer = sizeClass < 0 ? null : poll(sizeClass);
+        if (buffer != null) {
+            hits.increment();
+            buffer.clear();
+        } else {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect(sizeClass < 0 ? minCapacity : MIN_BUFFER_SIZE << sizeClass);
+        }
+        acquired.increment();
+        if (lent != null) lent.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes acquired here"));
+        return buffer;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquire(int)}. Null is ignored.
+     *
+     * @throws IllegalStateException with leak detection, if the buffer is not lent by this pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) return;
+        if (lent != null && lent.remove(buffer) == null) {
+            throw new IllegalStateException("Buffer released twice or not acquired from this pool");
+        }
+        released.increment();
+        int sizeClass = buffer.isDirect() ? exactSizeClass(buffer.capacity()) : -1;
+        if (sizeClass >= 0) offer(sizeClass, buffer);
+    }
+
+    /**
+     * Replace a buffer in write mode by a bigger one holding the same bytes.
+     *
+     * @param buffer lent buffer; released by this call
+     * @param minCapacity bytes the new buffer must hold
+     * @return new buffer in write mode, positioned after the copied bytes
+     */
+    public ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = acquire(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        release(buffer);
+        return bigger;
+    }
+
+    /**
+     * @return buffers acquired and not yet released
+     */
+    public long outstanding() {
+        return acquired.sum() - released.sum();
+    }
+
+    /**
+     * @return fraction of acquisitions served by a pooled buffer, 0 before the first one
+     */
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return acquisition traces of the outstanding buffers; empty without leak detection
+     */
+    public List<Throwable> leaks() {
+        if (lent == null) return List.of();
+        synchronized (lent) {
+            return new ArrayList<>(lent.values());
+        }
+    }
+
+    /**
+     * @return short report of the pool state, for the server status line
+     */
+    public String summary() {
+        return String.format("buffers: hit rate %.1f%%, outstanding: %d", hitRate() * 100, outstanding());
+    }
+
+    private ByteBuffer poll(int sizeClass) {
+        if (!Thread.currentThread().isVirtual()) {
+            ThreadCache cache = threadCache.get();
+            int size = cache.sizes[sizeClass];
+            if (size > 0) {
+                ByteBuffer buffer = cache.buffers[sizeClass][--size];
+                cache.buffers[sizeClass][size] = null;
+                cache.sizes[sizeClass] = size;
+                return buffer;
+            }
+        }
+        ByteBuffer buffer = shared.get(sizeClass).poll();
+        if (buffer != null) sharedCounts[sizeClass].decrementAndGet();
+        return buffer;
+    }
+
+    private void offer(int sizeClass, ByteBuffer buffer) {
+        if (!Thread.currentThread().isVirtual()) {
+            ThreadCache cache = threadCache.get();
+            int size = cache.sizes[sizeClass];
+            if (size < THREAD_CACHE_SIZE) {
+                cache.buffers[sizeClass][size] = buffer;
+                cache.sizes[sizeClass] = size + 1;
+                return;
+            }
+        }
+        // Cola compartida llena: el buffer se deja al GC
+        if (sharedCounts[sizeClass].incrementAndGet() <= maxPooledPerClass) {
+            shared.get(sizeClass).offer(buffer);
+        } else {
+            sharedCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    // Clase más pequeña que admite minCapacity, o -1 si supera la mayor
+    private static int sizeClass(int minCapacity) {
+        if (minCapacity > MAX_BUFFER_SIZE) return -1;
+        if (minCapacity <= MIN_BUFFER_SIZE) return 0;
+        return 32 - Integer.numberOfLeadingZeros(minCapacity - 1) - MIN_SHIFT;
+    }
+
+    private static int exactSizeClass(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        return sizeClass >= 0 && (MIN_BUFFER_SIZE << sizeClass) == capacity ? sizeClass : -1;
+    }
+}
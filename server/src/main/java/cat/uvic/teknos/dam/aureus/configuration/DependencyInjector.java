@@ -2,12 +2,32 @@ package cat.uvic.teknos.dam.aureus.configuration;
 
 import cat.uvic.teknos.dam.aureus.controller.CoinController;
 import cat.uvic.teknos.dam.aureus.controller.CollectionController;
+import cat.uvic.teknos.dam.aureus.core.ExecutionMode;
+import cat.uvic.teknos.dam.aureus.core.NioServer;
 import cat.uvic.teknos.dam.aureus.core.Server;
 import cat.uvic.teknos.dam.aureus.http.RequestRouter;
 import cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaRepositoryFactory;
 import cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaCoinRepository;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.model.jpa.JpaCollection;
+import cat.uvic.teknos.dam.aureus.search.CoinIndexes;
+import cat.uvic.teknos.dam.aureus.search.FacetIndex;
+import cat.uvic.teknos.dam.aureus.search.FullTextIndex;
+import cat.uvic.teknos.dam.aureus.search.SimilarityIndex;
+import cat.uvic.teknos.dam.aureus.search.SuggestionTrie;
+import cat.uvic.teknos.dam.aureus.search.TopValueIndex;
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
 import cat.uvic.teknos.dam.aureus.service.CoinService;
+import cat.uvic.teknos.dam.aureus.service.DatabaseExecutor;
 import cat.uvic.teknos.dam.aureus.service.JpaCoinService;
+import cat.uvic.teknos.dam.aureus.service.VersionTracker;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Minimal dependency provider used to create and wire server-side components.
@@ -18,7 +38,13 @@ import cat.uvic.teknos.dam.aureus.service.JpaCoinService;
  */
 public class DependencyInjector {
 
+    // Monedas por consulta al reconciliar el índice de valor
+    private static final int RECONCILE_PAGE_SIZE = 500;
+
     private static JpaRepositoryFactory repositoryFactory;
+    private static DatabaseExecutor databaseExecutor;
+    // Compartido por los controladores de monedas y de colecciones
+    private static SuggestionTrie suggestionTrie;
 
     private static JpaRepositoryFactory getRepositoryFactory() {
         if (repositoryFactory == null) {
@@ -42,12 +68,157 @@ public class DependencyInjector {
     }
 
     /**
-     * Provide a {@link CoinController} configured with a {@link CoinService}.
+     * Provide the executor that runs the asynchronous database operations.
+     *
+     * <p>The number of threads comes from the {@code aureus.db.threads} system
+     * property and defaults to 1, because the coin repositories share one
+     * {@code EntityManager}, which is not thread-safe.</p>
+     *
+     * @return shared DatabaseExecutor
+     */
+    public static synchronized DatabaseExecutor provideDatabaseExecutor() {
+        if (databaseExecutor == null) {
+            int threads = Integer.getInteger("aureus.db.threads", 1);
+            databaseExecutor = new DatabaseExecutor(threads, DatabaseExecutor.DEFAULT_QUEUE_CAPACITY);
+        }
+        return databaseExecutor;
+    }
+
+    /**
+     * Provide the in-memory indexes over the coins of the service: a
+     * {@link FullTextIndex}, the shared {@link SuggestionTrie}, a
+     * {@link FacetIndex}, a {@link SimilarityIndex} and a {@link TopValueIndex}.
+     *
+     * <p>The catalogue is read once and every index is built from that read;
+     * the indexes are then registered together as change listeners of the
+     * service. If the coins cannot be read the indexes start empty and only
+     * see the coins changed from then on. The suggestion trie is built on
+     * first use only, since the {@link CollectionController} shares it.</p>
+     *
+     * <p>The top value index is also reconciled with the database every
+     * {@code aureus.top.reconcile.minutes} (10 by default; 0 disables it).</p>
+     *
+     * @param coinService service whose coins are indexed
+     * @return indexes registered as change listeners of the service
+     */
+    public static CoinIndexes provideCoinIndexes(CoinService coinService) {
+        SuggestionTrie trie;
+        boolean newTrie;
+        synchronized (DependencyInjector.class) {
+            newTrie = suggestionTrie == null;
+            if (newTrie) suggestionTrie = new SuggestionTrie();
+            trie = suggestionTrie;
+        }
+        FullTextIndex fullText = new FullTextIndex();
+        FacetIndex facets = new FacetIndex();
+        SimilarityIndex similarity = new SimilarityIndex();
+        TopValueIndex topValues = new TopValueIndex();
+
+        long start = System.nanoTime();
+        try {
+            List<CoinImpl> coins = coinService.findAll();
+            System.out.println("DependencyInjector: " + coins.size() + " coins read for the indexes in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            build("full-text index", () -> fullText.rebuild(coins));
+            build("facet index", () -> facets.rebuild(coins));
+            build("similarity index", () -> similarity.rebuild(coins));
+            build("top value index", () -> topValues.rebuild(coins));
+            if (newTrie) build("suggestion trie", () -> trie.rebuild(coins, collectionNames()));
+        } catch (RuntimeException e) {
+            System.err.println("DependencyInjector: could not read the coins for the indexes: " + e.getMessage());
+        }
+
+        // Después de la carga: un cambio notificado durante rebuild se perdería al sustituir el contenido
+        CoinIndexes indexes = new CoinIndexes(fullText, trie, facets, similarity, topValues);
+        for (CoinChangeListener listener : indexes.listeners()) {
+            // El trie ya existente sigue al servicio que lo cargó
+            if (listener != trie || newTrie) coinService.addChangeListener(listener);
+        }
+        scheduleReconciliation(coinService, topValues);
+        return indexes;
+    }
+
+    // Un índice que falla no impide construir los demás
+    private static void build(String name, Runnable rebuild) {
+        long start = System.nanoTime();
+        try {
+            rebuild.run();
+            System.out.println("DependencyInjector: " + name + " built in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (RuntimeException e) {
+            System.err.println("DependencyInjector: could not build the " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static Map<Integer, String> collectionNames() {
+        Map<Integer, String> collectionNames = new HashMap<>();
+        for (JpaCollection collection : getRepositoryFactory().getCollectionRepository().getAll()) {
+            collectionNames.put(collection.getId(), collection.getCollectionName());
+        }
+        return collectionNames;
+    }
+
+    /*
+     * Reconciliation reads the coins in keyset pages, each one a separate
+     * task of the DatabaseExecutor, so the requests queued meanwhile run
+     * between pages. A page is skipped when the service changed a coin while
+     * it was read. When it corrects the index, the coins changed behind the
+     * service, so the ETags of the coin lists are invalidated too.
+     */
+    private static void scheduleReconciliation(CoinService coinService, TopValueIndex index) {
+        long minutes = Long.getLong("aureus.top.reconcile.minutes", 10);
+        if (minutes <= 0) return;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TopValueReconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> reconcile(coinService, index), minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    private static void reconcile(CoinService coinService, TopValueIndex index) {
+        VersionTracker versions = coinService.getVersionTracker();
+        DatabaseExecutor executor = provideDatabaseExecutor();
+        int corrections = 0;
+        int skipped = 0;
+        Integer afterId = null;
+        try {
+            while (true) {
+                long version = versions.tableVersion();
+                // join en el hilo del reconciliador: la base de datos queda libre entre página y página
+                List<CoinImpl> page = coinService.findPageAsync(afterId, RECONCILE_PAGE_SIZE, executor).join();
+                boolean last = page.size() < RECONCILE_PAGE_SIZE;
+                int corrected = index.reconcilePage(page, afterId, last, () -> versions.tableVersion() == version);
+                if (corrected < 0) {
+                    skipped++;
+                } else {
+                    corrections += corrected;
+                }
+                if (last) break;
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("DependencyInjector: could not reconcile the top value index: " + e.getMessage());
+        }
+        if (corrections > 0) {
+            versions.modified();
+            System.out.println("DependencyInjector: top value index reconciled, " + corrections + " coins corrected");
+        }
+        if (skipped > 0) {
+            System.out.println("DependencyInjector: top value reconciliation skipped " + skipped
+                    + " pages changed while they were read");
+        }
+    }
+
+    /**
+     * Provide a {@link CoinController} configured with a {@link CoinService}
+     * whose asynchronous operations run on the {@link DatabaseExecutor}, and
+     * with the indexes of {@link #provideCoinIndexes(CoinService)} over its coins.
      *
      * @return configured CoinController
      */
     public static CoinController provideCoinController() {
-        return new CoinController(provideCoinService());
+        CoinService coinService = provideCoinService();
+        return new CoinController(coinService, provideDatabaseExecutor(), provideCoinIndexes(coinService));
     }
 
     /**
@@ -62,12 +233,14 @@ public class DependencyInjector {
     }
 
     /**
-     * Provide a {@link CollectionController} backed by the JPA collection repository.
+     * Provide a {@link CollectionController} backed by the JPA collection
+     * repository. New collections are added to the {@link SuggestionTrie} if
+     * one has been provided.
      *
      * @return configured CollectionController
      */
-    public static CollectionController provideCollectionController() {
-        return new CollectionController(getRepositoryFactory().getCollectionRepository());
+    public static synchronized CollectionController provideCollectionController() {
+        return new CollectionController(getRepositoryFactory().getCollectionRepository(), suggestionTrie);
     }
 
     public static RequestRouter provideRequestRouter() {
@@ -85,4 +258,25 @@ public class DependencyInjector {
     public static Server provideServer(int port, RequestRouter router) {
         return new Server(port, router);
     }
+
+    /**
+     * Provide a blocking {@link Server} that runs connections with the given execution mode.
+     *
+     * @param port TCP port to listen on
+     * @param executionMode platform-thread pool or virtual thread per connection
+     * @return configured Server
+     */
+    public static Server provideServer(int port, ExecutionMode executionMode) {
+        return new Server(port, provideRequestRouter(), executionMode);
+    }
+
+    /**
+     * Provide the selector-based {@link NioServer} engine wired to the default router.
+     *
+     * @param port TCP port to listen on
+     * @return configured NioServer
+     */
+    public static NioServer provideNioServer(int port) {
+        return new NioServer(port, provideRequestRouter());
+    }
 }
@@ -3,7 +3,18 @@ package cat.uvic.teknos.dam.aureus.controller;
 import cat.uvic.teknos.dam.aureus.CoinCollection;
 import cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl;
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
+import cat.uvic.teknos.dam.aureus.search.CoinIndexes;
+import cat.uvic.teknos.dam.aureus.search.FacetIndex;
+import cat.uvic.teknos.dam.aureus.search.FullTextIndex;
+import cat.uvic.teknos.dam.aureus.search.SimilarityIndex;
+import cat.uvic.teknos.dam.aureus.search.SuggestionTrie;
+import cat.uvic.teknos.dam.aureus.search.TopValueIndex;
 import cat.uvic.teknos.dam.aureus.service.CoinService;
+import cat.uvic.teknos.dam.aureus.service.DatabaseExecutor;
+import cat.uvic.teknos.dam.aureus.service.VersionTracker;
+import cat.uvic.teknos.dam.aureus.http.StreamingBody;
 import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -11,13 +22,30 @@ import com.google.gson.InstanceCreator;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Field;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * REST-like controller handling coin-related HTTP operations.
@@ -35,16 +63,59 @@ public class CoinController {
 
     private final CoinService coinService;
     private final Gson gson;
+    // Ejecutor de las variantes *Async (consultas JPA fuera de los hilos de I/O)
+    private final Executor databaseExecutor;
+    // Índices en memoria; los que son null desactivan su endpoint
+    private final CoinIndexes indexes;
 
     // Gson auxiliar para parsear interfaces concretas (CoinCollection)
     private static final Gson parsingGson = new GsonBuilder()
             .registerTypeAdapter(CoinCollection.class, (InstanceCreator<CoinCollection>) type -> new CoinCollectionImpl())
             .create();
 
-    // Nuevo constructor que permite inyectar un Gson (útil para tests)
-    public CoinController(CoinService coinService, Gson gson) {
+    /**
+     * @param coinService service performing the operations
+     * @param gson serializer of the responses
+     * @param databaseExecutor executor of the {@code *Async} methods, e.g. a {@link DatabaseExecutor}
+     * @param indexes indexes answering {@link #streamFullTextAsync}, {@link #suggest}, {@link #facets},
+     *                {@link #streamSimilarAsync} and {@link #streamTopAsync}; a null one disables its method
+     */
+    public CoinController(CoinService coinService, Gson gson, Executor databaseExecutor, CoinIndexes indexes) {
         this.coinService = coinService;
         this.gson = gson;
+        this.databaseExecutor = databaseExecutor;
+        this.indexes = indexes;
+    }
+
+    /**
+     * @param coinService service performing the operations
+     * @param gson serializer of the responses
+     * @param databaseExecutor executor of the {@code *Async} methods, e.g. a {@link DatabaseExecutor}
+     */
+    public CoinController(CoinService coinService, Gson gson, Executor databaseExecutor) {
+        this(coinService, gson, databaseExecutor, CoinIndexes.NONE);
+    }
+
+    /**
+     * @param coinService service performing the operations
+     * @param databaseExecutor executor of the {@code *Async} methods, e.g. a {@link DatabaseExecutor}
+     * @param indexes indexes answering the search methods; a null one disables its method
+     */
+    public CoinController(CoinService coinService, Executor databaseExecutor, CoinIndexes indexes) {
+        this(coinService, new GsonBuilder().serializeNulls().create(), databaseExecutor, indexes);
+    }
+
+    /**
+     * @param coinService service performing the operations
+     * @param databaseExecutor executor of the {@code *Async} methods, e.g. a {@link DatabaseExecutor}
+     */
+    public CoinController(CoinService coinService, Executor databaseExecutor) {
+        this(coinService, databaseExecutor, CoinIndexes.NONE);
+    }
+
+    // Nuevo constructor que permite inyectar un Gson (útil para tests); las variantes *Async se ejecutan en el hilo que llama
+    public CoinController(CoinService coinService, Gson gson) {
+        this(coinService, gson, Runnable::run);
     }
 
     // Constructor existente delega al nuevo, manteniendo comportamiento actual
@@ -52,6 +123,13 @@ public class CoinController {
         this(coinService, new GsonBuilder().serializeNulls().create());
     }
 
+    /**
+     * @return modification counters of the coin service, from which the router derives ETags
+     */
+    public VersionTracker getVersionTracker() {
+        return coinService.getVersionTracker();
+    }
+
     /**
      * Return all coins as a JSON array.
      *
@@ -62,6 +140,232 @@ public class CoinController {
         return gson.toJson(list);
     }
 
+    /**
+     * Asynchronous {@link #getAllCoins()}: the query runs on the database executor.
+     *
+     * @return future JSON representation of the list of coins
+     */
+    public CompletableFuture<String> getAllCoinsAsync() {
+        return coinService.findAllAsync(databaseExecutor).thenApply(gson::toJson);
+    }
+
+    /**
+     * Streaming variant of {@link #getAllCoinsAsync()}: the query runs on the
+     * database executor and the returned body writes the JSON array one coin
+     * at a time, so the list is never serialized into a single String.
+     *
+     * @return future body producing the same JSON as {@link #getAllCoins()}
+     */
+    public CompletableFuture<StreamingBody> streamAllCoinsAsync() {
+        return coinService.findAllAsync(databaseExecutor).thenApply(list -> out -> writeJsonArray(list, out));
+    }
+
+    /**
+     * One page of the coin list.
+     *
+     * @param body writes the coins of the page as a JSON array
+     * @param nextCursor id to pass as cursor for the following page, or null on the last page
+     */
+    public record CoinPage(StreamingBody body, Integer nextCursor) {
+    }
+
+    /**
+     * Paginated variant of {@link #streamAllCoinsAsync()}: coins ordered by id
+     * after {@code afterId}, at most {@code limit} of them.
+     *
+     * @param afterId cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of coins in the page
+     * @return future page with its body and the cursor of the next page
+     */
+    public CompletableFuture<CoinPage> streamCoinPageAsync(Integer afterId, int limit) {
+        return streamCoinPageAsync(afterId, limit, null);
+    }
+
+    /**
+     * Page of the coin list with only some fields of each coin. The id is
+     * always included, since the next cursor is read from it.
+     *
+     * @param afterId cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of coins in the page
+     * @param fields fields to return, or null for whole coins
+     * @return future page with its body and the cursor of the next page
+     */
+    public CompletableFuture<CoinPage> streamCoinPageAsync(Integer afterId, int limit, Set<CoinField> fields) {
+        // Una moneda de más indica si hay página siguiente sin otra consulta
+        if (fields == null) {
+            return coinService.findPageAsync(afterId, limit + 1, databaseExecutor)
+                    .thenApply(list -> page(list, limit, CoinImpl::getId));
+        }
+        return coinService.findPageFieldsAsync(afterId, limit + 1, withId(fields), databaseExecutor)
+                .thenApply(list -> page(list, limit, row -> (Integer) row.get(CoinField.ID.property())));
+    }
+
+    private <T> CoinPage page(List<T> list, int limit, Function<T, Integer> idOf) {
+        if (list.size() <= limit) return new CoinPage(out -> writeJsonArray(list, out), null);
+        List<T> page = list.subList(0, limit);
+        return new CoinPage(out -> writeJsonArray(page, out), idOf.apply(page.get(limit - 1)));
+    }
+
+    /**
+     * Several coins by id, read in batches instead of one request per coin,
+     * streamed as a JSON array in id order. Unknown ids are left out.
+     *
+     * @param ids coin identifiers
+     * @param fields fields to return, or null for whole coins; the id is always included
+     * @return future body writing the coins found
+     */
+    public CompletableFuture<StreamingBody> streamCoinsByIdsAsync(Collection<Integer> ids, Set<CoinField> fields) {
+        if (fields == null) {
+            return coinService.findByIdsAsync(ids, databaseExecutor).thenApply(list -> out -> writeJsonArray(list, out));
+        }
+        return coinService.findFieldsByIdsAsync(ids, withId(fields), databaseExecutor)
+                .thenApply(list -> out -> writeJsonArray(list, out));
+    }
+
+    private static Set<CoinField> withId(Set<CoinField> fields) {
+        if (fields.contains(CoinField.ID)) return fields;
+        Set<CoinField> copy = EnumSet.of(CoinField.ID);
+        copy.addAll(fields);
+        return copy;
+    }
+
+    /**
+     * Coins matching a search, streamed as a JSON array.
+     *
+     * @param criteria filters, order and maximum number of results
+     * @return future body writing the matching coins
+     */
+    public CompletableFuture<StreamingBody> streamSearchAsync(CoinSearchCriteria criteria) {
+        return coinService.searchAsync(criteria, databaseExecutor).thenApply(list -> out -> writeJsonArray(list, out));
+    }
+
+    /**
+     * Coins matching a free-text query, most relevant first. The index ranks
+     * the ids in memory; only the coins returned are read from the service.
+     *
+     * @param query words to look for; a trailing {@code *} makes a word a prefix
+     * @param limit maximum number of coins
+     * @param fields fields to return, or null for whole coins; the id is always included
+     * @return future body writing the matching coins in rank order
+     * @throws HttpException 503 if no index is configured
+     */
+    public CompletableFuture<StreamingBody> streamFullTextAsync(String query, int limit, Set<CoinField> fields) {
+        FullTextIndex fullTextIndex = indexes.fullText();
+        if (fullTextIndex == null) throw new HttpException(503, "Service Unavailable", "Full-text search is not available");
+        List<Integer> ranked = fullTextIndex.search(query, limit).stream().map(FullTextIndex.Hit::id).toList();
+        return streamInRankOrder(ranked, fields);
+    }
+
+    /**
+     * Coins most similar to one of the catalogue by weight, diameter, year and
+     * estimated value, nearest first. The neighbours are found in memory;
+     * only the coins returned are read from the service. A coin missing one
+     * of those attributes has no neighbours.
+     *
+     * @param id reference coin, not included in the result
+     * @param k maximum number of coins
+     * @param fields fields to return, or null for whole coins; the id is always included
+     * @return future body writing the nearest coins
+     * @throws HttpException 503 if no index is configured
+     */
+    public CompletableFuture<StreamingBody> streamSimilarAsync(int id, int k, Set<CoinField> fields) {
+        SimilarityIndex similarityIndex = indexes.similarity();
+        if (similarityIndex == null) throw new HttpException(503, "Service Unavailable", "Similarity search is not available");
+        List<SimilarityIndex.Neighbour> neighbours = similarityIndex.nearest(id, k);
+        if (neighbours == null) {
+            // Fuera del índice: o no existe (404 desde el servicio) o le falta algún atributo
+            return coinService.findByIdAsync(id, databaseExecutor).thenApply(coin -> out -> writeJsonArray(List.of(), out));
+        }
+        return streamInRankOrder(neighbours.stream().map(SimilarityIndex.Neighbour::id).toList(), fields);
+    }
+
+    /**
+     * Most valuable coins, of the catalogue or of one collection. The order is
+     * read from memory; only the coins returned are read from the service.
+     *
+     * @param n maximum number of coins
+     * @param collectionId collection to rank, or null for every coin
+     * @param fields fields to return, or null for whole coins; the id is always included
+     * @return future body writing the coins, most valuable first
+     * @throws HttpException 503 if no index is configured
+     */
+    public CompletableFuture<StreamingBody> streamTopAsync(int n, Integer collectionId, Set<CoinField> fields) {
+        TopValueIndex topValueIndex = indexes.topValues();
+        if (topValueIndex == null) throw new HttpException(503, "Service Unavailable", "Top coins are not available");
+        return streamInRankOrder(topValueIndex.top(n, collectionId).stream().map(TopValueIndex.Entry::id).toList(), fields);
+    }
+
+    private CompletableFuture<StreamingBody> streamInRankOrder(List<Integer> ranked, Set<CoinField> fields) {
+        if (ranked.isEmpty()) return CompletableFuture.completedFuture(out -> writeJsonArray(List.of(), out));
+        if (fields == null) {
+            return coinService.findByIdsAsync(ranked, databaseExecutor)
+                    .thenApply(list -> inRankOrder(ranked, list, CoinImpl::getId))
+                    .thenApply(list -> out -> writeJsonArray(list, out));
+        }
+        return coinService.findFieldsByIdsAsync(ranked, withId(fields), databaseExecutor)
+                .thenApply(list -> inRankOrder(ranked, list, row -> (Integer) row.get(CoinField.ID.property())))
+                .thenApply(list -> out -> writeJsonArray(list, out));
+    }
+
+    /**
+     * Coin and collection names starting with a prefix, most valuable first.
+     * Answered from memory, without a database query.
+     *
+     * @param prefix start of the name or of one of its words
+     * @param limit maximum number of suggestions
+     * @param kind kind of name to suggest, or null for both
+     * @return JSON array of suggestions (kind, id, name, estimatedValue)
+     * @throws HttpException 503 if no trie is configured
+     */
+    public String suggest(String prefix, int limit, SuggestionTrie.Kind kind) {
+        SuggestionTrie suggestions = indexes.suggestions();
+        if (suggestions == null) throw new HttpException(503, "Service Unavailable", "Suggestions are not available");
+        return gson.toJson(suggestions.suggest(prefix, limit, kind));
+    }
+
+    /**
+     * Coin counts by material, country, century and collection among the
+     * coins matching some filters, computed in memory from bitmaps.
+     *
+     * @param filters accepted values of each facet
+     * @param minYear first year accepted, or null
+     * @param maxYear last year accepted, or null
+     * @return JSON object with the total and the counts of each facet
+     * @throws HttpException 503 if no index is configured, 400 if a filter value is invalid
+     */
+    public String facets(Map<FacetIndex.Facet, List<String>> filters, Integer minYear, Integer maxYear) {
+        FacetIndex facetIndex = indexes.facets();
+        if (facetIndex == null) throw new HttpException(503, "Service Unavailable", "Facet counts are not available");
+        try {
+            return gson.toJson(facetIndex.count(filters, minYear, maxYear));
+        } catch (IllegalArgumentException e) {
+            throw new HttpException(400, "Bad Request", e.getMessage());
+        }
+    }
+
+    // findByIds devuelve en orden de id; se recoloca según la relevancia
+    private static <T> List<T> inRankOrder(List<Integer> ranked, List<T> found, Function<T, Integer> idOf) {
+        Map<Integer, T> byId = new HashMap<>();
+        for (T item : found) byId.put(idOf.apply(item), item);
+        List<T> ordered = new ArrayList<>(found.size());
+        for (Integer id : ranked) {
+            T item = byId.get(id);
+            if (item != null) ordered.add(item);
+        }
+        return ordered;
+    }
+
+    // Escribe el array elemento a elemento; sólo se vacía el writer, el stream lo cierra quien lo creó
+    private void writeJsonArray(List<?> items, OutputStream out) throws IOException {
+        JsonWriter writer = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        writer.beginArray();
+        for (Object item : items) {
+            gson.toJson(item, item.getClass(), writer);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
     /**
      * Return a single coin identified by its id as JSON.
      *
@@ -73,6 +377,16 @@ public class CoinController {
         return gson.toJson(coin);
     }
 
+    /**
+     * Asynchronous {@link #getCoin(int)}: the query runs on the database executor.
+     *
+     * @param id numeric identifier of the coin to retrieve
+     * @return future JSON representation of the coin
+     */
+    public CompletableFuture<String> getCoinAsync(int id) {
+        return coinService.findByIdAsync(id, databaseExecutor).thenApply(gson::toJson);
+    }
+
     /**
      * Create a new coin from the provided JSON body.
      *
@@ -88,82 +402,69 @@ public class CoinController {
      * @throws RuntimeException any unexpected error raised during processing (propagated)
      */
     public String createCoin(String body) {
-        // Normalizar la forma en que viene la colección: permitir collectionId en raíz o collection como primitivo
-        try {
-            com.google.gson.JsonElement parsed = com.google.gson.JsonParser.parseString(body);
-            if (parsed.isJsonObject()) {
-                com.google.gson.JsonObject obj = parsed.getAsJsonObject();
-                boolean modified = false;
-                // Si hay collectionId en la raíz, convertir a collection:{id:...}
-                if (obj.has("collectionId") && !obj.get("collectionId").isJsonNull()) {
-                    com.google.gson.JsonElement cid = obj.get("collectionId");
-                    com.google.gson.JsonObject collObj = new com.google.gson.JsonObject();
-                    collObj.add("id", cid);
-                    obj.add("collection", collObj);
-                    obj.remove("collectionId");
-                    modified = true;
-                } else if (obj.has("collection") && !obj.get("collection").isJsonNull()) {
-                    com.google.gson.JsonElement collElem = obj.get("collection");
-                    // Si collection es primitivo (número o string con número), convertir a objeto {id:...}
-                    if (collElem.isJsonPrimitive()) {
-                        com.google.gson.JsonPrimitive prim = collElem.getAsJsonPrimitive();
-                        try {
-                            com.google.gson.JsonObject collObj = new com.google.gson.JsonObject();
-                            if (prim.isNumber()) {
-                                collObj.addProperty("id", prim.getAsInt());
-                            } else if (prim.isString()) {
-                                collObj.addProperty("id", Integer.parseInt(prim.getAsString()));
-                            }
-                            obj.add("collection", collObj);
-                            modified = true;
-                        } catch (NumberFormatException ignored) {
-                            // leave as-is
-                        }
-                    }
-                }
-                if (modified) {
-                    body = obj.toString();
-                }
-            }
-        } catch (Exception ignored) {}
+        return createCoin(JsonParser.parseString(body));
+    }
 
-        // --- LOG: imprimir body normalizado y extracción de collectionId antes de validar
-        System.out.println("CoinController.createCoin: normalized body = " + body);
-        Integer preExtractedCollectionId = null;
-        try {
-            com.google.gson.JsonElement parsedForLog = com.google.gson.JsonParser.parseString(body);
-            if (parsedForLog.isJsonObject()) {
-                com.google.gson.JsonObject objForLog = parsedForLog.getAsJsonObject();
-                Integer cid = extractCollectionIdFromJsonObject(objForLog);
-                preExtractedCollectionId = cid;
-                System.out.println("CoinController.createCoin: extracted collectionId from JSON = " + cid);
-                // Use the detected id for the rest of the flow
-            }
-        } catch (Exception ignored) {}
+    /**
+     * Create a new coin reading the JSON body from a stream, without loading
+     * the raw text into memory first. See {@link #createCoin(String)}.
+     *
+     * @param body stream over the JSON request body (read to its end)
+     * @return JSON representation of the created coin (including generated id)
+     */
+    public String createCoin(InputStream body) {
+        return createCoin(parseJson(body));
+    }
 
-        // Fallback: intentar extraer con regex directamente del body (por si el parseo JSON falla por algún motivo)
-        if (preExtractedCollectionId == null) {
-            try {
-                java.util.regex.Pattern p1 = java.util.regex.Pattern.compile("\"collectionId\"\s*:\s*(\\d+)");
-                java.util.regex.Matcher m1 = p1.matcher(body);
-                if (m1.find()) {
-                    preExtractedCollectionId = Integer.parseInt(m1.group(1));
-                    System.out.println("CoinController.createCoin: extracted collectionId from body via regex (collectionId) = " + preExtractedCollectionId);
-                } else {
-                    java.util.regex.Pattern p2 = java.util.regex.Pattern.compile("\"collection\"\s*:\s*\\{[^}]*\"id\"\s*:\s*(\\d+)[^}]*\\}");
-                    java.util.regex.Matcher m2 = p2.matcher(body);
-                    if (m2.find()) {
-                        preExtractedCollectionId = Integer.parseInt(m2.group(1));
-                        System.out.println("CoinController.createCoin: extracted collectionId from body via regex (collection.id) = " + preExtractedCollectionId);
-                    }
-                }
-            } catch (Exception ignored) {}
+    /**
+     * Asynchronous {@link #createCoin(InputStream)}: the body is read and
+     * validated on the calling thread, the insert runs on the database executor.
+     *
+     * @param body stream over the JSON request body (read to its end before returning)
+     * @return future JSON representation of the created coin
+     */
+    public CompletableFuture<String> createCoinAsync(InputStream body) {
+        NewCoin newCoin = toNewCoin(parseJson(body));
+        return coinService.createAsync(newCoin.coin(), newCoin.collectionId(), databaseExecutor)
+                .thenApply(gson::toJson);
+    }
+
+    private String createCoin(JsonElement parsed) {
+        NewCoin newCoin = toNewCoin(parsed);
+        CoinImpl coin = newCoin.coin();
+        System.out.println("CoinController.createCoin: coinService implementation = " + coinService.getClass().getName());
+        System.out.println("CoinController.createCoin: coin.getId() before create = " + coin.getId());
+        try {
+            CoinImpl created = newCoin.collectionId() != null
+                    ? coinService.create(coin, newCoin.collectionId())
+                    : coinService.create(coin);
+            return gson.toJson(created);
+        } catch (Throwable t) {
+            System.err.println("CoinController.createCoin: exception while creating coin: " + t.getMessage());
+            t.printStackTrace(System.err);
+            throw t;
         }
+    }
+
+    // Moneda validada a partir del JSON y colección detectada (null si no viene)
+    private record NewCoin(CoinImpl coin, Integer collectionId) {
+    }
 
+    private NewCoin toNewCoin(JsonElement parsed) {
         // Validación a nivel de JSON para evitar problemas de deserialización parcial
-        validateJsonForCreate(body, preExtractedCollectionId);
+        if (!parsed.isJsonObject()) throw new HttpException(400, "Bad Request", "Request body must be a JSON object");
+        JsonObject obj = parsed.getAsJsonObject();
+
+        // Normalizar la forma en que viene la colección: permitir collectionId en raíz o collection como primitivo
+        normalizeCollection(obj);
+
+        // --- LOG: extracción de collectionId antes de validar
+        Integer preExtractedCollectionId = extractCollectionIdFromJsonObject(obj);
+        System.out.println("CoinController.createCoin: extracted collectionId from JSON = " + preExtractedCollectionId);
+
+        validateJsonForCreate(obj);
         // Deserializar el cuerpo en CoinImpl (sin depender de que collection se haya mapeado correctamente)
-        CoinImpl coin = parsingGson.fromJson(body, CoinImpl.class);
+        CoinImpl coin = parsingGson.fromJson(obj, CoinImpl.class);
 
         // LOG: imprimir estado de coin.collection tras deserialización
         System.out.println("CoinController.createCoin: coin.getCollection() after deserialization = " + coin.getCollection());
@@ -179,55 +480,66 @@ public class CoinController {
             } catch (Throwable ignored) {}
         }
 
-        // Si disponemos de collectionId detectado, delegar al servicio que cargará la colección con el repositorio/EM correcto
+        // Si disponemos de collectionId detectado, el servicio cargará la colección con el repositorio/EM correcto
         if (preExtractedCollectionId != null) {
             System.out.println("CoinController.createCoin: delegating to coinService.create with collectionId=" + preExtractedCollectionId);
             // Ensure coin contains this collection id as well so convertToJpaCoin can pick it up
-            try {
-                if (coin.getCollection() == null) {
-                    cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl ci = new cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl();
-                    ci.setId(preExtractedCollectionId);
-                    coin.setCollection(ci);
-                } else {
-                    // overwrite id to ensure consistency
-                    try {
-                        java.lang.reflect.Method m = coin.getCollection().getClass().getMethod("setId", Integer.class);
-                        m.invoke(coin.getCollection(), preExtractedCollectionId);
-                    } catch (Throwable ignored) {}
-                }
-            } catch (Throwable t) {
-                // ignore
-            }
-            System.out.println("CoinController.createCoin: coinService implementation = " + coinService.getClass().getName());
-            System.out.println("CoinController.createCoin: coin.getId() before create = " + coin.getId());
-            try {
-                CoinImpl created = coinService.create(coin, preExtractedCollectionId);
-                return gson.toJson(created);
-            } catch (Throwable t) {
-                System.err.println("CoinController.createCoin: exception while creating coin: " + t.getMessage());
-                t.printStackTrace(System.err);
-                throw t;
-            }
+            setCollectionId(coin, preExtractedCollectionId);
         }
+        return new NewCoin(coin, preExtractedCollectionId);
+    }
 
-        System.out.println("CoinController.createCoin: coinService implementation = " + coinService.getClass().getName());
-        System.out.println("CoinController.createCoin: coin.getId() before create = " + coin.getId());
+    private static void setCollectionId(CoinImpl coin, Integer collectionId) {
         try {
-            CoinImpl created = coinService.create(coin);
-            return gson.toJson(created);
+            if (coin.getCollection() == null) {
+                CoinCollectionImpl ci = new CoinCollectionImpl();
+                ci.setId(collectionId);
+                coin.setCollection(ci);
+            } else {
+                // overwrite id to ensure consistency
+                try {
+                    Method m = coin.getCollection().getClass().getMethod("setId", Integer.class);
+                    m.invoke(coin.getCollection(), collectionId);
+                } catch (Throwable ignored) {}
+            }
         } catch (Throwable t) {
-            System.err.println("CoinController.createCoin: exception while creating coin: " + t.getMessage());
-            t.printStackTrace(System.err);
-            throw t;
+            // ignore
         }
     }
 
-    // Nueva sobrecarga: acepta un collectionId ya extraído desde el JSON y lo considera válido
-    private void validateJsonForCreate(String body, Integer preExtractedCollectionId) {
-        JsonElement parsed = JsonParser.parseString(body);
-        if (!parsed.isJsonObject()) throw new HttpException(400, "Bad Request", "Request body must be a JSON object");
-        JsonObject obj = parsed.getAsJsonObject();
+    // Parseo directo desde el stream; lee hasta el final (donde se comprueba el hash del cuerpo)
+    private static JsonElement parseJson(InputStream body) {
+        return JsonParser.parseReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+    // Convierte collectionId en raíz o collection primitivo en collection:{id:...}
+    private static void normalizeCollection(JsonObject obj) {
+        if (obj.has("collectionId") && !obj.get("collectionId").isJsonNull()) {
+            JsonObject collObj = new JsonObject();
+            collObj.add("id", obj.get("collectionId"));
+            obj.add("collection", collObj);
+            obj.remove("collectionId");
+        } else if (obj.has("collection") && !obj.get("collection").isJsonNull()) {
+            JsonElement collElem = obj.get("collection");
+            // Si collection es primitivo (número o string con número), convertir a objeto {id:...}
+            if (collElem.isJsonPrimitive()) {
+                JsonPrimitive prim = collElem.getAsJsonPrimitive();
+                try {
+                    JsonObject collObj = new JsonObject();
+                    if (prim.isNumber()) {
+                        collObj.addProperty("id", prim.getAsInt());
+                    } else if (prim.isString()) {
+                        collObj.addProperty("id", Integer.parseInt(prim.getAsString()));
+                    }
+                    obj.add("collection", collObj);
+                } catch (NumberFormatException ignored) {
+                    // leave as-is
+                }
+            }
+        }
+    }
 
+    private void validateJsonForCreate(JsonObject obj) {
         List<String> missing = new ArrayList<>();
         if (!hasNonEmptyString(obj, "coinName")) missing.add("coinName");
         if (!obj.has("coinYear") || obj.get("coinYear").isJsonNull()) missing.add("coinYear");
@@ -262,65 +574,55 @@ public class CoinController {
      * @param body JSON request body containing the updated coin fields
      */
     public void updateCoin(int id, String body) {
+        updateCoin(id, JsonParser.parseString(body));
+    }
+
+    /**
+     * Update an existing coin reading the JSON body from a stream. See
+     * {@link #updateCoin(int, String)}.
+     *
+     * @param id identifier of the coin to update (path parameter)
+     * @param body stream over the JSON request body (read to its end)
+     */
+    public void updateCoin(int id, InputStream body) {
+        updateCoin(id, parseJson(body));
+    }
+
+    /**
+     * Asynchronous {@link #updateCoin(int, InputStream)}: the body is read on
+     * the calling thread, the update runs on the database executor.
+     *
+     * @param id identifier of the coin to update (path parameter)
+     * @param body stream over the JSON request body (read to its end before returning)
+     * @return future completed when the coin is updated
+     */
+    public CompletableFuture<Void> updateCoinAsync(int id, InputStream body) {
+        return coinService.updateAsync(toUpdatedCoin(id, parseJson(body)), databaseExecutor);
+    }
+
+    private void updateCoin(int id, JsonElement parsed) {
+        coinService.update(toUpdatedCoin(id, parsed));
+    }
+
+    private CoinImpl toUpdatedCoin(int id, JsonElement parsed) {
         // Normalize collection forms: accept collectionId in root or primitive collection
-        try {
-            com.google.gson.JsonElement parsed = com.google.gson.JsonParser.parseString(body);
-            if (parsed.isJsonObject()) {
-                com.google.gson.JsonObject obj = parsed.getAsJsonObject();
-                boolean modified = false;
-                if (obj.has("collectionId") && !obj.get("collectionId").isJsonNull()) {
-                    com.google.gson.JsonElement cid = obj.get("collectionId");
-                    com.google.gson.JsonObject collObj = new com.google.gson.JsonObject();
-                    collObj.add("id", cid);
-                    obj.add("collection", collObj);
-                    obj.remove("collectionId");
-                    modified = true;
-                } else if (obj.has("collection") && !obj.get("collection").isJsonNull()) {
-                    com.google.gson.JsonElement collElem = obj.get("collection");
-                    // Si collection es primitivo (número o string con número), convertir a objeto {id:...}
-                    if (collElem.isJsonPrimitive()) {
-                        com.google.gson.JsonPrimitive prim = collElem.getAsJsonPrimitive();
-                        try {
-                            com.google.gson.JsonObject collObj = new com.google.gson.JsonObject();
-                            if (prim.isNumber()) collObj.addProperty("id", prim.getAsInt());
-                            else if (prim.isString()) collObj.addProperty("id", Integer.parseInt(prim.getAsString()));
-                            obj.add("collection", collObj);
-                            modified = true;
-                        } catch (NumberFormatException ignored) {}
-                    }
-                }
-                if (modified) body = obj.toString();
-            }
-        } catch (Exception ignored) {}
+        Integer cid = null;
+        if (parsed.isJsonObject()) {
+            JsonObject obj = parsed.getAsJsonObject();
+            normalizeCollection(obj);
+            cid = extractCollectionIdFromJsonObject(obj);
+        }
 
         // usar parsingGson para poder instanciar la implementación de CoinCollection si viene en el body
-        System.out.println("CoinController.updateCoin: body = " + body);
-        CoinImpl coin = parsingGson.fromJson(body, CoinImpl.class);
+        CoinImpl coin = parsingGson.fromJson(parsed, CoinImpl.class);
         coin.setId(id);
         System.out.println("CoinController.updateCoin: deserialized coin.collection = " + coin.getCollection());
-        // If collectionId could be parsed from the raw JSON body, ensure coin.collection carries that id
-        try {
-            com.google.gson.JsonElement parsedForLog = com.google.gson.JsonParser.parseString(body);
-            if (parsedForLog.isJsonObject()) {
-                Integer cid = extractCollectionIdFromJsonObject(parsedForLog.getAsJsonObject());
-                if (cid != null) {
-                    try {
-                        if (coin.getCollection() == null) {
-                            cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl ci = new cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl();
-                            ci.setId(cid);
-                            coin.setCollection(ci);
-                        } else {
-                            try {
-                                java.lang.reflect.Method m = coin.getCollection().getClass().getMethod("setId", Integer.class);
-                                m.invoke(coin.getCollection(), cid);
-                            } catch (Throwable ignored) {}
-                        }
-                        System.out.println("CoinController.updateCoin: enforced collectionId = " + cid);
-                    } catch (Throwable ignored) {}
-                }
-            }
-        } catch (Exception ignored) {}
-        coinService.update(coin);
+        // If collectionId could be parsed from the JSON body, ensure coin.collection carries that id
+        if (cid != null) {
+            setCollectionId(coin, cid);
+            System.out.println("CoinController.updateCoin: enforced collectionId = " + cid);
+        }
+        return coin;
     }
 
     /**
@@ -332,6 +634,16 @@ public class CoinController {
         coinService.delete(id);
     }
 
+    /**
+     * Asynchronous {@link #deleteCoin(int)} on the database executor.
+     *
+     * @param id numeric identifier of the coin to delete
+     * @return future completed when the coin is deleted
+     */
+    public CompletableFuture<Void> deleteCoinAsync(int id) {
+        return coinService.deleteAsync(id, databaseExecutor);
+    }
+
     // Validación de los campos obligatorios para creación
     private void validateForCreate(CoinImpl coin) {
         List<String> missing = new ArrayList<>();
@@ -2,11 +2,16 @@ package cat.uvic.teknos.dam.aureus.controller;
 
 import cat.uvic.teknos.dam.aureus.model.jpa.JpaCollection;
 import cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaCollectionRepository;
+import cat.uvic.teknos.dam.aureus.search.SuggestionTrie;
+import cat.uvic.teknos.dam.aureus.service.VersionTracker;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -21,9 +26,29 @@ import java.util.stream.Collectors;
 public class CollectionController {
     private final JpaCollectionRepository service;
     private final Gson gson = new Gson();
+    // No hay capa de servicio para las colecciones: los cambios se cuentan aquí
+    private final VersionTracker versions = new VersionTracker();
+    // Autocompletado que recibe las colecciones nuevas; puede ser null
+    private final SuggestionTrie suggestions;
 
     public CollectionController(JpaCollectionRepository service) {
+        this(service, null);
+    }
+
+    /**
+     * @param service repository of the collections
+     * @param suggestions trie to which new collections are added, or null
+     */
+    public CollectionController(JpaCollectionRepository service, SuggestionTrie suggestions) {
         this.service = service;
+        this.suggestions = suggestions;
+    }
+
+    /**
+     * @return modification counters of the collections created through this controller
+     */
+    public VersionTracker getVersionTracker() {
+        return versions;
     }
 
     /**
@@ -56,7 +81,22 @@ public class CollectionController {
      * @throws IllegalArgumentException if required field is missing or invalid
      */
     public String createCollection(String body) {
-        JsonElement parsed = JsonParser.parseString(body);
+        return createCollection(JsonParser.parseString(body));
+    }
+
+    /**
+     * Create a new collection reading the JSON body from a stream. See
+     * {@link #createCollection(String)}.
+     *
+     * @param body stream over the JSON request body (read to its end)
+     * @return JSON object containing the created collection's id, name and description
+     * @throws IllegalArgumentException if required field is missing or invalid
+     */
+    public String createCollection(InputStream body) {
+        return createCollection(JsonParser.parseReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+    }
+
+    private String createCollection(JsonElement parsed) {
         if (!parsed.isJsonObject()) {
             throw new IllegalArgumentException("Request body must be a JSON object");
         }
@@ -77,6 +117,8 @@ public class CollectionController {
 
         // Persist using repository
         service.save(coll);
+        versions.modified(coll.getId());
+        if (suggestions != null) suggestions.collectionSaved(coll.getId(), coll.getCollectionName());
 
         // Return created object (id + name + description)
         java.util.Map<String,Object> resp = new java.util.HashMap<>();
@@ -0,0 +1,255 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of the {@link Server} client executor.
+ *
+ * <p>At most {@code limit} tasks run at the same time, whether connections
+ * with a request to process or pipelined requests of those connections; up to
+ * {@code queueCapacity} further connections wait in a FIFO queue and are run
+ * by the first handler that finishes. Anything beyond that is rejected at once
+ * so the server can answer {@code 503 Service Unavailable} instead of making
+ * every request slower.</p>
+ *
+ * <p>The limit is either fixed or adaptive. In adaptive mode it follows an AIMD
+ * rule driven by the request latencies reported through
+ * {@link #recordLatency(long)}: a sample above the latency target cuts the limit
+ * by 10%, while fast samples observed with the limit at least half used raise
+ * it by one.</p>
+ */
+public class AdmissionController {
+
+    // Factor de reducción multiplicativa del modo adaptativo
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private final int queueCapacity;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private int limit;
+    private int inFlight;
+
+    private final LongAdder admittedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Admission controller with a fixed concurrency limit.
+     *
+     * @param limit maximum number of connections handled concurrently
+     * @param queueCapacity maximum number of connections waiting for a handler
+     */
+    public AdmissionController(int limit, int queueCapacity) {
+        this(limit, limit, limit, queueCapacity, null);
+    }
+
+    private AdmissionController(int initialLimit, int minLimit, int maxLimit, int queueCapacity, Duration latencyTarget) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.adaptive = latencyTarget != null;
+        this.latencyTargetNanos = latencyTarget == null ? Long.MAX_VALUE : latencyTarget.toNanos();
+    }
+
+    /**
+     * Admission controller whose limit adapts to the observed request latency (AIMD).
+     *
+     * @param initialLimit starting concurrency limit
+     * @param minLimit lower bound of the limit
+     * @param maxLimit upper bound of the limit
+     * @param queueCapacity maximum number of connections waiting for a handler
+     * @param latencyTarget request latency above which the limit is reduced
+     * @return adaptive admission controller
+     */
+    public static AdmissionController adaptive(int initialLimit, int minLimit, int maxLimit,
+                                               int queueCapacity, Duration latencyTarget) {
+        return new AdmissionController(initialLimit, minLimit, maxLimit, queueCapacity, latencyTarget);
+    }
+
+    /**
+     * Run the task on the executor if the limit allows it, queue it if there is
+     * room, or reject it.
+     *
+     * @param executor executor that runs admitted tasks
+     * @param task connection handler
+     * @return false if the task was rejected and the caller must shed the load
+     */
+    public boolean execute(Executor executor, Runnable task) {
+        lock.lock();
+        try {
+            if (inFlight >= limit) {
+                if (waiting.size() >= queueCapacity) {
+                    rejectedCount.increment();
+                    return false;
+                }
+                waiting.add(task);
+                admittedCount.increment();
+                return true;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            executor.execute(() -> runAndContinue(task));
+        } catch (RejectedExecutionException e) {
+            // El executor ya está cerrado: liberar la plaza
+            release();
+            rejectedCount.increment();
+            return false;
+        }
+        admittedCount.increment();
+        return true;
+    }
+
+    /**
+     * Run the task on the executor only if a slot is free right now. It is
+     * neither queued nor counted as rejected otherwise, since the caller can
+     * still do the work itself, e.g. a pipelined request on its connection thread.
+     *
+     * @param executor executor that runs admitted tasks
+     * @param task work that may run concurrently with its caller
+     * @return false if no slot was free and the caller must run the task itself
+     */
+    public boolean tryExecute(Executor executor, Runnable task) {
+        lock.lock();
+        try {
+            if (inFlight >= limit) return false;
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            executor.execute(() -> runAndContinue(task));
+        } catch (RejectedExecutionException e) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    // Ejecuta la tarea y, mientras haya conexiones en cola, las atiende en el mismo hilo
+    private void runAndContinue(Runnable task) {
+        while (task != null) {
+            try {
+                task.run();
+            } finally {
+                task = nextOrRelease();
+            }
+        }
+    }
+
+    private Runnable nextOrRelease() {
+        lock.lock();
+        try {
+            // Si el límite ha bajado, devolver la plaza en lugar de tomar otra tarea
+            Runnable next = inFlight <= limit ? waiting.poll() : null;
+            if (next == null) inFlight--;
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Report the processing time of one request. Only used in adaptive mode.
+     *
+     * @param latencyNanos time spent processing the request
+     */
+    public void recordLatency(long latencyNanos) {
+        if (!adaptive) return;
+        lock.lock();
+        try {
+            if (latencyNanos > latencyTargetNanos) {
+                limit = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+            } else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if connections are waiting for a handler; persistent connections
+     *         should then be closed after their current request to free their slot
+     */
+    public boolean isSaturated() {
+        lock.lock();
+        try {
+            return !waiting.isEmpty() || inFlight >= limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Short human-readable summary for the status daemon.
+     *
+     * @return summary line
+     */
+    public String summary() {
+        return "admission " + (adaptive ? "adaptive" : "fixed")
+                + " limit: " + getLimit()
+                + ", in flight: " + getInFlight()
+                + ", queued: " + getQueueDepth()
+                + ", rejected: " + getRejectedCount();
+    }
+}
@@ -0,0 +1,32 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+/**
+ * Threading strategy used by {@link Server} to run each client connection.
+ */
+public enum ExecutionMode {
+    /**
+     * Cached pool of named platform threads (one OS thread per connected client).
+     */
+    PLATFORM,
+
+    /**
+     * One virtual thread per connection ({@code Executors.newVirtualThreadPerTaskExecutor}).
+     * Blocking socket and JDBC calls unmount the virtual thread instead of holding
+     * an OS thread, unless the thread is pinned (see {@link PinningMonitor}).
+     */
+    VIRTUAL;
+
+    /**
+     * Parse a mode name case-insensitively, falling back to {@link #PLATFORM}.
+     *
+     * @param value mode name such as {@code "virtual"} (may be null)
+     * @return matching mode or {@link #PLATFORM} if the value is unknown
+     */
+    public static ExecutionMode fromString(String value) {
+        if (value == null) return PLATFORM;
+        for (ExecutionMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value.trim())) return mode;
+        }
+        return PLATFORM;
+    }
+}
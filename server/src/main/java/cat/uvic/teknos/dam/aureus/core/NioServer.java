@@ -0,0 +1,513 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import cat.uvic.teknos.dam.aureus.buffer.BufferOutputStream;
+import cat.uvic.teknos.dam.aureus.buffer.BufferPool;
+import cat.uvic.teknos.dam.aureus.http.HttpConnection;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.HttpRequestParser;
+import cat.uvic.teknos.dam.aureus.http.RequestRouter;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking HTTP server engine built on {@link ServerSocketChannel} and {@link Selector}.
+ *
+ * <p>A small, fixed number of event-loop threads perform every socket read and
+ * write. Each loop feeds the bytes of a connection to an incremental
+ * {@link HttpRequestParser} and, once a request is complete, hands it to a
+ * bounded worker pool that runs the {@link RequestRouter}. Unlike
+ * {@link Server}, the number of threads does not depend on the number of open
+ * connections; when the worker queue is full the request is answered with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header directly
+ * from the event loop, so the bounded worker queue acts as admission control.
+ * Asynchronous routes release the worker as soon as their handler returns a
+ * future; the response is handed back to the event loop when it completes.</p>
+ *
+ * <p>Connections are persistent like in {@link Server}: after a keep-alive
+ * response the channel is read again, and each event loop closes the
+ * connections that stay idle longer than the keep-alive timeout.</p>
+ *
+ * <p>Read buffers and encoded responses live in direct buffers borrowed from
+ * a {@link BufferPool}: a connection returns its read buffer when it is
+ * closed and each response buffer once it has been written.</p>
+ */
+public class NioServer {
+
+    // Tamaño inicial del buffer de lectura de cada conexión y de cada respuesta
+    private static final int READ_CHUNK_SIZE = 8192;
+    private static final int RESPONSE_CHUNK_SIZE = 4096;
+
+    private final int port;
+    private final RequestRouter router;
+    private final BufferPool bufferPool;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    // Keep-alive: tiempo máximo de inactividad y peticiones por conexión
+    private int keepAliveTimeoutMillis = 5000;
+    private int maxRequestsPerConnection = 100;
+
+    // Componentes de concurrencia
+    private final EventLoop[] eventLoops;
+    private final ThreadPoolExecutor workerExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger connectedClients = new AtomicInteger(0);
+    private final LongAdder rejectedRequests = new LongAdder();
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    // Contador para dar nombre a los hilos del pool de workers
+    private final AtomicInteger workerThreadCounter = new AtomicInteger(1);
+
+    public NioServer(int port, RequestRouter router) {
+        this(port, router,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                Runtime.getRuntime().availableProcessors() * 2,
+                1024);
+    }
+
+    /**
+     * @param port TCP port to listen on
+     * @param router router that processes every complete request
+     * @param eventLoopCount number of selector threads doing non-blocking I/O
+     * @param workerThreads number of threads running {@link RequestRouter} handlers
+     * @param workerQueueCapacity maximum number of parsed requests waiting for a worker
+     */
+    public NioServer(int port, RequestRouter router, int eventLoopCount, int workerThreads, int workerQueueCapacity) {
+        this(port, router, eventLoopCount, workerThreads, workerQueueCapacity, new BufferPool());
+    }
+
+    /**
+     * @param port TCP port to listen on
+     * @param router router that processes every complete request
+     * @param eventLoopCount number of selector threads doing non-blocking I/O
+     * @param workerThreads number of threads running {@link RequestRouter} handlers
+     * @param workerQueueCapacity maximum number of parsed requests waiting for a worker
+     * @param bufferPool pool lending the read and response buffers of the connections
+     */
+    public NioServer(int port, RequestRouter router, int eventLoopCount, int workerThreads, int workerQueueCapacity,
+                     BufferPool bufferPool) {
+        this.port = port;
+        this.router = router;
+        this.bufferPool = bufferPool;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoopCount)];
+        this.workerExecutor = new ThreadPoolExecutor(workerThreads, workerThreads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(workerQueueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "NioWorker-" + workerThreadCounter.getAndIncrement());
+                    t.setDaemon(false);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "NioServerStatusDaemon");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Configure persistent connections. Must be called before {@link #start()}.
+     *
+     * @param idleTimeoutMillis time an idle connection is kept open waiting for the next request
+     * @param maxRequests maximum requests served per connection (1 disables keep-alive)
+     */
+    public void setKeepAlive(int idleTimeoutMillis, int maxRequests) {
+        this.keepAliveTimeoutMillis = idleTimeoutMillis;
+        this.maxRequestsPerConnection = maxRequests;
+    }
+
+    /**
+     * Bind the server channel, start the event loops and accept connections.
+     * Accepted channels are distributed round-robin among the event loops.
+     * The method blocks until the server is shut down or an unrecoverable error occurs.
+     */
+    public void start() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            running = true;
+
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop(i);
+                eventLoops[i].thread.start();
+            }
+            System.out.println("NIO server started and listening on port: " + port
+                    + " (event loops: " + eventLoops.length + ", workers: " + workerExecutor.getMaximumPoolSize() + ")");
+
+            scheduler.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.MINUTES);
+
+            int next = 0;
+            while (serverChannel.isOpen()) {
+                // El canal del servidor es bloqueante: sólo este hilo espera en accept()
+                SocketChannel client = serverChannel.accept();
+                client.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[next].register(client);
+                next = (next + 1) % eventLoops.length;
+            }
+        } catch (BindException e) {
+            System.err.println("Port " + port + " is already in use. " + e.getMessage());
+        } catch (IOException e) {
+            if (serverChannel != null && !serverChannel.isOpen()) {
+                System.out.println("NIO server stopped.");
+            } else {
+                System.err.println("Error starting or running ServerSocketChannel: " + e.getMessage());
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void printStatus() {
+        System.out.println("STATUS: Currently connected clients: " + connectedClients.get()
+                + " (NIO, active workers: " + workerExecutor.getActiveCount()
+                + ", queued requests: " + workerExecutor.getQueue().size()
+                + ", rejected requests: " + rejectedRequests.sum() + ")"
+                + " (" + bufferPool.summary() + ")"
+                + (router.getPipeline() != null ? " (" + router.getPipeline().summary() + ")" : ""));
+    }
+
+    /**
+     * Shutdown the server: stop accepting, close every event loop and stop the worker pool.
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing ServerSocketChannel: " + e.getMessage());
+        } finally {
+            for (EventLoop loop : eventLoops) {
+                if (loop != null) loop.selector.wakeup();
+            }
+            workerExecutor.shutdown();
+            scheduler.shutdown();
+            try {
+                if (!workerExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    workerExecutor.shutdownNow();
+                }
+                for (EventLoop loop : eventLoops) {
+                    if (loop != null) loop.thread.join(TimeUnit.SECONDS.toMillis(1));
+                }
+            } catch (InterruptedException e) {
+                workerExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Respuesta codificada y si la conexión sigue abierta; pasa al event loop como parte de su tarea
+    private record Response(ByteBuffer[] buffers, boolean keepAlive) {
+    }
+
+    // Ejecutado en un worker: el router escribe la respuesta cuando el handler (quizá asíncrono) termina,
+    // así el worker queda libre mientras la consulta se ejecuta en el ejecutor de base de datos
+    private CompletableFuture<Response> process(HttpRequest request, Connection connection) {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, RESPONSE_CHUNK_SIZE);
+        CompletableFuture<Boolean> keepAlive;
+        try {
+            keepAlive = router.handleRequestAsync(request, out, connection.http);
+        } catch (Exception e) {
+            keepAlive = CompletableFuture.failedFuture(e);
+        }
+        return keepAlive.handle((open, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                System.err.println("Unexpected error in NIO worker: " + cause.getMessage());
+                out.close();
+                return new Response(encode(createErrorResponse(500, "Internal Server Error", "An unexpected server error occurred: " + cause.getMessage())), false);
+            }
+            return new Response(out.toBuffers(), open);
+        });
+    }
+
+    // Respuesta codificada en buffers del pool, que se devuelven tras escribirla
+    private ByteBuffer[] encode(ResponseEntity response) {
+        BufferOutputStream out = new BufferOutputStream(bufferPool, RESPONSE_CHUNK_SIZE);
+        try {
+            response.writeTo(out);
+        } catch (IOException e) {
+            // BufferOutputStream no lanza IOException
+        }
+        return out.toBuffers();
+    }
+
+    private static void release(BufferPool pool, ByteBuffer[] buffers) {
+        if (buffers == null) return;
+        for (ByteBuffer buffer : buffers) pool.release(buffer);
+    }
+
+    // Metodo auxiliar para crear respuestas de error
+    private static ResponseEntity createErrorResponse(int status, String reason, String message) {
+        String errorBody = String.format("{\"error\": \"%s\", \"status\": %d}", message, status);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        byte[] bodyBytes = errorBody.getBytes(StandardCharsets.UTF_8);
+        headers.put("Content-Length", String.valueOf(bodyBytes.length));
+        return new ResponseEntity(status, reason, headers, bodyBytes);
+    }
+
+    /**
+     * Per-connection state owned by a single event loop.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final HttpConnection http;
+        private final BufferPool pool;
+        private final HttpRequestParser parser = new HttpRequestParser();
+        private ByteBuffer readBuffer;
+        private ByteBuffer[] writeBuffers;
+        private boolean keepAlive;
+        private long lastActivity = System.currentTimeMillis();
+
+        private Connection(SocketChannel channel, HttpConnection http, BufferPool pool) {
+            this.channel = channel;
+            this.http = http;
+            this.pool = pool;
+            this.readBuffer = pool.acquire(READ_CHUNK_SIZE);
+        }
+
+        // El parser limita el tamaño de las cabeceras, así que el buffer no crece sin límite
+        private ByteBuffer bufferForRead() {
+            if (!readBuffer.hasRemaining()) {
+                readBuffer = pool.grow(readBuffer, readBuffer.capacity() * 2);
+            }
+            return readBuffer;
+        }
+
+        // Devuelve al pool todos los buffers de la conexión
+        private void releaseBuffers() {
+            pool.release(readBuffer);
+            release(pool, writeBuffers);
+            readBuffer = null;
+            writeBuffers = null;
+        }
+
+        /**
+         * @return the next complete request in the read buffer, or null if more bytes are needed
+         * @throws HttpException for malformed or oversized requests
+         */
+        private HttpRequest nextRequest() {
+            readBuffer.flip();
+            try {
+                return parser.parse(readBuffer);
+            } finally {
+                readBuffer.compact();
+            }
+        }
+    }
+
+    /**
+     * Selector thread multiplexing a subset of the connections.
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "NioEventLoop-" + index);
+            this.thread.setDaemon(false);
+        }
+
+        private void register(SocketChannel channel) {
+            execute(() -> {
+                HttpConnection http = new HttpConnection(keepAliveTimeoutMillis, maxRequestsPerConnection);
+                Connection connection = new Connection(channel, http, bufferPool);
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, connection);
+                    connectedClients.incrementAndGet();
+                } catch (IOException e) {
+                    connection.releaseBuffers();
+                    try { channel.close(); } catch (IOException ignored) {}
+                }
+            });
+        }
+
+        // Las operaciones sobre claves y canales sólo se ejecutan en el hilo del event loop
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastIdleSweep = System.currentTimeMillis();
+            try {
+                while (running) {
+                    selector.select(1000);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+                        try {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        } catch (IOException e) {
+                            close(key);
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastIdleSweep >= 1000) {
+                        closeIdleConnections(now);
+                        lastIdleSweep = now;
+                    }
+                }
+            } catch (ClosedSelectorException ignored) {
+                // shutdown en curso
+            } catch (IOException e) {
+                System.err.println("Event loop " + thread.getName() + " failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                }
+                try { selector.close(); } catch (IOException ignored) {}
+            }
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            int n = connection.channel.read(connection.bufferForRead());
+            if (n == -1) {
+                close(key);
+                return;
+            }
+            connection.lastActivity = System.currentTimeMillis();
+            dispatchIfComplete(key, connection);
+        }
+
+        // Envía al pool la siguiente petición completa del buffer, si la hay
+        private void dispatchIfComplete(SelectionKey key, Connection connection) {
+            HttpRequest request;
+            try {
+                request = connection.nextRequest();
+            } catch (HttpException invalid) {
+                // Petición mal formada o demasiado grande: responder y cerrar
+                key.interestOps(0);
+                respond(key, encode(createErrorResponse(invalid.getStatusCode(), invalid.getReasonPhrase(), invalid.getMessage())));
+                return;
+            }
+            if (request == null) return;
+
+            // Petición completa: dejar de leer hasta que se haya escrito la respuesta
+            key.interestOps(0);
+            try {
+                // La respuesta viaja en la tarea: la cola del event loop la publica al hilo del selector
+                workerExecutor.execute(() -> process(request, connection).thenAccept(response -> execute(() -> {
+                    connection.keepAlive = response.keepAlive();
+                    respond(key, response.buffers());
+                })));
+            } catch (RejectedExecutionException e) {
+                rejectedRequests.increment();
+                ResponseEntity overloaded = createErrorResponse(503, "Service Unavailable", "Server is overloaded, try again later");
+                overloaded.retryAfter(RETRY_AFTER_SECONDS);
+                respond(key, encode(overloaded));
+            }
+        }
+
+        private void respond(SelectionKey key, ByteBuffer[] response) {
+            if (!key.isValid()) {
+                // Conexión ya cerrada: nadie más devolverá los buffers
+                release(bufferPool, response);
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            connection.writeBuffers = response;
+            try {
+                // Intentar escribir directamente; sólo registrar OP_WRITE si el socket no acepta todo
+                write(key);
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+
+        private void write(SelectionKey key) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            ByteBuffer[] buffers = connection.writeBuffers;
+            if (buffers == null) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                return;
+            }
+            // Escritura agrupada: los trozos de una respuesta grande salen en una sola llamada
+            connection.channel.write(buffers);
+            if (buffers[buffers.length - 1].hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (connection.keepAlive) {
+                // keep-alive: volver a leer; puede haber otra petición ya en el buffer
+                release(bufferPool, buffers);
+                connection.writeBuffers = null;
+                connection.keepAlive = false;
+                connection.lastActivity = System.currentTimeMillis();
+                key.interestOps(SelectionKey.OP_READ);
+                dispatchIfComplete(key, connection);
+            } else {
+                close(key);
+            }
+        }
+
+        // Cierra las conexiones que esperan una petición desde hace más que el timeout
+        private void closeIdleConnections(long now) {
+            for (SelectionKey key : selector.keys()) {
+                if (!key.isValid() || key.interestOps() != SelectionKey.OP_READ) continue;
+                if (key.attachment() instanceof Connection connection
+                        && now - connection.lastActivity > keepAliveTimeoutMillis) {
+                    close(key);
+                }
+            }
+        }
+
+        private void close(SelectionKey key) {
+            Object attachment = key.attachment();
+            key.cancel();
+            if (attachment instanceof Connection connection) {
+                try {
+                    if (connection.channel.isOpen()) {
+                        connection.channel.close();
+                        connectedClients.decrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error closing channel: " + e.getMessage());
+                } finally {
+                    connection.releaseBuffers();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Diagnostic that reports where virtual threads get pinned to their carrier.
+ *
+ * <p>It listens to the JFR {@code jdk.VirtualThreadPinned} event, emitted when a
+ * virtual thread blocks while it cannot unmount (inside a {@code synchronized}
+ * block or a native frame). Every event is attributed to the first project frame
+ * of its stack trace so {@link Server#printStatus} can show the offending call
+ * sites, e.g. a monitor held around socket or JDBC I/O.</p>
+ */
+public class PinningMonitor implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String PROJECT_PACKAGE = "cat.uvic.teknos.dam.aureus";
+
+    private final Duration threshold;
+    private final LongAdder pinnedEvents = new LongAdder();
+    private final Map<String, LongAdder> pinnedSites = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+
+    /**
+     * @param threshold minimum pinned duration to report (the JDK default is 20 ms)
+     */
+    public PinningMonitor(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Start the JFR recording stream in the background.
+     */
+    public void start() {
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+            System.out.println("Pinning monitor started (threshold " + threshold.toMillis() + " ms).");
+        } catch (Exception e) {
+            // JFR puede no estar disponible en algunas JVM; el servidor sigue funcionando
+            System.err.println("Pinning monitor not available: " + e.getMessage());
+            stream = null;
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        String site = describeSite(event.getStackTrace());
+        pinnedSites.computeIfAbsent(site, k -> new LongAdder()).increment();
+        // El total se incrementa al final para que summary() ya vea el sitio
+        pinnedEvents.increment();
+        System.err.println("WARNING: virtual thread pinned for " + event.getDuration().toMillis() + " ms at " + site);
+    }
+
+    // Primer frame del proyecto; si no hay ninguno, el frame superior de la pila
+    private static String describeSite(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) return "<unknown>";
+        RecordedFrame top = stackTrace.getFrames().get(0);
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame() && frame.getMethod().getType().getName().startsWith(PROJECT_PACKAGE)) {
+                return format(frame);
+            }
+        }
+        return format(top);
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    /**
+     * @return total number of pinning events observed since start
+     */
+    public long getPinnedCount() {
+        return pinnedEvents.sum();
+    }
+
+    /**
+     * Short human-readable summary with the three most frequent pinning sites.
+     *
+     * @return summary line for the status daemon
+     */
+    public String summary() {
+        if (pinnedSites.isEmpty()) return "pinned events: 0";
+        String top = pinnedSites.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(3)
+                .map(e -> e.getKey() + " x" + e.getValue().sum())
+                .collect(Collectors.joining(", "));
+        return "pinned events: " + getPinnedCount() + " (top: " + top + ")";
+    }
+
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+}
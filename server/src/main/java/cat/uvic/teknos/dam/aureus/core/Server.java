@@ -1,15 +1,22 @@
 package cat.uvic.teknos.dam.aureus.core;
 
+import cat.uvic.teknos.dam.aureus.http.HttpConnection;
 import cat.uvic.teknos.dam.aureus.http.RequestRouter;
 import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.time.Duration;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,33 +29,91 @@ import java.util.concurrent.ThreadFactory;
  * provided {@link RequestRouter} and writes responses back to the client.
  * It uses a thread pool for concurrent client handling and a daemon thread
  * for status reporting.</p>
+ *
+ * <p>The {@link ExecutionMode} selects how connections are run: a cached pool
+ * of platform threads or one virtual thread per connection. In virtual mode a
+ * {@link PinningMonitor} reports the call sites where virtual threads still pin
+ * their carrier thread.</p>
+ *
+ * <p>Connections are persistent (HTTP/1.1 keep-alive): several requests are
+ * read from the same socket until the client sends {@code Connection: close},
+ * stays idle longer than the idle timeout or reaches the per-connection
+ * request limit (see {@link #setKeepAlive(int, int)}).</p>
+ *
+ * <p>Pipelined GET requests that arrive back to back on one connection are
+ * processed concurrently, each on an admission slot of its own when one is
+ * free and otherwise on the connection thread; the router writes their
+ * responses in request order (see {@link #setPipelining(boolean)}).</p>
+ *
+ * <p>Connections pass through an {@link AdmissionController} when they are
+ * accepted and again whenever a request arrives after they went idle, so an
+ * idle keep-alive connection waits for its next request without holding a
+ * slot. When the concurrency limit and its waiting queue are full, the
+ * connection is answered with {@code 503 Service Unavailable} and a
+ * {@code Retry-After} header, written at once without reading the request,
+ * and closed.</p>
  */
 public class Server {
 
     private final int port;
     private final RequestRouter router;
+    private final ExecutionMode executionMode;
     private ServerSocket serverSocket;
 
+    // Keep-alive: tiempo máximo de inactividad y peticiones por conexión
+    private int keepAliveTimeoutMillis = 5000;
+    private int maxRequestsPerConnection = 100;
+    private boolean pipelining = true;
+
+    // Control de admisión: límite de conexiones atendidas a la vez y cola acotada
+    private static final int DEFAULT_ADMISSION_LIMIT = 256;
+    private static final int DEFAULT_ADMISSION_QUEUE = 128;
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private AdmissionController admissionController = new AdmissionController(DEFAULT_ADMISSION_LIMIT, DEFAULT_ADMISSION_QUEUE);
+
     // Componentes de concurrencia
     private final ExecutorService clientExecutor;
     private final ScheduledExecutorService scheduler;
     private final AtomicInteger connectedClients; // Contador atómico para clientes conectados
+    private final PinningMonitor pinningMonitor; // Sólo en modo VIRTUAL
 
     // Contador para dar nombre a los hilos del pool
     private final AtomicInteger clientThreadCounter = new AtomicInteger(1);
 
+    // Conexión aceptada; entre peticiones pasa de un hilo a otro
+    private record Client(Socket socket, InputStream in, OutputStream out, HttpConnection connection) {
+    }
+
     public Server(int port, RequestRouter router) {
+        this(port, router, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * @param port TCP port to listen on
+     * @param router router that handles each connection
+     * @param executionMode platform-thread pool or virtual thread per connection
+     */
+    public Server(int port, RequestRouter router, ExecutionMode executionMode) {
         this.port = port;
         this.router = router;
-        // Usar un pool cached con ThreadFactory para nombrar hilos de cliente
-        this.clientExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r, "ClientHandler-" + clientThreadCounter.getAndIncrement());
-                t.setDaemon(false); // Hilos de manejo de cliente NO deben ser daemons
-                return t;
-            }
-        });
+        this.executionMode = executionMode;
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            // Un hilo virtual por conexión; las llamadas bloqueantes liberan el hilo portador
+            this.clientExecutor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("ClientHandler-v", 1).factory());
+            this.pinningMonitor = new PinningMonitor(Duration.ofMillis(20));
+        } else {
+            // Usar un pool cached con ThreadFactory para nombrar hilos de cliente
+            this.clientExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ClientHandler-" + clientThreadCounter.getAndIncrement());
+                    t.setDaemon(false); // Hilos de manejo de cliente NO deben ser daemons
+                    return t;
+                }
+            });
+            this.pinningMonitor = null;
+        }
         // Usar un scheduler de un solo hilo para la tarea daemon
         this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "ServerStatusDaemon");
@@ -64,6 +129,51 @@ public class Server {
         this.serverSocket = serverSocket;
     }
 
+    // Constructor para test con modo de ejecución explícito
+    public Server(int port, RequestRouter router, ServerSocket serverSocket, ExecutionMode executionMode) {
+        this(port, router, executionMode);
+        this.serverSocket = serverSocket;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Configure persistent connections. Must be called before {@link #start()}.
+     *
+     * @param idleTimeoutMillis time an idle connection is kept open waiting for the next request
+     * @param maxRequests maximum requests served per connection (1 disables keep-alive)
+     */
+    public void setKeepAlive(int idleTimeoutMillis, int maxRequests) {
+        this.keepAliveTimeoutMillis = idleTimeoutMillis;
+        this.maxRequestsPerConnection = maxRequests;
+    }
+
+    /**
+     * Enable or disable concurrent processing of pipelined GET requests.
+     * When disabled, requests of a connection are answered one at a time.
+     *
+     * @param pipelining true to dispatch pipelined GETs concurrently
+     */
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    /**
+     * Replace the default admission controller (fixed limit of 256 connections
+     * plus 128 waiting). Must be called before {@link #start()}.
+     *
+     * @param admissionController fixed or adaptive admission controller
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
     /**
      * Start accepting incoming connections and process them concurrently.
      * Starts the status daemon thread.
@@ -78,6 +188,11 @@ public class Server {
                 System.out.println("Server started with provided ServerSocket on port: " + port);
             }
 
+            System.out.println("Client connections run on " + executionMode.name().toLowerCase() + " threads.");
+            if (pinningMonitor != null) {
+                pinningMonitor.start();
+            }
+
             // Iniciar hilo daemon que imprime el número de clientes conectados cada minuto
             scheduler.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.MINUTES);
             System.out.println("Status daemon started, reporting connected clients every minute.");
@@ -86,8 +201,10 @@ public class Server {
                 // 1. ACEPTAR: Bloquea hasta que un nuevo cliente se conecta.
                 Socket clientSocket = serverSocket.accept();
 
-                // 2. PROCESAR: Enviar la tarea a un Thread Pool.
-                clientExecutor.submit(() -> handleClientConnection(clientSocket));
+                // 2. PROCESAR: Enviar la tarea al Thread Pool si el control de admisión lo permite.
+                if (!admissionController.execute(clientExecutor, () -> handleClientConnection(clientSocket))) {
+                    rejectConnection(clientSocket);
+                }
             }
         } catch (BindException e) {
             System.err.println("Port " + port + " is already in use. " + e.getMessage());
@@ -105,7 +222,15 @@ public class Server {
 
     // Método que imprime el estado (número de clientes conectados)
     private void printStatus() {
-        System.out.println("STATUS: Currently connected clients: " + connectedClients.get());
+        String status = "STATUS: Currently connected clients: " + connectedClients.get()
+                + " (" + admissionController.summary() + ")";
+        if (pinningMonitor != null) {
+            status += " (virtual threads, " + pinningMonitor.summary() + ")";
+        }
+        if (router.getPipeline() != null) {
+            status += " (" + router.getPipeline().summary() + ")";
+        }
+        System.out.println(status);
     }
 
     // Maneja la conexión de un cliente en un hilo del pool
@@ -113,10 +238,37 @@ public class Server {
         connectedClients.incrementAndGet();
         System.out.println("Client connected: " + clientSocket.getInetAddress() + " (Total: " + connectedClients.get() + ")");
 
+        Client client;
         try {
-            // Delegar al router la lectura/escritura del request/response
-            router.handleRequest(clientSocket.getInputStream(), clientSocket.getOutputStream());
+            HttpConnection connection = new HttpConnection(keepAliveTimeoutMillis, maxRequestsPerConnection,
+                    pipelining ? this::executePipelined : null);
+            // Con conexiones en espera, cerrar tras la petición actual para liberar la plaza
+            connection.setKeepAliveCondition(() -> !admissionController.isSaturated());
+            connection.setLatencyListener(admissionController::recordLatency);
+            clientSocket.setSoTimeout(keepAliveTimeoutMillis);
+            // Streams con buffer reutilizados por todas las peticiones de la conexión
+            client = new Client(clientSocket, new BufferedInputStream(clientSocket.getInputStream()),
+                    new BufferedOutputStream(clientSocket.getOutputStream()), connection);
+        } catch (IOException e) {
+            System.err.println("I/O error in client connection: " + clientSocket.getInetAddress() + " - " + e.getMessage());
+            closeConnection(clientSocket);
+            return;
+        }
+        serve(client);
+    }
 
+    // Atiende peticiones mientras el cliente tenga datos pendientes; inactiva, la conexión espera sin plaza
+    private void serve(Client client) {
+        Socket clientSocket = client.socket();
+        boolean idle = false;
+        try {
+            // Delegar al router la lectura/escritura de cada request/response mientras siga abierta
+            while (router.handleRequest(client.in(), client.out(), client.connection())) {
+                if (!client.connection().getRequestParser().hasBufferedInput() && client.in().available() == 0) {
+                    idle = true;
+                    break;
+                }
+            }
         } catch (IOException e) {
             // Error de I/O, el cliente probablemente cerró la conexión
             if (!clientSocket.isClosed()) {
@@ -131,16 +283,68 @@ public class Server {
                 ResponseEntity errorResponse = createErrorResponse(500, "Internal Server Error", "An unexpected server error occurred: " + e.getMessage());
                 errorResponse.writeTo(clientSocket.getOutputStream());
             } catch (Exception ignored) {}
-        } finally {
+        }
+        if (idle) {
             try {
-                if (!clientSocket.isClosed()) {
-                    clientSocket.close();
-                }
-            } catch (IOException e) {
-                System.err.println("Error closing socket: " + e.getMessage());
+                // keep-alive: esperar la siguiente petición fuera del control de admisión
+                clientExecutor.execute(() -> awaitNextRequest(client));
+                return;
+            } catch (RejectedExecutionException e) {
+                // servidor cerrándose
             }
-            connectedClients.decrementAndGet();
-            System.out.println("Client disconnected: " + clientSocket.getInetAddress() + " (Total: " + connectedClients.get() + ")");
+        }
+        closeConnection(clientSocket);
+    }
+
+    // Espera sin plaza al primer byte de la siguiente petición y vuelve a pasar por el control de admisión
+    private void awaitNextRequest(Client client) {
+        try {
+            client.in().mark(1);
+            if (client.in().read() < 0) {
+                closeConnection(client.socket());
+                return;
+            }
+            client.in().reset();
+        } catch (IOException e) {
+            // El cliente cerró o estuvo inactivo más que el timeout: cerrar sin responder
+            closeConnection(client.socket());
+            return;
+        }
+        if (!admissionController.execute(clientExecutor, () -> serve(client))) {
+            rejectConnection(client.socket());
+            closeConnection(client.socket());
+        }
+    }
+
+    private void closeConnection(Socket clientSocket) {
+        try {
+            if (!clientSocket.isClosed()) {
+                clientSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+        connectedClients.decrementAndGet();
+        System.out.println("Client disconnected: " + clientSocket.getInetAddress() + " (Total: " + connectedClients.get() + ")");
+    }
+
+    // Petición en paralelo de una conexión: ocupa una plaza libre o, sin ella, la atiende el hilo de la conexión
+    private void executePipelined(Runnable task) {
+        if (!admissionController.tryExecute(clientExecutor, task)) {
+            throw new RejectedExecutionException("No admission slot free");
+        }
+    }
+
+    // Responde 503 y cierra en el hilo que llama, sin leer la petición ni ocupar una plaza del pool
+    private void rejectConnection(Socket clientSocket) {
+        try (clientSocket) {
+            ResponseEntity response = createErrorResponse(503, "Service Unavailable", "Server is overloaded, try again later");
+            response.retryAfter(RETRY_AFTER_SECONDS);
+            response.writeTo(clientSocket.getOutputStream());
+            // FIN antes del cierre, para que el cliente lea la respuesta aunque no se haya leído su petición
+            clientSocket.shutdownOutput();
+        } catch (IOException e) {
+            System.err.println("Error rejecting client " + clientSocket.getInetAddress() + ": " + e.getMessage());
         }
     }
 
@@ -181,6 +385,9 @@ public class Server {
                 scheduler.shutdownNow();
                 Thread.currentThread().interrupt();
             }
+            if (pinningMonitor != null) {
+                pinningMonitor.close();
+            }
             System.out.println("Server shut down.");
         }
     }
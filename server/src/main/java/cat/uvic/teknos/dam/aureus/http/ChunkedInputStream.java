@@ -0,0 +1,127 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decoder for the chunked transfer coding (RFC 9112, section 7.1).
+ *
+ * <p>Returns the chunk data and stops after the last chunk and its trailer
+ * section, so the bytes that follow stay in the underlying stream. Chunk
+ * extensions and trailer fields are ignored.</p>
+ */
+class ChunkedInputStream extends InputStream {
+
+    // Límite de una línea de tamaño de chunk o de trailer
+    private static final int MAX_LINE_BYTES = 4096;
+
+    private final InputStream in;
+    private final long maxBodyBytes;
+    private long chunkRemaining;
+    private long total;
+    private boolean finished;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param in connection stream positioned at the first chunk
+     * @param maxBodyBytes maximum decoded body size
+     */
+    ChunkedInputStream(InputStream in, long maxBodyBytes) {
+        this.in = in;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (chunkRemaining == 0 && !nextChunk()) return -1;
+        int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (n < 0) throw new EOFException("Connection closed in the middle of a chunk");
+        chunkRemaining -= n;
+        if (chunkRemaining == 0) readCrlf();
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : (int) Math.min(in.available(), chunkRemaining);
+    }
+
+    // No cierra el stream de la conexión: sólo descarta el resto del cuerpo
+    @Override
+    public void close() throws IOException {
+        skip(Long.MAX_VALUE);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] scratch = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+            if (r < 0) break;
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    // Lee la línea de tamaño del siguiente chunk; false tras el último chunk y los trailers
+    private boolean nextChunk() throws IOException {
+        if (finished) return false;
+        String sizeLine = readLine();
+        int semicolon = sizeLine.indexOf(';');
+        String hex = (semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim();
+        long size;
+        try {
+            size = Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            throw new HttpException(400, "Bad Request", "Invalid chunk size");
+        }
+        if (size < 0) throw new HttpException(400, "Bad Request", "Invalid chunk size");
+        if (size == 0) {
+            // Trailers hasta la línea vacía
+            while (!readLine().isEmpty()) {
+                // ignorados
+            }
+            finished = true;
+            return false;
+        }
+        total += size;
+        if (total > maxBodyBytes) {
+            throw new HttpException(413, "Payload Too Large", "Request body exceeds " + maxBodyBytes + " bytes");
+        }
+        chunkRemaining = size;
+        return true;
+    }
+
+    private void readCrlf() throws IOException {
+        if (in.read() != '\r' || in.read() != '\n') {
+            throw new HttpException(400, "Bad Request", "Missing CRLF after chunk data");
+        }
+    }
+
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Connection closed in the middle of a chunked body");
+            if (b == '\n') {
+                int len = line.length();
+                if (len > 0 && line.charAt(len - 1) == '\r') line.setLength(len - 1);
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_BYTES) throw new HttpException(400, "Bad Request", "Chunk line too long");
+            line.append((char) b);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Encoder for the chunked transfer coding (RFC 9112, section 7.1).
+ *
+ * <p>Writes are collected in a buffer and sent as one chunk when it fills, so
+ * small writes do not become tiny chunks. {@link #finish(Map)} sends the last
+ * chunk and the trailer section. Closing the stream only sends the pending
+ * chunk: the underlying connection stream stays open.</p>
+ */
+class ChunkedOutputStream extends OutputStream {
+
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean finished;
+
+    /**
+     * @param out connection stream positioned after the response headers
+     * @param chunkSize data bytes per chunk
+     */
+    ChunkedOutputStream(OutputStream out, int chunkSize) {
+        this.out = out;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) writeChunk();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == 0 && len >= buffer.length) {
+                // Bloque grande: un chunk directo sin copiarlo al buffer
+                writeChunk(b, off, len);
+                return;
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == buffer.length) writeChunk();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+
+    // No cierra la conexión: sólo envía el chunk pendiente
+    @Override
+    public void close() throws IOException {
+        if (!finished) writeChunk();
+    }
+
+    /**
+     * Send the pending data, the last chunk and the trailer fields.
+     *
+     * @param trailers trailer fields, in iteration order
+     */
+    void finish(Map<String, String> trailers) throws IOException {
+        ensureOpen();
+        writeChunk();
+        StringBuilder last = new StringBuilder("0\r\n");
+        for (Map.Entry<String, String> trailer : trailers.entrySet()) {
+            last.append(trailer.getKey()).append(": ").append(trailer.getValue()).append("\r\n");
+        }
+        last.append("\r\n");
+        out.write(last.toString().getBytes(StandardCharsets.UTF_8));
+        finished = true;
+    }
+
+    private void writeChunk() throws IOException {
+        if (count == 0) return;
+        writeChunk(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        out.write((Integer.toHexString(len) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) throw new IOException("Chunked body already finished");
+    }
+}
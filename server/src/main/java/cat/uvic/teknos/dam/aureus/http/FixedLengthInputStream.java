@@ -0,0 +1,52 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream over a request body delimited by {@code Content-Length}.
+ *
+ * <p>Reads never go past the end of the body, so the bytes that follow (the
+ * next pipelined request) stay in the underlying stream.</p>
+ */
+class FixedLengthInputStream extends InputStream {
+
+    private final InputStream in;
+    private long remaining;
+
+    FixedLengthInputStream(InputStream in, long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0) return -1;
+        int b = in.read();
+        if (b < 0) throw new EOFException("Connection closed in the middle of a request body");
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (remaining == 0) return -1;
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0) throw new EOFException("Connection closed in the middle of a request body");
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    // No cierra el stream de la conexión: sólo descarta el resto del cuerpo
+    @Override
+    public void close() throws IOException {
+        skipNBytes(remaining);
+    }
+}
@@ -0,0 +1,104 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Header names the server reads or writes on every request.
+ *
+ * <p>Each constant owns a fixed slot in {@link HttpHeaders}, so looking one of
+ * them up is an array access instead of a hash lookup over case variants.</p>
+ */
+public enum HeaderName {
+    HOST("Host"),
+    CONTENT_LENGTH("Content-Length"),
+    CONTENT_TYPE("Content-Type"),
+    CONTENT_ENCODING("Content-Encoding"),
+    ETAG("ETag"),
+    IF_NONE_MATCH("If-None-Match"),
+    LINK("Link"),
+    CONNECTION("Connection"),
+    KEEP_ALIVE("Keep-Alive"),
+    TRANSFER_ENCODING("Transfer-Encoding"),
+    TRAILER("Trailer"),
+    TE("TE"),
+    ACCEPT("Accept"),
+    ACCEPT_ENCODING("Accept-Encoding"),
+    VARY("Vary"),
+    USER_AGENT("User-Agent"),
+    RETRY_AFTER("Retry-After"),
+    X_BODY_HASH("X-Body-Hash"),
+    X_SESSION_ID("X-Session-Id"),
+    X_BODY_ENCRYPTED("X-Body-Encrypted"),
+    X_BODY_IV("X-Body-IV"),
+    X_NEXT_CURSOR("X-Next-Cursor");
+
+    private static final HeaderName[] VALUES = values();
+    // Búsqueda exacta (constantes) y en minúsculas (cualquier otra variante)
+    private static final Map<String, HeaderName> BY_NAME = new HashMap<>();
+    private static final Map<String, HeaderName> BY_LOWER_NAME = new HashMap<>();
+
+    static {
+        for (HeaderName h : VALUES) {
+            BY_NAME.put(h.headerName, h);
+            BY_LOWER_NAME.put(h.headerName.toLowerCase(Locale.ROOT), h);
+        }
+    }
+
+    private final String headerName;
+    private final byte[] ascii;
+
+    HeaderName(String headerName) {
+        this.headerName = headerName;
+        this.ascii = headerName.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return canonical spelling used when the header is written
+     */
+    public String headerName() {
+        return headerName;
+    }
+
+    byte[] ascii() {
+        return ascii;
+    }
+
+    /**
+     * Case-insensitive lookup of a known header.
+     *
+     * @param name header name in any case
+     * @return matching constant or null if the header has no slot
+     */
+    public static HeaderName of(String name) {
+        if (name == null) return null;
+        HeaderName known = BY_NAME.get(name);
+        return known != null ? known : BY_LOWER_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Case-insensitive lookup of a known header directly from request bytes.
+     *
+     * @param bytes source bytes
+     * @param start offset of the name
+     * @param end end offset (exclusive) of the name
+     * @return matching constant or null
+     */
+    static HeaderName of(byte[] bytes, int start, int end) {
+        int length = end - start;
+        for (HeaderName h : VALUES) {
+            byte[] expected = h.ascii;
+            if (expected.length != length) continue;
+            int i = 0;
+            while (i < length && toLower(bytes[start + i]) == toLower(expected[i])) i++;
+            if (i == length) return h;
+        }
+        return null;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
@@ -0,0 +1,123 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Keep-alive state of a single client connection.
+ *
+ * <p>The server creates one instance per accepted socket and passes it to
+ * {@link RequestRouter#handleRequest(java.io.InputStream, java.io.OutputStream, HttpConnection)}
+ * for every request read from that socket. It counts the requests served and
+ * decides, together with the client's {@code Connection} header, whether the
+ * socket may be reused for another request. It also owns the
+ * {@link ResponseQueue} that keeps pipelined responses in request order and
+ * the {@link HttpRequestParser} holding bytes already read for the next request.</p>
+ *
+ * <p>Instances are not thread-safe: requests of one connection are handled
+ * one after another.</p>
+ */
+public class HttpConnection {
+    private final int idleTimeoutMillis;
+    private final int maxRequests;
+    private final ResponseQueue responseQueue;
+    private final HttpRequestParser requestParser = new HttpRequestParser();
+    private int requestCount;
+    // Ganchos opcionales del servidor (control de admisión)
+    private volatile BooleanSupplier keepAliveCondition;
+    private volatile LongConsumer latencyListener;
+
+    /**
+     * Connection without pipelining: each request is answered before the next one is read.
+     *
+     * @param idleTimeoutMillis time a persistent connection may stay idle between requests
+     * @param maxRequests maximum number of requests served on the connection
+     */
+    public HttpConnection(int idleTimeoutMillis, int maxRequests) {
+        this(idleTimeoutMillis, maxRequests, null);
+    }
+
+    /**
+     * @param idleTimeoutMillis time a persistent connection may stay idle between requests
+     * @param maxRequests maximum number of requests served on the connection
+     * @param pipelineExecutor executor running pipelined GET requests concurrently, or null to disable pipelining
+     */
+    public HttpConnection(int idleTimeoutMillis, int maxRequests, Executor pipelineExecutor) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxRequests = Math.max(1, maxRequests);
+        this.responseQueue = pipelineExecutor == null
+                ? ResponseQueue.sequential()
+                : new ResponseQueue(pipelineExecutor, ResponseQueue.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Connection that serves exactly one request and is then closed.
+     *
+     * @return non-persistent connection state
+     */
+    public static HttpConnection singleRequest() {
+        return new HttpConnection(0, 1);
+    }
+
+    /**
+     * Register a newly parsed request on this connection.
+     *
+     * @param request parsed request
+     * @return true if the connection stays open after the response to this request
+     */
+    public boolean onRequest(HttpRequest request) {
+        requestCount++;
+        BooleanSupplier condition = keepAliveCondition;
+        return request.isKeepAlive() && requestCount < maxRequests
+                && (condition == null || condition.getAsBoolean());
+    }
+
+    /**
+     * Extra condition checked for every request before keeping the connection open,
+     * e.g. to close persistent connections while the server is saturated.
+     *
+     * @param condition returns false to close the connection after the current request
+     */
+    public void setKeepAliveCondition(BooleanSupplier condition) {
+        this.keepAliveCondition = condition;
+    }
+
+    /**
+     * @param listener receives the processing time in nanoseconds of every request;
+     *                 may be called from pipeline threads
+     */
+    public void setLatencyListener(LongConsumer listener) {
+        this.latencyListener = listener;
+    }
+
+    /**
+     * Report the processing time of one request to the latency listener, if any.
+     *
+     * @param latencyNanos time spent processing the request
+     */
+    public void recordLatency(long latencyNanos) {
+        LongConsumer listener = latencyListener;
+        if (listener != null) listener.accept(latencyNanos);
+    }
+
+    /**
+     * @return true if the connection may serve more than one request
+     */
+    public boolean isPersistent() {
+        return maxRequests > 1;
+    }
+
+    public int getIdleTimeoutMillis() { return idleTimeoutMillis; }
+    public int getMaxRequests() { return maxRequests; }
+    public int getRequestCount() { return requestCount; }
+    public ResponseQueue getResponseQueue() { return responseQueue; }
+    public HttpRequestParser getRequestParser() { return requestParser; }
+
+    /**
+     * @return number of further requests allowed on this connection
+     */
+    public int remainingRequests() {
+        return Math.max(0, maxRequests - requestCount);
+    }
+}
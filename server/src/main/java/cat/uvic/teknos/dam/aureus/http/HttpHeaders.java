@@ -0,0 +1,300 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Case-insensitive collection of HTTP headers.
+ *
+ * <p>Headers listed in {@link HeaderName} live in fixed slots, so
+ * {@link #get(HeaderName)} is an array access; any other header is kept in a
+ * short list compared with {@code equalsIgnoreCase}. Headers filled by
+ * {@link HttpRequestParser} keep their value as a range of the raw header bytes
+ * and are decoded to a {@code String} only the first time they are read.</p>
+ *
+ * <p>The class is also a {@code Map<String, String>} whose {@code get},
+ * {@code containsKey}, {@code put} and {@code remove} ignore the case of the
+ * name, so existing map-based code keeps working. Iteration returns the known
+ * headers first (in {@link HeaderName} order) and then the others in insertion
+ * order. Instances are not thread-safe.</p>
+ */
+public class HttpHeaders extends AbstractMap<String, String> {
+
+    private static final HeaderName[] KNOWN = HeaderName.values();
+
+    // Slots de cabeceras conocidas: valor decodificado o rango en raw (offset, longitud)
+    private final String[] knownValues = new String[KNOWN.length];
+    private int[] knownOffsets;
+    private int[] knownLengths;
+    private long present; // bit i = cabecera conocida i presente
+
+    // Resto de cabeceras, en orden de inserción
+    private List<Other> others;
+
+    // Bytes originales de las cabeceras (sólo si vienen del parser)
+    private byte[] raw;
+    private int rawLength;
+
+    private static final class Other {
+        private final String name;
+        private String value;
+        private final int offset;
+        private final int length;
+
+        private Other(String name, String value, int offset, int length) {
+            this.name = name;
+            this.value = value;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public HttpHeaders() {
+    }
+
+    /**
+     * @param headers headers to copy (names in any case)
+     */
+    public HttpHeaders(Map<String, String> headers) {
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                put(h.getKey(), h.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param headers headers as a map, possibly already an {@code HttpHeaders}
+     * @return the same instance if it already is an {@code HttpHeaders}, otherwise a copy
+     */
+    public static HttpHeaders of(Map<String, String> headers) {
+        return headers instanceof HttpHeaders httpHeaders ? httpHeaders : new HttpHeaders(headers);
+    }
+
+    // --- Acceso por slot ---
+
+    /**
+     * @param name known header
+     * @return header value or null if absent
+     */
+    public String get(HeaderName name) {
+        int slot = name.ordinal();
+        if ((present & (1L << slot)) == 0) return null;
+        String value = knownValues[slot];
+        if (value == null) {
+            // Decodificación perezosa desde los bytes originales
+            value = decode(knownOffsets[slot], knownLengths[slot]);
+            knownValues[slot] = value;
+        }
+        return value;
+    }
+
+    public boolean contains(HeaderName name) {
+        return (present & (1L << name.ordinal())) != 0;
+    }
+
+    /**
+     * @param name known header
+     * @param value new value
+     * @return previous value or null
+     */
+    public String set(HeaderName name, String value) {
+        if (value == null) return remove(name);
+        String previous = get(name);
+        int slot = name.ordinal();
+        knownValues[slot] = value;
+        present |= 1L << slot;
+        return previous;
+    }
+
+    /**
+     * @param name known header
+     * @return removed value or null
+     */
+    public String remove(HeaderName name) {
+        String previous = get(name);
+        int slot = name.ordinal();
+        knownValues[slot] = null;
+        present &= ~(1L << slot);
+        return previous;
+    }
+
+    // --- Carga desde el parser ---
+
+    /**
+     * Append the raw bytes of one header line; value ranges refer to this copy.
+     *
+     * @return offset of the copied bytes inside the raw buffer
+     */
+    int appendRaw(ByteBuffer source, int start, int length) {
+        if (raw == null) {
+            raw = new byte[Math.max(256, length)];
+        } else if (rawLength + length > raw.length) {
+            byte[] bigger = new byte[Math.max(raw.length * 2, rawLength + length)];
+            System.arraycopy(raw, 0, bigger, 0, rawLength);
+            raw = bigger;
+        }
+        source.get(start, raw, rawLength, length);
+        int offset = rawLength;
+        rawLength += length;
+        return offset;
+    }
+
+    byte[] raw() {
+        return raw;
+    }
+
+    void putRaw(HeaderName name, int offset, int length) {
+        if (knownOffsets == null) {
+            knownOffsets = new int[KNOWN.length];
+            knownLengths = new int[KNOWN.length];
+        }
+        int slot = name.ordinal();
+        knownOffsets[slot] = offset;
+        knownLengths[slot] = length;
+        knownValues[slot] = null;
+        present |= 1L << slot;
+    }
+
+    void putRaw(String name, int offset, int length) {
+        removeOther(name);
+        others().add(new Other(name, null, offset, length));
+    }
+
+    private String decode(int offset, int length) {
+        return new String(raw, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // --- Map<String, String> sin distinguir mayúsculas ---
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String name)) return null;
+        HeaderName known = HeaderName.of(name);
+        if (known != null) return get(known);
+        Other other = findOther(name);
+        return other == null ? null : valueOf(other);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String name)) return false;
+        HeaderName known = HeaderName.of(name);
+        return known != null ? contains(known) : findOther(name) != null;
+    }
+
+    @Override
+    public String put(String name, String value) {
+        HeaderName known = HeaderName.of(name);
+        if (known != null) return set(known, value);
+        String previous = removeOther(name);
+        if (value != null) others().add(new Other(name, value, 0, 0));
+        return previous;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String name)) return null;
+        HeaderName known = HeaderName.of(name);
+        return known != null ? remove(known) : removeOther(name);
+    }
+
+    @Override
+    public int size() {
+        return Long.bitCount(present) + (others == null ? 0 : others.size());
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return HttpHeaders.this.size();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int slot = nextKnown(0);
+        private int otherIndex = 0;
+
+        @Override
+        public boolean hasNext() {
+            return slot < KNOWN.length || (others != null && otherIndex < others.size());
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (slot < KNOWN.length) {
+                HeaderName name = KNOWN[slot];
+                slot = nextKnown(slot + 1);
+                return new SimpleImmutableEntry<>(name.headerName(), get(name));
+            }
+            if (others == null || otherIndex >= others.size()) throw new NoSuchElementException();
+            Other other = others.get(otherIndex++);
+            return new SimpleImmutableEntry<>(other.name, valueOf(other));
+        }
+    }
+
+    /**
+     * Hand every header to the encoder in iteration order, copying values
+     * still held as raw bytes without decoding them.
+     */
+    void encodeTo(ResponseEncoder encoder) {
+        for (int slot = nextKnown(0); slot < KNOWN.length; slot = nextKnown(slot + 1)) {
+            String value = knownValues[slot];
+            if (value != null) encoder.header(KNOWN[slot], value);
+            else encoder.header(KNOWN[slot], raw, knownOffsets[slot], knownLengths[slot]);
+        }
+        if (others == null) return;
+        for (Other other : others) {
+            if (other.value != null) encoder.header(other.name, other.value);
+            else encoder.header(other.name, raw, other.offset, other.length);
+        }
+    }
+
+    private int nextKnown(int from) {
+        for (int i = from; i < KNOWN.length; i++) {
+            if ((present & (1L << i)) != 0) return i;
+        }
+        return KNOWN.length;
+    }
+
+    private List<Other> others() {
+        if (others == null) others = new ArrayList<>(4);
+        return others;
+    }
+
+    private Other findOther(String name) {
+        if (others == null) return null;
+        for (Other other : others) {
+            if (other.name.equalsIgnoreCase(name)) return other;
+        }
+        return null;
+    }
+
+    private String removeOther(String name) {
+        Other other = findOther(name);
+        if (other == null) return null;
+        others.remove(other);
+        return valueOf(other);
+    }
+
+    private String valueOf(Other other) {
+        if (other.value == null) other.value = decode(other.offset, other.length);
+        return other.value;
+    }
+}
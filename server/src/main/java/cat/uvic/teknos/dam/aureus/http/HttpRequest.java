@@ -1,129 +1,186 @@
 package cat.uvic.teknos.dam.aureus.http;
 
-import java.io.ByteArrayOutputStream;
+import cat.uvic.teknos.dam.aureus.http.exception.ConnectionClosedException;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Map;
 
 /**
  * Represents a parsed HTTP request with method, path, headers and body.
  *
+ * <p>The request target is split at the first {@code ?}: {@link #getPath()}
+ * is what routes match, and the query string is available parsed through
+ * {@link #getQueryParams()}.</p>
+ *
  * <p>The {@link #parse(InputStream)} method parses a raw HTTP request from
  * an InputStream and returns a populated {@code HttpRequest} instance.</p>
+ *
+ * <p>The body is a {@link RequestBody}: large bodies read from a blocking
+ * connection are streamed ({@link #getBodyStream()}) instead of being loaded
+ * into memory; {@link #getBody()} still returns the whole body as text.</p>
  */
 public class HttpRequest {
+    public static final String HTTP_1_0 = "HTTP/1.0";
+    public static final String HTTP_1_1 = "HTTP/1.1";
+    // Codificaciones que aplica CompressionFilter, cuyas etiquetas también valen en If-None-Match
+    private static final String[] ETAG_CODINGS = {"gzip", "deflate"};
+
     private final String method;
     private final String path;
-    private final Map<String, String> headers;
-    private final String body;
+    private final String rawQuery;
+    private QueryParams queryParams;
+    private final String version;
+    private final HttpHeaders headers;
+    private final RequestBody body;
 
     public HttpRequest(String method, String path, Map<String, String> headers, String body) {
+        this(method, path, HTTP_1_1, headers, body);
+    }
+
+    public HttpRequest(String method, String path, String version, Map<String, String> headers, String body) {
+        this(method, path, version, headers, RequestBody.of(body));
+    }
+
+    /**
+     * @param target request target, path and optional query string
+     */
+    public HttpRequest(String method, String target, String version, Map<String, String> headers, RequestBody body) {
         this.method = method;
-        this.path = path;
-        this.headers = headers;
-        this.body = body;
+        int query = target == null ? -1 : target.indexOf('?');
+        this.path = query < 0 ? target : target.substring(0, query);
+        this.rawQuery = query < 0 ? null : target.substring(query + 1);
+        this.version = version == null ? HTTP_1_1 : version;
+        this.headers = HttpHeaders.of(headers);
+        this.body = body == null ? RequestBody.EMPTY : body;
     }
 
     public String getMethod() { return method; }
+    /** @return path of the request target, without the query string */
     public String getPath() { return path; }
-    public Map<String,String> getHeaders() { return headers; }
-    public String getBody() { return body; }
+    /** @return query string without the {@code ?}, or null if the target has none */
+    public String getRawQuery() { return rawQuery; }
+    /** @return request target as received: path plus {@code ?query} if present */
+    public String getTarget() { return rawQuery == null ? path : path + "?" + rawQuery; }
 
     /**
-     * Parse a raw HTTP request from the provided InputStream.
+     * @return parameters of the query string, parsed on first use
+     * @throws cat.uvic.teknos.dam.aureus.http.exception.HttpException 400 if the query is malformed
+     */
+    public QueryParams getQueryParams() {
+        if (queryParams == null) queryParams = QueryParams.parse(rawQuery);
+        return queryParams;
+    }
+    public String getVersion() { return version; }
+    public HttpHeaders getHeaders() { return headers; }
+
+    /**
+     * @return whole body as UTF-8 text; a streamed body is loaded into memory
+     */
+    public String getBody() { return body.asString(); }
+
+    public RequestBody getRequestBody() { return body; }
+
+    /**
+     * @return stream over the body, bounded by {@code Content-Length} or the last chunk
+     */
+    public InputStream getBodyStream() { return body.stream(); }
+
+    public ReadableByteChannel getBodyChannel() { return body.channel(); }
+
+    /**
+     * Whether the client allows the connection to stay open after this request.
      *
-     * <p>The method reads headers until the CRLFCRLF sequence and then
-     * reads the body according to the Content-Length header (if present).</p>
+     * <p>HTTP/1.1 connections are persistent unless the client sends
+     * {@code Connection: close}; HTTP/1.0 connections are closed unless the
+     * client sends {@code Connection: keep-alive}.</p>
      *
-     * @param input input stream containing the raw HTTP request
-     * @return parsed {@link HttpRequest}
-     * @throws IOException on I/O or protocol parsing errors
+     * @return true if the connection may be reused for another request
      */
-    public static HttpRequest parse(InputStream input) throws IOException {
-        // Read bytes until the sequence CRLF CRLF is found, which marks the end of headers
-        ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream();
-        int b;
-        // We'll keep a sliding window of the last 4 bytes to detect \r\n\r\n
-        byte[] last4 = new byte[4];
-        int lastCount = 0;
-        while ((b = input.read()) != -1) {
-            headerBuffer.write(b);
-            // shift last4
-            if (lastCount < 4) {
-                last4[lastCount++] = (byte) b;
-            } else {
-                last4[0] = last4[1];
-                last4[1] = last4[2];
-                last4[2] = last4[3];
-                last4[3] = (byte) b;
-            }
-            if (lastCount == 4 && last4[0] == '\r' && last4[1] == '\n' && last4[2] == '\r' && last4[3] == '\n') {
-                break;
-            }
-        }
-
-        if (headerBuffer.size() == 0) {
-            throw new IOException("Empty request");
+    public boolean isKeepAlive() {
+        String connection = headers.get(HeaderName.CONNECTION);
+        if (connection != null) {
+            if (connection.equalsIgnoreCase("close")) return false;
+            if (connection.equalsIgnoreCase("keep-alive")) return true;
         }
+        return !HTTP_1_0.equalsIgnoreCase(version);
+    }
 
-        byte[] headerBytes = headerBuffer.toByteArray();
-        // find header end index (position of the \r\n\r\n)
-        int headerEnd = -1;
-        for (int i = 0; i < headerBytes.length - 3; i++) {
-            if (headerBytes[i] == '\r' && headerBytes[i+1] == '\n' && headerBytes[i+2] == '\r' && headerBytes[i+3] == '\n') {
-                headerEnd = i;
-                break;
-            }
-        }
-        if (headerEnd == -1) {
-            throw new IOException("Invalid HTTP header: no header-body separator");
+    /**
+     * Whether the response may end with trailer fields, as a streamed
+     * response does with its {@code X-Body-Hash}.
+     *
+     * <p>Requires HTTP/1.1 and {@code TE: trailers}; other clients would
+     * discard the hash.</p>
+     *
+     * @return true if the client accepts trailers
+     */
+    public boolean acceptsTrailers() {
+        if (HTTP_1_0.equalsIgnoreCase(version)) return false;
+        String te = headers.get(HeaderName.TE);
+        if (te == null) return false;
+        for (String coding : te.split(",")) {
+            if (coding.trim().regionMatches(true, 0, "trailers", 0, "trailers".length())) return true;
         }
+        return false;
+    }
 
-        String headerStr = new String(headerBytes, 0, headerEnd, StandardCharsets.UTF_8);
-        String[] lines = headerStr.split("\r\n");
-        if (lines.length == 0) throw new IOException("Invalid request line");
-        String requestLine = lines[0];
-        String[] parts = requestLine.split(" ", 3);
-        if (parts.length < 2) throw new IOException("Invalid request line: " + requestLine);
-        String method = parts[0];
-        String path = parts[1];
-
-        Map<String, String> headers = new HashMap<>();
-        for (int i = 1; i < lines.length; i++) {
-            String line = lines[i];
-            if (line == null || line.isEmpty()) continue;
-            int idx = line.indexOf(':');
-            if (idx > 0) {
-                String name = line.substring(0, idx).trim();
-                String value = line.substring(idx + 1).trim();
-                headers.put(name, value);
+    /**
+     * Whether the client already holds the representation tagged {@code etag},
+     * according to its {@code If-None-Match} header.
+     *
+     * <p>Uses the weak comparison the header calls for: a {@code W/} prefix
+     * is ignored, and {@code *} matches any tag. The tags of the compressed
+     * representations, which carry the coding as a suffix (see
+     * {@code CompressionFilter}), match as well.</p>
+     *
+     * @param etag quoted entity tag of the current representation
+     * @return true if a {@code 304 Not Modified} can be sent instead of the body
+     */
+    public boolean matchesIfNoneMatch(String etag) {
+        String ifNoneMatch = headers.get(HeaderName.IF_NONE_MATCH);
+        if (ifNoneMatch == null || etag == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+            for (String coding : ETAG_CODINGS) {
+                if (tag.equals(codedETag(etag, coding))) return true;
             }
         }
+        return false;
+    }
 
-        // Determine content length (default 0)
-        String contentLengthValue = headers.getOrDefault("Content-Length", headers.getOrDefault("content-length", "0"));
-        int contentLength = 0;
-        try { contentLength = Integer.parseInt(contentLengthValue); } catch (NumberFormatException ignored) {}
-
-        // Compute any body bytes already read after the header end
-        int alreadyRead = headerBytes.length - (headerEnd + 4);
-        ByteArrayOutputStream bodyOut = new ByteArrayOutputStream();
-        if (alreadyRead > 0) {
-            bodyOut.write(headerBytes, headerEnd + 4, alreadyRead);
-        }
-
-        // Read remaining bytes if any
-        while (bodyOut.size() < contentLength) {
-            int toRead = contentLength - bodyOut.size();
-            byte[] buf = new byte[Math.min(1024, toRead)];
-            int n = input.read(buf);
-            if (n == -1) break;
-            bodyOut.write(buf, 0, n);
-        }
+    /**
+     * Tag of a representation sent with a content coding. A strong tag must
+     * identify one exact byte sequence, so each coding gets its own:
+     * {@code "coins-1"} becomes {@code "coins-1-gzip"}. Weak tags are kept.
+     *
+     * @param etag quoted entity tag of the uncoded representation
+     * @param coding content coding, e.g. {@code gzip}
+     * @return tag of the coded representation
+     */
+    public static String codedETag(String etag, String coding) {
+        if (etag == null || etag.startsWith("W/") || etag.length() < 2 || !etag.endsWith("\"")) return etag;
+        return etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+    }
 
-        String body = bodyOut.size() == 0 ? "" : new String(bodyOut.toByteArray(), StandardCharsets.UTF_8);
-        return new HttpRequest(method, path, headers, body);
+    /**
+     * Parse a raw HTTP request from the provided InputStream.
+     *
+     * <p>Convenience for streams that carry a single request: it uses a fresh
+     * {@link HttpRequestParser}, which may read past the end of the request.
+     * Persistent connections keep one parser per connection instead (see
+     * {@link HttpConnection#getRequestParser()}).</p>
+     *
+     * @param input input stream containing the raw HTTP request
+     * @return parsed {@link HttpRequest}
+     * @throws ConnectionClosedException if the stream ends before the first byte of a request
+     * @throws IOException on I/O or protocol parsing errors
+     */
+    public static HttpRequest parse(InputStream input) throws IOException {
+        return new HttpRequestParser().parse(input);
     }
 }
@@ -0,0 +1,521 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.ConnectionClosedException;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental HTTP/1.1 request parser working directly on a {@link ByteBuffer}.
+ *
+ * <p>The parser is a small state machine (request line, headers, body) that
+ * can be fed any amount of bytes at a time: {@link #parse(ByteBuffer)} consumes
+ * every complete line and every body byte available and returns {@code null}
+ * until the request is complete, so it resumes where it stopped after a partial
+ * read. It is used by the NIO engine, whose channels own the buffer, and
+ * through {@link #parse(InputStream)} by blocking connections, where the parser
+ * keeps its own reusable buffer and the bytes of the next pipelined request.</p>
+ *
+ * <p>Bodies delimited by {@code Content-Length} and chunked bodies
+ * ({@code Transfer-Encoding: chunked}) are supported. With a {@code ByteBuffer}
+ * the body is collected in memory; with an {@code InputStream} a body that did
+ * not arrive together with the headers is returned as a stream over the
+ * connection (see {@link RequestBody}), so its size does not change the memory
+ * used per request. The unread rest of that body is skipped by the next
+ * {@code parse} call.</p>
+ *
+ * <p>Request line and headers are decoded straight from the buffer: method and
+ * version resolve to shared constants, known header names to their
+ * {@link HeaderName} slot, and header values are only decoded when read (see
+ * {@link HttpHeaders}), so no intermediate line {@code String}s are created. Header and body sizes are
+ * bounded; exceeding them raises an {@link HttpException} with status 431 or
+ * 413, and malformed input raises 400.</p>
+ *
+ * <p>One parser belongs to one connection and is not thread-safe.</p>
+ */
+public class HttpRequestParser {
+
+    public static final int DEFAULT_MAX_HEADER_BYTES = 16 * 1024;
+    public static final int DEFAULT_MAX_BODY_BYTES = 8 * 1024 * 1024;
+
+    // Tamaño inicial del buffer propio usado con InputStream
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    // Límite de una línea de tamaño de chunk o de trailer
+    private static final int MAX_CHUNK_LINE_BYTES = 4096;
+
+    private static final String[] KNOWN_METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH"};
+    private static final byte[][] KNOWN_METHOD_BYTES = toAscii(KNOWN_METHODS);
+    private static final byte[] HTTP_1_1_BYTES = HttpRequest.HTTP_1_1.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_1_0_BYTES = HttpRequest.HTTP_1_0.getBytes(StandardCharsets.US_ASCII);
+
+    // STREAM: cabeceras completas, el cuerpo se entrega como stream (sólo parse(InputStream))
+    private enum State { REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILERS, STREAM }
+
+    private final int maxHeaderBytes;
+    private final int maxBodyBytes;
+
+    // Estado de la petición en curso
+    private State state = State.REQUEST_LINE;
+    private int headerBytes;
+    private int scanned; // bytes ya revisados de la línea parcial, para no volver a buscar CRLF
+    private String method;
+    private String path;
+    private String version;
+    private HttpHeaders headers;
+    private int contentLength;
+    private boolean contentLengthSeen;
+    private boolean chunked;
+    private long chunkRemaining;
+    private byte[] body;
+    private int bodyRead;
+
+    // Buffer propio (modo lectura) para parse(InputStream)
+    private ByteBuffer inputBuffer;
+    // Cuerpo en streaming de la última petición; se descarta lo no leído antes de la siguiente
+    private InputStream pendingBody;
+    // Duración de la última llamada a parse(InputStream), desde el primer byte de la petición
+    private long lastParseNanos;
+
+    public HttpRequestParser() {
+        this(DEFAULT_MAX_HEADER_BYTES, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * @param maxHeaderBytes maximum size of request line plus headers
+     * @param maxBodyBytes maximum accepted {@code Content-Length}
+     */
+    public HttpRequestParser(int maxHeaderBytes, int maxBodyBytes) {
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Consume bytes from the buffer and advance the request being parsed.
+     *
+     * <p>The buffer must be in read mode. Complete lines and body bytes are
+     * consumed (the position advances past them); an incomplete line is left in
+     * the buffer, so the caller compacts it and appends the next read.</p>
+     *
+     * @param buffer bytes received from the connection
+     * @return the complete request, or null if more bytes are needed
+     * @throws HttpException 400 for malformed input, 413 or 431 when a size limit is exceeded
+     */
+    public HttpRequest parse(ByteBuffer buffer) {
+        return advance(buffer, false);
+    }
+
+    // streamBody: detenerse tras las cabeceras (estado STREAM) si el cuerpo no está ya en el buffer
+    private HttpRequest advance(ByteBuffer buffer, boolean streamBody) {
+        while (true) {
+            switch (state) {
+                case REQUEST_LINE, HEADERS -> {
+                    int start = buffer.position();
+                    int eol = findLineEnd(buffer, start);
+                    if (eol < 0) {
+                        if (headerBytes + (buffer.limit() - start) > maxHeaderBytes) {
+                            throw new HttpException(431, "Request Header Fields Too Large", "Request headers exceed " + maxHeaderBytes + " bytes");
+                        }
+                        return null;
+                    }
+                    headerBytes += eol + 2 - start;
+                    if (headerBytes > maxHeaderBytes) {
+                        throw new HttpException(431, "Request Header Fields Too Large", "Request headers exceed " + maxHeaderBytes + " bytes");
+                    }
+                    buffer.position(eol + 2);
+                    scanned = 0;
+                    if (state == State.REQUEST_LINE) {
+                        // Se toleran líneas vacías antes de la línea de petición (RFC 9112 2.2)
+                        if (eol > start) {
+                            parseRequestLine(buffer, start, eol);
+                            state = State.HEADERS;
+                        }
+                    } else if (eol == start) {
+                        if (streamBody && (chunked || contentLength > buffer.remaining())) {
+                            state = State.STREAM;
+                            return null;
+                        }
+                        startBody();
+                    } else {
+                        parseHeader(buffer, start, eol);
+                    }
+                }
+                case BODY -> {
+                    int n = Math.min(buffer.remaining(), contentLength - bodyRead);
+                    buffer.get(body, bodyRead, n);
+                    bodyRead += n;
+                    if (bodyRead < contentLength) return null;
+                    return complete();
+                }
+                case CHUNK_SIZE, CHUNK_DATA_END, TRAILERS -> {
+                    int start = buffer.position();
+                    int eol = findLineEnd(buffer, start);
+                    if (eol < 0) {
+                        if (buffer.limit() - start > MAX_CHUNK_LINE_BYTES) throw badRequest("Chunk line too long");
+                        return null;
+                    }
+                    buffer.position(eol + 2);
+                    scanned = 0;
+                    if (state == State.CHUNK_DATA_END) {
+                        if (eol != start) throw badRequest("Missing CRLF after chunk data");
+                        state = State.CHUNK_SIZE;
+                    } else if (state == State.TRAILERS) {
+                        // Los trailers se ignoran; la línea vacía cierra el mensaje
+                        if (eol == start) return complete();
+                    } else {
+                        startChunk(parseChunkSize(buffer, start, eol));
+                    }
+                }
+                case CHUNK_DATA -> {
+                    int n = (int) Math.min(buffer.remaining(), chunkRemaining);
+                    buffer.get(body, bodyRead, n);
+                    bodyRead += n;
+                    chunkRemaining -= n;
+                    if (chunkRemaining > 0) return null;
+                    state = State.CHUNK_DATA_END;
+                }
+                case STREAM -> {
+                    return null;
+                }
+            }
+            if (state == State.BODY && contentLength == 0) return complete();
+        }
+    }
+
+    /**
+     * Read the next request from a blocking stream.
+     *
+     * <p>Bytes read past the end of the request stay in the parser's buffer and
+     * are used by the next call, so the same parser must be used for every
+     * request of a connection. A body that is not yet buffered is returned as
+     * a stream that reads from {@code input}; it must be consumed (or left for
+     * the next call to skip) before another request is parsed.</p>
+     *
+     * @param input connection input stream
+     * @return parsed request
+     * @throws ConnectionClosedException if the stream ends before the first byte of a request
+     * @throws IOException on I/O errors or if the stream ends in the middle of a request
+     * @throws HttpException for malformed or oversized requests
+     */
+    public HttpRequest parse(InputStream input) throws IOException {
+        if (inputBuffer == null) {
+            inputBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).flip();
+        }
+        if (pendingBody != null) {
+            // La siguiente petición empieza donde acaba el cuerpo anterior
+            InputStream previous = pendingBody;
+            pendingBody = null;
+            previous.close();
+        }
+        // El tiempo de espera entre peticiones no cuenta: se mide desde que hay bytes
+        long start = inputBuffer.hasRemaining() ? System.nanoTime() : 0;
+        while (true) {
+            HttpRequest request = advance(inputBuffer, true);
+            if (request == null && state == State.STREAM) request = streamBody(input);
+            if (request != null) {
+                lastParseNanos = System.nanoTime() - start;
+                return request;
+            }
+
+            inputBuffer.compact();
+            if (!inputBuffer.hasRemaining()) {
+                // Línea más larga que el buffer: crecer (parse() ya limita el tamaño total)
+                ByteBuffer bigger = ByteBuffer.allocate(inputBuffer.capacity() * 2);
+                inputBuffer.flip();
+                bigger.put(inputBuffer);
+                inputBuffer = bigger;
+            }
+            int n = input.read(inputBuffer.array(), inputBuffer.arrayOffset() + inputBuffer.position(), inputBuffer.remaining());
+            if (n > 0) {
+                if (start == 0) start = System.nanoTime();
+                inputBuffer.position(inputBuffer.position() + n);
+            }
+            inputBuffer.flip();
+            if (n == -1) {
+                boolean started = state != State.REQUEST_LINE || inputBuffer.hasRemaining();
+                reset();
+                inputBuffer.clear().flip();
+                if (!started) throw new ConnectionClosedException("Empty request");
+                throw new IOException("Connection closed in the middle of a request");
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds the last {@link #parse(InputStream)} took from the first
+     *         byte of the request until its headers were parsed
+     */
+    public long lastParseNanos() {
+        return lastParseNanos;
+    }
+
+    /**
+     * @return true if bytes of a following request are already buffered by {@link #parse(InputStream)}
+     */
+    public boolean hasBufferedInput() {
+        // Con un cuerpo en streaming pendiente el buffer aún contiene bytes de ese cuerpo
+        return pendingBody == null && inputBuffer != null && inputBuffer.hasRemaining();
+    }
+
+    /**
+     * Discard the request being parsed (the buffered input is kept).
+     */
+    public void reset() {
+        state = State.REQUEST_LINE;
+        headerBytes = 0;
+        scanned = 0;
+        method = null;
+        path = null;
+        version = null;
+        headers = null;
+        contentLength = 0;
+        contentLengthSeen = false;
+        chunked = false;
+        chunkRemaining = 0;
+        body = null;
+        bodyRead = 0;
+    }
+
+    private HttpRequest complete() {
+        byte[] bytes = body == null || bodyRead == body.length ? body : Arrays.copyOf(body, bodyRead);
+        HttpRequest request = new HttpRequest(method, path, version, headers, RequestBody.of(bytes));
+        reset();
+        return request;
+    }
+
+    private HttpRequest streamBody(InputStream input) {
+        InputStream source = new BufferedSource(input);
+        InputStream stream = chunked
+                ? new ChunkedInputStream(source, maxBodyBytes)
+                : new FixedLengthInputStream(source, contentLength);
+        RequestBody requestBody = RequestBody.stream(stream, chunked ? -1 : contentLength);
+        HttpRequest request = new HttpRequest(method, path, version, headers, requestBody);
+        pendingBody = stream;
+        reset();
+        return request;
+    }
+
+    /**
+     * Reads first the bytes left in the parser's buffer and then the
+     * connection; the bytes after the body stay in the buffer for the next request.
+     */
+    private final class BufferedSource extends InputStream {
+        private final InputStream input;
+
+        private BufferedSource(InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!inputBuffer.hasRemaining() && !fill()) return -1;
+            return inputBuffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!inputBuffer.hasRemaining()) {
+                // Lecturas grandes directamente del socket, sin pasar por el buffer
+                if (len >= inputBuffer.capacity()) return input.read(b, off, len);
+                if (!fill()) return -1;
+            }
+            int n = Math.min(len, inputBuffer.remaining());
+            inputBuffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return inputBuffer.remaining() + input.available();
+        }
+
+        private boolean fill() throws IOException {
+            inputBuffer.clear();
+            int n = input.read(inputBuffer.array(), inputBuffer.arrayOffset(), inputBuffer.capacity());
+            inputBuffer.limit(Math.max(n, 0));
+            return n > 0;
+        }
+    }
+
+    // Devuelve la posición del '\r' de "\r\n" o -1; reanuda la búsqueda donde se quedó
+    private int findLineEnd(ByteBuffer buffer, int start) {
+        int limit = buffer.limit();
+        for (int i = start + scanned; i < limit - 1; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') return i;
+        }
+        scanned = Math.max(0, limit - 1 - start);
+        return -1;
+    }
+
+    private void parseRequestLine(ByteBuffer buffer, int start, int end) {
+        int sp1 = indexOf(buffer, start, end, (byte) ' ');
+        if (sp1 <= start) throw badRequest("Invalid request line");
+        int sp2 = indexOf(buffer, sp1 + 1, end, (byte) ' ');
+        int pathEnd = sp2 < 0 ? end : sp2;
+        if (pathEnd == sp1 + 1) throw badRequest("Invalid request line");
+
+        method = intern(buffer, start, sp1, KNOWN_METHOD_BYTES, KNOWN_METHODS);
+        path = decode(buffer, sp1 + 1, pathEnd, StandardCharsets.UTF_8);
+        if (sp2 < 0) {
+            version = HttpRequest.HTTP_1_1;
+        } else if (regionEquals(buffer, sp2 + 1, end, HTTP_1_1_BYTES)) {
+            version = HttpRequest.HTTP_1_1;
+        } else if (regionEquals(buffer, sp2 + 1, end, HTTP_1_0_BYTES)) {
+            version = HttpRequest.HTTP_1_0;
+        } else {
+            version = decode(buffer, sp2 + 1, end, StandardCharsets.US_ASCII).trim();
+        }
+        headers = new HttpHeaders();
+    }
+
+    private void parseHeader(ByteBuffer buffer, int start, int end) {
+        int colon = indexOf(buffer, start, end, (byte) ':');
+        if (colon <= start) return; // línea sin nombre: se ignora, como el parser anterior
+
+        // Copiar la línea una vez; nombre y valor se referencian como rangos de esa copia
+        int base = headers.appendRaw(buffer, start, end - start);
+        byte[] raw = headers.raw();
+        int nameEnd = trimEnd(raw, base, base + (colon - start));
+        int valueStart = trimStart(raw, base + (colon - start) + 1, base + (end - start));
+        int valueEnd = trimEnd(raw, valueStart, base + (end - start));
+
+        HeaderName known = HeaderName.of(raw, base, nameEnd);
+        if (known != null) {
+            headers.putRaw(known, valueStart, valueEnd - valueStart);
+            if (known == HeaderName.CONTENT_LENGTH) {
+                int length = parseContentLength(raw, valueStart, valueEnd);
+                // Repetido sólo vale con el mismo valor; si difieren no se sabe dónde acaba el cuerpo (RFC 9112 6.3)
+                if (contentLengthSeen && length != contentLength) throw badRequest("Conflicting Content-Length headers");
+                contentLength = length;
+                contentLengthSeen = true;
+            } else if (known == HeaderName.TRANSFER_ENCODING) {
+                // Sólo se implementa chunked; con él se ignora Content-Length (RFC 9112 6.3)
+                String codings = headers.get(HeaderName.TRANSFER_ENCODING);
+                if (!codings.equalsIgnoreCase("chunked")) {
+                    throw new HttpException(501, "Not Implemented", "Unsupported Transfer-Encoding: " + codings);
+                }
+                chunked = true;
+            }
+        } else {
+            headers.putRaw(new String(raw, base, nameEnd - base, StandardCharsets.US_ASCII), valueStart, valueEnd - valueStart);
+        }
+    }
+
+    private int parseContentLength(byte[] raw, int start, int end) {
+        if (start == end) throw badRequest("Invalid Content-Length");
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = raw[i];
+            if (b < '0' || b > '9') throw badRequest("Invalid Content-Length");
+            value = value * 10 + (b - '0');
+            if (value > maxBodyBytes) {
+                throw new HttpException(413, "Payload Too Large", "Request body exceeds " + maxBodyBytes + " bytes");
+            }
+        }
+        return (int) value;
+    }
+
+    private void startBody() {
+        bodyRead = 0;
+        if (chunked) {
+            state = State.CHUNK_SIZE;
+            body = null;
+            return;
+        }
+        state = State.BODY;
+        body = contentLength == 0 ? null : new byte[contentLength];
+    }
+
+    private void startChunk(long size) {
+        if (size == 0) {
+            state = State.TRAILERS;
+            return;
+        }
+        if (bodyRead + size > maxBodyBytes) {
+            throw new HttpException(413, "Payload Too Large", "Request body exceeds " + maxBodyBytes + " bytes");
+        }
+        int needed = (int) (bodyRead + size);
+        if (body == null || body.length < needed) {
+            int capacity = body == null ? needed : Math.max(needed, Math.min(maxBodyBytes, body.length * 2));
+            body = body == null ? new byte[capacity] : Arrays.copyOf(body, capacity);
+        }
+        chunkRemaining = size;
+        state = State.CHUNK_DATA;
+    }
+
+    // Tamaño en hexadecimal, con extensiones opcionales tras ';'
+    private long parseChunkSize(ByteBuffer buffer, int start, int end) {
+        long size = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            int d = Character.digit(buffer.get(i), 16);
+            if (d < 0) {
+                byte b = buffer.get(i);
+                if (b == ';' || b == ' ' || b == '\t') break;
+                throw badRequest("Invalid chunk size");
+            }
+            if (++digits > 15) throw badRequest("Invalid chunk size");
+            size = size * 16 + d;
+        }
+        if (digits == 0) throw badRequest("Invalid chunk size");
+        return size;
+    }
+
+    // Devuelve la constante conocida si coincide; si no, crea el String
+    private static String intern(ByteBuffer buffer, int start, int end, byte[][] candidates, String[] values) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (regionEquals(buffer, start, end, candidates[i])) return values[i];
+        }
+        return decode(buffer, start, end, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean regionEquals(ByteBuffer buffer, int start, int end, byte[] expected) {
+        if (end - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(start + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end, java.nio.charset.Charset charset) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, charset);
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, charset);
+    }
+
+    private static int indexOf(ByteBuffer buffer, int start, int end, byte target) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == target) return i;
+        }
+        return -1;
+    }
+
+    private static int trimStart(byte[] raw, int start, int end) {
+        while (start < end && (raw[start] == ' ' || raw[start] == '\t')) start++;
+        return start;
+    }
+
+    private static int trimEnd(byte[] raw, int start, int end) {
+        while (end > start && (raw[end - 1] == ' ' || raw[end - 1] == '\t')) end--;
+        return end;
+    }
+
+    private static HttpException badRequest(String message) {
+        return new HttpException(400, "Bad Request", message);
+    }
+
+    private static byte[][] toAscii(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+
+/**
+ * Path variables extracted by {@link RouteTrie} for a matched {@link Route},
+ * e.g. {@code id=7, coinId=42} for {@code /collections/{id}/coins/{coinId}}.
+ */
+public final class PathParams {
+
+    public static final PathParams EMPTY = new PathParams(new String[0], new String[0]);
+
+    private final String[] names;
+    private final String[] values;
+
+    PathParams(String[] names, String[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * @param name variable name as declared in the pattern ({@code *} for a wildcard)
+     * @return raw value or null if the route has no such variable
+     */
+    public String get(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return values[i];
+        }
+        return null;
+    }
+
+    /**
+     * @param name variable name
+     * @return value as int
+     * @throws HttpException 400 if the variable is missing or out of range
+     */
+    public int getInt(String name) {
+        String value = get(name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpException(400, "Bad Request", "Invalid path parameter " + name + ": " + value);
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
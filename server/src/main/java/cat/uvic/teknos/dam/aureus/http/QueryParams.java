@@ -0,0 +1,125 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameters of the query string of a request target, e.g. {@code limit=50}
+ * and {@code cursor=120} for {@code /coins?limit=50&cursor=120}.
+ *
+ * <p>Names and values are percent-decoded, with {@code +} read as a space.
+ * A name may repeat; {@link #get(String)} returns its first value.</p>
+ */
+public final class QueryParams {
+
+    public static final QueryParams EMPTY = new QueryParams(Map.of());
+
+    private final Map<String, List<String>> values;
+
+    private QueryParams(Map<String, List<String>> values) {
+        this.values = values;
+    }
+
+    /**
+     * @param rawQuery text after the {@code ?}, without it; null or empty for no parameters
+     * @return parsed parameters
+     * @throws HttpException 400 if the query has an invalid percent escape
+     */
+    public static QueryParams parse(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return EMPTY;
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = decode(eq < 0 ? pair : pair.substring(0, eq));
+            String value = eq < 0 ? "" : decode(pair.substring(eq + 1));
+            values.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+        }
+        return new QueryParams(values);
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new HttpException(400, "Bad Request", "Invalid query string escape: " + text);
+        }
+    }
+
+    /**
+     * @param name parameter name
+     * @return first value, empty for a name without {@code =}, or null if absent
+     */
+    public String get(String name) {
+        List<String> list = values.get(name);
+        return list == null ? null : list.get(0);
+    }
+
+    /**
+     * @param name parameter name
+     * @return every value in order of appearance; empty if absent
+     */
+    public List<String> getAll(String name) {
+        return values.getOrDefault(name, List.of());
+    }
+
+    /**
+     * @param name parameter name
+     * @param defaultValue value used when the parameter is absent or empty
+     * @return value as int
+     * @throws HttpException 400 if the value is not an integer
+     */
+    public int getInt(String name, int defaultValue) {
+        Integer value = getInteger(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param name parameter name
+     * @return value as Integer, or null if the parameter is absent or empty
+     * @throws HttpException 400 if the value is not an integer
+     */
+    public Integer getInteger(String name) {
+        String value = get(name);
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(name, value);
+        }
+    }
+
+    /**
+     * @param name parameter name
+     * @return value as decimal number, or null if the parameter is absent or empty
+     * @throws HttpException 400 if the value is not a number
+     */
+    public BigDecimal getDecimal(String name) {
+        String value = get(name);
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(name, value);
+        }
+    }
+
+    private static HttpException invalid(String name, String value) {
+        return new HttpException(400, "Bad Request", "Invalid query parameter " + name + ": " + value);
+    }
+
+    public boolean contains(String name) {
+        return values.containsKey(name);
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
@@ -0,0 +1,135 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Body of an {@link HttpRequest}.
+ *
+ * <p>A body is either buffered (its bytes are already in memory, as with the
+ * NIO engine or small bodies that arrived together with the headers) or
+ * streamed from the connection, bounded by {@code Content-Length} or decoded
+ * from the chunked transfer coding. A streamed body can be read only once and
+ * must be read before the next request of the connection is parsed;
+ * {@link #bytes()} and {@link #asString()} load whatever is left into memory
+ * and are meant for small payloads.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class RequestBody {
+
+    public static final RequestBody EMPTY = new RequestBody(new byte[0], null, 0);
+
+    private final long length;
+    private byte[] bytes;
+    private InputStream stream;
+    private String text;
+
+    private RequestBody(byte[] bytes, InputStream stream, long length) {
+        this.bytes = bytes;
+        this.stream = stream;
+        this.length = length;
+    }
+
+    /**
+     * @param bytes body already in memory
+     * @return buffered body
+     */
+    public static RequestBody of(byte[] bytes) {
+        return bytes == null || bytes.length == 0 ? EMPTY : new RequestBody(bytes, null, bytes.length);
+    }
+
+    /**
+     * @param text body as text, encoded as UTF-8
+     * @return buffered body
+     */
+    public static RequestBody of(String text) {
+        if (text == null || text.isEmpty()) return EMPTY;
+        RequestBody body = of(text.getBytes(StandardCharsets.UTF_8));
+        body.text = text;
+        return body;
+    }
+
+    /**
+     * @param stream body bytes, ending at the end of the body
+     * @param length number of bytes, or -1 if unknown (chunked)
+     * @return streamed body
+     */
+    public static RequestBody stream(InputStream stream, long length) {
+        return new RequestBody(null, stream, length);
+    }
+
+    /**
+     * @return body size in bytes, or -1 if it is not known in advance
+     */
+    public long length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * @return true if the body is in memory and can be read any number of times
+     */
+    public boolean isBuffered() {
+        return bytes != null;
+    }
+
+    /**
+     * @return stream over the body (a new one for buffered bodies, the connection stream otherwise)
+     */
+    public InputStream stream() {
+        return bytes != null ? new ByteArrayInputStream(bytes) : stream;
+    }
+
+    /**
+     * @return channel over the body, see {@link #stream()}
+     */
+    public ReadableByteChannel channel() {
+        return Channels.newChannel(stream());
+    }
+
+    /**
+     * Load the unread part of the body into memory.
+     *
+     * @return body bytes
+     * @throws UncheckedIOException if reading the streamed body fails
+     */
+    public byte[] bytes() {
+        if (bytes == null) {
+            try {
+                bytes = stream.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            stream = null;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return body decoded as UTF-8, see {@link #bytes()}
+     */
+    public String asString() {
+        if (text == null) text = new String(bytes(), StandardCharsets.UTF_8);
+        return text;
+    }
+
+    /**
+     * Read and drop the rest of a streamed body, so that any check done at
+     * the end of the stream (such as the body hash) runs.
+     *
+     * @throws IOException if reading fails
+     */
+    public void discard() throws IOException {
+        if (bytes == null) stream.transferTo(OutputStream.nullOutputStream());
+    }
+}
@@ -2,29 +2,49 @@ package cat.uvic.teknos.dam.aureus.http;
 
 import cat.uvic.teknos.dam.aureus.controller.CoinController;
 import cat.uvic.teknos.dam.aureus.controller.CollectionController;
+import cat.uvic.teknos.dam.aureus.http.exception.ConnectionClosedException;
 import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+import cat.uvic.teknos.dam.aureus.http.exception.MethodNotAllowedException;
+import cat.uvic.teknos.dam.aureus.http.filter.CompressionFilter;
+import cat.uvic.teknos.dam.aureus.http.filter.EncryptFilter;
+import cat.uvic.teknos.dam.aureus.http.filter.Filter;
+import cat.uvic.teknos.dam.aureus.http.filter.FilterPipeline;
+import cat.uvic.teknos.dam.aureus.http.filter.IntegrityFilter;
+import cat.uvic.teknos.dam.aureus.http.filter.RequestContext;
+import cat.uvic.teknos.dam.aureus.http.filter.SessionDecryptFilter;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
+import cat.uvic.teknos.dam.aureus.search.FacetIndex;
+import cat.uvic.teknos.dam.aureus.search.SuggestionTrie;
 import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
-
-import java.security.cert.CertificateException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import cat.uvic.teknos.dam.aureus.service.VersionTracker;
 import cat.uvic.teknos.dam.aureus.service.exception.EntityNotFoundException;
 import com.google.gson.JsonSyntaxException;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiFunction;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.UUID;
-import java.security.PublicKey;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Simple HTTP request router responsible for mapping incoming HTTP requests
@@ -33,14 +53,55 @@ import java.security.PublicKey;
  * <p>The router is intentionally lightweight: it parses the request using
  * {@link HttpRequest#parse} and maps routes registered at construction time
  * to small handler methods that call into {@code CoinController} and
- * {@code CollectionController}.</p>
+ * {@code CollectionController}. Routes live in a {@link RouteTrie}; a path that
+ * exists only for other methods gets a 405 response with an {@code Allow}
+ * header.</p>
+ *
+ * <p>Between parsing and writing, each request runs through a
+ * {@link FilterPipeline}: response encryption, session decryption, body
+ * integrity, any filter added with {@link #addFilter}, and finally the route
+ * handler. Routes may disable stages, and the time of every stage is
+ * recorded.</p>
+ *
+ * <p>Routes match the path without its query string. {@code GET /coins} is
+ * paginated by coin id: {@code limit} (default {@value #DEFAULT_PAGE_SIZE},
+ * at most {@value #MAX_PAGE_SIZE}) and {@code cursor}, the id of the last coin
+ * already seen; the next page is announced in a {@code Link: rel="next"}
+ * header and in {@code X-Next-Cursor}. {@code ids} turns it into a multi-get
+ * and {@code fields} into a projection (see {@link #ids} and {@link #fields}).
+ * {@code GET /coins/search} combines
+ * optional filters given as query parameters (see {@link #searchCriteria})
+ * into a single database query. {@code GET /coins/fulltext?q=} ranks the
+ * coins against free text with the in-memory index of the controller,
+ * accepting {@code limit} and {@code fields} as well. {@code GET /coins/suggest}
+ * completes coin and collection names from a {@code prefix} (see
+ * {@link #handleSuggest}) without touching the database, and
+ * {@code GET /coins/facets} counts coins by facet from in-memory bitmaps (see
+ * {@link #facetFilters}). {@code GET /coins/{id}/similar} returns the
+ * {@code k} (default {@value #DEFAULT_SIMILAR}) coins nearest to one by physical attributes and value, found in
+ * an in-memory KD-tree. {@code GET /coins/top} returns the {@code n} (default
+ * {@value #DEFAULT_PAGE_SIZE}) most valuable coins, of every collection or of
+ * {@code collectionId}, from orders kept in memory.</p>
+ *
+ * <p>{@code GET /coins}, {@code GET /coins/{id}} and {@code GET /collections}
+ * carry a strong {@code ETag} built from the modification counters of the
+ * service layer; a matching {@code If-None-Match} is answered with
+ * {@code 304 Not Modified} before any query or serialization.</p>
+ *
+ * <p>Coin routes are asynchronous: their handlers return a
+ * {@link CompletableFuture} that completes on the database executor of the
+ * {@link CoinController}, so database threads are sized independently of the
+ * connection threads.</p>
  */
 public class RequestRouter {
 
     private static final Logger LOGGER = Logger.getLogger(RequestRouter.class.getName());
 
-    // Lista de rutas registradas para el mapeo declarativo
-    private final List<Route> routes = new ArrayList<>();
+    // Rutas registradas, indexadas por segmentos de ruta y método
+    private final RouteTrie routes = new RouteTrie();
+
+    // Etapas por las que pasa cada petición, con sus tiempos
+    private final FilterPipeline pipeline = new FilterPipeline(this::toErrorResponse);
 
     private final CoinController coinController;
     private final CollectionController collectionController;
@@ -53,10 +114,19 @@ public class RequestRouter {
     public static final String DISCONNECT_ACK_REASON = "ACK";
     public static final String DISCONNECT_ACK_BODY = "DISCONNECT_ACK";
 
+    public static final String HEALTH_PATH = "/health";
+
+    // Tamaño de página de GET /coins cuando no se indica limit, y máximo admitido
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+    // Vecinos devueltos por GET /coins/{id}/similar cuando no se indica k
+    public static final int DEFAULT_SIMILAR = 10;
+
 
     public RequestRouter(CoinController coinController, CollectionController collectionController) {
         this.coinController = coinController;
         this.collectionController = collectionController;
+        registerFilters();
         registerRoutes();
     }
 
@@ -64,216 +134,373 @@ public class RequestRouter {
         this(coinController, null);
     }
 
-    private void registerRoutes() {
-        // Rutas estáticas (/coins)
-        registerRoute("GET", "/coins", null, this::handleGetAllCoins);
-        registerRoute("POST", "/coins", null, this::handleCreateCoin);
+    // Orden: el cifrado de la respuesta envuelve todo, incluidas las respuestas de error;
+    // la compresión va justo dentro, porque el texto cifrado no se comprime
+    private void registerFilters() {
+        pipeline.add(FilterPipeline.ENCRYPT, new EncryptFilter(sessions))
+                .add(FilterPipeline.COMPRESS, new CompressionFilter())
+                .add(FilterPipeline.DECRYPT, new SessionDecryptFilter(sessions))
+                .add(FilterPipeline.INTEGRITY, new IntegrityFilter())
+                .add(FilterPipeline.ROUTE, (context, chain) -> invoke(context));
+    }
 
-        // Ruta de desconexión - la lógica especial se maneja en handleRequest
-        registerRoute("GET", DISCONNECT_PATH, null, this::handleDisconnect);
+    private void registerRoutes() {
+        // Rutas estáticas (/coins): asíncronas, la consulta se ejecuta en el ejecutor de base de datos
+        registerAsyncRoute("GET", "/coins", this::handleGetAllCoins);
+        // Ruta estática: tiene prioridad sobre /coins/{id}
+        registerAsyncRoute("GET", "/coins/search", this::handleSearchCoins);
+        registerAsyncRoute("GET", "/coins/fulltext", this::handleFullTextSearch);
+        registerAsyncRoute("GET", "/coins/top", this::handleTopCoins);
+        // Síncrona: se responde desde memoria, sin pasar por el ejecutor de base de datos
+        registerRoute("GET", "/coins/suggest", this::handleSuggest);
+        registerRoute("GET", "/coins/facets", this::handleFacets);
+        registerAsyncRoute("POST", "/coins", this::handleCreateCoin);
+
+        // Ruta de desconexión - la lógica especial se maneja en dispatch; el ACK va siempre en claro
+        registerRoute("GET", DISCONNECT_PATH, this::handleDisconnect, FilterPipeline.ENCRYPT);
+
+        // Comprobación de estado: sin sesión ni cuerpo, no pasa por las etapas criptográficas
+        registerRoute("GET", HEALTH_PATH, this::handleHealth,
+                FilterPipeline.ENCRYPT, FilterPipeline.DECRYPT, FilterPipeline.INTEGRITY);
 
         // Endpoint para negociación de claves: /keys/client{N}
-        Pattern keysPattern = Pattern.compile("^/keys/client(\\d+)$");
-        registerRoute("GET", "/keys/client\\d+", keysPattern, this::handleKeyExchange);
+        registerRoute("GET", "/keys/client{n}", this::handleKeyExchange);
 
         // Rutas para collections (si hay controller)
         if (collectionController != null) {
-            registerRoute("GET", "/collections", null, this::handleGetAllCollections);
-            registerRoute("POST", "/collections", null, this::handleCreateCollection);
+            registerRoute("GET", "/collections", this::handleGetAllCollections);
+            registerRoute("POST", "/collections", this::handleCreateCollection);
         }
 
-        // Rutas dinámicas (/coins/{id})
-        // Patrón para capturar el ID (\\d+) al final de la ruta
-        Pattern idPattern = Pattern.compile("^/coins/(\\d+)$");
+        // Rutas dinámicas (/coins/{id}): el ID es una variable entera
+        registerAsyncRoute("GET", "/coins/{id}", this::handleGetCoinById);
+        registerAsyncRoute("PUT", "/coins/{id}", this::handleUpdateCoin);
+        registerAsyncRoute("DELETE", "/coins/{id}", this::handleDeleteCoin);
+        registerAsyncRoute("GET", "/coins/{id}/similar", this::handleSimilarCoins);
+    }
 
-        registerRoute("GET", "/coins/\\d+", idPattern, this::handleGetCoinById);
-        registerRoute("PUT", "/coins/\\d+", idPattern, this::handleUpdateCoin);
-        registerRoute("DELETE", "/coins/\\d+", idPattern, this::handleDeleteCoin);
+    private void registerRoute(String method, String pathPattern, BiFunction<HttpRequest, PathParams, ResponseEntity> handler,
+                               String... skippedFilters) {
+        routes.add(method, pathPattern, handler, Set.of(skippedFilters));
     }
 
-    private void registerRoute(String method, String pathPattern, Pattern regex, BiFunction<HttpRequest, String, ResponseEntity> handler) {
-        routes.add(new Route(method, pathPattern, regex, handler));
+    // El handler devuelve un futuro; la respuesta se escribe cuando se completa
+    private void registerAsyncRoute(String method, String pathPattern, RouteHandler handler, String... skippedFilters) {
+        routes.addAsync(method, pathPattern, handler, Set.of(skippedFilters));
+    }
+
+    /**
+     * @return filter pipeline run for every request, with its per-stage statistics
+     */
+    public FilterPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Add a custom filter (authentication, rate limiting, caching...) that runs
+     * after the body has been decrypted and verified and right before the handler.
+     *
+     * @param name stage name, used in the timings and to skip it per route
+     * @param filter filter implementation
+     * @throws IllegalArgumentException if the name is already used
+     */
+    public void addFilter(String name, Filter filter) {
+        pipeline.addBefore(FilterPipeline.ROUTE, name, filter);
     }
 
     /**
      * Handle a full HTTP request lifecycle: parse, route, and write response.
+     * The response carries {@code Connection: close}; the caller closes the stream.
      *
      * @param inputStream source stream containing the raw HTTP request bytes
      * @param outputStream destination stream where the HTTP response will be written
      * @throws IOException if an I/O error occurs while reading or writing
      */
-    // Este metodo es llamado por Server.java. Su responsabilidad es I/O y manejo de excepciones generales.
     public void handleRequest(InputStream inputStream, OutputStream outputStream) throws IOException {
-         ResponseEntity response = null;
-         HttpRequest request = null; // declarado aquí para poder inspeccionarlo en finally
-
-         try {
-            request = HttpRequest.parse(inputStream);
-            LOGGER.info("Router: " + request.getMethod() + " " + request.getPath());
-
-            // If the client marks the body as encrypted (X-Body-Encrypted header), decrypt it using session key
-            Map<String,String> headers = request.getHeaders();
-            boolean skipHashCheck = false;
-            if (headers != null) {
-                String encFlag = null;
-                if (headers.containsKey("X-Body-Encrypted")) encFlag = headers.get("X-Body-Encrypted");
-                else if (headers.containsKey("x-body-encrypted")) encFlag = headers.get("x-body-encrypted");
-                if (encFlag != null && (encFlag.equals("1") || encFlag.equalsIgnoreCase("true"))) {
-                    try {
-                        String sessionId = null;
-                        if (headers.containsKey("X-Session-Id")) sessionId = headers.get("X-Session-Id");
-                        else if (headers.containsKey("x-session-id")) sessionId = headers.get("x-session-id");
-
-                        if (sessionId == null || sessionId.isEmpty()) throw new HttpException(401, "Unauthorized", "Missing session id");
-                        String keyHex = sessions.get(sessionId);
-                        if (keyHex == null) throw new HttpException(401, "Unauthorized", "Invalid session");
-
-                        // IV should be sent in header X-Body-IV (hex)
-                        String ivHex = null;
-                        if (headers.containsKey("X-Body-IV")) ivHex = headers.get("X-Body-IV");
-                        else if (headers.containsKey("x-body-iv")) ivHex = headers.get("x-body-iv");
-                        if (ivHex == null || ivHex.isEmpty()) throw new HttpException(400, "Bad Request", "Missing IV header");
-
-                        // Body is expected to be hex-encoded ciphertext
-                        String bodyHex = request.getBody();
-                        if (bodyHex == null || bodyHex.isEmpty()) throw new HttpException(400, "Bad Request", "Empty encrypted body");
-
-                        // Verify provided hash over the ciphertext (hex text) BEFORE decrypting
-                        String providedHash = null;
-                        if (headers.containsKey(ResponseEntity.BODY_HASH_HEADER)) {
-                            providedHash = headers.get(ResponseEntity.BODY_HASH_HEADER);
-                        } else if (headers.containsKey(ResponseEntity.BODY_HASH_HEADER.toLowerCase())) {
-                            providedHash = headers.get(ResponseEntity.BODY_HASH_HEADER.toLowerCase());
-                        } else if (headers.containsKey(ResponseEntity.BODY_HASH_HEADER.toUpperCase())) {
-                            providedHash = headers.get(ResponseEntity.BODY_HASH_HEADER.toUpperCase());
-                        }
-                        if (providedHash == null) throw new HttpException(400, "Bad Request", "Missing body hash header");
-                        String computedCipherHash = CryptoUtils.hash(bodyHex);
-                        if (!providedHash.equalsIgnoreCase(computedCipherHash)) {
-                            throw new HttpException(400, "Bad Request", "Invalid or missing body hash");
-                        }
-                        // mark that we've already verified the hash for this request so we skip general check later
-                        skipHashCheck = true;
-
-                        // Decrypt to plaintext using unified helper
-                        String plainStr = CryptoUtils.decrypt(keyHex, ivHex, bodyHex);
-
-                        // Replace request body by decrypted payload for handlers
-                        request = new HttpRequest(request.getMethod(), request.getPath(), request.getHeaders(), plainStr);
-                    } catch (HttpException he) { throw he; }
-                    catch (Exception e) {
-                        throw new HttpException(400, "Bad Request", "Failed to decrypt request body");
-                    }
-                }
-            }
+        handleRequest(inputStream, outputStream, HttpConnection.singleRequest());
+    }
 
-            // Verify body hash header if body present
-            String body = request.getBody();
-            if (!skipHashCheck && body != null && !body.isEmpty()) {
-                String providedHash = null;
-                // header names in request.getHeaders() are case sensitive as stored; check common variants
-                if (headers != null) {
-                    if (headers.containsKey(ResponseEntity.BODY_HASH_HEADER)) {
-                        providedHash = headers.get(ResponseEntity.BODY_HASH_HEADER);
-                    } else if (headers.containsKey(ResponseEntity.BODY_HASH_HEADER.toLowerCase())) {
-                        providedHash = headers.get(ResponseEntity.BODY_HASH_HEADER.toLowerCase());
-                    } else if (headers.containsKey(ResponseEntity.BODY_HASH_HEADER.toUpperCase())) {
-                        providedHash = headers.get(ResponseEntity.BODY_HASH_HEADER.toUpperCase());
-                    }
-                }
-                String computed = CryptoUtils.hash(body);
-                // Debug logs for hashes (FINE level)
-                LOGGER.log(Level.FINE, "Router: received body hash header = {0}", new Object[]{providedHash == null ? "<missing>" : providedHash});
-                LOGGER.log(Level.FINE, "Router: computed body hash = {0}", new Object[]{computed});
-                if (providedHash == null || !providedHash.equalsIgnoreCase(computed)) {
-                    throw new HttpException(400, "Bad Request", "Invalid or missing body hash");
-                }
+    /**
+     * Handle one request read from a (possibly persistent) connection.
+     *
+     * <p>The response carries {@code Connection: keep-alive} and a {@code Keep-Alive}
+     * header when the client allows it and the connection has not reached its
+     * request limit; otherwise it carries {@code Connection: close}. On a persistent
+     * connection, end of stream or an idle timeout before the next request ends the
+     * conversation silently.</p>
+     *
+     * <p>Pipelining: when the connection has a {@link ResponseQueue} with an executor,
+     * a GET is dispatched concurrently and, if the client already sent more bytes,
+     * the method returns without writing so the caller reads the next request.
+     * Queued responses are written in request order as soon as no further input is
+     * buffered, the queue is full, or a non-GET request arrives (which is processed
+     * only after every earlier response has been written).</p>
+     *
+     * <p>Every request goes through the {@link FilterPipeline}; the time spent
+     * parsing it, in each filter and writing its response is added to the
+     * pipeline statistics.</p>
+     *
+     * @param inputStream source stream positioned at the start of the next request
+     * @param outputStream destination stream where the HTTP response will be written
+     * @param connection keep-alive state of the connection
+     * @return true if the caller should read another request from the same streams
+     * @throws IOException if an I/O error occurs while reading or writing
+     */
+    // Este metodo es llamado por Server.java. Su responsabilidad es I/O y manejo de excepciones generales.
+    public boolean handleRequest(InputStream inputStream, OutputStream outputStream, HttpConnection connection) throws IOException {
+        ResponseQueue queue = connection.getResponseQueue();
+        ResponseQueue.ResponseWriter writer = (ctx, res, keep, remaining) ->
+                writeResponse(ctx, res, outputStream, connection, keep, remaining);
+        HttpRequestParser parser = connection.getRequestParser();
+        HttpRequest request;
+        try {
+            request = parser.parse(inputStream);
+        } catch (ConnectionClosedException | SocketTimeoutException e) {
+            // Responder primero a lo que ya se había leído
+            boolean open = queue.drainTo(writer);
+            if (connection.isPersistent()) {
+                // El cliente cerró o estuvo inactivo entre peticiones: cerrar sin responder
+                return false;
             }
+            if (open) writer.write(null, internalError(e), false, 0);
+            return false;
+        } catch (HttpException e) {
+            // Petición mal formada o demasiado grande: responder y cerrar
+            queue.drainTo(writer);
+            writer.write(null, toErrorResponse(e), false, 0);
+            return false;
+        } catch (Exception e) {
+            queue.drainTo(writer);
+            writer.write(null, internalError(e), false, 0);
+            return false;
+        }
+        RequestContext context = newContext(request, connection);
+        context.recordTiming(FilterPipeline.PARSE, parser.lastParseNanos());
+        return dispatch(context, outputStream, connection, writer,
+                parser.hasBufferedInput() || inputStream.available() > 0);
+    }
 
-            // --- MANEJO ESPECIAL DEL PROTOCOLO DE DESCONEXIÓN ---
-            if (request.getMethod().equalsIgnoreCase("GET") && request.getPath().equals(DISCONNECT_PATH)) {
-                LOGGER.info("Router: Received disconnect request. Sending acknowledgement...");
+    /**
+     * Handle a request already parsed by the caller, e.g. by a NIO event loop
+     * using its own {@link HttpRequestParser}. Its parse time is not recorded.
+     *
+     * @param request parsed request
+     * @param outputStream destination stream where the HTTP response will be written
+     * @param connection keep-alive state of the connection
+     * @return true if the connection stays open for another request
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public boolean handleRequest(HttpRequest request, OutputStream outputStream, HttpConnection connection) throws IOException {
+        ResponseQueue.ResponseWriter writer = (ctx, res, keep, remaining) ->
+                writeResponse(ctx, res, outputStream, connection, keep, remaining);
+        return dispatch(newContext(request, connection), outputStream, connection, writer, false);
+    }
+
+    /**
+     * Asynchronous variant of {@link #handleRequest(HttpRequest, OutputStream, HttpConnection)}:
+     * the calling thread runs the filters up to the handler and returns, and the
+     * response is written to {@code outputStream} by the thread that completes it
+     * (e.g. a database thread). {@code /disconnect} is handled synchronously.
+     *
+     * @param request parsed request
+     * @param outputStream destination stream where the HTTP response will be written
+     * @param connection keep-alive state of the connection
+     * @return future completed after the response is written, with true if the
+     *         connection stays open for another request
+     */
+    public CompletableFuture<Boolean> handleRequestAsync(HttpRequest request, OutputStream outputStream, HttpConnection connection) {
+        if (request.getMethod().equalsIgnoreCase("GET") && request.getPath().equals(DISCONNECT_PATH)) {
+            try {
+                return CompletableFuture.completedFuture(handleRequest(request, outputStream, connection));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        RequestContext context = newContext(request, connection);
+        boolean keepAlive = connection.onRequest(request);
+        int remaining = connection.remainingRequests();
+        LOGGER.info("Router: " + request.getMethod() + " " + request.getTarget());
+        return process(context).thenApply(response ->
+                writeResponse(context, response, outputStream, connection, keepAlive, remaining));
+    }
 
-                // 1. Enviar acuse de recibo
-                ResponseEntity ackResponse = createTextResponseEntity(200, DISCONNECT_ACK_REASON, DISCONNECT_ACK_BODY);
-                ackResponse.writeTo(outputStream); // escribir inmediatamente
-                outputStream.flush(); // asegurar la entrega
+    // Contexto de la petición con su ruta ya resuelta (para saber qué etapas omitir)
+    private RequestContext newContext(HttpRequest request, HttpConnection connection) {
+        RequestContext context = new RequestContext(request, connection);
+        try {
+            RouteTrie.Match match = routes.find(request.getMethod(), request.getPath());
+            if (match != null) context.setRoute(match.route(), match.params());
+        } catch (MethodNotAllowedException e) {
+            // Sin ruta: la etapa route responderá 405
+        }
+        return context;
+    }
 
-                // 2. Esperar 1 segundo
-                LOGGER.info("Router: Waiting 1 second before allowing connection close...");
-                try {
-                    Thread.sleep(1000); // esperar 1 segundo (1000 ms)
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt(); // restaurar estado interrumpido
-                }
+    // Decide entre respuesta inmediata o encolada (pipelining) y gestiona /disconnect
+    private boolean dispatch(RequestContext context, OutputStream outputStream, HttpConnection connection,
+                             ResponseQueue.ResponseWriter writer, boolean moreInputBuffered) throws IOException {
+        HttpRequest request = context.getRequest();
+        ResponseQueue queue = connection.getResponseQueue();
+        boolean keepAlive = connection.onRequest(request);
+        int remaining = connection.remainingRequests();
+        LOGGER.info("Router: " + request.getMethod() + " " + request.getTarget());
+
+        // --- MANEJO ESPECIAL DEL PROTOCOLO DE DESCONEXIÓN ---
+        if (request.getMethod().equalsIgnoreCase("GET") && request.getPath().equals(DISCONNECT_PATH)) {
+            if (!queue.drainTo(writer)) return false;
+            ResponseEntity response = process(context).join();
+            if (response.getStatus() != 200) {
+                // Petición rechazada por el pipeline (p.ej. hash inválido): respuesta normal
+                return writer.write(context, response, keepAlive, remaining);
+            }
+            LOGGER.info("Router: Received disconnect request. Sending acknowledgement...");
+
+            // 1. Enviar acuse de recibo (la conexión se cierra siempre tras /disconnect)
+            writer.write(context, response, false, 0);
+            outputStream.flush(); // asegurar la entrega
+
+            // 2. Esperar 1 segundo
+            LOGGER.info("Router: Waiting 1 second before allowing connection close...");
+            try {
+                Thread.sleep(1000); // esperar 1 segundo (1000 ms)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // restaurar estado interrumpido
+            }
 
-                // 3. El cierre lo gestiona el bloque finally en Server.handleClientConnection
-                return; // salir de handleRequest inmediatamente
+            // 3. El cierre lo gestiona el bloque finally en Server.handleClientConnection
+            return false; // salir de handleRequest inmediatamente
+        }
+        // --- FIN MANEJO ESPECIAL DE DESCONEXIÓN ---
+
+        if (request.getMethod().equalsIgnoreCase("GET") && request.getRequestBody().isBuffered()) {
+            // GET independiente: puede ejecutarse en paralelo con las siguientes peticiones ya recibidas
+            // (no si su cuerpo aún se lee del socket)
+            queue.submit(context, keepAlive, remaining, () -> process(context));
+            if (keepAlive && !queue.isFull() && moreInputBuffered) {
+                return true; // leer la siguiente petición antes de escribir
             }
-            // --- FIN MANEJO ESPECIAL DE DESCONEXIÓN ---
+            return queue.drainTo(writer) && keepAlive;
+        }
+
+        // Peticiones con efectos: primero se escriben todas las respuestas anteriores
+        if (!queue.drainTo(writer)) return false;
+        // Con E/S bloqueante el hilo de la conexión no tiene otra cosa que hacer que esperar
+        return writer.write(context, process(context).join(), keepAlive, remaining);
+    }
+
+    // Ejecuta el pipeline midiendo el tiempo de servicio para el control de admisión adaptativo
+    private CompletableFuture<ResponseEntity> process(RequestContext context) {
+        long start = System.nanoTime();
+        CompletableFuture<ResponseEntity> response = pipeline.execute(context);
+        HttpConnection connection = context.getConnection();
+        if (connection == null) return response;
+        return response.whenComplete((r, e) -> connection.recordLatency(System.nanoTime() - start));
+    }
+
+    /**
+     * Run the request through the filter pipeline (body decryption, integrity
+     * checks, custom filters and routing), mapping every failure to an error response.
+     *
+     * @param request parsed request as read from the connection
+     * @return response to send (never null)
+     */
+    ResponseEntity process(HttpRequest request) {
+        return process(newContext(request, null)).join();
+    }
 
-            response = route(request); // Rutas normales para peticiones distintas de /disconnect
+    // Etapa final del pipeline: ejecutar el handler de la ruta
+    private CompletableFuture<ResponseEntity> invoke(RequestContext context) throws IOException {
+        HttpRequest request = context.getRequest();
+        Route route = context.getRoute();
+        // Sin ruta resuelta: route() lanza el 404 o el 405 correspondiente
+        CompletableFuture<ResponseEntity> response = route == null
+                ? CompletableFuture.completedFuture(route(request))
+                : route.handler().handle(request, context.getPathParams());
+        // Leer lo que el handler no consumió de un cuerpo en streaming, para verificar su hash
+        request.getRequestBody().discard();
+        return response;
+    }
 
+    private ResponseEntity toErrorResponse(Exception ex) {
+        try {
+            throw ex;
+        } catch (MethodNotAllowedException e) {
+            // 405: la ruta existe para otros métodos, que se anuncian en Allow
+            ResponseEntity response = createErrorResponse(e.getStatusCode(), e.getReasonPhrase(), e.getMessage());
+            response.getHeaders().put("Allow", e.getAllowedMethods());
+            return response;
         } catch (HttpException e) {
             // 4xx errores del cliente (p.ej. recurso no encontrado, método no permitido)
-            response = createErrorResponse(e.getStatusCode(), e.getReasonPhrase(), e.getMessage());
+            return createErrorResponse(e.getStatusCode(), e.getReasonPhrase(), e.getMessage());
         } catch (EntityNotFoundException e) {
             // Excepción de negocio, mapeada a 404 HTTP
-            response = createErrorResponse(404, "Not Found", e.getMessage());
+            return createErrorResponse(404, "Not Found", e.getMessage());
         } catch (JsonSyntaxException e) {
             // Error en JSON del body
-            response = createErrorResponse(400, "Bad Request", "JSON body is malformed.");
+            return createErrorResponse(400, "Bad Request", "JSON body is malformed.");
+        } catch (RejectedExecutionException e) {
+            // Ejecutor de base de datos saturado: el cliente puede reintentar
+            ResponseEntity response = createErrorResponse(503, "Service Unavailable", "Server is overloaded, try again later");
+            response.retryAfter(1);
+            return response;
         } catch (Exception e) {
-            // Cualquier otro error no previsto
-            response = createErrorResponse(500, "Internal Server Error", "An unexpected server error occurred: " + e.getMessage());
-            LOGGER.log(Level.SEVERE, "Unexpected error in router: {0}", e.getMessage());
-            LOGGER.log(Level.SEVERE, "Stacktrace:", e);
+            return internalError(e);
+        }
+    }
+
+    private ResponseEntity internalError(Exception e) {
+        // Cualquier otro error no previsto
+        LOGGER.log(Level.SEVERE, "Unexpected error in router: {0}", e.getMessage());
+        LOGGER.log(Level.SEVERE, "Stacktrace:", e);
+        return createErrorResponse(500, "Internal Server Error", "An unexpected server error occurred: " + e.getMessage());
+    }
+
+    /**
+     * Write a response, adding the connection headers, and record the timings
+     * of the request in the pipeline statistics.
+     *
+     * @param context request being answered (null if it could not be parsed)
+     * @param response response to write
+     * @param outputStream destination stream
+     * @param connection connection the response is written on
+     * @param keepAlive whether the connection stays open after this response
+     * @param remainingRequests further requests allowed, advertised in {@code Keep-Alive}
+     * @return true if the connection stays open (keep-alive and the write succeeded)
+     */
+    private boolean writeResponse(RequestContext context, ResponseEntity response, OutputStream outputStream,
+                                  HttpConnection connection, boolean keepAlive, int remainingRequests) {
+        // Sin trailers el hash no llegaría al cliente: el cuerpo en streaming se envía con Content-Length
+        if (response.isStreaming() && (context == null || !context.getRequest().acceptsTrailers())) {
+            try {
+                response = response.buffered();
+            } catch (IOException | RuntimeException e) {
+                response = toErrorResponse(e);
+            }
+        }
+        // Escribir la respuesta HTTP de vuelta al stream TCP
+        if (keepAlive) {
+            response.keepAlive(Math.max(1, connection.getIdleTimeoutMillis() / 1000), remainingRequests);
+        } else {
+            response.closeConnection();
+        }
+        long start = System.nanoTime();
+        try {
+            response.writeTo(outputStream);
+        } catch (IOException | RuntimeException e) {
+            // Un cuerpo en streaming puede fallar tras enviar las cabeceras: sólo queda cerrar
+            System.err.println("Error writing response to client: " + e.getMessage());
+            return false;
         } finally {
-            // Escribir la respuesta HTTP de vuelta al stream TCP para peticiones normales
-            if (response != null) {
-                try {
-                    // Check if request had a valid session id and we should encrypt the response
-                    String sessionId = null;
-                    try {
-                        Map<String,String> reqHeaders = (request == null) ? null : request.getHeaders();
-                        if (reqHeaders != null) {
-                            if (reqHeaders.containsKey("X-Session-Id")) sessionId = reqHeaders.get("X-Session-Id");
-                            else if (reqHeaders.containsKey("x-session-id")) sessionId = reqHeaders.get("x-session-id");
-                        }
-                    } catch (Exception ignored) { /* keep sessionId null */ }
-
-                    boolean sent = false;
-                    if (sessionId != null && !sessionId.isEmpty() && sessions.containsKey(sessionId) && response.getBody() != null && response.getBody().length > 0) {
-                        // Try to encrypt response body using session key (stored as hex)
-                        String keyHex = sessions.get(sessionId);
-                        String plain = new String(response.getBody(), java.nio.charset.StandardCharsets.UTF_8);
-                        try {
-                            String[] ivAndBodyHex = CryptoUtils.encryptWithKeyHex(keyHex, plain);
-                            if (ivAndBodyHex != null) {
-                                String ivHex = ivAndBodyHex[0];
-                                String bodyHex = ivAndBodyHex[1];
-                                Map<String,String> headers = new HashMap<>(response.getHeaders());
-                                headers.put("X-Body-Encrypted", "1");
-                                headers.put("X-Body-IV", ivHex);
-                                byte[] outBodyBytes = bodyHex.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-                                headers.put("Content-Length", String.valueOf(outBodyBytes.length));
-                                ResponseEntity encryptedResp = new ResponseEntity(response.getStatus(), response.getReason(), headers, outBodyBytes);
-                                encryptedResp.writeTo(outputStream);
-                                sent = true;
-                            }
-                        } catch (Exception e) {
-                            // encryption failed -> will send plaintext below
-                        }
-                    }
-                    if (!sent) {
-                        response.writeTo(outputStream);
-                    }
-                } catch (IOException e) {
-                    System.err.println("Error writing response to client: " + e.getMessage());
+            if (context != null) {
+                context.recordTiming(FilterPipeline.WRITE, System.nanoTime() - start);
+                pipeline.record(context);
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Router: stage timings (ns) " + context.getTimings());
                 }
             }
-         }
-     }
+        }
+        return keepAlive;
+    }
 
     /**
      * Route a parsed {@link HttpRequest} to the appropriate handler.
@@ -284,76 +511,330 @@ public class RequestRouter {
      */
     // Lógica de enrutamiento: busca la coincidencia declarativa
     public ResponseEntity route(HttpRequest request) {
-        String method = request.getMethod();
-        String path = request.getPath();
+        RouteTrie.Match match = routes.find(request.getMethod(), request.getPath());
+        if (match == null) {
+            throw new HttpException(404, "Not Found", "Resource not found on this path: " + request.getPath());
+        }
+        try {
+            // Los handlers asíncronos se esperan aquí
+            return match.route().handler().handle(request, match.params()).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
 
-        for (Route route : routes) {
-            if (route.method().equalsIgnoreCase(method)) {
+    // --- MANEJADORES DE ACCIONES (Delegación al Controller) ---
 
-                // 1. Manejo de rutas exactas (/coins)
-                if (route.regex() == null && route.pathPattern().equals(path)) {
-                    return route.handler().apply(request, null);
-                }
+    // El listado se pagina por COIN_ID (?limit=&cursor=) y cada página se escribe en streaming;
+    // con ?ids= devuelve sólo esas monedas. Si el cliente ya tiene la versión actual se responde
+    // 304 sin consultar la base de datos
+    private CompletableFuture<ResponseEntity> handleGetAllCoins(HttpRequest request) {
+        QueryParams query = request.getQueryParams();
+        Set<CoinField> fields = fields(query);
+        if (query.contains("ids")) return handleGetCoinsByIds(request, ids(query), fields);
+
+        int requested = query.getInt("limit", DEFAULT_PAGE_SIZE);
+        if (requested < 1) throw new HttpException(400, "Bad Request", "limit must be a positive integer");
+        int limit = Math.min(requested, MAX_PAGE_SIZE);
+        Integer cursor = query.getInteger("cursor");
+
+        return conditionalAsync(request, coinsETag(), () -> coinController.streamCoinPageAsync(cursor, limit, fields).thenApply(page -> {
+            ResponseEntity response = createJsonStreamingResponseEntity(200, "OK", page.body());
+            if (page.nextCursor() != null) {
+                String projection = fields == null ? ""
+                        : "&fields=" + fields.stream().map(CoinField::property).collect(Collectors.joining(","));
+                response.getHeaders().set(HeaderName.LINK,
+                        "</coins?limit=" + limit + "&cursor=" + page.nextCursor() + projection + ">; rel=\"next\"");
+                response.getHeaders().set(HeaderName.X_NEXT_CURSOR, String.valueOf(page.nextCursor()));
+            }
+            return response;
+        }));
+    }
+
+    private CompletableFuture<ResponseEntity> handleGetCoinsByIds(HttpRequest request, List<Integer> ids, Set<CoinField> fields) {
+        return conditionalAsync(request, coinsETag(), () -> coinController.streamCoinsByIdsAsync(ids, fields)
+                .thenApply(body -> createJsonStreamingResponseEntity(200, "OK", body)));
+    }
 
-                // 2. Manejo de rutas con variables (/coins/{id})
-                if (route.regex() != null) {
-                    Matcher matcher = route.regex().matcher(path);
-                    if (matcher.matches()) {
-                        // El valor de la variable es el grupo capturado por la regex (ej: el ID)
-                        String pathVariable = matcher.group(1);
-                        return route.handler().apply(request, pathVariable);
-                    }
+    /**
+     * Ids of a multi-get: {@code ids=1,2,3}, possibly repeated. At most
+     * {@value #MAX_PAGE_SIZE} ids are accepted per request.
+     *
+     * @param query query parameters of the request
+     * @return ids in order of appearance
+     * @throws HttpException 400 if an id is not an integer or there are none or too many
+     */
+    static List<Integer> ids(QueryParams query) {
+        List<Integer> ids = new ArrayList<>();
+        for (String value : query.getAll("ids")) {
+            for (String id : value.split(",")) {
+                if (id.isBlank()) continue;
+                try {
+                    ids.add(Integer.valueOf(id.trim()));
+                } catch (NumberFormatException e) {
+                    throw new HttpException(400, "Bad Request", "Invalid coin id: " + id);
                 }
             }
         }
+        if (ids.isEmpty()) throw new HttpException(400, "Bad Request", "ids must list at least one coin id");
+        if (ids.size() > MAX_PAGE_SIZE) {
+            throw new HttpException(400, "Bad Request", "At most " + MAX_PAGE_SIZE + " ids per request");
+        }
+        return ids;
+    }
 
-        // Si el bucle termina sin encontrar coincidencia
-        throw new HttpException(404, "Not Found", "Resource not found or method not allowed on this path: " + path);
+    /**
+     * Projection of {@code GET /coins}: {@code fields=coinName,coinYear} returns
+     * only those properties (plus {@code id}), read with a tuple query.
+     *
+     * @param query query parameters of the request
+     * @return selected fields in the order of {@link CoinField}, or null to return whole coins
+     * @throws HttpException 400 if a field is unknown
+     */
+    static Set<CoinField> fields(QueryParams query) {
+        String value = query.get("fields");
+        if (value == null || value.isBlank()) return null;
+        Set<CoinField> fields = EnumSet.noneOf(CoinField.class);
+        for (String name : value.split(",")) {
+            if (name.isBlank()) continue;
+            try {
+                fields.add(CoinField.fromProperty(name.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new HttpException(400, "Bad Request", e.getMessage());
+            }
+        }
+        return fields.isEmpty() ? null : fields;
     }
 
-    // --- MANEJADORES DE ACCIONES (Delegación al Controller) ---
+    // Cada parámetro presente se convierte en un filtro de la única consulta SQL/JPQL.
+    // El ETag es el del listado: cualquier cambio en las monedas puede alterar el resultado
+    private CompletableFuture<ResponseEntity> handleSearchCoins(HttpRequest request) {
+        CoinSearchCriteria criteria = searchCriteria(request.getQueryParams());
+
+        return conditionalAsync(request, coinsETag(), () -> coinController.streamSearchAsync(criteria)
+                .thenApply(body -> createJsonStreamingResponseEntity(200, "OK", body)));
+    }
+
+    /**
+     * Criteria of {@code GET /coins/search}: {@code material}, {@code country},
+     * {@code minYear}, {@code maxYear}, {@code minValue}, {@code maxValue},
+     * {@code collection}, {@code sort} ({@code id}, {@code name}, {@code year} or
+     * {@code value}; a leading {@code -} sorts descending) and {@code limit}.
+     *
+     * @param query query parameters of the request
+     * @return search criteria; unknown parameters are ignored
+     * @throws HttpException 400 if a value is invalid
+     */
+    static CoinSearchCriteria searchCriteria(QueryParams query) {
+        CoinSearchCriteria criteria = new CoinSearchCriteria();
+        criteria.setMaterial(emptyToNull(query.get("material")));
+        criteria.setOriginCountry(emptyToNull(query.get("country")));
+        criteria.setMinYear(query.getInteger("minYear"));
+        criteria.setMaxYear(query.getInteger("maxYear"));
+        criteria.setMinValue(query.getDecimal("minValue"));
+        criteria.setMaxValue(query.getDecimal("maxValue"));
+        criteria.setCollectionId(query.getInteger("collection"));
+
+        String sort = emptyToNull(query.get("sort"));
+        if (sort != null) {
+            boolean descending = sort.startsWith("-");
+            String key = descending ? sort.substring(1) : sort;
+            try {
+                criteria.setSort(CoinSearchCriteria.SortKey.valueOf(key.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new HttpException(400, "Bad Request", "Invalid sort key: " + key);
+            }
+            criteria.setDescending(descending);
+        }
 
-    private ResponseEntity handleGetAllCoins() {
-        String jsonBody = coinController.getAllCoins();
-        return createJsonResponseEntity(200, "OK", jsonBody);
+        int limit = query.getInt("limit", DEFAULT_PAGE_SIZE);
+        if (limit < 1) throw new HttpException(400, "Bad Request", "limit must be a positive integer");
+        criteria.setLimit(Math.min(limit, MAX_PAGE_SIZE));
+        return criteria;
     }
 
-    private ResponseEntity handleGetAllCollections() {
-        String jsonBody = collectionController.getAllCollections();
-        return createJsonResponseEntity(200, "OK", jsonBody);
+    // El índice se mantiene con los cambios del servicio, así que vale el mismo ETag del listado
+    private CompletableFuture<ResponseEntity> handleFullTextSearch(HttpRequest request) {
+        QueryParams query = request.getQueryParams();
+        String text = query.get("q");
+        if (text == null || text.isBlank()) throw new HttpException(400, "Bad Request", "q must not be empty");
+        int limit = query.getInt("limit", DEFAULT_PAGE_SIZE);
+        if (limit < 1) throw new HttpException(400, "Bad Request", "limit must be a positive integer");
+        Set<CoinField> fields = fields(query);
+
+        return conditionalAsync(request, coinsETag(), () -> coinController.streamFullTextAsync(text, Math.min(limit, MAX_PAGE_SIZE), fields)
+                .thenApply(body -> createJsonStreamingResponseEntity(200, "OK", body)));
     }
 
-    // Handler placeholder para /disconnect (referenciado en registerRoutes)
-    private ResponseEntity handleDisconnect(HttpRequest req, String var) {
+    private CompletableFuture<ResponseEntity> handleTopCoins(HttpRequest request) {
+        QueryParams query = request.getQueryParams();
+        int n = query.getInt("n", DEFAULT_PAGE_SIZE);
+        if (n < 1) throw new HttpException(400, "Bad Request", "n must be a positive integer");
+        Integer collectionId = query.getInteger("collectionId");
+        Set<CoinField> fields = fields(query);
+
+        return conditionalAsync(request, coinsETag(), () -> coinController.streamTopAsync(Math.min(n, MAX_PAGE_SIZE), collectionId, fields)
+                .thenApply(body -> createJsonStreamingResponseEntity(200, "OK", body)));
+    }
+
+    /**
+     * Typeahead: {@code prefix} (required), {@code limit} (at most
+     * {@value SuggestionTrie#MAX_SUGGESTIONS}) and {@code type}, {@code coin}
+     * or {@code collection} to suggest only one kind of name.
+     */
+    private ResponseEntity handleSuggest(HttpRequest request) {
+        QueryParams query = request.getQueryParams();
+        String prefix = query.get("prefix");
+        if (prefix == null || prefix.isBlank()) throw new HttpException(400, "Bad Request", "prefix must not be empty");
+        int limit = query.getInt("limit", SuggestionTrie.MAX_SUGGESTIONS);
+        if (limit < 1) throw new HttpException(400, "Bad Request", "limit must be a positive integer");
+        SuggestionTrie.Kind kind = null;
+        String type = emptyToNull(query.get("type"));
+        if (type != null) {
+            try {
+                kind = SuggestionTrie.Kind.valueOf(type.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new HttpException(400, "Bad Request", "Invalid type: " + type);
+            }
+        }
+        return createJsonResponseEntity(200, "OK", coinController.suggest(prefix, limit, kind));
+    }
+
+    private ResponseEntity handleFacets(HttpRequest request) {
+        QueryParams query = request.getQueryParams();
+        String body = coinController.facets(facetFilters(query), query.getInteger("minYear"), query.getInteger("maxYear"));
+        return createJsonResponseEntity(200, "OK", body);
+    }
+
+    /**
+     * Filters of {@code GET /coins/facets}: {@code material}, {@code country},
+     * {@code century} and {@code collection}, each with one or more values
+     * (comma-separated or repeated) combined with OR. Different facets are
+     * combined with AND, as are {@code minYear} and {@code maxYear}.
+     *
+     * @param query query parameters of the request
+     * @return values of each facet present in the query
+     */
+    static Map<FacetIndex.Facet, List<String>> facetFilters(QueryParams query) {
+        Map<FacetIndex.Facet, List<String>> filters = new EnumMap<>(FacetIndex.Facet.class);
+        for (FacetIndex.Facet facet : FacetIndex.Facet.values()) {
+            List<String> values = new ArrayList<>();
+            for (String value : query.getAll(facet.parameter())) {
+                for (String part : value.split(",")) {
+                    if (!part.isBlank()) values.add(part.trim());
+                }
+            }
+            if (!values.isEmpty()) filters.put(facet, values);
+        }
+        return filters;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private ResponseEntity handleGetAllCollections(HttpRequest request) {
+        VersionTracker versions = collectionController.getVersionTracker();
+        String etag = versions == null ? null : etag("collections", versions, versions.tableVersion());
+        return conditional(request, etag, () -> createJsonResponseEntity(200, "OK", collectionController.getAllCollections()));
+    }
+
+    // Handler para /disconnect: el envío del ACK y el cierre se gestionan en dispatch
+    private ResponseEntity handleDisconnect(HttpRequest req, PathParams params) {
         return createTextResponseEntity(200, DISCONNECT_ACK_REASON, DISCONNECT_ACK_BODY);
     }
 
-    private ResponseEntity handleGetCoinById(int id) {
-        // Lanza EntityNotFoundException si la moneda no existe (capturada en handleRequest)
-        String jsonBody = coinController.getCoin(id);
-        return createJsonResponseEntity(200, "OK", jsonBody);
+    private ResponseEntity handleHealth(HttpRequest req, PathParams params) {
+        return createTextResponseEntity(200, "OK", "OK");
+    }
+
+    private CompletableFuture<ResponseEntity> handleGetCoinById(int id, HttpRequest request) {
+        VersionTracker versions = coinController.getVersionTracker();
+        String etag = versions == null ? null : etag("coin-" + id, versions, versions.entityVersion(id));
+        // Falla con EntityNotFoundException si la moneda no existe (mapeada a 404 por el pipeline)
+        return conditionalAsync(request, etag, () -> coinController.getCoinAsync(id)
+                .thenApply(jsonBody -> createJsonResponseEntity(200, "OK", jsonBody)));
+    }
+
+    // Como en /coins/fulltext: el índice sigue los cambios del servicio, vale el ETag del listado
+    private CompletableFuture<ResponseEntity> handleSimilarCoins(int id, HttpRequest request) {
+        QueryParams query = request.getQueryParams();
+        int k = query.getInt("k", DEFAULT_SIMILAR);
+        if (k < 1) throw new HttpException(400, "Bad Request", "k must be a positive integer");
+        Set<CoinField> fields = fields(query);
+
+        return conditionalAsync(request, coinsETag(), () -> coinController.streamSimilarAsync(id, Math.min(k, MAX_PAGE_SIZE), fields)
+                .thenApply(body -> createJsonStreamingResponseEntity(200, "OK", body)));
+    }
+
+    /**
+     * Strong entity tag of a resource at a given version. The version must be
+     * read before the data is queried; see {@link VersionTracker}.
+     *
+     * @param resource name of the resource, unique among the tagged routes
+     * @param versions tracker the version comes from
+     * @param version table or entity version of the resource
+     * @return quoted tag, e.g. {@code "coins-m2x1k7a0-12"}
+     */
+    static String etag(String resource, VersionTracker versions, long version) {
+        return "\"" + resource + "-" + versions.epoch() + "-" + version + "\"";
+    }
+
+    private static ResponseEntity withETag(ResponseEntity response, String etag) {
+        if (etag != null) response.getHeaders().set(HeaderName.ETAG, etag);
+        return response;
+    }
+
+    // ETag de todo lo que depende del conjunto de monedas: listado, búsquedas e índices en memoria
+    private String coinsETag() {
+        VersionTracker versions = coinController.getVersionTracker();
+        return versions == null ? null : etag("coins", versions, versions.tableVersion());
+    }
+
+    /**
+     * Answer a conditional GET: {@code 304} if the client holds {@code etag},
+     * otherwise the response built by {@code response}, tagged. The tag must
+     * be computed before the data is read, as callers do by passing it in.
+     *
+     * @param request request with the {@code If-None-Match} header
+     * @param etag current tag of the resource, or null if it is not tracked
+     * @param response builds the full response; not called on a match
+     * @return the 304 or the tagged response
+     */
+    private ResponseEntity conditional(HttpRequest request, String etag, Supplier<ResponseEntity> response) {
+        if (request.matchesIfNoneMatch(etag)) return createNotModifiedResponse(etag);
+        return withETag(response.get(), etag);
+    }
+
+    // Variante de conditional para los handlers asíncronos: el 304 no pasa por el ejecutor de base de datos
+    private CompletableFuture<ResponseEntity> conditionalAsync(HttpRequest request, String etag,
+                                                               Supplier<CompletableFuture<ResponseEntity>> response) {
+        if (request.matchesIfNoneMatch(etag)) return CompletableFuture.completedFuture(createNotModifiedResponse(etag));
+        return response.get().thenApply(entity -> withETag(entity, etag));
     }
 
-    private ResponseEntity handleCreateCoin(HttpRequest request) {
-        String body = getRequestBody(request);
-        String jsonBody = coinController.createCoin(body);
-        return createJsonResponseEntity(201, "Created", jsonBody);
+    private CompletableFuture<ResponseEntity> handleCreateCoin(HttpRequest request) {
+        // El cuerpo se lee en este hilo; sólo la inserción pasa al ejecutor de base de datos
+        InputStream body = getRequestBody(request);
+        return coinController.createCoinAsync(body)
+                .thenApply(jsonBody -> createJsonResponseEntity(201, "Created", jsonBody));
     }
 
-    private ResponseEntity handleUpdateCoin(int id, HttpRequest request) {
-        String body = getRequestBody(request);
+    private CompletableFuture<ResponseEntity> handleUpdateCoin(int id, HttpRequest request) {
+        InputStream body = getRequestBody(request);
         // Usar el id de la ruta para actualizar (sobrescribe cualquier id en el body)
-        coinController.updateCoin(id, body);
-        return createEmptyResponseEntity(200, "OK");
+        return coinController.updateCoinAsync(id, body)
+                .thenApply(done -> createEmptyResponseEntity(200, "OK"));
     }
 
-    private ResponseEntity handleDeleteCoin(int id) {
-        coinController.deleteCoin(id);
-        return createEmptyResponseEntity(204, "No Content");
+    private CompletableFuture<ResponseEntity> handleDeleteCoin(int id) {
+        return coinController.deleteCoinAsync(id)
+                .thenApply(done -> createEmptyResponseEntity(204, "No Content"));
     }
 
     private ResponseEntity handleCreateCollection(HttpRequest request) {
-        String body = getRequestBody(request);
+        InputStream body = getRequestBody(request);
         try {
             String jsonBody = collectionController.createCollection(body);
             return createJsonResponseEntity(201, "Created", jsonBody);
@@ -367,7 +848,8 @@ public class RequestRouter {
     }
 
     // --- NUEVO: Manejar intercambio de claves RSA->AES para cliente específico ---
-    private ResponseEntity handleKeyExchange(HttpRequest request, String clientNumber) {
+    private ResponseEntity handleKeyExchange(HttpRequest request, PathParams params) {
+        String clientNumber = params.get("n");
         try {
             // Use high-level API: encrypt the AES key (as HEX string) for the client alias (clientN)
             String alias = "client" + clientNumber;
@@ -403,8 +885,8 @@ public class RequestRouter {
         }
     }
 
-    private String getRequestBody(HttpRequest request) {
-        return request.getBody();
+    private InputStream getRequestBody(HttpRequest request) {
+        return request.getBodyStream();
     }
 
     private ResponseEntity createJsonResponseEntity(int status, String reason, String body) {
@@ -415,6 +897,12 @@ public class RequestRouter {
         return new ResponseEntity(status, reason, headers, bodyBytes);
     }
 
+    private ResponseEntity createJsonStreamingResponseEntity(int status, String reason, StreamingBody body) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        return ResponseEntity.streaming(status, reason, headers, body);
+    }
+
     private ResponseEntity createTextResponseEntity(int status, String reason, String body) {
         Map<String, String> headers = new HashMap<>();
         headers.put("Content-Type", "text/plain");
@@ -430,17 +918,30 @@ public class RequestRouter {
         return new ResponseEntity(status, reason, headers, null);
     }
 
+    // Sin cuerpo: no se serializa, ni se calcula su hash, ni se cifra
+    private ResponseEntity createNotModifiedResponse(String etag) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HeaderName.ETAG.headerName(), etag);
+        return new ResponseEntity(304, "Not Modified", headers, null);
+    }
+
     private ResponseEntity createErrorResponse(int status, String reason, String message) {
         String errorBody = String.format("{\"error\": \"%s\", \"status\": %d}", message, status);
         return createJsonResponseEntity(status, reason, errorBody);
     }
 
     // --- MANEJADORES DE ACCIONES (overloads para evitar warnings de lambdas) ---
-    private ResponseEntity handleGetAllCoins(HttpRequest req, String var) { return handleGetAllCoins(); }
-    private ResponseEntity handleCreateCoin(HttpRequest req, String var) { return handleCreateCoin(req); }
-    private ResponseEntity handleGetAllCollections(HttpRequest req, String var) { return handleGetAllCollections(); }
-    private ResponseEntity handleCreateCollection(HttpRequest req, String var) { return handleCreateCollection(req); }
-    private ResponseEntity handleGetCoinById(HttpRequest req, String var) { return handleGetCoinById(Integer.parseInt(var)); }
-    private ResponseEntity handleUpdateCoin(HttpRequest req, String var) { return handleUpdateCoin(Integer.parseInt(var), req); }
-    private ResponseEntity handleDeleteCoin(HttpRequest req, String var) { return handleDeleteCoin(Integer.parseInt(var)); }
+    private CompletableFuture<ResponseEntity> handleGetAllCoins(HttpRequest req, PathParams params) { return handleGetAllCoins(req); }
+    private CompletableFuture<ResponseEntity> handleCreateCoin(HttpRequest req, PathParams params) { return handleCreateCoin(req); }
+    private CompletableFuture<ResponseEntity> handleSearchCoins(HttpRequest req, PathParams params) { return handleSearchCoins(req); }
+    private CompletableFuture<ResponseEntity> handleFullTextSearch(HttpRequest req, PathParams params) { return handleFullTextSearch(req); }
+    private CompletableFuture<ResponseEntity> handleTopCoins(HttpRequest req, PathParams params) { return handleTopCoins(req); }
+    private ResponseEntity handleSuggest(HttpRequest req, PathParams params) { return handleSuggest(req); }
+    private ResponseEntity handleFacets(HttpRequest req, PathParams params) { return handleFacets(req); }
+    private ResponseEntity handleGetAllCollections(HttpRequest req, PathParams params) { return handleGetAllCollections(req); }
+    private ResponseEntity handleCreateCollection(HttpRequest req, PathParams params) { return handleCreateCollection(req); }
+    private CompletableFuture<ResponseEntity> handleGetCoinById(HttpRequest req, PathParams params) { return handleGetCoinById(params.getInt("id"), req); }
+    private CompletableFuture<ResponseEntity> handleUpdateCoin(HttpRequest req, PathParams params) { return handleUpdateCoin(params.getInt("id"), req); }
+    private CompletableFuture<ResponseEntity> handleDeleteCoin(HttpRequest req, PathParams params) { return handleDeleteCoin(params.getInt("id")); }
+    private CompletableFuture<ResponseEntity> handleSimilarCoins(HttpRequest req, PathParams params) { return handleSimilarCoins(params.getInt("id"), req); }
 }
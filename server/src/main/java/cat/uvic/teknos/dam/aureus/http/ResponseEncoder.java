@@ -0,0 +1,210 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the head of a {@link ResponseEntity} into a reusable per-thread
+ * {@link ByteBuffer}.
+ *
+ * <p>Status lines of the common codes and the {@link HeaderName} prefixes are
+ * encoded once; values are copied char by char while they are ASCII. Small
+ * bodies are copied after the head so the whole response leaves in a single
+ * write; larger ones go in the same gathering write on channels or right after
+ * the head on streams. Instances are confined to their thread.</p>
+ */
+final class ResponseEncoder {
+
+    // Cuerpos hasta este tamaño se copian tras la cabecera: una sola escritura
+    static final int COALESCE_LIMIT = 16 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Un buffer que creció por una respuesta grande no se conserva
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] SEPARATOR = {':', ' '};
+    private static final byte[] HTTP_VERSION = "HTTP/1.1 ".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MAX_CACHED_STATUS = 600;
+    private static final String[] CACHED_REASONS = new String[MAX_CACHED_STATUS];
+    private static final byte[][] CACHED_STATUS_LINES = new byte[MAX_CACHED_STATUS][];
+    // "Name: " ya codificado para cada cabecera conocida
+    private static final byte[][] KNOWN_PREFIXES = new byte[HeaderName.values().length][];
+
+    static {
+        cacheStatus(200, "OK");
+        cacheStatus(201, "Created");
+        cacheStatus(204, "No Content");
+        cacheStatus(304, "Not Modified");
+        cacheStatus(400, "Bad Request");
+        cacheStatus(401, "Unauthorized");
+        cacheStatus(404, "Not Found");
+        cacheStatus(405, "Method Not Allowed");
+        cacheStatus(413, "Payload Too Large");
+        cacheStatus(431, "Request Header Fields Too Large");
+        cacheStatus(500, "Internal Server Error");
+        cacheStatus(501, "Not Implemented");
+        cacheStatus(503, "Service Unavailable");
+        for (HeaderName name : HeaderName.values()) {
+            byte[] ascii = name.ascii();
+            byte[] prefix = new byte[ascii.length + SEPARATOR.length];
+            System.arraycopy(ascii, 0, prefix, 0, ascii.length);
+            System.arraycopy(SEPARATOR, 0, prefix, ascii.length, SEPARATOR.length);
+            KNOWN_PREFIXES[name.ordinal()] = prefix;
+        }
+    }
+
+    private static final ThreadLocal<ResponseEncoder> LOCAL = ThreadLocal.withInitial(ResponseEncoder::new);
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    private ResponseEncoder() {
+    }
+
+    private static void cacheStatus(int status, String reason) {
+        CACHED_REASONS[status] = reason;
+        CACHED_STATUS_LINES[status] = ("HTTP/1.1 " + status + " " + reason + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return encoder of the calling thread
+     */
+    static ResponseEncoder get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Write status line, headers and body with a single {@code write} call on
+     * the stream when the body is small enough to be copied after the head.
+     */
+    void writeTo(OutputStream out, int status, String reason, HttpHeaders headers, byte[] body) throws IOException {
+        boolean coalesce = body.length <= COALESCE_LIMIT;
+        ByteBuffer head = encode(status, reason, headers, coalesce ? body : null);
+        out.write(head.array(), head.arrayOffset() + head.position(), head.remaining());
+        if (!coalesce) out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Write status line and headers only, without flushing, for a body that
+     * follows in chunks.
+     */
+    void writeHead(OutputStream out, int status, String reason, HttpHeaders headers) throws IOException {
+        ByteBuffer head = encode(status, reason, headers, null);
+        out.write(head.array(), head.arrayOffset() + head.position(), head.remaining());
+    }
+
+    /**
+     * Write status line, headers and body with gathering writes on a blocking
+     * channel; normally the first call sends everything.
+     */
+    void writeTo(GatheringByteChannel channel, int status, String reason, HttpHeaders headers, byte[] body) throws IOException {
+        ByteBuffer head = encode(status, reason, headers, null);
+        ByteBuffer[] parts = body.length == 0
+                ? new ByteBuffer[]{head}
+                : new ByteBuffer[]{head, ByteBuffer.wrap(body)};
+        ByteBuffer last = parts[parts.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(parts);
+        }
+    }
+
+    /**
+     * @param body bytes appended after the blank line, or null to encode only the head
+     * @return the encoder buffer ready to be read; valid until the next call on this thread
+     */
+    ByteBuffer encode(int status, String reason, HttpHeaders headers, byte[] body) {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        buffer.clear();
+        statusLine(status, reason);
+        headers.encodeTo(this);
+        put(CRLF);
+        if (body != null && body.length > 0) put(body, 0, body.length);
+        return buffer.flip();
+    }
+
+    private void statusLine(int status, String reason) {
+        if (status >= 0 && status < MAX_CACHED_STATUS && CACHED_REASONS[status] != null
+                && CACHED_REASONS[status].equals(reason)) {
+            put(CACHED_STATUS_LINES[status]);
+            return;
+        }
+        put(HTTP_VERSION);
+        putText(String.valueOf(status));
+        put((byte) ' ');
+        putText(String.valueOf(reason));
+        put(CRLF);
+    }
+
+    // --- Llamados desde HttpHeaders.encodeTo ---
+
+    void header(HeaderName name, String value) {
+        put(KNOWN_PREFIXES[name.ordinal()]);
+        putText(value);
+        put(CRLF);
+    }
+
+    void header(HeaderName name, byte[] raw, int offset, int length) {
+        put(KNOWN_PREFIXES[name.ordinal()]);
+        put(raw, offset, length);
+        put(CRLF);
+    }
+
+    void header(String name, String value) {
+        putText(name);
+        put(SEPARATOR);
+        putText(value);
+        put(CRLF);
+    }
+
+    void header(String name, byte[] raw, int offset, int length) {
+        putText(name);
+        put(SEPARATOR);
+        put(raw, offset, length);
+        put(CRLF);
+    }
+
+    // --- Escritura en el buffer ---
+
+    private void putText(String text) {
+        int length = text.length();
+        ensure(length);
+        int start = buffer.position();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Texto no ASCII: se vuelve a escribir en UTF-8
+                buffer.position(start);
+                byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+                put(utf8, 0, utf8.length);
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes) {
+        put(bytes, 0, bytes.length);
+    }
+
+    private void put(byte[] bytes, int offset, int length) {
+        ensure(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    private void ensure(int extra) {
+        if (buffer.remaining() >= extra) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+}
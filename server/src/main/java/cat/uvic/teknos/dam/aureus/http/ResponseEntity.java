@@ -1,10 +1,13 @@
 package cat.uvic.teknos.dam.aureus.http;
 
 import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.LinkedHashMap;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.security.DigestOutputStream;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,56 +18,175 @@ import java.util.logging.Logger;
  * <p>Instances can write themselves to an {@link java.io.OutputStream}
  * using the {@link #writeTo(OutputStream)} method following simple HTTP/1.1
  * formatting rules used by the embedded server.</p>
+ *
+ * <p>A response built with a {@link StreamingBody} is sent with
+ * {@code Transfer-Encoding: chunked} instead of {@code Content-Length}, and its
+ * {@code X-Body-Hash} is computed while the body is written and sent as a
+ * trailer field, so the body never has to be held in memory.</p>
  */
 public class ResponseEntity {
     private static final Logger LOGGER = Logger.getLogger(ResponseEntity.class.getName());
     private final int status;
     private final String reason;
-    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final HttpHeaders headers = new HttpHeaders();
     private final byte[] body;
+    private final StreamingBody streamingBody;
 
     public static final String BODY_HASH_HEADER = "X-Body-Hash";
+    public static final String CONNECTION_HEADER = "Connection";
+    public static final String KEEP_ALIVE_HEADER = "Keep-Alive";
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
 
     public ResponseEntity(int status, String reason, Map<String, String> headers, byte[] body) {
         this.status = status;
         this.reason = reason;
         if (headers != null) this.headers.putAll(headers);
         this.body = body == null ? new byte[0] : body;
+        this.streamingBody = null;
+    }
+
+    private ResponseEntity(int status, String reason, Map<String, String> headers, StreamingBody streamingBody) {
+        this.status = status;
+        this.reason = reason;
+        if (headers != null) this.headers.putAll(headers);
+        this.body = new byte[0];
+        this.streamingBody = streamingBody;
+    }
+
+    /**
+     * @param streamingBody body written while the response is sent, in chunks
+     * @return response whose body is produced while it is written
+     */
+    public static ResponseEntity streaming(int status, String reason, Map<String, String> headers, StreamingBody streamingBody) {
+        return new ResponseEntity(status, reason, headers, streamingBody);
     }
 
     public int getStatus() { return status; }
     public String getReason() { return reason; }
-    public Map<String,String> getHeaders() { return headers; }
+    public HttpHeaders getHeaders() { return headers; }
+    /** @return body bytes; empty for a streaming response */
     public byte[] getBody() { return body; }
+    /** @return the streaming body, or null if the body is held in memory */
+    public StreamingBody getStreamingBody() { return streamingBody; }
+    public boolean isStreaming() { return streamingBody != null; }
+
+    /**
+     * Write a streaming body to memory, for clients that cannot receive the
+     * hash as a trailer.
+     *
+     * @return an equivalent response with the body in memory, or this one if it already is
+     * @throws IOException if the streaming body fails
+     */
+    public ResponseEntity buffered() throws IOException {
+        if (streamingBody == null) return this;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamingBody.writeTo(out);
+        HttpHeaders copy = new HttpHeaders(headers);
+        copy.remove(HeaderName.TRANSFER_ENCODING);
+        copy.remove(HeaderName.TRAILER);
+        copy.remove(HeaderName.CONTENT_LENGTH);
+        return new ResponseEntity(status, reason, copy, out.toByteArray());
+    }
+
+    /**
+     * Mark the response as sent on a persistent connection.
+     *
+     * @param idleTimeoutSeconds seconds the server keeps the idle connection open
+     * @param maxRequests number of further requests accepted on the connection
+     */
+    public void keepAlive(int idleTimeoutSeconds, int maxRequests) {
+        headers.set(HeaderName.CONNECTION, "keep-alive");
+        headers.set(HeaderName.KEEP_ALIVE, "timeout=" + idleTimeoutSeconds + ", max=" + maxRequests);
+    }
+
+    /**
+     * Tell the client when to retry a request that was shed under load.
+     *
+     * @param seconds delay advertised in the {@code Retry-After} header
+     */
+    public void retryAfter(int seconds) {
+        headers.set(HeaderName.RETRY_AFTER, String.valueOf(seconds));
+    }
+
+    /**
+     * Mark the response as the last one on its connection.
+     */
+    public void closeConnection() {
+        headers.set(HeaderName.CONNECTION, "close");
+        headers.remove(HeaderName.KEEP_ALIVE);
+    }
 
     /**
      * Write the HTTP response to the provided OutputStream.
      *
+     * <p>Unless {@link #keepAlive(int, int)} was called, the response carries
+     * {@code Connection: close} because the server closes the socket after it.
+     * Head and body are handed to the stream in a single {@code write} call
+     * unless the body is larger than 16 KiB.</p>
+     *
      * @param out output stream that receives the HTTP response bytes
      * @throws IOException if an I/O error occurs while writing
      */
     public void writeTo(OutputStream out) throws IOException {
-        String statusLine = String.format("HTTP/1.1 %d %s\r\n", status, reason);
-        out.write(statusLine.getBytes(StandardCharsets.UTF_8));
+        if (streamingBody != null) {
+            writeChunked(out);
+            return;
+        }
+        prepareHeaders();
+        ResponseEncoder.get().writeTo(out, status, reason, headers, body);
+    }
+
+    /**
+     * Write the HTTP response to a blocking channel with gathering writes, so
+     * head and body leave in one system call.
+     *
+     * @param channel channel that receives the HTTP response bytes
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public void writeTo(GatheringByteChannel channel) throws IOException {
+        if (streamingBody != null) {
+            writeChunked(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            return;
+        }
+        prepareHeaders();
+        ResponseEncoder.get().writeTo(channel, status, reason, headers, body);
+    }
+
+    // Cuerpo en chunks; el hash se calcula mientras se escribe y va en el trailer
+    private void writeChunked(OutputStream out) throws IOException {
+        headers.remove(HeaderName.CONTENT_LENGTH);
+        headers.remove(HeaderName.X_BODY_HASH);
+        headers.set(HeaderName.TRANSFER_ENCODING, "chunked");
+        headers.set(HeaderName.TRAILER, BODY_HASH_HEADER);
+        if (!headers.contains(HeaderName.CONNECTION)) {
+            headers.set(HeaderName.CONNECTION, "close");
+        }
+        ResponseEncoder.get().writeHead(out, status, reason, headers);
+
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, ChunkedOutputStream.DEFAULT_CHUNK_SIZE);
+        DigestOutputStream digest = new DigestOutputStream(chunked, CryptoUtils.newDigest());
+        streamingBody.writeTo(digest);
+        String hash = CryptoUtils.bytesToHex(digest.getMessageDigest().digest());
+        LOGGER.log(Level.FINE, "ResponseEntity: computed streamed body hash = {0}", hash);
+        chunked.finish(Map.of(BODY_HASH_HEADER, hash));
+        out.flush();
+    }
 
-        if (!headers.containsKey("Content-Length")) {
-            headers.put("Content-Length", String.valueOf(body.length));
+    private void prepareHeaders() {
+        // Un 304 no lleva cuerpo ni la longitud del que omite
+        if (status != 304 && !headers.contains(HeaderName.CONTENT_LENGTH)) {
+            headers.set(HeaderName.CONTENT_LENGTH, String.valueOf(body.length));
+        }
+        if (!headers.contains(HeaderName.CONNECTION)) {
+            headers.set(HeaderName.CONNECTION, "close");
         }
 
         // If there's a body, compute its hash and include in headers (overwrite if present)
         if (body.length > 0) {
             String hash = CryptoUtils.hash(body);
-            headers.put(BODY_HASH_HEADER, hash);
+            headers.set(HeaderName.X_BODY_HASH, hash);
             // Debug logging at FINE level
             LOGGER.log(Level.FINE, "ResponseEntity: computed body hash = {0}", hash);
         }
-
-        for (Map.Entry<String, String> h : headers.entrySet()) {
-            String line = h.getKey() + ": " + h.getValue() + "\r\n";
-            out.write(line.getBytes(StandardCharsets.UTF_8));
-        }
-        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
-        if (body.length > 0) out.write(body);
-        out.flush();
     }
 }
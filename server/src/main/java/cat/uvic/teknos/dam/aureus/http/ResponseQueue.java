@@ -0,0 +1,132 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.filter.RequestContext;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Ordered queue of in-flight responses for one pipelined connection.
+ *
+ * <p>HTTP/1.1 pipelining lets a client send several requests without waiting
+ * for each response, but the responses must be returned in request order.
+ * {@link RequestRouter} submits independent requests here; they may run
+ * concurrently on the executor, and {@link #drainTo(ResponseWriter)} writes the
+ * results strictly in the order they were submitted.</p>
+ *
+ * <p>Without an executor every request is processed inline on submit, which is
+ * the behaviour of a non-pipelined connection. Either way the response of an
+ * asynchronous handler may complete later, on another thread; draining waits
+ * for it. Like {@link HttpConnection}, instances are only used by the thread
+ * reading the connection.</p>
+ */
+public class ResponseQueue {
+
+    /**
+     * Default maximum number of responses waiting on one connection.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 16;
+
+    private final Executor executor;
+    private final int maxDepth;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /**
+     * Callback that writes one response on the connection.
+     */
+    @FunctionalInterface
+    public interface ResponseWriter {
+        /**
+         * @param context request being answered (null if it could not be parsed)
+         * @param response response to write
+         * @param keepAlive whether the connection stays open after this response
+         * @param remainingRequests further requests allowed on the connection
+         * @return true if the connection is still usable after the write
+         */
+        boolean write(RequestContext context, ResponseEntity response, boolean keepAlive, int remainingRequests);
+    }
+
+    private record Pending(RequestContext context, CompletableFuture<ResponseEntity> response,
+                           boolean keepAlive, int remainingRequests) {}
+
+    /**
+     * @param executor executor for concurrent processing, or null to process inline
+     * @param maxDepth maximum number of queued responses before the caller must drain
+     */
+    public ResponseQueue(Executor executor, int maxDepth) {
+        this.executor = executor;
+        this.maxDepth = Math.max(1, maxDepth);
+    }
+
+    /**
+     * Queue that processes every request inline (no pipelining).
+     *
+     * @return sequential queue
+     */
+    public static ResponseQueue sequential() {
+        return new ResponseQueue(null, 1);
+    }
+
+    /**
+     * Start processing a request and append its future response to the queue.
+     *
+     * @param context request being processed
+     * @param keepAlive keep-alive decision taken when the request was read
+     * @param remainingRequests further requests allowed after this one
+     * @param handler starts processing and returns the future response; neither may fail
+     */
+    public void submit(RequestContext context, boolean keepAlive, int remainingRequests,
+                       Supplier<CompletableFuture<ResponseEntity>> handler) {
+        CompletableFuture<ResponseEntity> response;
+        if (executor == null) {
+            response = handler.get();
+        } else {
+            try {
+                response = CompletableFuture.supplyAsync(handler, executor).thenCompose(Function.identity());
+            } catch (RejectedExecutionException e) {
+                // Executor cerrado o saturado: procesar en el hilo de la conexión
+                response = handler.get();
+            }
+        }
+        pending.add(new Pending(context, response, keepAlive, remainingRequests));
+    }
+
+    /**
+     * Wait for the queued responses and write them in request order.
+     * Stops at the first response after which the connection is no longer usable
+     * and discards the rest.
+     *
+     * @param writer callback writing each response
+     * @return true if the connection is still usable (also when the queue was empty)
+     */
+    public boolean drainTo(ResponseWriter writer) {
+        Pending next;
+        while ((next = pending.poll()) != null) {
+            ResponseEntity response = next.response().join();
+            if (!writer.write(next.context(), response, next.keepAlive(), next.remainingRequests())) {
+                pending.clear();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the caller must drain before submitting more requests
+     */
+    public boolean isFull() {
+        return pending.size() >= maxDepth;
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+}
@@ -1,23 +1,24 @@
 package cat.uvic.teknos.dam.aureus.http;
 
-import java.util.function.BiFunction;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
- * Simple route description used by {@link RequestRouter} to match method/path
- * and to invoke a handler function.
+ * Route registered in {@link RequestRouter} and stored in its {@link RouteTrie}.
  *
  * @param method HTTP method (GET, POST, PUT, DELETE)
- * @param pathPattern declared path pattern (string equality or regex-like pattern)
- * @param regex optional compiled regex used to extract path variables
- * @param handler handler function receiving the parsed {@link HttpRequest}
- *                and an optional path variable
+ * @param pathPattern declared path pattern, e.g. {@code /coins/{id}} (see {@link RouteTrie})
+ * @param paramNames names of the path variables, in the order they appear in the pattern
+ * @param handler handler receiving the parsed {@link HttpRequest} and the path
+ *                variables extracted from the request path; synchronous handlers
+ *                are wrapped with {@link RouteHandler#of}
+ * @param skippedFilters names of the {@link cat.uvic.teknos.dam.aureus.http.filter.FilterPipeline}
+ *                       stages disabled for this route (e.g. hashing on a health check)
  */
 public record Route(
         String method,
         String pathPattern,
-        Pattern regex,
-        BiFunction<HttpRequest, String, ResponseEntity> handler
+        String[] paramNames,
+        RouteHandler handler,
+        Set<String> skippedFilters
 ) {
-    // Constructor principal
-}
\ No newline at end of file
+}
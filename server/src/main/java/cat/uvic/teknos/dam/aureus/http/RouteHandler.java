@@ -0,0 +1,32 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * Handler of a {@link Route}.
+ *
+ * <p>Asynchronous handlers return a future that completes on another thread
+ * (e.g. a database executor) and the response is written when it completes.
+ * Synchronous handlers are adapted with {@link #of(BiFunction)}. A handler
+ * must read the request body before returning: a streamed body is read from
+ * the connection, which moves on to the next request afterwards.</p>
+ */
+@FunctionalInterface
+public interface RouteHandler {
+
+    /**
+     * @param request request being handled
+     * @param params path variables extracted from the request path
+     * @return future response
+     */
+    CompletableFuture<ResponseEntity> handle(HttpRequest request, PathParams params);
+
+    /**
+     * @param handler synchronous handler
+     * @return handler returning an already completed future
+     */
+    static RouteHandler of(BiFunction<HttpRequest, PathParams, ResponseEntity> handler) {
+        return (request, params) -> CompletableFuture.completedFuture(handler.apply(request, params));
+    }
+}
@@ -0,0 +1,237 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.MethodNotAllowedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Path trie used by {@link RequestRouter} to find the route of a request.
+ *
+ * <p>Patterns are split at {@code /} into segments of three kinds: static text
+ * ({@code coins}), an integer variable with an optional literal prefix
+ * ({@code {id}}, {@code client{n}}) that matches one or more digits, and a
+ * final wildcard ({@code *}) that matches the rest of the path. Every node
+ * keeps its routes indexed by method, so a lookup walks the path once and
+ * uses no regular expressions. Static segments win over variables and
+ * variables over the wildcard; a branch that does not lead to a route is
+ * backtracked. The query string is ignored. When the path matches only
+ * routes of other methods, the 405 lists the methods of every node the path
+ * reaches, through any of its branches.</p>
+ *
+ * <p>Routes are added while the router is built and only read afterwards, so
+ * lookups need no synchronization.</p>
+ */
+final class RouteTrie {
+
+    /**
+     * Route found for a request, with the values of its path variables.
+     */
+    record Match(Route route, PathParams params) {
+    }
+
+    private static final class Node {
+        private final String prefix; // literal antes de la variable ("client" en client{n})
+        private final Map<String, Node> statics = new HashMap<>();
+        private final List<Node> params = new ArrayList<>(1);
+        private Node wildcard;
+        private final Map<String, Route> routes = new LinkedHashMap<>(4); // por método
+        private String allow;
+
+        private Node(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private final Node root = new Node("");
+    private int maxParams;
+    private int size;
+
+    /**
+     * Register a route.
+     *
+     * @param method HTTP method
+     * @param pattern path pattern, e.g. {@code /collections/{id}/coins/{coinId}}
+     * @param handler handler invoked with the request and its path variables
+     * @return the registered route
+     * @throws IllegalArgumentException if the pattern is invalid or the route already exists
+     */
+    Route add(String method, String pattern, BiFunction<HttpRequest, PathParams, ResponseEntity> handler) {
+        return add(method, pattern, handler, Set.of());
+    }
+
+    /**
+     * Register a route that disables some filter stages.
+     *
+     * @param method HTTP method
+     * @param pattern path pattern
+     * @param handler handler invoked with the request and its path variables
+     * @param skippedFilters names of the filter stages not run for this route
+     * @return the registered route
+     * @throws IllegalArgumentException if the pattern is invalid or the route already exists
+     */
+    Route add(String method, String pattern, BiFunction<HttpRequest, PathParams, ResponseEntity> handler,
+              Set<String> skippedFilters) {
+        return addAsync(method, pattern, RouteHandler.of(handler), skippedFilters);
+    }
+
+    /**
+     * Register a route whose handler completes asynchronously.
+     *
+     * @param method HTTP method
+     * @param pattern path pattern
+     * @param handler handler returning a future response
+     * @param skippedFilters names of the filter stages not run for this route
+     * @return the registered route
+     * @throws IllegalArgumentException if the pattern is invalid or the route already exists
+     */
+    Route addAsync(String method, String pattern, RouteHandler handler, Set<String> skippedFilters) {
+        if (pattern.isEmpty() || pattern.charAt(0) != '/') {
+            throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+        }
+        String[] segments = pattern.substring(1).split("/", -1);
+        List<String> names = new ArrayList<>();
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            int open = segment.indexOf('{');
+            if (segment.equals("*")) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("Wildcard must be the last segment: " + pattern);
+                }
+                if (node.wildcard == null) node.wildcard = new Node("");
+                node = node.wildcard;
+                names.add("*");
+            } else if (open >= 0) {
+                if (!segment.endsWith("}") || open + 2 >= segment.length()) {
+                    throw new IllegalArgumentException("Invalid path variable in " + pattern);
+                }
+                node = paramChild(node, segment.substring(0, open));
+                names.add(segment.substring(open + 1, segment.length() - 1));
+            } else {
+                node = node.statics.computeIfAbsent(segment, s -> new Node(""));
+            }
+        }
+
+        String key = method.toUpperCase(Locale.ROOT);
+        Route route = new Route(key, pattern, names.toArray(new String[0]), handler, Set.copyOf(skippedFilters));
+        if (node.routes.putIfAbsent(key, route) != null) {
+            throw new IllegalArgumentException("Duplicate route: " + key + " " + pattern);
+        }
+        node.allow = String.join(", ", node.routes.keySet());
+        maxParams = Math.max(maxParams, names.size());
+        size++;
+        return route;
+    }
+
+    /**
+     * Find the route for a request.
+     *
+     * @param method request method
+     * @param path request path, optionally followed by a query string
+     * @return matched route, or null if no route has this path
+     * @throws MethodNotAllowedException if the path exists but not for this method
+     */
+    Match find(String method, String path) {
+        int end = path.indexOf('?');
+        if (end < 0) end = path.length();
+        if (end == 0 || path.charAt(0) != '/') return null;
+
+        String key = method.toUpperCase(Locale.ROOT);
+        String[] values = maxParams == 0 ? null : new String[maxParams];
+        List<Node> pathMatches = new ArrayList<>(0);
+        Node found = search(root, key, path, 1, end, values, 0, pathMatches);
+        if (found == null) {
+            if (!pathMatches.isEmpty()) throw new MethodNotAllowedException(key, path.substring(0, end), allow(pathMatches));
+            return null;
+        }
+        Route route = found.routes.get(key);
+        int count = route.paramNames().length;
+        PathParams params = count == 0 ? PathParams.EMPTY : new PathParams(route.paramNames(), Arrays.copyOf(values, count));
+        return new Match(route, params);
+    }
+
+    /**
+     * @return number of registered routes
+     */
+    int size() {
+        return size;
+    }
+
+    // Sin ruta para el método la búsqueda ha recorrido todas las ramas: se unen sus métodos
+    private static String allow(List<Node> pathMatches) {
+        if (pathMatches.size() == 1) return pathMatches.get(0).allow;
+        Set<String> methods = new LinkedHashSet<>();
+        for (Node node : pathMatches) methods.addAll(node.routes.keySet());
+        return String.join(", ", methods);
+    }
+
+    // pos: inicio del siguiente segmento; pos > end cuando ya se ha consumido toda la ruta
+    private static Node search(Node node, String method, String path, int pos, int end,
+                               String[] values, int depth, List<Node> pathMatches) {
+        if (pos > end) return accept(node, method, pathMatches);
+
+        int segEnd = path.indexOf('/', pos);
+        if (segEnd < 0 || segEnd > end) segEnd = end;
+
+        // 1. Segmento estático
+        if (!node.statics.isEmpty()) {
+            Node child = node.statics.get(path.substring(pos, segEnd));
+            if (child != null) {
+                Node found = search(child, method, path, segEnd + 1, end, values, depth, pathMatches);
+                if (found != null) return found;
+            }
+        }
+
+        // 2. Variables enteras (con prefijo literal opcional)
+        for (Node child : node.params) {
+            int digits = pos + child.prefix.length();
+            if (segEnd > digits && path.startsWith(child.prefix, pos) && allDigits(path, digits, segEnd)) {
+                values[depth] = path.substring(digits, segEnd);
+                Node found = search(child, method, path, segEnd + 1, end, values, depth + 1, pathMatches);
+                if (found != null) return found;
+            }
+        }
+
+        // 3. Comodín: el resto de la ruta
+        if (node.wildcard != null) {
+            values[depth] = path.substring(pos, end);
+            return accept(node.wildcard, method, pathMatches);
+        }
+        return null;
+    }
+
+    private static Node accept(Node node, String method, List<Node> pathMatches) {
+        if (node.routes.isEmpty()) return null;
+        if (node.routes.containsKey(method)) return node;
+        pathMatches.add(node);
+        return null;
+    }
+
+    private static Node paramChild(Node node, String prefix) {
+        for (Node child : node.params) {
+            if (child.prefix.equals(prefix)) return child;
+        }
+        Node child = new Node(prefix);
+        node.params.add(child);
+        // Prefijos más largos primero: client{n} antes que {id}
+        node.params.sort((a, b) -> b.prefix.length() - a.prefix.length());
+        return child;
+    }
+
+    private static boolean allDigits(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+}
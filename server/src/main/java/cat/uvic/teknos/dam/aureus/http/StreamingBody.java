@@ -0,0 +1,24 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response body produced while it is sent, for responses too large to be
+ * built in memory first.
+ *
+ * <p>A {@link ResponseEntity} with a streaming body is sent with
+ * {@code Transfer-Encoding: chunked}; its {@code X-Body-Hash} is computed
+ * while the body is written and sent as a trailer field.</p>
+ */
+@FunctionalInterface
+public interface StreamingBody {
+
+    /**
+     * Write the whole body. Closing {@code out} does not end the response.
+     *
+     * @param out stream that frames and hashes the bytes
+     * @throws IOException if the body cannot be produced or the connection fails
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,14 @@
+package cat.uvic.teknos.dam.aureus.http.exception;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the peer closes the connection before sending any byte of a
+ * new request. On a persistent connection this is the normal end of the
+ * conversation rather than a protocol error.
+ */
+public class ConnectionClosedException extends IOException {
+    public ConnectionClosedException(String message) {
+        super(message);
+    }
+}
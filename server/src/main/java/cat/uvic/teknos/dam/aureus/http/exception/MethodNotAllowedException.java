@@ -0,0 +1,21 @@
+package cat.uvic.teknos.dam.aureus.http.exception;
+
+/**
+ * 405 error raised when the path exists but not for the request method.
+ * Carries the value of the {@code Allow} header the response must include.
+ */
+public class MethodNotAllowedException extends HttpException {
+    private final String allowedMethods;
+
+    public MethodNotAllowedException(String method, String path, String allowedMethods) {
+        super(405, "Method Not Allowed", "Method " + method + " not allowed on " + path);
+        this.allowedMethods = allowedMethods;
+    }
+
+    /**
+     * Methods supported by the path, comma separated (e.g. "GET, PUT, DELETE").
+     */
+    public String getAllowedMethods() {
+        return allowedMethods;
+    }
+}
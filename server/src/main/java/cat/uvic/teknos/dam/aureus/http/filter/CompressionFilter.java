@@ -0,0 +1,156 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HeaderName;
+import cat.uvic.teknos.dam.aureus.http.HttpHeaders;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.http.StreamingBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stage {@value FilterPipeline#COMPRESS}: compresses the response body with
+ * the coding the client prefers in {@code Accept-Encoding} ({@code gzip} or
+ * {@code deflate}).
+ *
+ * <p>It runs inside {@value FilterPipeline#ENCRYPT}, so session responses are
+ * compressed before they are encrypted; ciphertext does not compress. Bodies
+ * in memory smaller than the threshold, or that would not shrink, are sent
+ * unchanged. Streaming bodies are always compressed while they are written.</p>
+ *
+ * <p>A compressed body gets its own strong {@code ETag}, with the coding as a
+ * suffix (see {@link HttpRequest#codedETag}); a {@code 304} keeps the coded
+ * tag the client revalidated with.</p>
+ */
+public class CompressionFilter implements Filter {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int minSize;
+
+    public CompressionFilter() {
+        this(DEFAULT_MIN_SIZE);
+    }
+
+    /**
+     * @param minSize smallest body, in bytes, worth compressing
+     */
+    public CompressionFilter(int minSize) {
+        this.minSize = minSize;
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity> filter(RequestContext context, FilterChain chain) {
+        String coding = negotiate(context.getRequest().getHeaders().get(HeaderName.ACCEPT_ENCODING));
+        if (coding == null) return chain.proceed();
+        return chain.proceed().thenApply(response -> compress(coding, response, context.getRequest()));
+    }
+
+    /**
+     * Pick the coding with the highest quality value; {@code gzip} wins ties.
+     *
+     * @param acceptEncoding value of the request {@code Accept-Encoding}, may be null
+     * @return {@value #GZIP}, {@value #DEFLATE} or null to send the body as is
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) return null;
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            switch (coding) {
+                case GZIP, "x-gzip" -> gzip = q;
+                case DEFLATE -> deflate = q;
+                case "*" -> any = q;
+                default -> { }
+            }
+        }
+        // "*" cubre las codificaciones no mencionadas
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+        if (gzip <= 0 && deflate <= 0) return null;
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private ResponseEntity compress(String coding, ResponseEntity response, HttpRequest request) {
+        HttpHeaders original = response.getHeaders();
+        if (original.contains(HeaderName.CONTENT_ENCODING)) return response;
+        if (response.getStatus() == 304) return notModified(coding, response, request);
+
+        if (response.isStreaming()) {
+            StreamingBody body = response.getStreamingBody();
+            return ResponseEntity.streaming(response.getStatus(), response.getReason(), encoded(original, coding), out -> {
+                try (DeflaterOutputStream compressed = open(coding, out)) {
+                    body.writeTo(compressed);
+                }
+            });
+        }
+
+        byte[] body = response.getBody();
+        if (body == null || body.length < minSize) return response;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+        try (DeflaterOutputStream compressed = open(coding, buffer)) {
+            compressed.write(body);
+        } catch (IOException e) {
+            // ByteArrayOutputStream no falla
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.size() >= body.length) return response;
+
+        byte[] compressedBody = buffer.toByteArray();
+        HttpHeaders headers = encoded(original, coding);
+        headers.set(HeaderName.CONTENT_LENGTH, String.valueOf(compressedBody.length));
+        return new ResponseEntity(response.getStatus(), response.getReason(), headers, compressedBody);
+    }
+
+    private static HttpHeaders encoded(HttpHeaders original, String coding) {
+        HttpHeaders headers = new HttpHeaders(original);
+        headers.set(HeaderName.CONTENT_ENCODING, coding);
+        headers.set(HeaderName.VARY, HeaderName.ACCEPT_ENCODING.headerName());
+        String etag = original.get(HeaderName.ETAG);
+        if (etag != null) headers.set(HeaderName.ETAG, HttpRequest.codedETag(etag, coding));
+        return headers;
+    }
+
+    // Sin cuerpo que comprimir: si el cliente validó la versión comprimida, se le confirma esa etiqueta
+    private static ResponseEntity notModified(String coding, ResponseEntity response, HttpRequest request) {
+        String etag = response.getHeaders().get(HeaderName.ETAG);
+        String ifNoneMatch = request.getHeaders().get(HeaderName.IF_NONE_MATCH);
+        if (etag == null || ifNoneMatch == null) return response;
+        String coded = HttpRequest.codedETag(etag, coding);
+        if (coded.equals(etag) || !ifNoneMatch.contains(coded)) return response;
+        HttpHeaders headers = new HttpHeaders(response.getHeaders());
+        headers.set(HeaderName.ETAG, coded);
+        headers.set(HeaderName.VARY, HeaderName.ACCEPT_ENCODING.headerName());
+        return new ResponseEntity(response.getStatus(), response.getReason(), headers, response.getBody());
+    }
+
+    // "deflate" en HTTP es el formato zlib, el que usa DeflaterOutputStream por defecto
+    private static DeflaterOutputStream open(String coding, OutputStream out) throws IOException {
+        return GZIP.equals(coding) ? new GZIPOutputStream(out, BUFFER_SIZE) : new DeflaterOutputStream(out);
+    }
+}
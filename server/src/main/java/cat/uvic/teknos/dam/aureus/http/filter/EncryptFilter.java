@@ -0,0 +1,92 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HeaderName;
+import cat.uvic.teknos.dam.aureus.http.HttpHeaders;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.http.StreamingBody;
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stage {@value FilterPipeline#ENCRYPT}: encrypts the response body with the
+ * AES key of the session named in the request {@code X-Session-Id}.
+ *
+ * <p>It is the outermost stage, so error responses produced by the inner
+ * stages are encrypted too. The body is sent as hex ciphertext with
+ * {@code X-Body-Encrypted: 1} and the IV in {@code X-Body-IV}; if encryption
+ * fails the response is sent in plaintext. A streaming body is encrypted while
+ * it is written, so it stays streamed.</p>
+ */
+public class EncryptFilter implements Filter {
+
+    private final Map<String, String> sessions;
+
+    /**
+     * @param sessions session id to AES key (hex), shared with the key exchange
+     */
+    public EncryptFilter(Map<String, String> sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity> filter(RequestContext context, FilterChain chain) {
+        // Sesión de la petición original: las etapas internas pueden sustituirla
+        String sessionId = context.getRequest().getHeaders().get(HeaderName.X_SESSION_ID);
+        if (sessionId == null || sessionId.isEmpty()) return chain.proceed();
+        return chain.proceed().thenApply(response -> encrypt(sessionId, response));
+    }
+
+    private ResponseEntity encrypt(String sessionId, ResponseEntity response) {
+        String keyHex = sessions.get(sessionId);
+        if (keyHex == null) return response;
+        if (response.isStreaming()) return encryptStream(keyHex, response);
+        if (response.getBody() == null || response.getBody().length == 0) return response;
+
+        try {
+            // Se cifran los bytes tal cual: pueden venir comprimidos
+            String[] ivAndBodyHex = CryptoUtils.encryptWithKeyHex(keyHex, response.getBody());
+            if (ivAndBodyHex == null) return response;
+            HttpHeaders headers = new HttpHeaders(response.getHeaders());
+            headers.set(HeaderName.X_BODY_ENCRYPTED, "1");
+            headers.set(HeaderName.X_BODY_IV, ivAndBodyHex[0]);
+            byte[] outBodyBytes = ivAndBodyHex[1].getBytes(StandardCharsets.US_ASCII);
+            headers.set(HeaderName.CONTENT_LENGTH, String.valueOf(outBodyBytes.length));
+            return new ResponseEntity(response.getStatus(), response.getReason(), headers, outBodyBytes);
+        } catch (Exception e) {
+            // encryption failed -> send plaintext
+            return response;
+        }
+    }
+
+    // El IV se fija antes de enviar las cabeceras; el cifrado se hace al escribir el cuerpo
+    private ResponseEntity encryptStream(String keyHex, ResponseEntity response) {
+        String ivHex = CryptoUtils.bytesToHex(CryptoUtils.generateRandomBytes(16));
+        try {
+            // Comprobar la clave ahora, mientras aún se puede responder en claro
+            CryptoUtils.encryptStream(keyHex, ivHex, OutputStream.nullOutputStream());
+        } catch (Exception e) {
+            return response;
+        }
+        StreamingBody plain = response.getStreamingBody();
+        HttpHeaders headers = new HttpHeaders(response.getHeaders());
+        headers.set(HeaderName.X_BODY_ENCRYPTED, "1");
+        headers.set(HeaderName.X_BODY_IV, ivHex);
+        return ResponseEntity.streaming(response.getStatus(), response.getReason(), headers, out -> {
+            OutputStream cipherText;
+            try {
+                cipherText = CryptoUtils.encryptStream(keyHex, ivHex, out);
+            } catch (Exception e) {
+                // Las cabeceras ya anuncian un cuerpo cifrado: no se puede enviar en claro
+                throw new IOException("Failed to encrypt response body", e);
+            }
+            try (cipherText) {
+                plain.writeTo(cipherText);
+            }
+        });
+    }
+}
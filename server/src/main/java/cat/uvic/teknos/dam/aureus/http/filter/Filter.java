@@ -0,0 +1,29 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One stage of the {@link FilterPipeline} that processes every request.
+ *
+ * <p>A filter may inspect or replace the request in the {@link RequestContext},
+ * call {@link FilterChain#proceed()} to run the following stages, and inspect
+ * or replace the response they return (with {@code thenApply}, as the route
+ * handler may complete on another thread). Returning without calling the
+ * chain answers the request directly (e.g. a cached response or a rejected
+ * credential). Exceptions, thrown or completing the future, are turned into
+ * error responses by the pipeline, so outer filters always receive a
+ * response.</p>
+ */
+@FunctionalInterface
+public interface Filter {
+
+    /**
+     * @param context request being processed
+     * @param chain remaining stages of the pipeline
+     * @return future response to send
+     * @throws Exception any failure, mapped to an error response by the pipeline
+     */
+    CompletableFuture<ResponseEntity> filter(RequestContext context, FilterChain chain) throws Exception;
+}
@@ -0,0 +1,90 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Position of one request inside the {@link FilterPipeline}.
+ *
+ * <p>Each call to {@link #proceed()} runs the next stage that the resolved
+ * route has not disabled, records its exclusive time in the
+ * {@link RequestContext} and converts any exception it throws, or completes
+ * its future with, into an error response. When a stage returns before its
+ * response is ready (an asynchronous handler), the time until the response
+ * completes, minus the time of the inner stages, is added to it.</p>
+ */
+public final class FilterChain {
+
+    private final List<FilterPipeline.Stage> stages;
+    private final RequestContext context;
+    private final Function<Exception, ResponseEntity> errorMapper;
+    private int index;
+    private long nestedNanos; // tiempo de las etapas internas de la etapa en curso
+    private volatile long completedAt; // fin de la última etapa completada de forma asíncrona
+
+    FilterChain(List<FilterPipeline.Stage> stages, RequestContext context,
+                Function<Exception, ResponseEntity> errorMapper) {
+        this.stages = stages;
+        this.context = context;
+        this.errorMapper = errorMapper;
+    }
+
+    /**
+     * Run the rest of the pipeline.
+     *
+     * @return future response produced by the following stages; never completes exceptionally
+     * @throws IllegalStateException if every remaining stage is disabled
+     */
+    public CompletableFuture<ResponseEntity> proceed() {
+        while (index < stages.size() && context.isSkipped(stages.get(index).name())) {
+            index++;
+        }
+        if (index == stages.size()) {
+            throw new IllegalStateException("Filter pipeline ended without a response");
+        }
+        FilterPipeline.Stage stage = stages.get(index++);
+
+        context.recordTiming(stage.name(), 0); // reservar la posición en orden de ejecución
+        long outerNested = nestedNanos;
+        nestedNanos = 0;
+        long start = System.nanoTime();
+        CompletableFuture<ResponseEntity> response;
+        try {
+            response = stage.filter().filter(context, this);
+            if (response == null) {
+                throw new IllegalStateException("Filter '" + stage.name() + "' returned no response");
+            }
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        long returnedAt = System.nanoTime();
+        long elapsed = returnedAt - start;
+        context.recordTiming(stage.name(), elapsed - nestedNanos);
+        nestedNanos = outerNested + elapsed;
+
+        CompletableFuture<ResponseEntity> mapped = response.exceptionally(e -> errorMapper.apply(unwrap(e)));
+        if (response.isDone()) return mapped;
+        return mapped.whenComplete((r, e) -> {
+            // Espera hasta la respuesta, sin contar la parte ya atribuida a las etapas internas
+            long now = System.nanoTime();
+            context.recordTiming(stage.name(), now - Math.max(returnedAt, completedAt));
+            completedAt = now;
+        });
+    }
+
+    public RequestContext getContext() {
+        return context;
+    }
+
+    private static Exception unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e instanceof Exception ex ? ex : new CompletionException(e);
+    }
+}
@@ -0,0 +1,182 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Ordered list of named {@link Filter}s that every request goes through, and
+ * the latency statistics of each stage.
+ *
+ * <p>The router builds the default chain {@value #ENCRYPT}, {@value #COMPRESS},
+ * {@value #DECRYPT}, {@value #INTEGRITY}, {@value #ROUTE}; custom filters (authentication, rate
+ * limiting, caching...) are inserted with {@link #addBefore}. A route can
+ * disable stages by name (see {@link cat.uvic.teknos.dam.aureus.http.Route#skippedFilters()}).
+ * The I/O stages {@value #PARSE} and {@value #WRITE} are not filters but are
+ * timed by the router into the same {@link RequestContext}, so
+ * {@link #summary()} shows which stage dominates the latency.</p>
+ *
+ * <p>Stages are registered while the server starts; the pipeline can then be
+ * used from any number of threads.</p>
+ */
+public class FilterPipeline {
+
+    public static final String PARSE = "parse";
+    public static final String ENCRYPT = "encrypt";
+    public static final String COMPRESS = "compress";
+    public static final String DECRYPT = "decrypt";
+    public static final String INTEGRITY = "integrity";
+    public static final String ROUTE = "route";
+    public static final String WRITE = "write";
+
+    record Stage(String name, Filter filter) {
+    }
+
+    private volatile List<Stage> stages = List.of(); // copia inmutable, sustituida al añadir etapas
+    private final Function<Exception, ResponseEntity> errorMapper;
+    private final Map<String, StageStats> stats = new ConcurrentHashMap<>();
+
+    private static final class StageStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+
+    /**
+     * @param errorMapper converts an exception thrown by a stage into the response to send
+     */
+    public FilterPipeline(Function<Exception, ResponseEntity> errorMapper) {
+        this.errorMapper = errorMapper;
+    }
+
+    /**
+     * Append a stage at the end of the chain.
+     *
+     * @param name stage name, used for timings and to disable it per route
+     * @param filter stage implementation
+     * @return this pipeline
+     * @throws IllegalArgumentException if a stage with that name exists
+     */
+    public synchronized FilterPipeline add(String name, Filter filter) {
+        List<Stage> updated = new ArrayList<>(stages);
+        updated.add(newStage(name, filter));
+        stages = List.copyOf(updated);
+        return this;
+    }
+
+    /**
+     * Insert a stage right before another one.
+     *
+     * @param existing name of the stage that must run after the new one
+     * @param name stage name
+     * @param filter stage implementation
+     * @throws IllegalArgumentException if {@code existing} is unknown or {@code name} is taken
+     */
+    public synchronized void addBefore(String existing, String name, Filter filter) {
+        int index = indexOf(existing);
+        if (index < 0) throw new IllegalArgumentException("Unknown filter stage: " + existing);
+        List<Stage> updated = new ArrayList<>(stages);
+        updated.add(index, newStage(name, filter));
+        stages = List.copyOf(updated);
+    }
+
+    /**
+     * @return names of the stages, in execution order
+     */
+    public List<String> stageNames() {
+        List<Stage> current = stages;
+        List<String> names = new ArrayList<>(current.size());
+        for (Stage stage : current) names.add(stage.name());
+        return names;
+    }
+
+    /**
+     * Run a request through every stage.
+     *
+     * @param context request state
+     * @return future response to send; never completes exceptionally
+     */
+    public CompletableFuture<ResponseEntity> execute(RequestContext context) {
+        return new FilterChain(stages, context, errorMapper).proceed();
+    }
+
+    /**
+     * Add the timings of a finished request to the statistics.
+     *
+     * @param context request whose response has been written
+     */
+    public void record(RequestContext context) {
+        for (Map.Entry<String, Long> timing : context.getTimings().entrySet()) {
+            stats.computeIfAbsent(timing.getKey(), k -> new StageStats()).add(timing.getValue());
+        }
+    }
+
+    /**
+     * @return average nanoseconds per stage over the recorded requests, in pipeline order
+     */
+    public Map<String, Long> averageNanos() {
+        Map<String, Long> averages = new LinkedHashMap<>();
+        for (String name : orderedStatNames()) {
+            StageStats s = stats.get(name);
+            long count = s.count.sum();
+            if (count > 0) averages.put(name, s.totalNanos.sum() / count);
+        }
+        return averages;
+    }
+
+    /**
+     * @return one-line report with average and maximum time of each stage
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder("stages avg/max µs:");
+        for (String name : orderedStatNames()) {
+            StageStats s = stats.get(name);
+            long count = s.count.sum();
+            if (count == 0) continue;
+            sb.append(' ').append(name).append('=')
+              .append(String.format(Locale.ROOT, "%.1f/%.1f",
+                      s.totalNanos.sum() / (count * 1000.0), s.maxNanos.get() / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    // parse, etapas del pipeline, write y después cualquier otra etapa medida
+    private List<String> orderedStatNames() {
+        List<String> names = new ArrayList<>();
+        names.add(PARSE);
+        names.addAll(stageNames());
+        names.add(WRITE);
+        for (String name : stats.keySet()) {
+            if (!names.contains(name)) names.add(name);
+        }
+        names.removeIf(name -> !stats.containsKey(name));
+        return names;
+    }
+
+    private Stage newStage(String name, Filter filter) {
+        if (indexOf(name) >= 0) throw new IllegalArgumentException("Duplicate filter stage: " + name);
+        return new Stage(name, filter);
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < stages.size(); i++) {
+            if (stages.get(i).name().equals(name)) return i;
+        }
+        return -1;
+    }
+}
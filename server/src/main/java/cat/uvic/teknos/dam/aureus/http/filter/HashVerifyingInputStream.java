@@ -0,0 +1,72 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Stream that hashes the bytes read and compares the digest with the
+ * {@code X-Body-Hash} sent by the client when the end of the body is reached.
+ *
+ * <p>A mismatch raises a 400 {@link HttpException} from the final
+ * {@code read}, so a handler that consumes the whole body before acting on it
+ * never sees an unverified payload as complete.</p>
+ */
+class HashVerifyingInputStream extends FilterInputStream {
+
+    private final MessageDigest digest = CryptoUtils.newDigest();
+    private final String expectedHash;
+    private boolean verified;
+
+    HashVerifyingInputStream(InputStream in, String expectedHash) {
+        super(in);
+        this.expectedHash = expectedHash;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b < 0) verify();
+        else digest.update((byte) b);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n < 0) verify();
+        else digest.update(b, off, n);
+        return n;
+    }
+
+    // skip() de FilterInputStream saltaría bytes sin pasarlos por el digest
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] scratch = new byte[(int) Math.min(8192, Math.max(1, n))];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+            if (r < 0) break;
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void verify() {
+        if (verified) return;
+        verified = true;
+        String computed = CryptoUtils.bytesToHex(digest.digest());
+        if (!computed.equalsIgnoreCase(expectedHash)) {
+            throw new HttpException(400, "Bad Request", "Invalid or missing body hash");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HeaderName;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.RequestBody;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stage {@value FilterPipeline#INTEGRITY}: verifies the {@code X-Body-Hash}
+ * of plaintext request bodies.
+ *
+ * <p>A body already in memory is checked before the handler runs. A streamed
+ * body is hashed while the handler reads it; a mismatch surfaces as a 400
+ * {@link HttpException} when its end is reached. Bodies already checked by
+ * {@link SessionDecryptFilter} are left alone.</p>
+ */
+public class IntegrityFilter implements Filter {
+
+    private static final Logger LOGGER = Logger.getLogger(IntegrityFilter.class.getName());
+
+    @Override
+    public CompletableFuture<ResponseEntity> filter(RequestContext context, FilterChain chain) {
+        HttpRequest request = context.getRequest();
+        RequestBody body = request.getRequestBody();
+        if (context.isBodyVerified() || body.isEmpty()) return chain.proceed();
+
+        String providedHash = request.getHeaders().get(HeaderName.X_BODY_HASH);
+        if (providedHash == null) {
+            LOGGER.log(Level.FINE, "Integrity: received body hash header = <missing>");
+            throw new HttpException(400, "Bad Request", "Invalid or missing body hash");
+        }
+        RequestBody verifiedBody = verified(body, providedHash);
+        if (verifiedBody != body) {
+            context.setRequest(new HttpRequest(request.getMethod(), request.getTarget(), request.getVersion(),
+                    request.getHeaders(), verifiedBody));
+        }
+        context.markBodyVerified();
+        return chain.proceed();
+    }
+
+    // Un cuerpo en memoria se comprueba ya; uno en streaming, al llegar a su final
+    static RequestBody verified(RequestBody body, String providedHash) {
+        if (!body.isBuffered()) {
+            return RequestBody.stream(new HashVerifyingInputStream(body.stream(), providedHash), body.length());
+        }
+        String computed = CryptoUtils.hash(body.bytes());
+        // Debug logs for hashes (FINE level)
+        LOGGER.log(Level.FINE, "Integrity: received body hash header = {0}", new Object[]{providedHash});
+        LOGGER.log(Level.FINE, "Integrity: computed body hash = {0}", new Object[]{computed});
+        if (!providedHash.equalsIgnoreCase(computed)) {
+            throw new HttpException(400, "Bad Request", "Invalid or missing body hash");
+        }
+        return body;
+    }
+}
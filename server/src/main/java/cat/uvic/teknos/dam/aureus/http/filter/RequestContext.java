@@ -0,0 +1,120 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HttpConnection;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.PathParams;
+import cat.uvic.teknos.dam.aureus.http.Route;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of one request while it goes through the {@link FilterPipeline}.
+ *
+ * <p>Holds the current request (filters such as session decryption replace
+ * it), the route it resolved to, free-form attributes shared between filters
+ * and the time spent in each stage. Timings are exclusive: the time of a
+ * filter does not include the stages it called. A context is used by one
+ * thread at a time.</p>
+ */
+public class RequestContext {
+
+    private HttpRequest request;
+    private final HttpConnection connection;
+    private Route route;
+    private PathParams pathParams = PathParams.EMPTY;
+    private boolean bodyVerified;
+    private final Map<String, Long> timings = new LinkedHashMap<>(8);
+    private Map<String, Object> attributes;
+
+    /**
+     * @param request request as parsed from the connection
+     * @param connection connection it was read from, or null when processed outside a connection
+     */
+    public RequestContext(HttpRequest request, HttpConnection connection) {
+        this.request = request;
+        this.connection = connection;
+    }
+
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @param request request seen by the following stages
+     */
+    public void setRequest(HttpRequest request) {
+        this.request = request;
+    }
+
+    public HttpConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return route resolved for the request, or null if none matched
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    public PathParams getPathParams() {
+        return pathParams;
+    }
+
+    /**
+     * @param route route resolved for the request
+     * @param pathParams values of its path variables
+     */
+    public void setRoute(Route route, PathParams pathParams) {
+        this.route = route;
+        this.pathParams = pathParams == null ? PathParams.EMPTY : pathParams;
+    }
+
+    /**
+     * @param stage stage name
+     * @return true if the resolved route disabled the stage
+     */
+    public boolean isSkipped(String stage) {
+        return route != null && route.skippedFilters().contains(stage);
+    }
+
+    /**
+     * @return true once a stage has checked the {@code X-Body-Hash} of the body
+     */
+    public boolean isBodyVerified() {
+        return bodyVerified;
+    }
+
+    public void markBodyVerified() {
+        this.bodyVerified = true;
+    }
+
+    /**
+     * Add time spent in a stage (a stage run twice accumulates).
+     *
+     * @param stage stage name
+     * @param nanos elapsed nanoseconds
+     */
+    public void recordTiming(String stage, long nanos) {
+        timings.merge(stage, nanos, Long::sum);
+    }
+
+    /**
+     * @return nanoseconds per stage, in the order the stages first ran
+     */
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) attributes = new HashMap<>(4);
+        attributes.put(name, value);
+    }
+}
@@ -0,0 +1,107 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HeaderName;
+import cat.uvic.teknos.dam.aureus.http.HttpHeaders;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.RequestBody;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stage {@value FilterPipeline#DECRYPT}: replaces the body of requests marked
+ * with {@code X-Body-Encrypted} by its plaintext, using the AES key of the
+ * session named in {@code X-Session-Id}.
+ *
+ * <p>The {@code X-Body-Hash} of an encrypted body covers the ciphertext and is
+ * checked here, before decrypting, so the {@value FilterPipeline#INTEGRITY}
+ * stage does not check it again. A streamed body is hashed and decrypted while
+ * the handler reads it.</p>
+ */
+public class SessionDecryptFilter implements Filter {
+
+    private final Map<String, String> sessions;
+
+    /**
+     * @param sessions session id to AES key (hex), shared with the key exchange
+     */
+    public SessionDecryptFilter(Map<String, String> sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity> filter(RequestContext context, FilterChain chain) {
+        HttpRequest request = context.getRequest();
+        HttpHeaders headers = request.getHeaders();
+        String encFlag = headers.get(HeaderName.X_BODY_ENCRYPTED);
+        if (encFlag == null || !(encFlag.equals("1") || encFlag.equalsIgnoreCase("true"))) {
+            return chain.proceed();
+        }
+
+        RequestBody plainBody;
+        try {
+            String sessionId = headers.get(HeaderName.X_SESSION_ID);
+            if (sessionId == null || sessionId.isEmpty()) throw new HttpException(401, "Unauthorized", "Missing session id");
+            String keyHex = sessions.get(sessionId);
+            if (keyHex == null) throw new HttpException(401, "Unauthorized", "Invalid session");
+
+            // IV should be sent in header X-Body-IV (hex)
+            String ivHex = headers.get(HeaderName.X_BODY_IV);
+            if (ivHex == null || ivHex.isEmpty()) throw new HttpException(400, "Bad Request", "Missing IV header");
+
+            // Body is expected to be hex-encoded ciphertext
+            RequestBody body = request.getRequestBody();
+            if (body.isEmpty()) throw new HttpException(400, "Bad Request", "Empty encrypted body");
+
+            // Verify provided hash over the ciphertext (hex text) BEFORE decrypting
+            String providedHash = headers.get(HeaderName.X_BODY_HASH);
+            if (providedHash == null) throw new HttpException(400, "Bad Request", "Missing body hash header");
+            RequestBody cipherText = IntegrityFilter.verified(body, providedHash);
+
+            InputStream plain = CryptoUtils.decryptStream(keyHex, ivHex, cipherText.stream());
+            plainBody = cipherText.isBuffered()
+                    ? RequestBody.of(plain.readAllBytes())
+                    : RequestBody.stream(new DecryptingStream(plain), -1);
+        } catch (HttpException he) {
+            throw he;
+        } catch (Exception e) {
+            throw new HttpException(400, "Bad Request", "Failed to decrypt request body");
+        }
+
+        // Replace request body by decrypted payload for handlers
+        context.setRequest(new HttpRequest(request.getMethod(), request.getTarget(), request.getVersion(), headers, plainBody));
+        context.markBodyVerified();
+        return chain.proceed();
+    }
+
+    // Errores de descifrado al leer un cuerpo en streaming: mismo 400 que con el cuerpo en memoria
+    private static final class DecryptingStream extends FilterInputStream {
+        private DecryptingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw new HttpException(400, "Bad Request", "Failed to decrypt request body");
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                throw new HttpException(400, "Bad Request", "Failed to decrypt request body");
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The in-memory indexes kept over the coins. Any of them may be null when it
+ * is not configured.
+ *
+ * @param fullText word search over the coin texts
+ * @param suggestions name completion for coins and collections
+ * @param facets counts by attribute value
+ * @param similarity nearest coins by their physical attributes and value
+ * @param topValues coins ordered by estimated value
+ */
+public record CoinIndexes(FullTextIndex fullText, SuggestionTrie suggestions, FacetIndex facets,
+                          SimilarityIndex similarity, TopValueIndex topValues) {
+
+    /**
+     * No index at all.
+     */
+    public static final CoinIndexes NONE = new CoinIndexes(null, null, null, null, null);
+
+    /**
+     * @param fullText word search over the coin texts, or null
+     * @return these indexes with that full-text index
+     */
+    public CoinIndexes withFullText(FullTextIndex fullText) {
+        return new CoinIndexes(fullText, suggestions, facets, similarity, topValues);
+    }
+
+    /**
+     * @param suggestions name completion for coins and collections, or null
+     * @return these indexes with that suggestion trie
+     */
+    public CoinIndexes withSuggestions(SuggestionTrie suggestions) {
+        return new CoinIndexes(fullText, suggestions, facets, similarity, topValues);
+    }
+
+    /**
+     * @param facets counts by attribute value, or null
+     * @return these indexes with that facet index
+     */
+    public CoinIndexes withFacets(FacetIndex facets) {
+        return new CoinIndexes(fullText, suggestions, facets, similarity, topValues);
+    }
+
+    /**
+     * @param similarity nearest coins by their physical attributes and value, or null
+     * @return these indexes with that similarity index
+     */
+    public CoinIndexes withSimilarity(SimilarityIndex similarity) {
+        return new CoinIndexes(fullText, suggestions, facets, similarity, topValues);
+    }
+
+    /**
+     * @param topValues coins ordered by estimated value, or null
+     * @return these indexes with that top value index
+     */
+    public CoinIndexes withTopValues(TopValueIndex topValues) {
+        return new CoinIndexes(fullText, suggestions, facets, similarity, topValues);
+    }
+
+    /**
+     * @return the configured indexes, which follow the coin changes
+     */
+    public List<CoinChangeListener> listeners() {
+        List<CoinChangeListener> listeners = new ArrayList<>(5);
+        for (CoinChangeListener index : new CoinChangeListener[]{fullText, suggestions, facets, similarity, topValues}) {
+            if (index != null) listeners.add(index);
+        }
+        return listeners;
+    }
+}
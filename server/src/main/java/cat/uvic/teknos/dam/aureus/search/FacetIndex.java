@@ -0,0 +1,270 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.Coin;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coin counts by material, origin country, century and collection, computed
+ * from one compressed bitmap of coin ids per facet value.
+ *
+ * <p>A query combines the values given for one facet with OR and the facets
+ * with AND, plus an optional range of years (the OR of one bitmap per year).
+ * The count of every facet value is then the size of its intersection with
+ * the result, computed container by container without building it. Text
+ * values are compared like MySQL does, ignoring case and accents, and
+ * reported as first seen. Centuries before Christ are negative: -1 for the
+ * years -1 to -100, -3 for -300; the year 0 counts as -1.</p>
+ *
+ * <p>{@link #rebuild} loads the whole catalogue; afterwards the index follows
+ * the changes made through the coin service as a {@link CoinChangeListener}.
+ * Queries share a read lock; changes take the write lock.</p>
+ */
+public class FacetIndex implements CoinChangeListener {
+
+    public enum Facet {
+        MATERIAL("material"),
+        COUNTRY("country"),
+        CENTURY("century"),
+        COLLECTION("collection");
+
+        private final String parameter;
+
+        Facet(String parameter) {
+            this.parameter = parameter;
+        }
+
+        /**
+         * @return name of the facet in queries and responses
+         */
+        public String parameter() {
+            return parameter;
+        }
+
+        private boolean numeric() {
+            return this == CENTURY || this == COLLECTION;
+        }
+    }
+
+    /**
+     * Result of a facet query.
+     *
+     * @param total coins matching the filters
+     * @param facets for each facet (by {@link Facet#parameter()}), the matching coins per value, most frequent first
+     */
+    public record Counts(int total, Map<String, Map<String, Integer>> facets) {
+    }
+
+    // Facetas de una moneda, para quitarla de sus mapas de bits al cambiar
+    private record Values(String material, String country, Integer year, Integer collection) {
+    }
+
+    private static final class Value {
+        private final String label;
+        private final RoaringBitmap coins = new RoaringBitmap();
+
+        private Value(String label) {
+            this.label = label;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private RoaringBitmap all = new RoaringBitmap();
+    private Map<Facet, Map<String, Value>> facets = emptyFacets();
+    private TreeMap<Integer, RoaringBitmap> years = new TreeMap<>();
+    private Map<Integer, Values> coins = new HashMap<>();
+
+    private static Map<Facet, Map<String, Value>> emptyFacets() {
+        Map<Facet, Map<String, Value>> facets = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) facets.put(facet, new HashMap<>());
+        return facets;
+    }
+
+    /**
+     * Replace the contents of the index. Changes notified while the rebuild
+     * runs are lost, so it is meant for startup.
+     *
+     * @param coins every coin
+     */
+    public void rebuild(Collection<? extends Coin> coins) {
+        FacetIndex loaded = new FacetIndex();
+        for (Coin coin : coins) {
+            if (coin.getId() != null) loaded.add(coin.getId(), values(coin));
+        }
+        lock.writeLock().lock();
+        try {
+            all = loaded.all;
+            facets = loaded.facets;
+            years = loaded.years;
+            this.coins = loaded.coins;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinSaved(CoinImpl coin) {
+        if (coin.getId() == null) return;
+        Values values = values(coin);
+        lock.writeLock().lock();
+        try {
+            remove(coin.getId());
+            add(coin.getId(), values);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinDeleted(int id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Count the coins matching some filters, in total and by facet value.
+     *
+     * @param filters accepted values of each facet; facets missing or with no values do not filter
+     * @param minYear first year accepted, or null
+     * @param maxYear last year accepted, or null
+     * @return total and counts of every facet value with matching coins
+     * @throws IllegalArgumentException if a century or collection is not an integer
+     */
+    public Counts count(Map<Facet, List<String>> filters, Integer minYear, Integer maxYear) {
+        Map<Facet, List<String>> keys = new EnumMap<>(Facet.class);
+        filters.forEach((facet, values) -> {
+            if (values != null && !values.isEmpty()) keys.put(facet, values.stream().map(v -> key(facet, v)).toList());
+        });
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matching = all;
+            for (Map.Entry<Facet, List<String>> filter : keys.entrySet()) {
+                matching = RoaringBitmap.and(matching, union(filter.getKey(), filter.getValue()));
+            }
+            if (minYear != null || maxYear != null) {
+                matching = RoaringBitmap.and(matching, yearRange(minYear, maxYear));
+            }
+
+            Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+            for (Facet facet : Facet.values()) {
+                List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+                for (Value value : facets.get(facet).values()) {
+                    int count = RoaringBitmap.andCardinality(matching, value.coins);
+                    if (count > 0) entries.add(Map.entry(value.label, count));
+                }
+                entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+                Map<String, Integer> byValue = new LinkedHashMap<>();
+                for (Map.Entry<String, Integer> entry : entries) byValue.put(entry.getKey(), entry.getValue());
+                counts.put(facet.parameter(), byValue);
+            }
+            return new Counts(matching.cardinality(), counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap union(Facet facet, List<String> keys) {
+        RoaringBitmap union = new RoaringBitmap();
+        for (String key : keys) {
+            Value value = facets.get(facet).get(key);
+            if (value != null) union.orInPlace(value.coins);
+        }
+        return union;
+    }
+
+    private RoaringBitmap yearRange(Integer minYear, Integer maxYear) {
+        int from = minYear == null ? Integer.MIN_VALUE : minYear;
+        int to = maxYear == null ? Integer.MAX_VALUE : maxYear;
+        RoaringBitmap union = new RoaringBitmap();
+        if (from > to) return union;
+        // Un solo acumulador: copiar la unión por cada año haría cuadrático un rango amplio
+        for (RoaringBitmap year : years.subMap(from, true, to, true).values()) {
+            union.orInPlace(year);
+        }
+        return union;
+    }
+
+    /**
+     * @param year year of a coin; negative before Christ
+     * @return its century, negative before Christ
+     */
+    public static int century(int year) {
+        if (year == 0) return -1;
+        return year > 0 ? (year + 99) / 100 : -((-year + 99) / 100);
+    }
+
+    private static Values values(Coin coin) {
+        Integer collection = coin.getCollection() == null ? null : coin.getCollection().getId();
+        return new Values(coin.getCoinMaterial(), coin.getOriginCountry(), coin.getCoinYear(), collection);
+    }
+
+    private static String key(Facet facet, String value) {
+        String trimmed = value.trim();
+        if (!facet.numeric()) return TextAnalyzer.fold(trimmed);
+        try {
+            return String.valueOf(Integer.parseInt(trimmed));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + facet.parameter() + ": " + value);
+        }
+    }
+
+    private static String label(Facet facet, Values values) {
+        return switch (facet) {
+            case MATERIAL -> blankToNull(values.material());
+            case COUNTRY -> blankToNull(values.country());
+            case CENTURY -> values.year() == null ? null : String.valueOf(century(values.year()));
+            case COLLECTION -> values.collection() == null ? null : String.valueOf(values.collection());
+        };
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // Llamados con el cerrojo de escritura
+    private void add(int id, Values values) {
+        all.add(id);
+        coins.put(id, values);
+        for (Facet facet : Facet.values()) {
+            String label = label(facet, values);
+            if (label == null) continue;
+            facets.get(facet).computeIfAbsent(key(facet, label), k -> new Value(label)).coins.add(id);
+        }
+        if (values.year() != null) years.computeIfAbsent(values.year(), y -> new RoaringBitmap()).add(id);
+    }
+
+    private void remove(int id) {
+        Values values = coins.remove(id);
+        if (values == null) return;
+        all.remove(id);
+        for (Facet facet : Facet.values()) {
+            String label = label(facet, values);
+            if (label == null) continue;
+            Map<String, Value> byKey = facets.get(facet);
+            String key = key(facet, label);
+            Value value = byKey.get(key);
+            value.coins.remove(id);
+            if (value.coins.isEmpty()) byKey.remove(key);
+        }
+        if (values.year() != null) {
+            RoaringBitmap year = years.get(values.year());
+            year.remove(id);
+            if (year.isEmpty()) years.remove(values.year());
+        }
+    }
+}
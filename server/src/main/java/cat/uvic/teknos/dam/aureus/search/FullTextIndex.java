@@ -0,0 +1,487 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.Coin;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory inverted index over the name, historical significance, origin
+ * country and material of the coins, ranked with BM25.
+ *
+ * <p>Every term maps to its posting list, coin id to term frequency. Terms of
+ * the name count {@value #NAME_WEIGHT} times, so a match in the name weighs
+ * more than one in the history. A query term ending in {@code *} matches the
+ * terms with that prefix; when there are more than {@value #MAX_PREFIX_TERMS},
+ * only that many are used, those found in the most coins, so rare expansions
+ * of a short prefix may be left out; a coin scores for a prefix with the
+ * best of the expansions it contains. Terms are combined with OR and the
+ * scores of the matching terms added.</p>
+ *
+ * <p>Queries do not score every posting. Each posting list read by a query
+ * is also kept ordered by impact: one run per term frequency, each run by
+ * ascending coin length, so within a run the BM25 score never grows whatever
+ * the average length. Merging the runs reads the coins of a term from the
+ * best score down. The search takes the coins in that order, scores each one
+ * fully by looking up its other terms, and stops once the worst of the best
+ * hits beats the sum of the next scores of every query term (Fagin's
+ * threshold algorithm), so a query for a common term such as a country or a
+ * material, or for a prefix, reads about as many postings as hits it
+ * returns. Terms that seldom appear together, such as two materials, still
+ * read most of their lists. The ordered copy of a list
+ * is built on first use and dropped when a change touches the term.</p>
+ *
+ * <p>{@link #rebuild} loads the whole catalogue in parallel; afterwards the
+ * index follows the changes made through the coin service as a
+ * {@link CoinChangeListener}. Searches share a read lock and run concurrently;
+ * changes take the write lock.</p>
+ */
+public class FullTextIndex implements CoinChangeListener {
+
+    public static final double K1 = 1.2;
+    public static final double B = 0.75;
+    static final int NAME_WEIGHT = 2;
+    static final int MAX_PREFIX_TERMS = 64;
+
+    /**
+     * A coin matching a query.
+     *
+     * @param id coin identifier
+     * @param score BM25 score; higher is more relevant
+     */
+    public record Hit(int id, double score) {
+    }
+
+    // Documento analizado: términos distintos con su frecuencia
+    private record Document(int id, String[] terms, int[] frequencies, int length) {
+    }
+
+    private record QueryTerm(String text, boolean prefix) {
+    }
+
+    // Posting list por impacto: un tramo por frecuencia, cada uno con (longitud << 32 | id) en orden creciente
+    private record Impacts(int[] frequencies, long[][] postings) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Diccionario ordenado: los términos con un mismo prefijo forman un rango contiguo
+    private TreeMap<String, IntIntMap> postings = new TreeMap<>();
+    private IntIntMap lengths = new IntIntMap();
+    // Términos de cada moneda, para retirarla sin recorrer el diccionario
+    private Map<Integer, String[]> documentTerms = new HashMap<>();
+    private long totalLength;
+    // Copias por impacto de las listas consultadas; las búsquedas las crean bajo el cerrojo de lectura
+    private Map<String, Impacts> impacts = new ConcurrentHashMap<>();
+
+    /**
+     * Replace the contents of the index. The coins are split in one slice per
+     * processor, each analysed and indexed on its own, and the partial posting
+     * lists merged; searches keep seeing the previous contents until the new
+     * ones are complete. Changes notified while the rebuild runs are lost,
+     * so it is meant for startup, before requests are accepted.
+     *
+     * @param coins every coin to index
+     */
+    public void rebuild(Collection<? extends Coin> coins) {
+        List<Document> documents = coins.parallelStream()
+                .filter(coin -> coin.getId() != null)
+                .map(FullTextIndex::analyze)
+                .toList();
+
+        // Cada hilo indexa su tramo de documentos; nada mutable se comparte hasta la fusión
+        int slices = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), documents.size()));
+        List<Map<String, IntIntMap>> partial = IntStream.range(0, slices).parallel()
+                .mapToObj(slice -> {
+                    Map<String, IntIntMap> lists = new HashMap<>();
+                    int from = (int) ((long) documents.size() * slice / slices);
+                    int to = (int) ((long) documents.size() * (slice + 1) / slices);
+                    for (Document document : documents.subList(from, to)) {
+                        for (int i = 0; i < document.terms().length; i++) {
+                            lists.computeIfAbsent(document.terms()[i], t -> new IntIntMap()).put(document.id(), document.frequencies()[i]);
+                        }
+                    }
+                    return lists;
+                })
+                .toList();
+
+        TreeMap<String, IntIntMap> newPostings = new TreeMap<>();
+        for (Map<String, IntIntMap> lists : partial) {
+            lists.forEach((term, list) -> newPostings.merge(term, list, FullTextIndex::merge));
+        }
+        IntIntMap newLengths = new IntIntMap(documents.size());
+        Map<Integer, String[]> newDocumentTerms = new HashMap<>(documents.size() * 2);
+        long newTotalLength = 0;
+        for (Document document : documents) {
+            newLengths.put(document.id(), document.length());
+            newDocumentTerms.put(document.id(), document.terms());
+            newTotalLength += document.length();
+        }
+
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            lengths = newLengths;
+            documentTerms = newDocumentTerms;
+            totalLength = newTotalLength;
+            impacts = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinSaved(CoinImpl coin) {
+        if (coin.getId() == null) return;
+        Document document = analyze(coin);
+        lock.writeLock().lock();
+        try {
+            remove(document.id());
+            add(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinDeleted(int id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of coins in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return lengths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rank the coins matching a free-text query.
+     *
+     * @param query words to look for; a trailing {@code *} makes a word a prefix
+     * @param limit maximum number of hits
+     * @return best hits first; ties in id order
+     */
+    public List<Hit> search(String query, int limit) {
+        List<QueryTerm> terms = parse(query);
+        if (terms.isEmpty() || limit < 1) return List.of();
+
+        lock.readLock().lock();
+        try {
+            int count = lengths.size();
+            if (count == 0) return List.of();
+            double averageLength = (double) totalLength / count;
+
+            List<TermCursor> cursors = new ArrayList<>();
+            for (QueryTerm term : terms) {
+                List<ListCursor> lists = new ArrayList<>();
+                for (String text : expansions(term)) {
+                    IntIntMap list = postings.get(text);
+                    double idf = Math.log(1 + (count - list.size() + 0.5) / (list.size() + 0.5));
+                    Impacts ordered = impacts.computeIfAbsent(text, t -> byImpact(list, lengths));
+                    lists.add(new ListCursor(idf, list, ordered, averageLength));
+                }
+                if (!lists.isEmpty()) cursors.add(new TermCursor(lists));
+            }
+
+            PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, FullTextIndex::worseFirst);
+            IntIntMap seen = new IntIntMap();
+            while (true) {
+                // Umbral: lo máximo que puede sumar una moneda que aún no ha salido de ningún término
+                TermCursor next = null;
+                double threshold = 0;
+                int lastHeadId = Integer.MIN_VALUE;
+                for (TermCursor cursor : cursors) {
+                    if (cursor.exhausted()) continue;
+                    threshold += cursor.headScore;
+                    lastHeadId = Math.max(lastHeadId, cursor.headId);
+                    if (next == null || cursor.headScore > next.headScore) next = cursor;
+                }
+                if (next == null) break;
+                if (best.size() == limit) {
+                    // Una moneda sin ver que iguale el umbral va detrás de todas las cabezas, con un id mayor
+                    Hit worst = best.peek();
+                    if (worst.score() > threshold || worst.score() == threshold && worst.id() < lastHeadId) break;
+                }
+
+                int id = next.advance();
+                if (seen.get(id) != IntIntMap.MISSING) continue;
+                seen.put(id, 0);
+                Hit hit = new Hit(id, score(cursors, id, averageLength));
+                if (best.size() < limit) {
+                    best.add(hit);
+                } else if (worseFirst(hit, best.peek()) > 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+            List<Hit> hits = new ArrayList<>(best);
+            hits.sort((a, b) -> worseFirst(b, a));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Puntuación completa de una moneda: suma, en el orden de la consulta, la mejor de cada término
+    private double score(List<TermCursor> cursors, int id, double averageLength) {
+        int length = lengths.get(id);
+        double score = 0;
+        for (TermCursor cursor : cursors) {
+            double term = 0;
+            for (ListCursor list : cursor.lists) {
+                int frequency = list.list.get(id);
+                if (frequency != IntIntMap.MISSING) term = Math.max(term, bm25(list.idf, frequency, length, averageLength));
+            }
+            score += term;
+        }
+        return score;
+    }
+
+    private static double bm25(double idf, int frequency, int length, double averageLength) {
+        double norm = K1 * (1 - B + B * length / averageLength);
+        return idf * frequency * (K1 + 1) / (frequency + norm);
+    }
+
+    // Monedas de un término de la consulta de mayor a menor puntuación y, a igual puntuación, por id.
+    // Un prefijo mezcla sus expansiones y da cada moneda una sola vez, con la mejor
+    private static final class TermCursor {
+        private final List<ListCursor> lists;
+        // Monedas ya dadas; sólo hace falta con varias expansiones
+        private final IntIntMap given;
+        private ListCursor head;
+        private double headScore;
+        private int headId;
+
+        private TermCursor(List<ListCursor> lists) {
+            this.lists = lists;
+            this.given = lists.size() > 1 ? new IntIntMap() : null;
+            findHead();
+        }
+
+        private boolean exhausted() {
+            return head == null;
+        }
+
+        private int advance() {
+            int id = head.advance();
+            if (given != null) given.put(id, 0);
+            findHead();
+            return id;
+        }
+
+        private void findHead() {
+            while (true) {
+                head = null;
+                for (ListCursor list : lists) {
+                    if (list.exhausted()) continue;
+                    if (head == null || list.headScore > head.headScore
+                            || list.headScore == head.headScore && list.headId < head.headId) {
+                        head = list;
+                    }
+                }
+                if (head == null) return;
+                if (given == null || given.get(head.headId) == IntIntMap.MISSING) break;
+                // Ya salió por otra expansión con una puntuación mayor o igual
+                head.advance();
+            }
+            headScore = head.headScore;
+            headId = head.headId;
+        }
+    }
+
+    // Recorre una posting list de mayor a menor puntuación y, a igual puntuación, por id, tomando
+    // siempre la mejor cabeza de sus tramos
+    private static final class ListCursor {
+        private final double idf;
+        private final IntIntMap list;
+        private final Impacts impacts;
+        private final double averageLength;
+        private final int[] positions;
+        private int headRun = -1;
+        private double headScore;
+        private int headId;
+
+        private ListCursor(double idf, IntIntMap list, Impacts impacts, double averageLength) {
+            this.idf = idf;
+            this.list = list;
+            this.impacts = impacts;
+            this.averageLength = averageLength;
+            this.positions = new int[impacts.frequencies().length];
+            findHead();
+        }
+
+        private boolean exhausted() {
+            return headRun < 0;
+        }
+
+        // Devuelve la moneda de la cabeza y pasa a la siguiente
+        private int advance() {
+            int id = headId;
+            positions[headRun]++;
+            findHead();
+            return id;
+        }
+
+        // Pocos tramos (uno por frecuencia distinta): basta con recorrerlos
+        private void findHead() {
+            headRun = -1;
+            for (int run = 0; run < positions.length; run++) {
+                long[] postings = impacts.postings()[run];
+                if (positions[run] == postings.length) continue;
+                long posting = postings[positions[run]];
+                double score = bm25(idf, impacts.frequencies()[run], (int) (posting >>> 32), averageLength);
+                if (headRun < 0 || score > headScore || score == headScore && (int) posting < headId) {
+                    headRun = run;
+                    headScore = score;
+                    headId = (int) posting;
+                }
+            }
+        }
+    }
+
+    private static Impacts byImpact(IntIntMap list, IntIntMap lengths) {
+        IntIntMap runs = new IntIntMap();
+        int[] frequencies = new int[4];
+        int[] sizes = new int[4];
+        int count = 0;
+        for (int slot = 0; slot < list.capacity(); slot++) {
+            if (!list.isUsed(slot)) continue;
+            int frequency = list.valueAt(slot);
+            int run = runs.get(frequency);
+            if (run == IntIntMap.MISSING) {
+                if (count == frequencies.length) {
+                    frequencies = Arrays.copyOf(frequencies, count * 2);
+                    sizes = Arrays.copyOf(sizes, count * 2);
+                }
+                run = count++;
+                runs.put(frequency, run);
+                frequencies[run] = frequency;
+            }
+            sizes[run]++;
+        }
+        long[][] postings = new long[count][];
+        for (int run = 0; run < count; run++) postings[run] = new long[sizes[run]];
+        int[] filled = new int[count];
+        for (int slot = 0; slot < list.capacity(); slot++) {
+            if (!list.isUsed(slot)) continue;
+            int run = runs.get(list.valueAt(slot));
+            int id = list.keyAt(slot);
+            postings[run][filled[run]++] = (long) lengths.get(id) << 32 | (id & 0xFFFFFFFFL);
+        }
+        for (long[] run : postings) Arrays.sort(run);
+        return new Impacts(Arrays.copyOf(frequencies, count), postings);
+    }
+
+    private static int worseFirst(Hit a, Hit b) {
+        int byScore = Double.compare(a.score(), b.score());
+        return byScore != 0 ? byScore : Integer.compare(b.id(), a.id());
+    }
+
+    // Un mismo término en varios tramos: se vuelca la lista menor en la mayor
+    private static IntIntMap merge(IntIntMap a, IntIntMap b) {
+        IntIntMap into = a.size() >= b.size() ? a : b;
+        IntIntMap from = into == a ? b : a;
+        for (int slot = 0; slot < from.capacity(); slot++) {
+            if (from.isUsed(slot)) into.put(from.keyAt(slot), from.valueAt(slot));
+        }
+        return into;
+    }
+
+    // Términos del diccionario que cubre un término de la consulta
+    private List<String> expansions(QueryTerm term) {
+        if (!term.prefix()) {
+            return postings.containsKey(term.text()) ? List.of(term.text()) : List.of();
+        }
+        // Con más expansiones que el máximo se quedan las de más monedas: montículo de mínimos por tamaño
+        PriorityQueue<Map.Entry<String, IntIntMap>> largest = new PriorityQueue<>(MAX_PREFIX_TERMS + 1,
+                (a, b) -> Integer.compare(a.getValue().size(), b.getValue().size()));
+        for (Map.Entry<String, IntIntMap> entry : postings.subMap(term.text(), true, term.text() + Character.MAX_VALUE, false).entrySet()) {
+            largest.add(entry);
+            if (largest.size() > MAX_PREFIX_TERMS) largest.poll();
+        }
+        List<String> expansions = new ArrayList<>(largest.size());
+        for (Map.Entry<String, IntIntMap> entry : largest) expansions.add(entry.getKey());
+        return expansions;
+    }
+
+    private static List<QueryTerm> parse(String query) {
+        List<QueryTerm> terms = new ArrayList<>();
+        if (query == null) return terms;
+        for (String word : query.trim().split("\\s+")) {
+            List<String> analysed = TextAnalyzer.terms(word);
+            boolean prefix = word.endsWith("*");
+            for (int i = 0; i < analysed.size(); i++) {
+                terms.add(new QueryTerm(analysed.get(i), prefix && i == analysed.size() - 1));
+            }
+        }
+        return terms;
+    }
+
+    private static Document analyze(Coin coin) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = count(frequencies, coin.getCoinName(), NAME_WEIGHT)
+                + count(frequencies, coin.getHistoricalSignificance(), 1)
+                + count(frequencies, coin.getOriginCountry(), 1)
+                + count(frequencies, coin.getCoinMaterial(), 1);
+        String[] terms = new String[frequencies.size()];
+        int[] counts = new int[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            terms[i] = entry.getKey();
+            counts[i++] = entry.getValue();
+        }
+        return new Document(coin.getId(), terms, counts, length);
+    }
+
+    private static int count(Map<String, Integer> frequencies, String text, int weight) {
+        List<String> terms = TextAnalyzer.terms(text);
+        for (String term : terms) {
+            frequencies.merge(term, weight, Integer::sum);
+        }
+        return terms.size() * weight;
+    }
+
+    // Llamados con el cerrojo de escritura
+    private void add(Document document) {
+        for (int i = 0; i < document.terms().length; i++) {
+            postings.computeIfAbsent(document.terms()[i], t -> new IntIntMap()).put(document.id(), document.frequencies()[i]);
+            impacts.remove(document.terms()[i]);
+        }
+        lengths.put(document.id(), document.length());
+        documentTerms.put(document.id(), document.terms());
+        totalLength += document.length();
+    }
+
+    private void remove(int id) {
+        String[] terms = documentTerms.remove(id);
+        if (terms == null) return;
+        for (String term : terms) {
+            IntIntMap list = postings.get(term);
+            list.remove(id);
+            if (list.size() == 0) postings.remove(term);
+            impacts.remove(term);
+        }
+        totalLength -= lengths.remove(id);
+    }
+}
@@ -0,0 +1,134 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+/**
+ * Open-addressing map from int to int, without boxing.
+ *
+ * <p>Used for posting lists (coin id to term frequency) and score
+ * accumulators, where a {@code HashMap<Integer, Integer>} would allocate an
+ * entry and two boxes per coin. Linear probing; removal shifts the following
+ * entries back, so no tombstones accumulate. Entries are iterated by slot:
+ * {@link #capacity()}, {@link #isUsed(int)}, {@link #keyAt(int)} and
+ * {@link #valueAt(int)}. Not thread-safe.</p>
+ */
+final class IntIntMap {
+
+    static final int MISSING = Integer.MIN_VALUE;
+
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    IntIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expected number of entries the map should hold without growing
+     */
+    IntIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expected * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    // Mezcla los bits del id: ids consecutivos no deben caer en ranuras consecutivas
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int key) {
+        int slot = hash(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return value of the key, or {@link #MISSING}
+     */
+    int get(int key) {
+        int slot = slot(key);
+        return used[slot] ? values[slot] : MISSING;
+    }
+
+    void put(int key, int value) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+                slot = slot(key);
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @return previous value of the key, or {@link #MISSING} if it was absent
+     */
+    int remove(int key) {
+        int slot = slot(key);
+        if (!used[slot]) return MISSING;
+        int previous = values[slot];
+        // Desplaza hacia atrás las entradas que se saltaron esta ranura al insertarse
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+        size--;
+        return previous;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean isUsed(int slot) {
+        return used[slot];
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    int valueAt(int slot) {
+        return values[slot];
+    }
+}
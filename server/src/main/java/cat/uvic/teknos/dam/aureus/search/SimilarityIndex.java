@@ -0,0 +1,293 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.Coin;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Nearest coins by weight, diameter, year and estimated value, searched in a
+ * KD-tree.
+ *
+ * <p>Each coin is a point with those four coordinates; the value is taken as
+ * {@code log(1 + value)}, since prices spread over orders of magnitude. The
+ * distance divides every difference by the standard deviation of its
+ * attribute over the catalogue, so a gram and a century weigh the same as
+ * one typical spread. The deviations are kept as running sums and the tree
+ * splits on the raw coordinates, so changes never force a re-normalisation.
+ * Coins missing one of the attributes are left out.</p>
+ *
+ * <p>The tree is built balanced by {@link #rebuild}. New and changed coins are
+ * inserted as leaves and removed ones only marked; once those changes reach
+ * half the size of the last build, the tree is rebuilt. Searches share a
+ * read lock; changes take the write lock.</p>
+ */
+public class SimilarityIndex implements CoinChangeListener {
+
+    private static final int DIMENSIONS = 4;
+
+    /**
+     * A coin near the reference one.
+     *
+     * @param id coin identifier
+     * @param distance normalised distance; 0 for identical attributes
+     */
+    public record Neighbour(int id, double distance) {
+    }
+
+    private static final class Node {
+        private final int id;
+        private final double[] point;
+        private final int axis;
+        private Node left;
+        private Node right;
+        private boolean deleted;
+
+        private Node(int id, double[] point, int axis) {
+            this.id = id;
+            this.point = point;
+            this.axis = axis;
+        }
+    }
+
+    private record Point(int id, double[] coordinates) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+    private Map<Integer, Node> nodes = new HashMap<>();
+    // Sumas de las coordenadas vivas, para la desviación típica de cada atributo
+    private final double[] sums = new double[DIMENSIONS];
+    private final double[] squares = new double[DIMENSIONS];
+    private int builtSize;
+    private int changesSinceBuild;
+
+    /**
+     * Replace the contents of the index with a balanced tree. Changes
+     * notified while the rebuild runs are lost, so it is meant for startup.
+     *
+     * @param coins every coin
+     */
+    public void rebuild(Collection<? extends Coin> coins) {
+        List<Point> points = new ArrayList<>(coins.size());
+        for (Coin coin : coins) {
+            double[] point = point(coin);
+            if (point != null) points.add(new Point(coin.getId(), point));
+        }
+        lock.writeLock().lock();
+        try {
+            build(points);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinSaved(CoinImpl coin) {
+        double[] point = point(coin);
+        lock.writeLock().lock();
+        try {
+            delete(coin.getId());
+            if (point != null) insert(coin.getId(), point);
+            rebuildIfUnbalanced();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinDeleted(int id) {
+        lock.writeLock().lock();
+        try {
+            delete(id);
+            rebuildIfUnbalanced();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of coins in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The coins nearest to one of the catalogue, excluding itself.
+     *
+     * @param id reference coin
+     * @param k maximum number of neighbours
+     * @return nearest first, ties in id order; null if the coin is not in the index
+     */
+    public List<Neighbour> nearest(int id, int k) {
+        lock.readLock().lock();
+        try {
+            Node reference = nodes.get(id);
+            if (reference == null) return null;
+            if (k < 1) return List.of();
+            double[] weights = weights();
+
+            // Montículo de máximos: en la cima el peor de los k mejores
+            PriorityQueue<Neighbour> best = new PriorityQueue<>(k + 1, NEAREST_FIRST.reversed());
+            search(root, reference.point, id, k, weights, best);
+            List<Neighbour> neighbours = new ArrayList<>(best);
+            neighbours.sort(NEAREST_FIRST);
+            return neighbours.stream().map(n -> new Neighbour(n.id(), Math.sqrt(n.distance()))).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final Comparator<Neighbour> NEAREST_FIRST =
+            Comparator.comparingDouble(Neighbour::distance).thenComparingInt(Neighbour::id);
+
+    // Las distancias se comparan al cuadrado; la raíz sólo se toma al devolverlas
+    private static void search(Node node, double[] target, int excluded, int k, double[] weights,
+                               PriorityQueue<Neighbour> best) {
+        while (node != null) {
+            if (!node.deleted && node.id != excluded) {
+                Neighbour candidate = new Neighbour(node.id, distance(node.point, target, weights));
+                if (best.size() < k) {
+                    best.add(candidate);
+                } else if (NEAREST_FIRST.compare(candidate, best.peek()) < 0) {
+                    best.poll();
+                    best.add(candidate);
+                }
+            }
+            double difference = target[node.axis] - node.point[node.axis];
+            Node near = difference < 0 ? node.left : node.right;
+            Node far = difference < 0 ? node.right : node.left;
+            search(near, target, excluded, k, weights, best);
+            // El otro lado sólo puede mejorar si el plano de corte está más cerca que el peor actual
+            double plane = weights[node.axis] * difference * difference;
+            if (best.size() < k || plane <= best.peek().distance()) {
+                node = far;
+            } else {
+                node = null;
+            }
+        }
+    }
+
+    private static double distance(double[] a, double[] b, double[] weights) {
+        double sum = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double difference = a[d] - b[d];
+            sum += weights[d] * difference * difference;
+        }
+        return sum;
+    }
+
+    // Inversa de la varianza de cada atributo; 1 si todas las monedas coinciden en él
+    private double[] weights() {
+        double[] weights = new double[DIMENSIONS];
+        int count = nodes.size();
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double mean = sums[d] / count;
+            double variance = squares[d] / count - mean * mean;
+            weights[d] = variance > 1e-12 ? 1 / variance : 1;
+        }
+        return weights;
+    }
+
+    private static double[] point(Coin coin) {
+        if (coin.getId() == null || coin.getCoinWeight() == null || coin.getCoinDiameter() == null
+                || coin.getCoinYear() == null || coin.getEstimatedValue() == null) {
+            return null;
+        }
+        return new double[]{
+                coin.getCoinWeight().doubleValue(),
+                coin.getCoinDiameter().doubleValue(),
+                coin.getCoinYear(),
+                Math.log1p(Math.max(0, coin.getEstimatedValue().doubleValue()))
+        };
+    }
+
+    // Llamados con el cerrojo de escritura
+    private void build(List<Point> points) {
+        root = build(points, 0, points.size(), 0);
+        nodes = new HashMap<>(points.size() * 2);
+        Arrays.fill(sums, 0);
+        Arrays.fill(squares, 0);
+        register(root);
+        builtSize = points.size();
+        changesSinceBuild = 0;
+    }
+
+    private void register(Node node) {
+        if (node == null) return;
+        nodes.put(node.id, node);
+        track(node.point, 1);
+        register(node.left);
+        register(node.right);
+    }
+
+    // Mediana por el eje del nivel: ordena el tramo y parte por el centro
+    private static Node build(List<Point> points, int from, int to, int axis) {
+        if (from >= to) return null;
+        points.subList(from, to).sort(Comparator.comparingDouble(p -> p.coordinates()[axis]));
+        int middle = (from + to) >>> 1;
+        Point median = points.get(middle);
+        Node node = new Node(median.id(), median.coordinates(), axis);
+        int next = (axis + 1) % DIMENSIONS;
+        node.left = build(points, from, middle, next);
+        node.right = build(points, middle + 1, to, next);
+        return node;
+    }
+
+    private void insert(int id, double[] point) {
+        Node parent = null;
+        Node node = root;
+        while (node != null) {
+            parent = node;
+            node = point[node.axis] < node.point[node.axis] ? node.left : node.right;
+        }
+        Node leaf = new Node(id, point, parent == null ? 0 : (parent.axis + 1) % DIMENSIONS);
+        if (parent == null) {
+            root = leaf;
+        } else if (point[parent.axis] < parent.point[parent.axis]) {
+            parent.left = leaf;
+        } else {
+            parent.right = leaf;
+        }
+        nodes.put(id, leaf);
+        track(point, 1);
+        changesSinceBuild++;
+    }
+
+    private void delete(int id) {
+        Node node = nodes.remove(id);
+        if (node == null) return;
+        node.deleted = true;
+        track(node.point, -1);
+        changesSinceBuild++;
+    }
+
+    private void track(double[] point, int sign) {
+        for (int d = 0; d < DIMENSIONS; d++) {
+            sums[d] += sign * point[d];
+            squares[d] += sign * point[d] * point[d];
+        }
+    }
+
+    private void rebuildIfUnbalanced() {
+        if (changesSinceBuild <= Math.max(64, builtSize / 2)) return;
+        List<Point> points = new ArrayList<>(nodes.size());
+        for (Node node : nodes.values()) points.add(new Point(node.id, node.point));
+        build(points);
+    }
+}
@@ -0,0 +1,502 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.Coin;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typeahead over coin and collection names: the names starting with a prefix,
+ * most valuable first.
+ *
+ * <p>Names are analysed like {@link FullTextIndex} terms and stored from each
+ * word on, so {@code "den"} finds both "Denarius" and "Roman Denarius". Each
+ * kind of name has its own radix trie: edges carry runs of characters and a
+ * node exists only where names branch or end. A node whose subtree holds more
+ * than {@value #MAX_SUGGESTIONS} names keeps its best
+ * {@value #MAX_SUGGESTIONS}, so a lookup walks the prefix and copies at most
+ * that many entries; smaller subtrees are walked instead, which saves the
+ * cache in most nodes.</p>
+ *
+ * <p>Coins are ranked by estimated value, collections by the total value of
+ * their coins. Coin changes arrive as a {@link CoinChangeListener}; new
+ * collections through {@link #collectionSaved}. Lookups share a read lock;
+ * changes take the write lock.</p>
+ */
+public class SuggestionTrie implements CoinChangeListener {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    public enum Kind { COIN, COLLECTION }
+
+    /**
+     * A name matching the prefix.
+     *
+     * @param kind coin or collection
+     * @param id identifier of the coin or collection
+     * @param name name as stored
+     * @param estimatedValue value of the coin, or of all the coins of the collection
+     */
+    public record Suggestion(Kind kind, int id, String name, double estimatedValue) {
+    }
+
+    // Mutable: el valor de una colección cambia con sus monedas (se saca del árbol antes de cambiarlo)
+    private static final class Entry {
+        private final Kind kind;
+        private final int id;
+        private final String name;
+        private final Integer collectionId;
+        private double value;
+
+        private Entry(Kind kind, int id, String name, Integer collectionId, double value) {
+            this.kind = kind;
+            this.id = id;
+            this.name = name;
+            this.collectionId = collectionId;
+            this.value = value;
+        }
+    }
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static final class Node {
+        private char[] label;
+        private Node[] children = NO_CHILDREN; // ordenados por el primer carácter de la etiqueta
+        private Entry[] entries = NO_ENTRIES; // nombres que terminan aquí, los entryCount primeros
+        private int entryCount;
+        private Entry[] top; // mejores del subárbol, sólo si tiene más de MAX_SUGGESTIONS
+        private int count;
+
+        private Node(char[] label) {
+            this.label = label;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node coinRoot = new Node(new char[0]);
+    private Node collectionRoot = new Node(new char[0]);
+    private Map<Integer, Entry> coins = new HashMap<>();
+    private Map<Integer, Entry> collections = new HashMap<>();
+    // Valor total por colección, aunque la colección aún no esté en el árbol
+    private Map<Integer, Double> collectionValues = new HashMap<>();
+
+    /**
+     * Replace the contents of the trie. The new tries are built without
+     * ranking and ranked once at the end; lookups keep seeing the previous
+     * contents until then. Changes notified meanwhile are lost.
+     *
+     * @param coins every coin
+     * @param collectionNames name of every collection, by id
+     */
+    public void rebuild(Collection<? extends Coin> coins, Map<Integer, String> collectionNames) {
+        Node newCoinRoot = new Node(new char[0]);
+        Node newCollectionRoot = new Node(new char[0]);
+        Map<Integer, Entry> newCoins = new HashMap<>(coins.size() * 2);
+        Map<Integer, Entry> newCollections = new HashMap<>(collectionNames.size() * 2);
+        Map<Integer, Double> newValues = new HashMap<>();
+        for (Coin coin : coins) {
+            if (coin.getId() == null) continue;
+            Entry entry = coinEntry(coin);
+            newCoins.put(entry.id, entry);
+            if (entry.collectionId != null) newValues.merge(entry.collectionId, entry.value, Double::sum);
+            for (char[] key : keys(entry.name)) insert(newCoinRoot, key, entry, false);
+        }
+        for (Map.Entry<Integer, String> collection : collectionNames.entrySet()) {
+            Entry entry = new Entry(Kind.COLLECTION, collection.getKey(), collection.getValue(), null,
+                    newValues.getOrDefault(collection.getKey(), 0.0));
+            newCollections.put(entry.id, entry);
+            for (char[] key : keys(entry.name)) insert(newCollectionRoot, key, entry, false);
+        }
+        rank(newCoinRoot);
+        rank(newCollectionRoot);
+
+        lock.writeLock().lock();
+        try {
+            coinRoot = newCoinRoot;
+            collectionRoot = newCollectionRoot;
+            this.coins = newCoins;
+            collections = newCollections;
+            collectionValues = newValues;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinSaved(CoinImpl coin) {
+        if (coin.getId() == null) return;
+        Entry entry = coinEntry(coin);
+        lock.writeLock().lock();
+        try {
+            Entry previous = coins.put(entry.id, entry);
+            if (previous != null) {
+                removeAll(coinRoot, previous);
+                addToCollection(previous.collectionId, -previous.value);
+            }
+            insertAll(coinRoot, entry);
+            addToCollection(entry.collectionId, entry.value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void coinDeleted(int id) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = coins.remove(id);
+            if (previous == null) return;
+            removeAll(coinRoot, previous);
+            addToCollection(previous.collectionId, -previous.value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A collection was created or renamed.
+     *
+     * @param id identifier of the collection
+     * @param name its name
+     */
+    public void collectionSaved(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = new Entry(Kind.COLLECTION, id, name, null, collectionValues.getOrDefault(id, 0.0));
+            Entry previous = collections.put(id, entry);
+            if (previous != null) removeAll(collectionRoot, previous);
+            insertAll(collectionRoot, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of coins and collections in the trie
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return coins.size() + collections.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Names starting with a prefix, at word boundaries.
+     *
+     * @param prefix start of the name, analysed like the names
+     * @param limit maximum number of suggestions, at most {@value #MAX_SUGGESTIONS}
+     * @param kind kind of name to suggest, or null for both
+     * @return most valuable first; ties in id order, coins before collections
+     */
+    public List<Suggestion> suggest(String prefix, int limit, Kind kind) {
+        char[] key = key(TextAnalyzer.terms(prefix), 0);
+        int size = Math.min(limit, MAX_SUGGESTIONS);
+        if (key.length == 0 || size < 1) return List.of();
+
+        lock.readLock().lock();
+        try {
+            List<Entry> best = new ArrayList<>(size * 2);
+            if (kind != Kind.COLLECTION) best(find(coinRoot, key), best);
+            if (kind != Kind.COIN) best(find(collectionRoot, key), best);
+            best.sort(SuggestionTrie::compare);
+            List<Suggestion> suggestions = new ArrayList<>(size);
+            for (Entry entry : best.subList(0, Math.min(size, best.size()))) {
+                suggestions.add(new Suggestion(entry.kind, entry.id, entry.name, entry.value));
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Entry coinEntry(Coin coin) {
+        Integer collectionId = coin.getCollection() == null ? null : coin.getCollection().getId();
+        double value = coin.getEstimatedValue() == null ? 0 : coin.getEstimatedValue().doubleValue();
+        return new Entry(Kind.COIN, coin.getId(), coin.getCoinName(), collectionId, value);
+    }
+
+    // Con el cerrojo de escritura: el valor de la colección cambia, así que se recoloca
+    private void addToCollection(Integer collectionId, double delta) {
+        if (collectionId == null || delta == 0) return;
+        double total = collectionValues.merge(collectionId, delta, Double::sum);
+        Entry collection = collections.get(collectionId);
+        if (collection == null) return;
+        removeAll(collectionRoot, collection);
+        collection.value = total;
+        insertAll(collectionRoot, collection);
+    }
+
+    private static void insertAll(Node root, Entry entry) {
+        for (char[] key : keys(entry.name)) insert(root, key, entry, true);
+    }
+
+    private static void removeAll(Node root, Entry entry) {
+        for (char[] key : keys(entry.name)) remove(root, key, entry);
+    }
+
+    // Una clave por palabra: el nombre analizado desde esa palabra hasta el final
+    private static List<char[]> keys(String name) {
+        List<String> terms = TextAnalyzer.terms(name);
+        List<char[]> keys = new ArrayList<>(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            keys.add(key(terms, i));
+        }
+        return keys;
+    }
+
+    private static char[] key(List<String> terms, int from) {
+        return String.join(" ", terms.subList(from, terms.size())).toCharArray();
+    }
+
+    private static void insert(Node root, char[] key, Entry entry, boolean ranked) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int i = 0;
+        while (i < key.length) {
+            int index = childIndex(node, key[i]);
+            if (index < 0) {
+                Node leaf = new Node(Arrays.copyOfRange(key, i, key.length));
+                node.children = insertAt(node.children, -index - 1, leaf);
+                path.add(leaf);
+                node = leaf;
+                break;
+            }
+            Node child = node.children[index];
+            int common = commonLength(child.label, key, i);
+            if (common < child.label.length) {
+                // Divide la arista: el nodo intermedio tiene el mismo subárbol que child
+                Node middle = new Node(Arrays.copyOf(child.label, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.children = new Node[]{child};
+                middle.count = child.count;
+                middle.top = child.top;
+                node.children[index] = middle;
+                child = middle;
+            }
+            path.add(child);
+            node = child;
+            i += common;
+        }
+        // Crecimiento geométrico: las claves cortas (un año, una ceca) acumulan cientos de nombres
+        if (node.entryCount == node.entries.length) {
+            node.entries = Arrays.copyOf(node.entries, Math.max(1, node.entries.length * 2));
+        }
+        node.entries[node.entryCount++] = entry;
+
+        for (int p = path.size() - 1; p >= 0; p--) {
+            Node ancestor = path.get(p);
+            ancestor.count++;
+            if (!ranked || ancestor.count <= MAX_SUGGESTIONS) continue;
+            if (ancestor.top == null) {
+                ancestor.top = computeTop(ancestor);
+            } else {
+                ancestor.top = offer(ancestor.top, entry);
+            }
+        }
+    }
+
+    private static void remove(Node root, char[] key, Entry entry) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int i = 0;
+        while (i < key.length) {
+            int index = childIndex(node, key[i]);
+            if (index < 0) return;
+            Node child = node.children[index];
+            if (!startsWith(key, i, child.label)) return;
+            path.add(child);
+            node = child;
+            i += child.label.length;
+        }
+        int position = indexOf(node.entries, node.entryCount, entry);
+        if (position < 0) return;
+        System.arraycopy(node.entries, position + 1, node.entries, position, node.entryCount - position - 1);
+        node.entries[--node.entryCount] = null;
+
+        for (int p = path.size() - 1; p >= 0; p--) {
+            Node ancestor = path.get(p);
+            ancestor.count--;
+            if (ancestor.count <= MAX_SUGGESTIONS) {
+                ancestor.top = null;
+            } else if (ancestor.top != null && indexOf(ancestor.top, ancestor.top.length, entry) >= 0) {
+                ancestor.top = computeTop(ancestor);
+            }
+        }
+
+        // Poda: hojas vacías fuera, nodos vacíos con un solo hijo se funden con él
+        for (int p = path.size() - 1; p >= 1; p--) {
+            Node current = path.get(p);
+            Node parent = path.get(p - 1);
+            if (current.entryCount > 0) break;
+            int index = childIndex(parent, current.label[0]);
+            if (current.children.length == 0) {
+                parent.children = removeAt(parent.children, index);
+            } else if (current.children.length == 1) {
+                Node child = current.children[0];
+                char[] label = Arrays.copyOf(current.label, current.label.length + child.label.length);
+                System.arraycopy(child.label, 0, label, current.label.length, child.label.length);
+                child.label = label;
+                parent.children[index] = child;
+                break;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static Node find(Node root, char[] key) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length) {
+            int index = childIndex(node, key[i]);
+            if (index < 0) return null;
+            Node child = node.children[index];
+            int length = Math.min(child.label.length, key.length - i);
+            for (int j = 0; j < length; j++) {
+                if (child.label[j] != key[i + j]) return null;
+            }
+            node = child;
+            i += length;
+        }
+        return node;
+    }
+
+    private static void best(Node node, List<Entry> into) {
+        if (node == null) return;
+        if (node.top != null) {
+            into.addAll(Arrays.asList(node.top));
+        } else {
+            for (Entry entry : collect(node)) into.add(entry);
+        }
+    }
+
+    // Entradas distintas de un subárbol pequeño (como mucho MAX_SUGGESTIONS claves)
+    private static List<Entry> collect(Node node) {
+        List<Entry> entries = new ArrayList<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node current = pending.pop();
+            for (int i = 0; i < current.entryCount; i++) {
+                if (!containsEntry(entries, current.entries[i])) entries.add(current.entries[i]);
+            }
+            for (Node child : current.children) pending.push(child);
+        }
+        return entries;
+    }
+
+    // Ordena de abajo arriba tras una carga completa y ajusta las entradas a su tamaño
+    private static void rank(Node node) {
+        for (Node child : node.children) rank(child);
+        if (node.entryCount < node.entries.length) node.entries = Arrays.copyOf(node.entries, node.entryCount);
+        node.top = node.count > MAX_SUGGESTIONS ? computeTop(node) : null;
+    }
+
+    // Los mejores del nodo salen de sus propias entradas y de los mejores de cada hijo
+    private static Entry[] computeTop(Node node) {
+        List<Entry> candidates = new ArrayList<>();
+        for (int i = 0; i < node.entryCount; i++) {
+            if (!containsEntry(candidates, node.entries[i])) candidates.add(node.entries[i]);
+        }
+        for (Node child : node.children) {
+            for (Entry entry : child.top != null ? Arrays.asList(child.top) : collect(child)) {
+                if (!containsEntry(candidates, entry)) candidates.add(entry);
+            }
+        }
+        candidates.sort(SuggestionTrie::compare);
+        return candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size())).toArray(NO_ENTRIES);
+    }
+
+    private static Entry[] offer(Entry[] top, Entry entry) {
+        if (indexOf(top, top.length, entry) >= 0) return top;
+        if (top.length == MAX_SUGGESTIONS && compare(entry, top[top.length - 1]) > 0) return top;
+        int position = 0;
+        while (position < top.length && compare(top[position], entry) < 0) position++;
+        Entry[] updated = new Entry[Math.min(MAX_SUGGESTIONS, top.length + 1)];
+        System.arraycopy(top, 0, updated, 0, position);
+        updated[position] = entry;
+        System.arraycopy(top, position, updated, position + 1, updated.length - position - 1);
+        return updated;
+    }
+
+    private static int compare(Entry a, Entry b) {
+        int byValue = Double.compare(b.value, a.value);
+        if (byValue != 0) return byValue;
+        int byId = Integer.compare(a.id, b.id);
+        return byId != 0 ? byId : a.kind.compareTo(b.kind);
+    }
+
+    private static boolean containsEntry(List<Entry> entries, Entry entry) {
+        for (Entry existing : entries) {
+            if (existing == entry) return true;
+        }
+        return false;
+    }
+
+    private static int indexOf(Entry[] entries, int count, Entry entry) {
+        for (int i = 0; i < count; i++) {
+            if (entries[i] == entry) return i;
+        }
+        return -1;
+    }
+
+    // Búsqueda binaria por el primer carácter; negativo si no está (como Arrays.binarySearch)
+    private static int childIndex(Node node, char first) {
+        int low = 0;
+        int high = node.children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char c = node.children[middle].label[0];
+            if (c < first) {
+                low = middle + 1;
+            } else if (c > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int commonLength(char[] label, char[] key, int from) {
+        int length = Math.min(label.length, key.length - from);
+        int i = 0;
+        while (i < length && label[i] == key[from + i]) i++;
+        return i;
+    }
+
+    private static boolean startsWith(char[] key, int from, char[] label) {
+        return key.length - from >= label.length && commonLength(label, key, from) == label.length;
+    }
+
+    private static Node[] insertAt(Node[] nodes, int index, Node node) {
+        Node[] updated = new Node[nodes.length + 1];
+        System.arraycopy(nodes, 0, updated, 0, index);
+        updated[index] = node;
+        System.arraycopy(nodes, index, updated, index + 1, nodes.length - index);
+        return updated;
+    }
+
+    private static Node[] removeAt(Node[] nodes, int index) {
+        if (nodes.length == 1) return NO_CHILDREN;
+        Node[] updated = new Node[nodes.length - 1];
+        System.arraycopy(nodes, 0, updated, 0, index);
+        System.arraycopy(nodes, index + 1, updated, index, updated.length - index);
+        return updated;
+    }
+}
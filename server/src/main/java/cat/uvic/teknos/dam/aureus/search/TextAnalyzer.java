@@ -0,0 +1,61 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into the terms stored in the search indexes.
+ *
+ * <p>Terms are maximal runs of letters and digits, lower-cased and without
+ * diacritics, so {@code "Denário"} and {@code "denario"} are the same term.
+ * The same analysis is applied to indexed text and to queries.</p>
+ */
+public final class TextAnalyzer {
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * @param text text to analyse, may be null
+     * @return terms in order of appearance, with repetitions
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) return terms;
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @param text text to normalise
+     * @return text lower-cased and without combining marks
+     */
+    public static String fold(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        // Texto ASCII: no hay acentos que quitar
+        boolean ascii = true;
+        for (int i = 0; i < lower.length() && ascii; i++) {
+            ascii = lower.charAt(i) < 0x80;
+        }
+        if (ascii) return lower;
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) folded.append(c);
+        }
+        return folded.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.Coin;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.service.CoinChangeListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Coins ordered by estimated value, for the whole catalogue and for each
+ * collection, so the most valuable ones are read in time proportional to
+ * how many are asked for.
+ *
+ * <p>The orders are concurrent skip lists of (value, id). Queries walk them
+ * without locking; changes, which take a lock among themselves, insert the
+ * new position of a coin, then make it the current one and only then remove
+ * the old one, and queries skip the positions that no longer match the
+ * current value or collection of their coin. Coins without an estimated value are left out.</p>
+ *
+ * <p>{@link #rebuild} loads the whole catalogue and the index then follows
+ * the changes made through the coin service as a {@link CoinChangeListener}.
+ * {@link #reconcilePage} compares it again with the database, one page of
+ * coins at a time, to correct what was changed there directly.</p>
+ */
+public class TopValueIndex implements CoinChangeListener {
+
+    /**
+     * Position of a coin.
+     *
+     * @param id coin identifier
+     * @param estimatedValue value the coin is ranked by
+     * @param collectionId collection of the coin, or null
+     */
+    public record Entry(int id, BigDecimal estimatedValue, Integer collectionId) {
+    }
+
+    // Más valiosa primero; a igual valor, por id
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparing(Entry::estimatedValue).reversed().thenComparingInt(Entry::id);
+
+    private final ConcurrentSkipListSet<Entry> all = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Integer, ConcurrentSkipListSet<Entry>> byCollection = new ConcurrentHashMap<>();
+    // Posición vigente de cada moneda, por id para reconciliar por tramos
+    private final ConcurrentNavigableMap<Integer, Entry> entries = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Replace the contents of the index. Changes notified while the rebuild
+     * runs are lost, so it is meant for startup.
+     *
+     * @param coins every coin
+     */
+    public void rebuild(Collection<? extends Coin> coins) {
+        reconcile(coins, entries, () -> true);
+    }
+
+    /**
+     * Bring the index in line with a fresh read of one page of the
+     * catalogue, in id order, changing only the coins that differ. The page
+     * covers the ids after {@code afterId} up to its last coin, or every
+     * following id if it is the last page; indexed coins in that range
+     * missing from the page are removed.
+     *
+     * <p>The coins may be outdated by changes notified after they were read.
+     * {@code unchanged} is therefore checked while changes are held back,
+     * and nothing is applied if it returns false.</p>
+     *
+     * @param page coins after {@code afterId} in id order, as currently saved
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param last whether no coin follows the page
+     * @param unchanged whether no change has been made since the page was read
+     * @return number of coins added, moved or removed; -1 if {@code unchanged} returned false
+     */
+    public int reconcilePage(List<? extends Coin> page, Integer afterId, boolean last, BooleanSupplier unchanged) {
+        ConcurrentNavigableMap<Integer, Entry> range = afterId == null ? entries : entries.tailMap(afterId, false);
+        if (!last) {
+            if (page.isEmpty()) return 0;
+            range = range.headMap(page.get(page.size() - 1).getId(), true);
+        }
+        return reconcile(page, range, unchanged);
+    }
+
+    @Override
+    public void coinSaved(CoinImpl coin) {
+        if (coin.getId() == null) return;
+        Entry entry = entry(coin);
+        lock.lock();
+        try {
+            if (entry == null) {
+                remove(coin.getId());
+            } else {
+                put(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void coinDeleted(int id) {
+        lock.lock();
+        try {
+            remove(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of coins in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The most valuable coins, of the catalogue or of one collection.
+     *
+     * @param n maximum number of coins
+     * @param collectionId collection to rank, or null for every coin
+     * @return most valuable first, equal values in id order
+     */
+    public List<Entry> top(int n, Integer collectionId) {
+        Set<Entry> order = collectionId == null ? all : byCollection.get(collectionId);
+        if (order == null || n < 1) return List.of();
+        // entries.size() recorre el mapa entero
+        List<Entry> top = new ArrayList<>(Math.min(n, 256));
+        for (Entry entry : order) {
+            // Una moneda a medio cambiar aparece en su posición antigua y en la nueva
+            Entry current = entries.get(entry.id());
+            if (current == null || current.estimatedValue().compareTo(entry.estimatedValue()) != 0) continue;
+            if (collectionId != null && !collectionId.equals(current.collectionId())) continue;
+            top.add(current);
+            if (top.size() == n) break;
+        }
+        return top;
+    }
+
+    // range: vista de entries con los ids que cubren las monedas leídas
+    private int reconcile(Collection<? extends Coin> coins, Map<Integer, Entry> range, BooleanSupplier unchanged) {
+        List<Entry> loaded = new ArrayList<>(coins.size());
+        Set<Integer> present = new HashSet<>();
+        for (Coin coin : coins) {
+            Entry entry = entry(coin);
+            if (entry == null) continue;
+            loaded.add(entry);
+            present.add(entry.id());
+        }
+        lock.lock();
+        try {
+            if (!unchanged.getAsBoolean()) return -1;
+            int corrections = 0;
+            for (Entry entry : loaded) {
+                if (!sameRanking(entry, entries.get(entry.id()))) {
+                    put(entry);
+                    corrections++;
+                }
+            }
+            for (Integer id : new ArrayList<>(range.keySet())) {
+                if (!present.contains(id)) {
+                    remove(id);
+                    corrections++;
+                }
+            }
+            return corrections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Entry entry(Coin coin) {
+        if (coin.getId() == null || coin.getEstimatedValue() == null) return null;
+        Integer collection = coin.getCollection() == null ? null : coin.getCollection().getId();
+        return new Entry(coin.getId(), coin.getEstimatedValue(), collection);
+    }
+
+    // El valor se compara con compareTo: 12.5 y 12.50 ocupan la misma posición
+    private static boolean sameRanking(Entry a, Entry b) {
+        return b != null && ORDER.compare(a, b) == 0 && Objects.equals(a.collectionId(), b.collectionId());
+    }
+
+    // Llamados con el cerrojo. Para que la moneda no desaparezca de las consultas: primero la posición
+    // nueva en los órdenes, después la posición vigente en entries y por último se borra la antigua
+    private void put(Entry entry) {
+        Entry old = entries.get(entry.id());
+        boolean samePosition = old != null && ORDER.compare(old, entry) == 0;
+        if (!samePosition) all.add(entry);
+        if (entry.collectionId() != null && !(samePosition && entry.collectionId().equals(old.collectionId()))) {
+            byCollection.computeIfAbsent(entry.collectionId(), c -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+        }
+        entries.put(entry.id(), entry);
+        if (old == null) return;
+        if (!samePosition) all.remove(old);
+        if (old.collectionId() != null && !(samePosition && Objects.equals(entry.collectionId(), old.collectionId()))) {
+            removeFromCollection(old);
+        }
+    }
+
+    private void remove(int id) {
+        Entry old = entries.remove(id);
+        if (old == null) return;
+        all.remove(old);
+        if (old.collectionId() != null) removeFromCollection(old);
+    }
+
+    private void removeFromCollection(Entry entry) {
+        ConcurrentSkipListSet<Entry> collection = byCollection.get(entry.collectionId());
+        if (collection == null) return;
+        collection.remove(entry);
+        if (collection.isEmpty()) byCollection.remove(entry.collectionId());
+    }
+}
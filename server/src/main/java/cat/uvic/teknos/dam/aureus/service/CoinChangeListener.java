@@ -0,0 +1,28 @@
+package cat.uvic.teknos.dam.aureus.service;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+
+/**
+ * Receives the coins changed through a {@link CoinService}, once each change
+ * is saved. Used to keep derived in-memory structures, such as search
+ * indexes, in step with the database without re-reading it.
+ *
+ * <p>Listeners run on the thread that made the change and must be quick; an
+ * exception thrown by a listener is logged and does not undo the change.</p>
+ */
+public interface CoinChangeListener {
+
+    /**
+     * A coin was created or updated.
+     *
+     * @param coin the coin as saved, with its id
+     */
+    void coinSaved(CoinImpl coin);
+
+    /**
+     * A coin was deleted.
+     *
+     * @param id identifier of the deleted coin
+     */
+    void coinDeleted(int id);
+}
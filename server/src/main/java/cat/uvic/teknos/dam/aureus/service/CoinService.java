@@ -1,8 +1,15 @@
 package cat.uvic.teknos.dam.aureus.service;
 
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Service interface that defines operations for managing coins.
@@ -11,6 +18,10 @@ import java.util.List;
  * coin creation, retrieval, update and deletion. Methods use the
  * {@link cat.uvic.teknos.dam.aureus.impl.CoinImpl} concrete model used
  * across the application.</p>
+ *
+ * <p>The {@code *Async} variants run the blocking operation on the given
+ * executor (normally a {@link DatabaseExecutor}) and complete the returned
+ * future with its result or exception.</p>
  */
 public interface CoinService {
     /**
@@ -20,6 +31,52 @@ public interface CoinService {
      */
     List<CoinImpl> findAll();
 
+    /**
+     * Retrieve one page of coins ordered by id (keyset pagination).
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @return coins with an id greater than {@code afterId}, in id order
+     */
+    List<CoinImpl> findPage(Integer afterId, int limit);
+
+    /**
+     * Projection of {@link #findPage(Integer, int)}: only the selected fields
+     * are read.
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @param fields fields to read
+     * @return one map per coin, from property name to value, in id order
+     */
+    List<Map<String, Object>> findPageFields(Integer afterId, int limit, Set<CoinField> fields);
+
+    /**
+     * Retrieve several coins by id at once.
+     *
+     * @param ids coin identifiers; duplicates and unknown ids are ignored
+     * @return the coins found, in id order
+     */
+    List<CoinImpl> findByIds(Collection<Integer> ids);
+
+    /**
+     * Projection of {@link #findByIds(Collection)}: only the selected fields
+     * are read.
+     *
+     * @param ids coin identifiers; duplicates and unknown ids are ignored
+     * @param fields fields to read
+     * @return one map per coin found, from property name to value, in id order
+     */
+    List<Map<String, Object>> findFieldsByIds(Collection<Integer> ids, Set<CoinField> fields);
+
+    /**
+     * Retrieve the coins matching every filter set in the criteria.
+     *
+     * @param criteria filters, order and maximum number of results
+     * @return matching coins, at most {@code criteria.getLimit()}
+     */
+    List<CoinImpl> search(CoinSearchCriteria criteria);
+
     /**
      * Find a coin by its numeric identifier.
      *
@@ -59,4 +116,137 @@ public interface CoinService {
      * @param id identifier of the coin to delete
      */
     void delete(int id);
+
+    /**
+     * Modification counters of the coins, advanced after every successful
+     * create, update or delete made through this service.
+     *
+     * @return the version tracker of this service
+     */
+    VersionTracker getVersionTracker();
+
+    /**
+     * Register a listener notified after every successful create, update or
+     * delete made through this service.
+     *
+     * @param listener listener to add
+     */
+    void addChangeListener(CoinChangeListener listener);
+
+    /**
+     * Asynchronous {@link #findAll()}.
+     *
+     * @param executor executor running the query
+     * @return future list of coins
+     */
+    default CompletableFuture<List<CoinImpl>> findAllAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::findAll, executor);
+    }
+
+    /**
+     * Asynchronous {@link #findPage(Integer, int)}.
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @param executor executor running the query
+     * @return future page of coins
+     */
+    default CompletableFuture<List<CoinImpl>> findPageAsync(Integer afterId, int limit, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> findPage(afterId, limit), executor);
+    }
+
+    /**
+     * Asynchronous {@link #findPageFields(Integer, int, Set)}.
+     *
+     * @param afterId id of the last coin of the previous page, or null for the first page
+     * @param limit maximum number of coins returned
+     * @param fields fields to read
+     * @param executor executor running the query
+     * @return future page of projected coins
+     */
+    default CompletableFuture<List<Map<String, Object>>> findPageFieldsAsync(Integer afterId, int limit,
+                                                                            Set<CoinField> fields, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> findPageFields(afterId, limit, fields), executor);
+    }
+
+    /**
+     * Asynchronous {@link #findByIds(Collection)}.
+     *
+     * @param ids coin identifiers
+     * @param executor executor running the query
+     * @return future list of coins
+     */
+    default CompletableFuture<List<CoinImpl>> findByIdsAsync(Collection<Integer> ids, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> findByIds(ids), executor);
+    }
+
+    /**
+     * Asynchronous {@link #findFieldsByIds(Collection, Set)}.
+     *
+     * @param ids coin identifiers
+     * @param fields fields to read
+     * @param executor executor running the query
+     * @return future list of projected coins
+     */
+    default CompletableFuture<List<Map<String, Object>>> findFieldsByIdsAsync(Collection<Integer> ids,
+                                                                             Set<CoinField> fields, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> findFieldsByIds(ids, fields), executor);
+    }
+
+    /**
+     * Asynchronous {@link #search(CoinSearchCriteria)}.
+     *
+     * @param criteria filters, order and maximum number of results
+     * @param executor executor running the query
+     * @return future list of matching coins
+     */
+    default CompletableFuture<List<CoinImpl>> searchAsync(CoinSearchCriteria criteria, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> search(criteria), executor);
+    }
+
+    /**
+     * Asynchronous {@link #findById(int)}.
+     *
+     * @param id coin identifier
+     * @param executor executor running the query
+     * @return future coin
+     */
+    default CompletableFuture<CoinImpl> findByIdAsync(int id, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> findById(id), executor);
+    }
+
+    /**
+     * Asynchronous {@link #create(CoinImpl, Integer)}, or {@link #create(CoinImpl)}
+     * when {@code collectionId} is null.
+     *
+     * @param coin coin data to create
+     * @param collectionId id of the collection to associate (may be null)
+     * @param executor executor running the insert
+     * @return future created coin
+     */
+    default CompletableFuture<CoinImpl> createAsync(CoinImpl coin, Integer collectionId, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> collectionId == null ? create(coin) : create(coin, collectionId), executor);
+    }
+
+    /**
+     * Asynchronous {@link #update(CoinImpl)}.
+     *
+     * @param coin coin instance with updated fields
+     * @param executor executor running the update
+     * @return future completed when the coin is updated
+     */
+    default CompletableFuture<Void> updateAsync(CoinImpl coin, Executor executor) {
+        return CompletableFuture.runAsync(() -> update(coin), executor);
+    }
+
+    /**
+     * Asynchronous {@link #delete(int)}.
+     *
+     * @param id identifier of the coin to delete
+     * @param executor executor running the delete
+     * @return future completed when the coin is deleted
+     */
+    default CompletableFuture<Void> deleteAsync(int id, Executor executor) {
+        return CompletableFuture.runAsync(() -> delete(id), executor);
+    }
 }
@@ -4,12 +4,20 @@ package cat.uvic.teknos.dam.aureus.service;
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
 import cat.uvic.teknos.dam.aureus.service.exception.EntityNotFoundException;
 import cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * In-memory implementation of {@link CoinService} used for testing and
@@ -22,6 +30,8 @@ public class CoinServiceImpl implements CoinService {
 
     private final Map<Integer, CoinImpl> store = new ConcurrentHashMap<>();
     private final AtomicInteger nextId = new AtomicInteger(1);
+    private final VersionTracker versions = new VersionTracker();
+    private final List<CoinChangeListener> listeners = new CopyOnWriteArrayList<>();
 
     public CoinServiceImpl() {
         // Seed data
@@ -46,6 +56,93 @@ public class CoinServiceImpl implements CoinService {
         return new ArrayList<>(store.values());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CoinImpl> findPage(Integer afterId, int limit) {
+        return store.values().stream()
+                .filter(c -> afterId == null || c.getId() > afterId)
+                .sorted(Comparator.comparing(CoinImpl::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Object>> findPageFields(Integer afterId, int limit, Set<CoinField> fields) {
+        return project(findPage(afterId, limit), fields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CoinImpl> findByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .distinct()
+                .map(store::get)
+                .filter(c -> c != null)
+                .sorted(Comparator.comparing(CoinImpl::getId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Object>> findFieldsByIds(Collection<Integer> ids, Set<CoinField> fields) {
+        return project(findByIds(ids), fields);
+    }
+
+    private static List<Map<String, Object>> project(List<CoinImpl> coins, Set<CoinField> fields) {
+        List<Map<String, Object>> rows = new ArrayList<>(coins.size());
+        for (CoinImpl coin : coins) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (CoinField field : fields) {
+                row.put(field.property(), field.get(coin));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Text filters ignore case, as the database collation does.</p>
+     */
+    @Override
+    public List<CoinImpl> search(CoinSearchCriteria criteria) {
+        Comparator<CoinImpl> order = switch (criteria.getSort()) {
+            case ID -> Comparator.comparing(CoinImpl::getId);
+            case NAME -> Comparator.comparing(CoinImpl::getCoinName, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case YEAR -> Comparator.comparing(CoinImpl::getCoinYear, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case VALUE -> Comparator.comparing(CoinImpl::getEstimatedValue, Comparator.nullsFirst(Comparator.naturalOrder()));
+        };
+        order = order.thenComparing(CoinImpl::getId);
+        if (criteria.isDescending()) order = order.reversed();
+        return store.values().stream()
+                .filter(c -> criteria.getMaterial() == null || criteria.getMaterial().equalsIgnoreCase(c.getCoinMaterial()))
+                .filter(c -> criteria.getOriginCountry() == null || criteria.getOriginCountry().equalsIgnoreCase(c.getOriginCountry()))
+                .filter(c -> criteria.getCollectionId() == null
+                        || (c.getCollection() != null && criteria.getCollectionId().equals(c.getCollection().getId())))
+                .filter(c -> inRange(c.getCoinYear(), criteria.getMinYear(), criteria.getMaxYear()))
+                .filter(c -> inRange(c.getEstimatedValue(), criteria.getMinValue(), criteria.getMaxValue()))
+                .sorted(order)
+                .limit(criteria.getLimit())
+                .collect(Collectors.toList());
+    }
+
+    // Un valor nulo no cumple ningún rango, como en SQL
+    private static <T extends Comparable<T>> boolean inRange(T value, T min, T max) {
+        if (min == null && max == null) return true;
+        if (value == null) return false;
+        return (min == null || value.compareTo(min) >= 0) && (max == null || value.compareTo(max) <= 0);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,6 +164,8 @@ public class CoinServiceImpl implements CoinService {
             nextId.updateAndGet(curr -> Math.max(curr, coin.getId() + 1));
         }
         store.put(coin.getId(), coin);
+        versions.modified(coin.getId());
+        fireSaved(coin);
         return coin;
     }
 
@@ -102,6 +201,8 @@ public class CoinServiceImpl implements CoinService {
         if (coin.getId() == null) throw new IllegalArgumentException("Coin id is required for update");
         if (!store.containsKey(coin.getId())) throw new EntityNotFoundException("Coin not found with id " + coin.getId());
         store.put(coin.getId(), coin);
+        versions.modified(coin.getId());
+        fireSaved(coin);
     }
 
     /**
@@ -110,5 +211,44 @@ public class CoinServiceImpl implements CoinService {
     @Override
     public void delete(int id) {
         if (store.remove(id) == null) throw new EntityNotFoundException("Coin not found with id " + id);
+        versions.modified(id);
+        fireDeleted(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VersionTracker getVersionTracker() {
+        return versions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addChangeListener(CoinChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // Un fallo de un listener no deshace el cambio ya guardado
+    private void fireSaved(CoinImpl coin) {
+        for (CoinChangeListener listener : listeners) {
+            try {
+                listener.coinSaved(coin);
+            } catch (RuntimeException e) {
+                System.err.println("CoinServiceImpl: change listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void fireDeleted(int id) {
+        for (CoinChangeListener listener : listeners) {
+            try {
+                listener.coinDeleted(id);
+            } catch (RuntimeException e) {
+                System.err.println("CoinServiceImpl: change listener failed: " + e.getMessage());
+            }
+        }
     }
 }
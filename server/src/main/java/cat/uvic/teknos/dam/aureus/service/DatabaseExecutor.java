@@ -0,0 +1,71 @@
+package cat.uvic.teknos.dam.aureus.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded executor for database work, sized independently of the I/O threads.
+ *
+ * <p>Async service methods ({@link CoinService#findAllAsync} and friends) run
+ * here, so a slow query keeps a database thread busy instead of a connection
+ * thread or NIO worker. When every thread is busy and the queue is full,
+ * {@link #execute} throws {@link RejectedExecutionException}, which the router
+ * answers with 503.</p>
+ *
+ * <p>JPA repositories that share one {@code EntityManager} are not thread-safe
+ * and must use a single thread.</p>
+ */
+public class DatabaseExecutor implements Executor, AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * @param threads number of database threads
+     * @param queueCapacity tasks waiting for a thread before new ones are rejected
+     */
+    public DatabaseExecutor(int threads, int queueCapacity) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be >= 1");
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("DatabaseWorker-", 1).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue is full or the executor is closed
+     */
+    @Override
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    /**
+     * @return short report of the pool state, for the server status line
+     */
+    public String summary() {
+        return "db threads: " + pool.getActiveCount() + "/" + pool.getMaximumPoolSize()
+                + ", queued: " + pool.getQueue().size()
+                + ", completed: " + pool.getCompletedTaskCount();
+    }
+
+    /**
+     * Stop accepting work and wait up to five seconds for the queued tasks.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
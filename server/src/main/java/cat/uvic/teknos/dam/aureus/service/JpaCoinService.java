@@ -3,11 +3,16 @@ package cat.uvic.teknos.dam.aureus.service;
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
 import cat.uvic.teknos.dam.aureus.model.jpa.JpaCoin;
 import cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaCoinRepository;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 import cat.uvic.teknos.dam.aureus.service.exception.EntityNotFoundException;
 import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +26,9 @@ import java.util.stream.Collectors;
 public class JpaCoinService implements CoinService {
     private final JpaCoinRepository coinRepository;
     private final cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaCollectionRepository collectionRepository;
+    // Versiones para los ETag: sólo cuentan los cambios hechos a través de este servicio
+    private final VersionTracker versions = new VersionTracker();
+    private final List<CoinChangeListener> listeners = new CopyOnWriteArrayList<>();
 
     public JpaCoinService(JpaCoinRepository coinRepository, cat.uvic.teknos.dam.aureus.model.jpa.repositories.JpaCollectionRepository collectionRepository) {
         this.coinRepository = coinRepository;
@@ -38,6 +46,52 @@ public class JpaCoinService implements CoinService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CoinImpl> findPage(Integer afterId, int limit) {
+        return coinRepository.findPage(afterId, limit).stream()
+                .map(this::convertToCoinImpl)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Object>> findPageFields(Integer afterId, int limit, Set<CoinField> fields) {
+        return coinRepository.findPageFields(afterId, limit, fields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CoinImpl> findByIds(Collection<Integer> ids) {
+        return coinRepository.findByIds(ids).stream()
+                .map(this::convertToCoinImpl)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Object>> findFieldsByIds(Collection<Integer> ids, Set<CoinField> fields) {
+        return coinRepository.findFieldsByIds(ids, fields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CoinImpl> search(CoinSearchCriteria criteria) {
+        return coinRepository.search(criteria).stream()
+                .map(this::convertToCoinImpl)
+                .collect(Collectors.toList());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -138,7 +192,10 @@ public class JpaCoinService implements CoinService {
             String msg = root.getClass().getSimpleName() + ": " + rootMsg;
             throw new HttpException(500, "Internal Server Error", msg);
         }
-        return convertToCoinImpl(jpaCoin);
+        versions.modified(jpaCoin.getId());
+        CoinImpl created = convertToCoinImpl(jpaCoin);
+        fireSaved(created);
+        return created;
     }
 
 
@@ -205,7 +262,10 @@ public class JpaCoinService implements CoinService {
             String rootMsg = (root.getMessage() != null) ? root.getMessage() : root.getClass().getSimpleName();
             throw new HttpException(500, "Internal Server Error", root.getClass().getSimpleName() + ": " + rootMsg);
         }
-        return convertToCoinImpl(jpaCoin);
+        versions.modified(jpaCoin.getId());
+        CoinImpl created = convertToCoinImpl(jpaCoin);
+        fireSaved(created);
+        return created;
     }
 
     @Override
@@ -279,6 +339,8 @@ public class JpaCoinService implements CoinService {
             String rootMsg = (root.getMessage() != null) ? root.getMessage() : root.getClass().getSimpleName();
             throw new HttpException(500, "Internal Server Error", root.getClass().getSimpleName() + ": " + rootMsg);
         }
+        versions.modified(existing.getId());
+        fireSaved(convertToCoinImpl(existing));
     }
 
     @Override
@@ -286,6 +348,8 @@ public class JpaCoinService implements CoinService {
         try {
             JpaCoin jpaCoin = coinRepository.get(id);
             coinRepository.delete(jpaCoin);
+            versions.modified(id);
+            fireDeleted(id);
         } catch (Exception e) {
             System.err.println("JpaCoinService.delete: error deleting coin id=" + id + " - " + e.getMessage());
             e.printStackTrace(System.err);
@@ -293,6 +357,43 @@ public class JpaCoinService implements CoinService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VersionTracker getVersionTracker() {
+        return versions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addChangeListener(CoinChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // Un fallo de un listener no deshace el cambio ya guardado
+    private void fireSaved(CoinImpl coin) {
+        for (CoinChangeListener listener : listeners) {
+            try {
+                listener.coinSaved(coin);
+            } catch (RuntimeException e) {
+                System.err.println("JpaCoinService: change listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void fireDeleted(int id) {
+        for (CoinChangeListener listener : listeners) {
+            try {
+                listener.coinDeleted(id);
+            } catch (RuntimeException e) {
+                System.err.println("JpaCoinService: change listener failed: " + e.getMessage());
+            }
+        }
+    }
+
     private CoinImpl convertToCoinImpl(JpaCoin jpaCoin) {
         if (jpaCoin == null) return null;
         CoinImpl coin = new CoinImpl();
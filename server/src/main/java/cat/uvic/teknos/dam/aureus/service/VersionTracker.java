@@ -0,0 +1,65 @@
+package cat.uvic.teknos.dam.aureus.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modification counters kept by a service, from which the HTTP layer derives
+ * the ETags of what it returns.
+ *
+ * <p>Every change advances a table-level counter and records the new value as
+ * the version of the changed entity; entities untouched since startup have
+ * version 0. The counters live in memory, so {@link #epoch()} identifies the
+ * running instance and must be part of every tag built from them. Changes
+ * made directly in the database, bypassing the service, are not seen.</p>
+ *
+ * <p>Callers read a version <em>before</em> querying the data it describes
+ * and services record a change only <em>after</em> it is saved: a race then
+ * costs at most a needless full response, never a stale one.</p>
+ */
+public class VersionTracker {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong tableVersion = new AtomicLong();
+    // Sólo entidades modificadas desde el arranque
+    private final Map<Integer, Long> entityVersions = new ConcurrentHashMap<>();
+
+    /**
+     * @return identifier of this instance, different after every restart
+     */
+    public String epoch() {
+        return epoch;
+    }
+
+    /**
+     * @return number of changes made through the service since startup
+     */
+    public long tableVersion() {
+        return tableVersion.get();
+    }
+
+    /**
+     * @param id entity identifier
+     * @return table version of the last change to the entity, or 0 if it was not changed
+     */
+    public long entityVersion(int id) {
+        return entityVersions.getOrDefault(id, 0L);
+    }
+
+    /**
+     * Record a saved change (creation, update or deletion) of an entity.
+     *
+     * @param id identifier of the changed entity
+     */
+    public void modified(int id) {
+        entityVersions.put(id, tableVersion.incrementAndGet());
+    }
+
+    /**
+     * Record a saved change that does not concern a single known entity.
+     */
+    public void modified() {
+        tableVersion.incrementAndGet();
+    }
+}
@@ -0,0 +1,117 @@
+package cat.uvic.teknos.dam.aureus.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void releasedBuffersAreReusedBySizeClass() {
+        BufferPool pool = new BufferPool(8, true);
+        ByteBuffer small = pool.acquire(100);
+        assertTrue(small.isDirect());
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, small.capacity());
+        ByteBuffer medium = pool.acquire(BufferPool.MIN_BUFFER_SIZE + 1);
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, medium.capacity());
+        assertEquals(2, pool.outstanding());
+
+        small.put((byte) 1);
+        pool.release(small);
+        pool.release(medium);
+        ByteBuffer again = pool.acquire(BufferPool.MIN_BUFFER_SIZE);
+        assertSame(small, again);
+        assertEquals(0, again.position(), "A reused buffer is cleared");
+        assertEquals(1.0 / 3, pool.hitRate(), 1e-9);
+
+        // Mayor que la clase más grande: se presta sin pool y se descarta al devolverlo
+        ByteBuffer huge = pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, huge.capacity());
+        pool.release(huge);
+        pool.release(again);
+        assertEquals(0, pool.outstanding());
+        assertTrue(pool.summary().contains("outstanding: 0"), pool.summary());
+    }
+
+    @Test
+    void leakDetectionReportsOutstandingAndRejectsDoubleRelease() {
+        BufferPool pool = new BufferPool(8, true);
+        ByteBuffer kept = pool.acquire(10);
+        ByteBuffer returned = pool.acquire(10);
+        pool.release(returned);
+
+        assertEquals(1, pool.leaks().size());
+        assertTrue(pool.leaks().get(0).getMessage().contains(String.valueOf(kept.capacity())));
+        assertThrows(IllegalStateException.class, () -> pool.release(returned));
+        assertThrows(IllegalStateException.class, () -> pool.release(ByteBuffer.allocateDirect(BufferPool.MIN_BUFFER_SIZE)));
+    }
+
+    @Test
+    void buffersReleasedOnAnotherThreadReachTheSharedQueue() {
+        BufferPool pool = new BufferPool(8, false);
+        // La caché del hilo que devuelve se llena y el resto pasa a la cola compartida
+        ByteBuffer[] lent = new ByteBuffer[8];
+        for (int i = 0; i < lent.length; i++) lent[i] = pool.acquire(10);
+        CompletableFuture.runAsync(() -> {
+            for (ByteBuffer buffer : lent) pool.release(buffer);
+        }).join();
+
+        ByteBuffer reused = pool.acquire(10);
+        assertTrue(Arrays.asList(lent).contains(reused));
+    }
+
+    @Test
+    void outputStreamGrowsAndHandsOverItsBuffer() {
+        BufferPool pool = new BufferPool(8, true);
+        byte[] chunk = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        BufferOutputStream out = new BufferOutputStream(pool, 16);
+        for (int i = 0; i < 1000; i++) out.write(chunk, 0, chunk.length);
+        out.write('!');
+
+        ByteBuffer[] buffers = out.toBuffers();
+        assertEquals(1, buffers.length);
+        ByteBuffer content = buffers[0];
+        assertEquals(10_001, content.remaining());
+        assertEquals('!', content.get(10_000));
+        assertEquals(1, pool.outstanding(), "Only the final buffer is still lent");
+        out.close();
+        assertEquals(1, pool.outstanding(), "close() after toBuffers() leaves the buffer to the caller");
+        pool.release(content);
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    void outputStreamChainsPooledBuffersBeyondTheBiggestClass() {
+        BufferPool pool = new BufferPool(8, true);
+        byte[] chunk = new byte[1000];
+        for (int i = 0; i < chunk.length; i++) chunk[i] = (byte) i;
+        BufferOutputStream out = new BufferOutputStream(pool, 16);
+        for (int i = 0; i < 200; i++) out.write(chunk, 0, chunk.length);
+
+        ByteBuffer[] buffers = out.toBuffers();
+        assertEquals(4, buffers.length, "200,000 bytes in chunks of 64 KiB");
+        int total = 0;
+        for (ByteBuffer buffer : buffers) {
+            assertEquals(BufferPool.MAX_BUFFER_SIZE, buffer.capacity(), "Every chunk comes from the biggest class");
+            for (int i = 0; i < buffer.remaining(); i++) {
+                assertEquals(chunk[(total + i) % chunk.length], buffer.get(i));
+            }
+            total += buffer.remaining();
+        }
+        assertEquals(200_000, total);
+        assertEquals(4, pool.outstanding());
+        for (ByteBuffer buffer : buffers) pool.release(buffer);
+
+        // Sin entregarlos, close() devuelve todos los trozos
+        BufferOutputStream discarded = new BufferOutputStream(pool, 16);
+        for (int i = 0; i < 200; i++) discarded.write(chunk, 0, chunk.length);
+        discarded.close();
+        assertEquals(0, pool.outstanding());
+        assertTrue(pool.hitRate() > 0, "The chunks of the second stream are reused");
+    }
+}
@@ -1,15 +1,29 @@
 package cat.uvic.teknos.dam.aureus.controller;
 
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
 import cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.search.CoinIndexes;
+import cat.uvic.teknos.dam.aureus.search.FullTextIndex;
 import cat.uvic.teknos.dam.aureus.service.CoinService;
+import cat.uvic.teknos.dam.aureus.service.CoinServiceImpl;
+import cat.uvic.teknos.dam.aureus.service.DatabaseExecutor;
+import cat.uvic.teknos.dam.aureus.service.exception.EntityNotFoundException;
 import com.google.gson.Gson;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -39,6 +53,87 @@ class CoinControllerTest {
         verify(service).findAll();
     }
 
+    @Test
+    void streamedListMatchesTheStringSerialization() throws Exception {
+        CoinImpl a = new CoinImpl();
+        a.setId(1);
+        a.setCoinName("Áureo");
+        a.setCoinWeight(new BigDecimal("7.9"));
+        CoinImpl b = new CoinImpl();
+        b.setId(2);
+        b.setCoinName("Sestercio");
+        when(service.findAll()).thenReturn(List.of(a, b));
+        when(service.findAllAsync(any())).thenCallRealMethod();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        controller.streamAllCoinsAsync().join().writeTo(out);
+        assertEquals(controller.getAllCoins(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void coinPageReportsTheCursorOnlyWhenMoreCoinsFollow() throws Exception {
+        List<CoinImpl> coins = new ArrayList<>();
+        for (int id = 11; id <= 13; id++) {
+            CoinImpl coin = new CoinImpl();
+            coin.setId(id);
+            coins.add(coin);
+        }
+        when(service.findPageAsync(any(), anyInt(), any())).thenCallRealMethod();
+        // El controlador pide una moneda de más para saber si hay página siguiente
+        when(service.findPage(10, 3)).thenReturn(coins);
+        when(service.findPage(12, 3)).thenReturn(coins.subList(2, 3));
+
+        CoinController.CoinPage page = controller.streamCoinPageAsync(10, 2).get(2, TimeUnit.SECONDS);
+        assertEquals(12, page.nextCursor());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        page.body().writeTo(out);
+        assertEquals(gson.toJson(coins.subList(0, 2)), out.toString(StandardCharsets.UTF_8));
+
+        assertNull(controller.streamCoinPageAsync(12, 2).get(2, TimeUnit.SECONDS).nextCursor());
+    }
+
+    @Test
+    void projectionsKeepTheIdAndOnlyTheRequestedFields() throws Exception {
+        CoinController inMemory = new CoinController(new CoinServiceImpl(), gson);
+
+        CoinController.CoinPage page = inMemory.streamCoinPageAsync(null, 1, EnumSet.of(CoinField.NAME)).get(2, TimeUnit.SECONDS);
+        assertEquals(1, page.nextCursor());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        page.body().writeTo(out);
+        assertEquals("[{\"id\":1,\"coinName\":\"Denarius\"}]", out.toString(StandardCharsets.UTF_8));
+
+        out.reset();
+        inMemory.streamCoinsByIdsAsync(List.of(2, 99, 1), EnumSet.of(CoinField.YEAR)).get(2, TimeUnit.SECONDS).writeTo(out);
+        assertEquals("[{\"id\":1,\"coinYear\":50},{\"id\":2,\"coinYear\":-300}]", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void fullTextResultsFollowTheRankingAndTheServiceChanges() throws Exception {
+        CoinServiceImpl coins = new CoinServiceImpl();
+        FullTextIndex index = new FullTextIndex();
+        index.rebuild(coins.findAll());
+        coins.addChangeListener(index);
+        CoinController inMemory = new CoinController(coins, gson, Runnable::run, CoinIndexes.NONE.withFullText(index));
+
+        CoinImpl drachma = coins.findById(2);
+        drachma.setHistoricalSignificance("Silver drachma, later imitated by the denarius");
+        coins.update(drachma);
+
+        // El nombre pesa más que la historia: Denarius (id 1) primero aunque findByIds ordena por id
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        inMemory.streamFullTextAsync("denarius", 10, EnumSet.of(CoinField.NAME)).get(2, TimeUnit.SECONDS).writeTo(out);
+        assertEquals("[{\"id\":1,\"coinName\":\"Denarius\"},{\"id\":2,\"coinName\":\"Drachma\"}]",
+                out.toString(StandardCharsets.UTF_8));
+
+        coins.delete(1);
+        out.reset();
+        inMemory.streamFullTextAsync("denarius", 10, EnumSet.of(CoinField.NAME)).get(2, TimeUnit.SECONDS).writeTo(out);
+        assertEquals("[{\"id\":2,\"coinName\":\"Drachma\"}]", out.toString(StandardCharsets.UTF_8));
+
+        HttpException disabled = assertThrows(HttpException.class, () -> controller.streamFullTextAsync("denarius", 10, null));
+        assertEquals(503, disabled.getStatusCode());
+    }
+
     @Test
     void createCoinParsesJsonAndReturnsCreated() {
         CoinImpl toCreate = new CoinImpl();
@@ -86,4 +181,25 @@ class CoinControllerTest {
         controller.deleteCoin(10);
         verify(service).delete(10);
     }
+
+    @Test
+    void asyncVariantsRunOnTheDatabaseExecutor() throws Exception {
+        try (DatabaseExecutor executor = new DatabaseExecutor(1, 4)) {
+            CoinService inMemory = spy(new CoinServiceImpl());
+            AtomicReference<String> thread = new AtomicReference<>();
+            doAnswer(inv -> {
+                thread.set(Thread.currentThread().getName());
+                return inv.callRealMethod();
+            }).when(inMemory).findAll();
+            CoinController async = new CoinController(inMemory, gson, executor);
+
+            String json = async.getAllCoinsAsync().get(5, TimeUnit.SECONDS);
+            assertTrue(json.contains("Denarius"));
+            assertTrue(thread.get().startsWith("DatabaseWorker-"), thread.get());
+
+            ExecutionException missing = assertThrows(ExecutionException.class,
+                    () -> async.getCoinAsync(99).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(EntityNotFoundException.class, missing.getCause());
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    @Test
+    void queuesUpToCapacityThenRejects() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedRan = new CountDownLatch(1);
+        try {
+            assertTrue(admission.execute(executor, () -> awaitQuietly(release)));
+            assertTrue(admission.execute(executor, queuedRan::countDown), "Second task should wait in the queue");
+            assertFalse(admission.execute(executor, () -> {}), "Third task exceeds limit and queue");
+
+            assertEquals(1, admission.getInFlight());
+            assertEquals(1, admission.getQueueDepth());
+            assertEquals(1, admission.getRejectedCount());
+            assertTrue(admission.isSaturated());
+
+            // Al terminar la primera tarea, la encolada se ejecuta en el mismo hilo
+            release.countDown();
+            assertTrue(queuedRan.await(5, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (admission.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, admission.getInFlight());
+            assertFalse(admission.isSaturated());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void tryExecuteOnlyTakesAFreeSlot() throws Exception {
+        AdmissionController admission = new AdmissionController(2, 1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch ran = new CountDownLatch(1);
+        try {
+            assertTrue(admission.execute(executor, () -> awaitQuietly(release)));
+            assertTrue(admission.tryExecute(executor, () -> awaitQuietly(release)));
+            assertEquals(2, admission.getInFlight());
+
+            // Sin plaza libre no se encola ni cuenta como rechazo: la hace quien llama
+            assertFalse(admission.tryExecute(executor, ran::countDown));
+            assertEquals(0, admission.getQueueDepth());
+            assertEquals(0, admission.getRejectedCount());
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (admission.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(admission.tryExecute(executor, ran::countDown));
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void adaptiveLimitBacksOffOnSlowRequestsAndGrowsWhenBusy() {
+        AdmissionController admission = AdmissionController.adaptive(20, 2, 40, 0, Duration.ofMillis(100));
+
+        admission.recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(18, admission.getLimit(), "Slow sample should cut the limit by 10%");
+
+        for (int i = 0; i < 100; i++) {
+            admission.recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        assertEquals(2, admission.getLimit(), "Limit never drops below the minimum");
+
+        // Muestras rápidas con el límite en uso hacen crecer el límite de uno en uno
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            admission.execute(executor, () -> awaitQuietly(release));
+            admission.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+            assertEquals(3, admission.getLimit());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import cat.uvic.teknos.dam.aureus.buffer.BufferPool;
+import cat.uvic.teknos.dam.aureus.http.HttpConnection;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.RequestRouter;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class NioServerTest {
+
+    @Test
+    void servesRequestSplitAcrossSeveralWrites() throws Exception {
+        RequestRouter router = Mockito.mock(RequestRouter.class);
+        doAnswer(invocation -> {
+            HttpRequest request = invocation.getArgument(0, HttpRequest.class);
+            OutputStream out = invocation.getArgument(1, OutputStream.class);
+            String body = "{\"a\":1}".equals(request.getBody()) ? "OK" : "KO";
+            out.write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8));
+            return CompletableFuture.completedFuture(false);
+        }).when(router).handleRequestAsync(any(HttpRequest.class), any(OutputStream.class), any(HttpConnection.class));
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        NioServer server = new NioServer(port, router, 1, 2, 4);
+        Thread serverThread = new Thread(server::start);
+        serverThread.start();
+
+        try {
+            String response = null;
+            for (int attempt = 0; attempt < 50 && response == null; attempt++) {
+                try (Socket socket = new Socket("localhost", port)) {
+                    OutputStream out = socket.getOutputStream();
+                    // Cabeceras y cuerpo en escrituras separadas para forzar lecturas parciales
+                    out.write("POST /coins HTTP/1.1\r\nContent-Len".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                    out.write("gth: 7\r\n\r\n{\"a\"".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                    out.write(":1}".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    ByteArrayOutputStream received = new ByteArrayOutputStream();
+                    socket.getInputStream().transferTo(received);
+                    response = received.toString(StandardCharsets.UTF_8);
+                } catch (IOException notListeningYet) {
+                    Thread.sleep(50);
+                }
+            }
+
+            assertNotNull(response, "Server should answer the request");
+            assertTrue(response.startsWith("HTTP/1.1 200"));
+            assertTrue(response.endsWith("OK"));
+            verify(router, times(1)).handleRequestAsync(any(HttpRequest.class), any(OutputStream.class), any(HttpConnection.class));
+        } finally {
+            server.shutdown();
+            serverThread.join(5000);
+        }
+    }
+
+    @Test
+    void keepAliveServesSeveralRequestsOnOneConnection() throws Exception {
+        RequestRouter router = Mockito.mock(RequestRouter.class);
+        doAnswer(invocation -> {
+            HttpRequest request = invocation.getArgument(0, HttpRequest.class);
+            OutputStream out = invocation.getArgument(1, OutputStream.class);
+            boolean keepAlive = request.isKeepAlive();
+            out.write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK").getBytes(StandardCharsets.UTF_8));
+            return CompletableFuture.completedFuture(keepAlive);
+        }).when(router).handleRequestAsync(any(HttpRequest.class), any(OutputStream.class), any(HttpConnection.class));
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        BufferPool pool = new BufferPool(16, true);
+        NioServer server = new NioServer(port, router, 1, 2, 4, pool);
+        Thread serverThread = new Thread(server::start);
+        serverThread.start();
+
+        try {
+            String response = null;
+            for (int attempt = 0; attempt < 50 && response == null; attempt++) {
+                try (Socket socket = new Socket("localhost", port)) {
+                    OutputStream out = socket.getOutputStream();
+                    // Dos peticiones seguidas por el mismo socket; la segunda pide cerrar
+                    out.write("GET /coins HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                    out.write("GET /coins HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    ByteArrayOutputStream received = new ByteArrayOutputStream();
+                    socket.getInputStream().transferTo(received);
+                    response = received.toString(StandardCharsets.UTF_8);
+                } catch (IOException notListeningYet) {
+                    Thread.sleep(50);
+                }
+            }
+
+            assertNotNull(response, "Server should answer both requests");
+            assertEquals(2, response.split("HTTP/1.1 200 OK", -1).length - 1, response);
+            verify(router, times(2)).handleRequestAsync(any(HttpRequest.class), any(OutputStream.class), any(HttpConnection.class));
+        } finally {
+            server.shutdown();
+            serverThread.join(5000);
+        }
+        // Buffers de lectura y de respuesta devueltos al pool
+        assertEquals(List.of(), pool.leaks());
+        assertEquals(0, pool.outstanding());
+    }
+}
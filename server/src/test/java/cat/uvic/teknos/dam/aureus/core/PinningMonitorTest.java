@@ -0,0 +1,41 @@
+package cat.uvic.teknos.dam.aureus.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PinningMonitorTest {
+
+    private final Object lock = new Object();
+
+    @Test
+    void reportsVirtualThreadBlockedInsideSynchronized() throws Exception {
+        try (PinningMonitor monitor = new PinningMonitor(Duration.ofMillis(5))) {
+            monitor.start();
+
+            Thread pinned = Thread.ofVirtual().start(this::sleepWhileHoldingMonitor);
+            pinned.join();
+
+            // JFR entrega los eventos al stream aproximadamente cada segundo
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (monitor.getPinnedCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+
+            assertTrue(monitor.getPinnedCount() > 0, "Pinned virtual thread should be reported");
+            assertTrue(monitor.summary().contains("PinningMonitorTest"), monitor.summary());
+        }
+    }
+
+    private void sleepWhileHoldingMonitor() {
+        synchronized (lock) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package cat.uvic.teknos.dam.aureus.core;
 
+import cat.uvic.teknos.dam.aureus.controller.CoinController;
+import cat.uvic.teknos.dam.aureus.http.HttpConnection;
 import cat.uvic.teknos.dam.aureus.http.RequestRouter;
+import cat.uvic.teknos.dam.aureus.service.CoinServiceImpl;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -9,6 +12,9 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Mockito.*;
@@ -28,42 +34,8 @@ class ServerTest {
             String resp = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK";
             out.write(resp.getBytes(StandardCharsets.UTF_8));
             out.flush();
-            return null;
-        }).when(router).handleRequest(any(InputStream.class), any(OutputStream.class));
-
-        // Fake ServerSocket that accepts once and then throws IOException
-        class OneShotServerSocket extends ServerSocket {
-            private boolean served = false;
-
-            protected OneShotServerSocket() throws IOException {
-                super(); // protected ctor
-            }
-
-            @Override
-            public Socket accept() throws IOException {
-                if (served) throw new IOException("no more accepts");
-                served = true;
-                return new Socket() {
-                    private final InputStream in = new ByteArrayInputStream("GET /coins HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.UTF_8));
-                    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-                    @Override
-                    public InputStream getInputStream() {
-                        return in;
-                    }
-
-                    @Override
-                    public OutputStream getOutputStream() {
-                        return out;
-                    }
-
-                    @Override
-                    public synchronized void close() {
-                        // no-op to avoid closing underlying streams in test
-                    }
-                };
-            }
-        }
+            return false;
+        }).when(router).handleRequest(any(InputStream.class), any(OutputStream.class), any(HttpConnection.class));
 
         ServerSocket fakeSocket = new OneShotServerSocket();
         Server server = new Server(0, router, fakeSocket);
@@ -72,7 +44,7 @@ class ServerTest {
         server.start();
 
         // Verify router was invoked
-        verify(router, atLeastOnce()).handleRequest(any(InputStream.class), any(OutputStream.class));
+        verify(router, atLeastOnce()).handleRequest(any(InputStream.class), any(OutputStream.class), any(HttpConnection.class));
 
         // Reflectively check that connectedClients counter returned to 0
         Field connectedField = Server.class.getDeclaredField("connectedClients");
@@ -81,4 +53,112 @@ class ServerTest {
         assertNotNull(connected, "connectedClients field should be present");
         assertEquals(0, connected.get(), "After shutdown there should be no connected clients");
     }
+
+    @Test
+    void virtualModeRunsConnectionOnVirtualThread() throws Exception {
+        RequestRouter router = Mockito.mock(RequestRouter.class);
+        AtomicBoolean ranOnVirtualThread = new AtomicBoolean(false);
+        doAnswer(invocation -> {
+            ranOnVirtualThread.set(Thread.currentThread().isVirtual());
+            return false;
+        }).when(router).handleRequest(any(InputStream.class), any(OutputStream.class), any(HttpConnection.class));
+
+        Server server = new Server(0, router, new OneShotServerSocket(), ExecutionMode.VIRTUAL);
+        assertEquals(ExecutionMode.VIRTUAL, server.getExecutionMode());
+
+        server.start();
+
+        verify(router, atLeastOnce()).handleRequest(any(InputStream.class), any(OutputStream.class), any(HttpConnection.class));
+        assertTrue(ranOnVirtualThread.get(), "Connection should be handled on a virtual thread");
+    }
+
+    @Test
+    void idleKeepAliveConnectionDoesNotHoldItsAdmissionSlot() throws Exception {
+        RequestRouter router = new RequestRouter(new CoinController(new CoinServiceImpl()));
+        ServerSocket serverSocket = new ServerSocket(0);
+        Server server = new Server(serverSocket.getLocalPort(), router, serverSocket);
+        server.setAdmissionController(new AdmissionController(2, 0));
+        Thread serverThread = new Thread(server::start);
+        serverThread.start();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            // Cada conexión queda abierta pero inactiva: no ocupa plaza y la siguiente no se rechaza
+            for (int i = 0; i < 3; i++) {
+                awaitNoneInFlight(server.getAdmissionController());
+                Socket socket = new Socket("localhost", serverSocket.getLocalPort());
+                socket.setSoTimeout(5000);
+                sockets.add(socket);
+                assertTrue(exchange(socket).startsWith("HTTP/1.1 200"));
+            }
+            awaitNoneInFlight(server.getAdmissionController());
+            assertTrue(exchange(sockets.get(0)).startsWith("HTTP/1.1 200"));
+            assertEquals(0, server.getAdmissionController().getRejectedCount());
+        } finally {
+            for (Socket socket : sockets) socket.close();
+            server.shutdown();
+            serverThread.join(10_000);
+        }
+    }
+
+    private static void awaitNoneInFlight(AdmissionController admission) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (admission.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, admission.getInFlight(), "Idle connections should not hold an admission slot");
+    }
+
+    // Envía GET /coins y lee la respuesta completa (cabeceras y cuerpo de Content-Length)
+    private static String exchange(Socket socket) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write("GET /coins HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        InputStream in = socket.getInputStream();
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) break;
+            head.append((char) b);
+        }
+        int length = 0;
+        for (String line : head.toString().split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) length = Integer.parseInt(line.substring(15).trim());
+        }
+        in.readNBytes(length);
+        return head.toString();
+    }
+
+    // Fake ServerSocket that accepts once and then throws IOException
+    private static class OneShotServerSocket extends ServerSocket {
+        private boolean served = false;
+
+        protected OneShotServerSocket() throws IOException {
+            super(); // protected ctor
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            if (served) throw new IOException("no more accepts");
+            served = true;
+            return new Socket() {
+                private final InputStream in = new ByteArrayInputStream("GET /coins HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                @Override
+                public InputStream getInputStream() {
+                    return in;
+                }
+
+                @Override
+                public OutputStream getOutputStream() {
+                    return out;
+                }
+
+                @Override
+                public synchronized void close() {
+                    // no-op to avoid closing underlying streams in test
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpHeadersTest {
+
+    @Test
+    void lookupIgnoresCaseForKnownAndOtherHeaders() {
+        HttpHeaders headers = new HttpHeaders(Map.of("x-session-id", "abc", "X-Custom", "1"));
+
+        assertEquals("abc", headers.get(HeaderName.X_SESSION_ID));
+        assertEquals("abc", headers.get("X-SESSION-ID"));
+        assertEquals("1", headers.get("x-custom"));
+        assertTrue(headers.containsKey("X-Session-Id"));
+
+        headers.put("X-CUSTOM", "2");
+        assertEquals(2, headers.size(), "Same name in another case replaces the value");
+        assertEquals("2", headers.get("X-Custom"));
+
+        assertEquals("abc", headers.remove("X-Session-ID"));
+        assertFalse(headers.contains(HeaderName.X_SESSION_ID));
+        assertNull(headers.put("Content-Length", null));
+        assertFalse(headers.containsKey("content-length"));
+    }
+
+    @Test
+    void parserKeepsValuesAsRawBytesUntilRead() {
+        String raw = "POST / HTTP/1.1\r\nx-body-hash:  abc \r\nX-Custom: v\r\nContent-Length: 0\r\n\r\n";
+        HttpRequest request = new HttpRequestParser().parse(ByteBuffer.wrap(raw.getBytes(StandardCharsets.UTF_8)));
+
+        HttpHeaders headers = request.getHeaders();
+        assertEquals("abc", headers.get(HeaderName.X_BODY_HASH));
+        assertEquals("v", headers.get("x-custom"));
+        assertEquals("0", headers.get("CONTENT-LENGTH"));
+
+        // Iteración: cabeceras conocidas (orden de HeaderName) y después el resto
+        List<String> names = new ArrayList<>();
+        headers.forEach((name, value) -> names.add(name));
+        assertEquals(List.of("Content-Length", "X-Body-Hash", "X-Custom"), names);
+    }
+}
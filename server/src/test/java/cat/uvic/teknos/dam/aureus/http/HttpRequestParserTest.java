@@ -0,0 +1,128 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.ConnectionClosedException;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpRequestParserTest {
+
+    @Test
+    void resumesAcrossPartialReads() {
+        String raw = "POST /coins HTTP/1.1\r\ncontent-length: 7\r\nX-Custom: a b \r\n\r\n{\"a\":1}";
+        byte[] bytes = raw.getBytes(StandardCharsets.UTF_8);
+        HttpRequestParser parser = new HttpRequestParser();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        // Alimentar el parser byte a byte, como lecturas NIO muy fragmentadas
+        HttpRequest request = null;
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(bytes[i]);
+            buffer.flip();
+            request = parser.parse(buffer);
+            buffer.compact();
+            if (i < bytes.length - 1) assertNull(request, "Request is incomplete at byte " + i);
+        }
+
+        assertNotNull(request);
+        assertEquals("POST", request.getMethod());
+        assertEquals("/coins", request.getPath());
+        assertEquals(HttpRequest.HTTP_1_1, request.getVersion());
+        assertEquals("7", request.getHeaders().get("Content-Length"), "Known header names are canonicalized");
+        assertEquals("a b", request.getHeaders().get("X-Custom"));
+        assertEquals("{\"a\":1}", request.getBody());
+    }
+
+    @Test
+    void keepsPipelinedRequestForNextParse() throws Exception {
+        String raw = "GET /coins/1 HTTP/1.1\r\n\r\nGET /coins/2 HTTP/1.0\r\n\r\n";
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        HttpRequestParser parser = new HttpRequestParser();
+
+        HttpRequest first = parser.parse(in);
+        assertEquals("/coins/1", first.getPath());
+        assertTrue(parser.hasBufferedInput(), "Second request should stay buffered");
+
+        HttpRequest second = parser.parse(in);
+        assertEquals("/coins/2", second.getPath());
+        assertEquals(HttpRequest.HTTP_1_0, second.getVersion());
+
+        assertThrows(ConnectionClosedException.class, () -> parser.parse(in));
+    }
+
+    @Test
+    void enforcesHeaderAndBodyLimits() {
+        HttpRequestParser parser = new HttpRequestParser(64, 10);
+
+        String longHeader = "GET / HTTP/1.1\r\nX-Long: " + "x".repeat(100) + "\r\n\r\n";
+        HttpException headers = assertThrows(HttpException.class, () -> parser.parse(buffer(longHeader)));
+        assertEquals(431, headers.getStatusCode());
+
+        parser.reset();
+        HttpException body = assertThrows(HttpException.class,
+                () -> parser.parse(buffer("POST / HTTP/1.1\r\nContent-Length: 11\r\n\r\n")));
+        assertEquals(413, body.getStatusCode());
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        HttpException line = assertThrows(HttpException.class, () -> new HttpRequestParser().parse(buffer("GARBAGE\r\n\r\n")));
+        assertEquals(400, line.getStatusCode());
+
+        HttpException length = assertThrows(HttpException.class,
+                () -> new HttpRequestParser().parse(buffer("POST / HTTP/1.1\r\nContent-Length: 1x\r\n\r\n")));
+        assertEquals(400, length.getStatusCode());
+
+        HttpException conflicting = assertThrows(HttpException.class, () -> new HttpRequestParser()
+                .parse(buffer("POST / HTTP/1.1\r\nContent-Length: 2\r\nContent-Length: 20\r\n\r\nab")));
+        assertEquals(400, conflicting.getStatusCode());
+
+        // El mismo valor repetido no es ambiguo
+        HttpRequest repeated = new HttpRequestParser()
+                .parse(buffer("POST / HTTP/1.1\r\nContent-Length: 2\r\nContent-Length: 2\r\n\r\nab"));
+        assertEquals("ab", repeated.getBody());
+    }
+
+    @Test
+    void decodesChunkedBodyFromBuffer() {
+        String raw = "POST /coins HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4;ext=1\r\n{\"a\"\r\n3\r\n:1}\r\n0\r\nX-Trailer: t\r\n\r\n";
+        HttpRequest request = new HttpRequestParser().parse(buffer(raw));
+
+        assertNotNull(request);
+        assertTrue(request.getRequestBody().isBuffered());
+        assertEquals("{\"a\":1}", request.getBody());
+    }
+
+    @Test
+    void streamsLargeBodyAndSkipsUnreadRest() throws Exception {
+        String big = "x".repeat(50_000);
+        String raw = "POST /coins HTTP/1.1\r\nContent-Length: " + big.length() + "\r\n\r\n" + big
+                + "POST /coins HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n"
+                + "GET /coins/3 HTTP/1.1\r\n\r\n";
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        HttpRequestParser parser = new HttpRequestParser();
+
+        HttpRequest first = parser.parse(in);
+        assertFalse(first.getRequestBody().isBuffered(), "Body larger than the buffer is streamed");
+        assertEquals(big.length(), first.getRequestBody().length());
+        assertEquals(10, first.getBodyStream().readNBytes(10).length); // el resto queda sin leer
+
+        HttpRequest second = parser.parse(in);
+        assertEquals(-1, second.getRequestBody().length());
+        assertEquals("hello", new String(second.getBodyStream().readAllBytes(), StandardCharsets.UTF_8));
+
+        HttpRequest third = parser.parse(in);
+        assertEquals("/coins/3", third.getPath());
+        assertTrue(third.getRequestBody().isEmpty());
+    }
+
+    private static ByteBuffer buffer(String raw) {
+        return ByteBuffer.wrap(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,9 +1,12 @@
 package cat.uvic.teknos.dam.aureus.http;
 
+import cat.uvic.teknos.dam.aureus.http.exception.ConnectionClosedException;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,5 +32,63 @@ class HttpRequestTest {
         assertEquals("/coins", req.getPath());
         assertEquals(body, req.getBody());
     }
-}
 
+    @Test
+    void parseKeepsVersionAndConnectionSemantics() throws Exception {
+        HttpRequest http11 = HttpRequest.parse(stream("GET /coins HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+        assertEquals(HttpRequest.HTTP_1_1, http11.getVersion());
+        assertTrue(http11.isKeepAlive());
+
+        HttpRequest close = HttpRequest.parse(stream("GET /coins HTTP/1.1\r\nconnection: Close\r\n\r\n"));
+        assertFalse(close.isKeepAlive());
+
+        HttpRequest http10 = HttpRequest.parse(stream("GET /coins HTTP/1.0\r\n\r\n"));
+        assertEquals(HttpRequest.HTTP_1_0, http10.getVersion());
+        assertFalse(http10.isKeepAlive());
+    }
+
+    @Test
+    void trailersRequireHttp11AndTeHeader() throws Exception {
+        assertTrue(HttpRequest.parse(stream("GET /coins HTTP/1.1\r\nTE: deflate, Trailers\r\n\r\n")).acceptsTrailers());
+        assertFalse(HttpRequest.parse(stream("GET /coins HTTP/1.1\r\n\r\n")).acceptsTrailers());
+        assertFalse(HttpRequest.parse(stream("GET /coins HTTP/1.0\r\nTE: trailers\r\n\r\n")).acceptsTrailers());
+    }
+
+    @Test
+    void queryStringIsSplitFromThePath() throws Exception {
+        HttpRequest request = HttpRequest.parse(stream("GET /coins?limit=20&cursor=&name=Aureus+de%20Oro&tag=a&tag=b HTTP/1.1\r\n\r\n"));
+        assertEquals("/coins", request.getPath());
+        assertEquals("/coins?limit=20&cursor=&name=Aureus+de%20Oro&tag=a&tag=b", request.getTarget());
+        QueryParams query = request.getQueryParams();
+        assertEquals(20, query.getInt("limit", 100));
+        assertEquals(100, query.getInt("cursor", 100));
+        assertEquals("Aureus de Oro", query.get("name"));
+        assertEquals(List.of("a", "b"), query.getAll("tag"));
+        assertNull(query.get("missing"));
+        assertThrows(HttpException.class, () -> QueryParams.parse("limit=x").getInt("limit", 1));
+
+        HttpRequest plain = HttpRequest.parse(stream("GET /coins HTTP/1.1\r\n\r\n"));
+        assertNull(plain.getRawQuery());
+        assertTrue(plain.getQueryParams().isEmpty());
+    }
+
+    @Test
+    void ifNoneMatchUsesWeakComparison() throws Exception {
+        HttpRequest request = HttpRequest.parse(stream("GET /coins HTTP/1.1\r\nIf-None-Match: \"a\", W/\"b\"\r\n\r\n"));
+        assertTrue(request.matchesIfNoneMatch("\"a\""));
+        assertTrue(request.matchesIfNoneMatch("\"b\""));
+        assertFalse(request.matchesIfNoneMatch("\"c\""));
+        assertFalse(request.matchesIfNoneMatch(null));
+        assertTrue(HttpRequest.parse(stream("GET /coins HTTP/1.1\r\nIf-None-Match: *\r\n\r\n")).matchesIfNoneMatch("\"c\""));
+        assertFalse(HttpRequest.parse(stream("GET /coins HTTP/1.1\r\n\r\n")).matchesIfNoneMatch("\"a\""));
+    }
+
+    @Test
+    void parseEmptyStreamThrowsConnectionClosed() {
+        assertThrows(ConnectionClosedException.class, () -> HttpRequest.parse(stream("")));
+    }
+
+    private static ByteArrayInputStream stream(String raw) {
+        return new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -8,8 +8,10 @@ import org.mockito.Mockito;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
@@ -22,7 +24,7 @@ class RequestRouterHashTest {
     @BeforeEach
     void setUp() {
         controllerMock = Mockito.mock(CoinController.class);
-        when(controllerMock.createCoin(Mockito.anyString())).thenReturn("{\"created\":true}");
+        when(controllerMock.createCoinAsync(Mockito.any(InputStream.class))).thenReturn(CompletableFuture.completedFuture("{\"created\":true}"));
         router = new RequestRouter(controllerMock);
     }
 
@@ -70,5 +72,28 @@ class RequestRouterHashTest {
         assertTrue(response.startsWith("HTTP/1.1 400"));
         assertTrue(response.contains("Invalid or missing body hash"));
     }
-}
 
+    @Test
+    void verifiesHashOfStreamedBodyWhenHandlerReadsIt() throws Exception {
+        // El handler lee el cuerpo entero antes de responder, como hace Gson
+        when(controllerMock.createCoinAsync(Mockito.any(InputStream.class))).thenAnswer(inv -> {
+            ((InputStream) inv.getArgument(0)).readAllBytes();
+            return CompletableFuture.completedFuture("{\"created\":true}");
+        });
+        String body = "{\"name\":\"" + "x".repeat(20_000) + "\"}";
+        String header = "POST /coins HTTP/1.1\r\n" +
+                "Content-Length: " + body.length() + "\r\n";
+
+        ByteArrayOutputStream ok = new ByteArrayOutputStream();
+        router.handleRequest(new ByteArrayInputStream((header + "X-Body-Hash: " + CryptoUtils.hash(body) + "\r\n\r\n" + body)
+                .getBytes(StandardCharsets.UTF_8)), ok);
+        assertTrue(ok.toString(StandardCharsets.UTF_8).startsWith("HTTP/1.1 201"));
+
+        ByteArrayOutputStream bad = new ByteArrayOutputStream();
+        router.handleRequest(new ByteArrayInputStream((header + "X-Body-Hash: deadbeef\r\n\r\n" + body)
+                .getBytes(StandardCharsets.UTF_8)), bad);
+        String response = bad.toString(StandardCharsets.UTF_8);
+        assertTrue(response.startsWith("HTTP/1.1 400"));
+        assertTrue(response.contains("Invalid or missing body hash"));
+    }
+}
@@ -1,11 +1,30 @@
 package cat.uvic.teknos.dam.aureus.http;
 
 import cat.uvic.teknos.dam.aureus.controller.CoinController;
+import cat.uvic.teknos.dam.aureus.repositories.CoinField;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
+import cat.uvic.teknos.dam.aureus.search.FacetIndex;
+import cat.uvic.teknos.dam.aureus.search.SuggestionTrie;
+import cat.uvic.teknos.dam.aureus.service.VersionTracker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -18,19 +37,177 @@ class RequestRouterTest {
     @BeforeEach
     void setUp() {
         controllerMock = Mockito.mock(CoinController.class);
-        when(controllerMock.getAllCoins()).thenReturn("[]");
-        when(controllerMock.getCoin(1)).thenReturn("{\"id\":1}");
+        when(controllerMock.streamCoinPageAsync(any(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture(
+                new CoinController.CoinPage(out -> out.write("[]".getBytes(StandardCharsets.UTF_8)), null)));
+        when(controllerMock.getCoinAsync(1)).thenReturn(CompletableFuture.completedFuture("{\"id\":1}"));
         router = new RequestRouter(controllerMock);
     }
 
     @Test
-    void routeReturns200ForGetAllCoins() {
+    void routeReturns200ForGetAllCoins() throws Exception {
         HttpRequest req = new HttpRequest("GET", "/coins", new HashMap<>(), "");
         ResponseEntity res = router.route(req);
         assertEquals(200, res.getStatus());
-        String body = new String(res.getBody() == null ? new byte[0] : res.getBody());
+        assertTrue(res.isStreaming());
+        String body = new String(res.buffered().getBody(), StandardCharsets.UTF_8);
         assertTrue(body.contains("[]"));
-        verify(controllerMock).getAllCoins();
+        verify(controllerMock).streamCoinPageAsync(null, RequestRouter.DEFAULT_PAGE_SIZE, null);
+    }
+
+    @Test
+    void idsAndFieldsSelectCoinsAndColumns() {
+        when(controllerMock.streamCoinsByIdsAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(
+                out -> out.write("[]".getBytes(StandardCharsets.UTF_8))));
+
+        ResponseEntity response = router.process(new HttpRequest("GET",
+                "/coins?ids=3,1&ids=7&fields=coinYear,coinName", new HashMap<>(), ""));
+        assertEquals(200, response.getStatus());
+        verify(controllerMock).streamCoinsByIdsAsync(List.of(3, 1, 7), EnumSet.of(CoinField.NAME, CoinField.YEAR));
+
+        when(controllerMock.streamCoinPageAsync(null, 2, EnumSet.of(CoinField.NAME))).thenReturn(CompletableFuture.completedFuture(
+                new CoinController.CoinPage(out -> out.write("[]".getBytes(StandardCharsets.UTF_8)), 9)));
+        ResponseEntity page = router.process(new HttpRequest("GET", "/coins?limit=2&fields=coinName", new HashMap<>(), ""));
+        assertEquals("</coins?limit=2&cursor=9&fields=coinName>; rel=\"next\"", page.getHeaders().get(HeaderName.LINK));
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins?ids=1,x", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins?ids=", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins?fields=secret", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void searchQueryIsTranslatedIntoCriteria() {
+        when(controllerMock.streamSearchAsync(any())).thenReturn(CompletableFuture.completedFuture(
+                out -> out.write("[]".getBytes(StandardCharsets.UTF_8))));
+
+        ResponseEntity response = router.process(new HttpRequest("GET",
+                "/coins/search?material=Gold&country=Rome&minYear=-50&maxYear=400&minValue=10.5&collection=3&sort=-year&limit=5000",
+                new HashMap<>(), ""));
+        assertEquals(200, response.getStatus());
+        verify(controllerMock, never()).getCoinAsync(anyInt());
+
+        ArgumentCaptor<CoinSearchCriteria> captor = ArgumentCaptor.forClass(CoinSearchCriteria.class);
+        verify(controllerMock).streamSearchAsync(captor.capture());
+        CoinSearchCriteria criteria = captor.getValue();
+        assertEquals("Gold", criteria.getMaterial());
+        assertEquals("Rome", criteria.getOriginCountry());
+        assertEquals(-50, criteria.getMinYear());
+        assertEquals(400, criteria.getMaxYear());
+        assertEquals(new BigDecimal("10.5"), criteria.getMinValue());
+        assertNull(criteria.getMaxValue());
+        assertEquals(3, criteria.getCollectionId());
+        assertEquals(CoinSearchCriteria.SortKey.YEAR, criteria.getSort());
+        assertTrue(criteria.isDescending());
+        assertEquals(RequestRouter.MAX_PAGE_SIZE, criteria.getLimit());
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/search?sort=weight", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/search?minValue=abc", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void fullTextQueryIsPassedToTheController() {
+        when(controllerMock.streamFullTextAsync(any(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture(
+                out -> out.write("[]".getBytes(StandardCharsets.UTF_8))));
+
+        ResponseEntity response = router.process(new HttpRequest("GET",
+                "/coins/fulltext?q=roman%20den*&limit=20&fields=coinName", new HashMap<>(), ""));
+        assertEquals(200, response.getStatus());
+        verify(controllerMock).streamFullTextAsync("roman den*", 20, EnumSet.of(CoinField.NAME));
+        verify(controllerMock, never()).getCoinAsync(anyInt());
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/fulltext", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/fulltext?q=%20", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void suggestionsAreAnsweredWithoutTheDatabaseExecutor() {
+        when(controllerMock.suggest(any(), anyInt(), any())).thenReturn("[]");
+
+        ResponseEntity response = router.process(new HttpRequest("GET", "/coins/suggest?prefix=den&type=Collection&limit=50",
+                new HashMap<>(), ""));
+        assertEquals(200, response.getStatus());
+        verify(controllerMock).suggest("den", 50, SuggestionTrie.Kind.COLLECTION);
+        verify(controllerMock, never()).getCoinAsync(anyInt());
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/suggest", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/suggest?prefix=a&type=user", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void facetFiltersAreGroupedByFacet() {
+        when(controllerMock.facets(any(), any(), any())).thenReturn("{\"total\":0,\"facets\":{}}");
+
+        ResponseEntity response = router.process(new HttpRequest("GET",
+                "/coins/facets?material=gold,silver&country=Spain&material=bronze&minYear=1501&sort=ignored", new HashMap<>(), ""));
+        assertEquals(200, response.getStatus());
+        verify(controllerMock).facets(Map.of(FacetIndex.Facet.MATERIAL, List.of("gold", "silver", "bronze"),
+                FacetIndex.Facet.COUNTRY, List.of("Spain")), 1501, null);
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/facets?maxYear=soon", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void similarCoinsRouteIsNotTakenForACoinId() {
+        when(controllerMock.streamSimilarAsync(anyInt(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture(
+                out -> out.write("[]".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(200, router.process(new HttpRequest("GET", "/coins/7/similar", new HashMap<>(), "")).getStatus());
+        verify(controllerMock).streamSimilarAsync(7, RequestRouter.DEFAULT_SIMILAR, null);
+        router.process(new HttpRequest("GET", "/coins/7/similar?k=5000&fields=coinName", new HashMap<>(), ""));
+        verify(controllerMock).streamSimilarAsync(7, RequestRouter.MAX_PAGE_SIZE, EnumSet.of(CoinField.NAME));
+        verify(controllerMock, never()).getCoinAsync(anyInt());
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/7/similar?k=0", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void topCoinsCanBeRestrictedToACollection() {
+        when(controllerMock.streamTopAsync(anyInt(), any(), any())).thenReturn(CompletableFuture.completedFuture(
+                out -> out.write("[]".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(200, router.process(new HttpRequest("GET", "/coins/top", new HashMap<>(), "")).getStatus());
+        verify(controllerMock).streamTopAsync(RequestRouter.DEFAULT_PAGE_SIZE, null, null);
+        router.process(new HttpRequest("GET", "/coins/top?n=20&collectionId=3", new HashMap<>(), ""));
+        verify(controllerMock).streamTopAsync(20, 3, null);
+        verify(controllerMock, never()).getCoinAsync(anyInt());
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/top?n=-1", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins/top?collectionId=x", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void coinListIsPaginatedWithKeysetCursor() {
+        when(controllerMock.streamCoinPageAsync(40, 2, null)).thenReturn(CompletableFuture.completedFuture(
+                new CoinController.CoinPage(out -> out.write("[{\"id\":41},{\"id\":42}]".getBytes(StandardCharsets.UTF_8)), 42)));
+
+        ResponseEntity page = router.process(new HttpRequest("GET", "/coins?limit=2&cursor=40", new HashMap<>(), ""));
+        assertEquals(200, page.getStatus());
+        assertEquals("</coins?limit=2&cursor=42>; rel=\"next\"", page.getHeaders().get(HeaderName.LINK));
+        assertEquals("42", page.getHeaders().get(HeaderName.X_NEXT_CURSOR));
+
+        // Último tramo: sin enlace a la página siguiente; limit se acota al máximo
+        ResponseEntity last = router.process(new HttpRequest("GET", "/coins?limit=999999", new HashMap<>(), ""));
+        assertNull(last.getHeaders().get(HeaderName.LINK));
+        verify(controllerMock).streamCoinPageAsync(null, RequestRouter.MAX_PAGE_SIZE, null);
+
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins?limit=0", new HashMap<>(), "")).getStatus());
+        assertEquals(400, router.process(new HttpRequest("GET", "/coins?cursor=abc", new HashMap<>(), "")).getStatus());
+    }
+
+    @Test
+    void coinListIsChunkedOnlyForClientsAcceptingTrailers() throws Exception {
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        router.handleRequest(new ByteArrayInputStream("GET /coins HTTP/1.1\r\nTE: trailers\r\nConnection: close\r\n\r\n"
+                .getBytes(StandardCharsets.UTF_8)), chunked, new HttpConnection(5000, 10));
+        String written = chunked.toString(StandardCharsets.UTF_8);
+        assertTrue(written.contains("Transfer-Encoding: chunked"), written);
+        assertTrue(written.contains("\r\n2\r\n[]\r\n0\r\nX-Body-Hash: "), written);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        router.handleRequest(new ByteArrayInputStream("GET /coins HTTP/1.1\r\nConnection: close\r\n\r\n"
+                .getBytes(StandardCharsets.UTF_8)), plain, new HttpConnection(5000, 10));
+        written = plain.toString(StandardCharsets.UTF_8);
+        assertTrue(written.contains("Content-Length: 2\r\n"), written);
+        assertTrue(written.endsWith("\r\n\r\n[]"), written);
     }
 
     @Test
@@ -40,7 +217,42 @@ class RequestRouterTest {
         assertEquals(200, res.getStatus());
         String body = new String(res.getBody() == null ? new byte[0] : res.getBody());
         assertTrue(body.contains("\"id\":1"));
-        verify(controllerMock).getCoin(1);
+        verify(controllerMock).getCoinAsync(1);
+    }
+
+    @Test
+    void matchingIfNoneMatchIsAnsweredWithoutQuerying() throws Exception {
+        VersionTracker versions = new VersionTracker();
+        when(controllerMock.getVersionTracker()).thenReturn(versions);
+
+        ResponseEntity first = router.route(new HttpRequest("GET", "/coins/1", new HashMap<>(), ""));
+        String etag = first.getHeaders().get(HeaderName.ETAG);
+        assertNotNull(etag);
+
+        Map<String, String> conditional = new HashMap<>();
+        conditional.put("If-None-Match", "\"other\", " + etag);
+        ResponseEntity notModified = router.route(new HttpRequest("GET", "/coins/1", conditional, ""));
+        assertEquals(304, notModified.getStatus());
+        assertEquals(etag, notModified.getHeaders().get(HeaderName.ETAG));
+        verify(controllerMock, times(1)).getCoinAsync(1);
+
+        // Otra moneda cambia: la lista sí, la moneda 1 no
+        versions.modified(2);
+        assertEquals(304, router.route(new HttpRequest("GET", "/coins/1", conditional, "")).getStatus());
+        ResponseEntity list = router.route(new HttpRequest("GET", "/coins", new HashMap<>(), ""));
+        conditional.put("If-None-Match", list.getHeaders().get(HeaderName.ETAG));
+        versions.modified(1);
+        assertEquals(200, router.route(new HttpRequest("GET", "/coins", conditional, "")).getStatus());
+
+        // Un 304 no lleva cuerpo ni Content-Length
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String current = router.route(new HttpRequest("GET", "/coins/1", new HashMap<>(), "")).getHeaders().get(HeaderName.ETAG);
+        router.handleRequest(new ByteArrayInputStream(("GET /coins/1 HTTP/1.1\r\nIf-None-Match: " + current + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8)), out, new HttpConnection(5000, 10));
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertTrue(written.startsWith("HTTP/1.1 304 Not Modified\r\n"), written);
+        assertFalse(written.contains("Content-Length"), written);
+        assertTrue(written.endsWith("\r\n\r\n"), written);
     }
 
     @Test
@@ -51,6 +263,13 @@ class RequestRouterTest {
         assertTrue(ex.getClass().getName().contains("HttpException") || ex.getMessage().toLowerCase().contains("not found"));
     }
 
+    @Test
+    void wrongMethodOnKnownPathReturns405WithAllow() {
+        ResponseEntity res = router.process(new HttpRequest("POST", "/coins/1", new HashMap<>(), ""));
+        assertEquals(405, res.getStatus());
+        assertEquals("GET, PUT, DELETE", res.getHeaders().get("Allow"));
+    }
+
     @Test
     void routeDisconnectReturnsAck() {
         HttpRequest req = new HttpRequest("GET", "/disconnect", new HashMap<>(), "");
@@ -59,4 +278,99 @@ class RequestRouterTest {
         String body = new String(res.getBody() == null ? new byte[0] : res.getBody());
         assertEquals(RequestRouter.DISCONNECT_ACK_BODY, body);
     }
+
+    @Test
+    void handleRequestServesConsecutiveRequestsOnPersistentConnection() throws Exception {
+        String raw = "GET /coins HTTP/1.1\r\n\r\n"
+                + "GET /coins/1 HTTP/1.1\r\nConnection: close\r\n\r\n";
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpConnection connection = new HttpConnection(5000, 10);
+
+        assertTrue(router.handleRequest(in, out, connection), "First request should keep the connection open");
+        assertFalse(router.handleRequest(in, out, connection), "Connection: close should end the connection");
+
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertTrue(written.contains("Connection: keep-alive"));
+        assertTrue(written.contains("Connection: close"));
+        assertEquals(2, connection.getRequestCount());
+        verify(controllerMock).streamCoinPageAsync(null, RequestRouter.DEFAULT_PAGE_SIZE, null);
+        verify(controllerMock).getCoinAsync(1);
+    }
+
+    @Test
+    void handleRequestClosesWhenRequestLimitReached() throws Exception {
+        String raw = "GET /coins HTTP/1.1\r\n\r\n";
+        HttpConnection connection = new HttpConnection(5000, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertFalse(router.handleRequest(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)), out, connection));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("Connection: close"));
+    }
+
+    @Test
+    void pipelinedGetsRunConcurrentlyAndAnswerInRequestOrder() throws Exception {
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        // /coins/1 sólo termina cuando /coins/2 ya se está procesando: exige ejecución concurrente
+        when(controllerMock.getCoinAsync(1)).thenAnswer(invocation -> {
+            assertTrue(secondStarted.await(5, TimeUnit.SECONDS), "Second GET should start while the first is running");
+            return CompletableFuture.completedFuture("{\"id\":1}");
+        });
+        when(controllerMock.getCoinAsync(2)).thenAnswer(invocation -> {
+            secondStarted.countDown();
+            return CompletableFuture.completedFuture("{\"id\":2}");
+        });
+
+        String raw = "GET /coins/1 HTTP/1.1\r\n\r\n"
+                + "GET /coins/2 HTTP/1.1\r\n\r\n"
+                + "GET /coins HTTP/1.1\r\nConnection: close\r\n\r\n";
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            HttpConnection connection = new HttpConnection(5000, 10, executor);
+            while (router.handleRequest(in, out, connection)) {
+                // leer las peticiones encadenadas
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String written = out.toString(StandardCharsets.UTF_8);
+        int first = written.indexOf("{\"id\":1}");
+        int second = written.indexOf("{\"id\":2}");
+        int third = written.indexOf("[]");
+        assertTrue(first >= 0 && first < second && second < third, written);
+        assertEquals(3, written.split("HTTP/1.1 200 OK", -1).length - 1);
+    }
+
+    @Test
+    void pipelineRunsCustomFiltersAndHonoursRouteSkips() throws Exception {
+        List<String> seen = new ArrayList<>();
+        router.addFilter("audit", (context, chain) -> {
+            seen.add(context.getRequest().getPath());
+            return chain.proceed();
+        });
+        assertEquals(List.of("encrypt", "compress", "decrypt", "integrity", "audit", "route"), router.getPipeline().stageNames());
+
+        // /health no comprueba el hash del cuerpo; /coins/1 sí
+        String raw = "GET /health HTTP/1.1\r\nContent-Length: 2\r\n\r\nhi"
+                + "GET /coins/1 HTTP/1.1\r\nContent-Length: 2\r\nConnection: close\r\n\r\nhi";
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpConnection connection = new HttpConnection(5000, 10);
+        while (router.handleRequest(in, out, connection)) {
+            // leer las peticiones encadenadas
+        }
+
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertTrue(written.startsWith("HTTP/1.1 200 OK"), written);
+        assertTrue(written.contains("HTTP/1.1 400 Bad Request"), written);
+        assertEquals(List.of("/health"), seen, "The integrity stage rejects /coins/1 before the custom filter");
+        verify(controllerMock, never()).getCoinAsync(1);
+
+        Map<String, Long> averages = router.getPipeline().averageNanos();
+        assertTrue(averages.keySet().containsAll(List.of("parse", "encrypt", "integrity", "audit", "route", "write")),
+                averages.toString());
+    }
 }
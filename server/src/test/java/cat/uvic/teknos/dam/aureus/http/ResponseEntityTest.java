@@ -1,10 +1,18 @@
 package cat.uvic.teknos.dam.aureus.http;
 
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,5 +33,110 @@ class ResponseEntityTest {
         assertTrue(raw.contains("Content-Type: application/json"));
         assertTrue(raw.endsWith(new String(body, StandardCharsets.UTF_8)));
     }
-}
 
+    @Test
+    void writeToAdvertisesConnectionHeaders() throws Exception {
+        ResponseEntity closed = new ResponseEntity(200, "OK", new HashMap<>(), new byte[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        closed.writeTo(out);
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("Connection: close"));
+
+        ResponseEntity persistent = new ResponseEntity(200, "OK", new HashMap<>(), new byte[0]);
+        persistent.keepAlive(5, 99);
+        out = new ByteArrayOutputStream();
+        persistent.writeTo(out);
+        String raw = out.toString(StandardCharsets.UTF_8);
+        assertTrue(raw.contains("Connection: keep-alive"));
+        assertTrue(raw.contains("Keep-Alive: timeout=5, max=99"));
+    }
+
+    @Test
+    void headAndSmallBodyLeaveInOneWrite() throws Exception {
+        List<Integer> writes = new ArrayList<>();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.add(1);
+                sink.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.add(len);
+                sink.write(b, off, len);
+            }
+        };
+
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("X-Note", "caf\u00e9");
+        new ResponseEntity(200, "ACK", headers, "hola".getBytes(StandardCharsets.UTF_8)).writeTo(counting);
+
+        String raw = sink.toString(StandardCharsets.UTF_8);
+        assertEquals(1, writes.size(), writes.toString());
+        assertTrue(raw.startsWith("HTTP/1.1 200 ACK\r\n"), raw);
+        assertTrue(raw.contains("X-Note: caf\u00e9\r\n"), raw);
+        assertTrue(raw.endsWith("\r\n\r\nhola"), raw);
+
+        // Un cuerpo grande va en una segunda escritura, sin copiarlo
+        writes.clear();
+        byte[] large = new byte[ResponseEncoder.COALESCE_LIMIT + 1];
+        new ResponseEntity(200, "OK", new HashMap<>(), large).writeTo(counting);
+        assertEquals(List.of(writes.get(0), large.length), writes);
+    }
+
+    @Test
+    void gatheringWriteMatchesStreamOutput() throws Exception {
+        byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new ResponseEntity(404, "Not Found", new HashMap<>(), body).writeTo(expected);
+
+        Path file = Files.createTempFile("response", ".http");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            new ResponseEntity(404, "Not Found", new HashMap<>(), body).writeTo(channel);
+        } finally {
+            byte[] written = Files.readAllBytes(file);
+            Files.delete(file);
+            assertArrayEquals(expected.toByteArray(), written);
+        }
+    }
+
+    @Test
+    void streamingBodyIsChunkedWithHashTrailer() throws Exception {
+        String content = "[" + "{\"id\":1},".repeat(2000) + "{\"id\":2}]";
+        StreamingBody body = out -> {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < bytes.length; i += 100) {
+                out.write(bytes, i, Math.min(100, bytes.length - i));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseEntity.streaming(200, "OK", new HashMap<>(), body).writeTo(out);
+
+        String raw = out.toString(StandardCharsets.UTF_8);
+        int headEnd = raw.indexOf("\r\n\r\n");
+        String head = raw.substring(0, headEnd);
+        assertTrue(head.contains("Transfer-Encoding: chunked"), head);
+        assertTrue(head.contains("Trailer: X-Body-Hash"), head);
+        assertFalse(head.contains("Content-Length"), head);
+
+        // Decodificar los chunks y leer el trailer
+        StringBuilder decoded = new StringBuilder();
+        int pos = headEnd + 4;
+        while (true) {
+            int eol = raw.indexOf("\r\n", pos);
+            int size = Integer.parseInt(raw.substring(pos, eol), 16);
+            pos = eol + 2;
+            if (size == 0) break;
+            assertTrue(size <= ChunkedOutputStream.DEFAULT_CHUNK_SIZE);
+            decoded.append(raw, pos, pos + size);
+            pos += size + 2;
+        }
+        assertEquals(content, decoded.toString());
+        assertEquals("X-Body-Hash: " + CryptoUtils.hash(content) + "\r\n\r\n", raw.substring(pos));
+
+        ResponseEntity buffered = ResponseEntity.streaming(200, "OK", new HashMap<>(), body).buffered();
+        assertFalse(buffered.isStreaming());
+        assertEquals(content, new String(buffered.getBody(), StandardCharsets.UTF_8));
+    }
+}
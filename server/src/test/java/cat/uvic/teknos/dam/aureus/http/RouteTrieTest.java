@@ -0,0 +1,71 @@
+package cat.uvic.teknos.dam.aureus.http;
+
+import cat.uvic.teknos.dam.aureus.http.exception.MethodNotAllowedException;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteTrieTest {
+
+    private static final BiFunction<HttpRequest, PathParams, ResponseEntity> NO_OP = (req, params) -> null;
+
+    @Test
+    void matchesStaticVariableAndWildcardSegments() {
+        RouteTrie trie = new RouteTrie();
+        trie.add("GET", "/coins", NO_OP);
+        trie.add("GET", "/coins/{id}", NO_OP);
+        trie.add("GET", "/coins/search", NO_OP);
+        trie.add("GET", "/collections/{id}/coins/{coinId}", NO_OP);
+        trie.add("GET", "/keys/client{n}", NO_OP);
+        trie.add("GET", "/static/*", NO_OP);
+
+        assertEquals("/coins/search", trie.find("GET", "/coins/search").route().pathPattern(), "Static segment wins");
+        assertEquals("42", trie.find("GET", "/coins/42?fields=id").params().get("id"));
+
+        PathParams nested = trie.find("GET", "/collections/7/coins/42").params();
+        assertEquals(7, nested.getInt("id"));
+        assertEquals(42, nested.getInt("coinId"));
+
+        assertEquals("3", trie.find("get", "/keys/client3").params().get("n"));
+        assertEquals("css/app.css", trie.find("GET", "/static/css/app.css").params().get("*"));
+
+        assertNull(trie.find("GET", "/coins/abc"), "Variables only match digits");
+        assertNull(trie.find("GET", "/coins/"));
+        assertNull(trie.find("GET", "/unknown"));
+    }
+
+    @Test
+    void wrongMethodReportsAllowedMethods() {
+        RouteTrie trie = new RouteTrie();
+        trie.add("GET", "/coins/{id}", NO_OP);
+        trie.add("PUT", "/coins/{id}", NO_OP);
+        trie.add("DELETE", "/coins/{id}", NO_OP);
+
+        MethodNotAllowedException ex = assertThrows(MethodNotAllowedException.class, () -> trie.find("POST", "/coins/1"));
+        assertEquals(405, ex.getStatusCode());
+        assertEquals("GET, PUT, DELETE", ex.getAllowedMethods());
+
+        assertThrows(IllegalArgumentException.class, () -> trie.add("GET", "/coins/{id}", NO_OP));
+    }
+
+    @Test
+    void allowedMethodsComeFromEveryBranchThatMatchesThePath() {
+        RouteTrie trie = new RouteTrie();
+        trie.add("GET", "/coins/search", NO_OP);
+        trie.add("PUT", "/coins/{id}", NO_OP);
+        trie.add("DELETE", "/coins/{id}", NO_OP);
+        trie.add("PATCH", "/coins/*", NO_OP);
+        trie.add("GET", "/coins/*", NO_OP);
+
+        // Sólo la variable y el comodín llegan a /coins/7
+        MethodNotAllowedException numeric = assertThrows(MethodNotAllowedException.class, () -> trie.find("POST", "/coins/7"));
+        assertEquals("PUT, DELETE, PATCH, GET", numeric.getAllowedMethods());
+
+        // /coins/search también llega al comodín, que sí admite GET
+        assertEquals("/coins/search", trie.find("GET", "/coins/search").route().pathPattern());
+        MethodNotAllowedException search = assertThrows(MethodNotAllowedException.class, () -> trie.find("POST", "/coins/search"));
+        assertEquals("GET, PATCH", search.getAllowedMethods());
+    }
+}
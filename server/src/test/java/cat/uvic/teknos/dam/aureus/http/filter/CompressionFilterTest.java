@@ -0,0 +1,136 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HeaderName;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionFilterTest {
+
+    private static final String JSON = "{\"coins\":[" + "{\"name\":\"Aureus\",\"material\":\"gold\"},".repeat(200) + "{}]}";
+
+    private static ResponseEntity execute(FilterPipeline pipeline, Map<String, String> headers) {
+        return pipeline.execute(new RequestContext(new HttpRequest("GET", "/coins", headers, ""), null)).join();
+    }
+
+    private static FilterPipeline pipeline(ResponseEntity routeResponse) {
+        FilterPipeline pipeline = new FilterPipeline(e -> new ResponseEntity(500, "X", new HashMap<>(), null));
+        pipeline.add(FilterPipeline.COMPRESS, new CompressionFilter());
+        pipeline.add("route", (ctx, chain) -> CompletableFuture.completedFuture(routeResponse));
+        return pipeline;
+    }
+
+    private static ResponseEntity json(String body) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        return new ResponseEntity(200, "OK", headers, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void negotiationHonoursQualityValues() {
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate"));
+        assertEquals("gzip", CompressionFilter.negotiate("deflate, gzip"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, *"));
+        assertEquals("gzip", CompressionFilter.negotiate("*"));
+        assertNull(CompressionFilter.negotiate("br, identity"));
+        assertNull(CompressionFilter.negotiate("gzip;q=0"));
+        assertNull(CompressionFilter.negotiate(null));
+    }
+
+    @Test
+    void largeBodiesAreCompressedAndSmallOnesAreNot() throws IOException {
+        ResponseEntity compressed = execute(pipeline(json(JSON)), new HashMap<>(Map.of("Accept-Encoding", "gzip, deflate")));
+        assertEquals("gzip", compressed.getHeaders().get(HeaderName.CONTENT_ENCODING));
+        assertEquals("Accept-Encoding", compressed.getHeaders().get(HeaderName.VARY));
+        assertEquals(String.valueOf(compressed.getBody().length), compressed.getHeaders().get(HeaderName.CONTENT_LENGTH));
+        assertTrue(compressed.getBody().length < JSON.length());
+        assertEquals(JSON, gunzip(compressed.getBody()));
+
+        ResponseEntity small = execute(pipeline(json("{\"id\":1}")), new HashMap<>(Map.of("Accept-Encoding", "gzip")));
+        assertFalse(small.getHeaders().contains(HeaderName.CONTENT_ENCODING));
+        assertEquals("{\"id\":1}", new String(small.getBody(), StandardCharsets.UTF_8));
+
+        ResponseEntity notAccepted = execute(pipeline(json(JSON)), new HashMap<>());
+        assertFalse(notAccepted.getHeaders().contains(HeaderName.CONTENT_ENCODING));
+    }
+
+    @Test
+    void streamingBodiesAreDeflatedWhileWritten() throws IOException {
+        ResponseEntity streaming = ResponseEntity.streaming(200, "OK", new HashMap<>(),
+                out -> out.write(JSON.getBytes(StandardCharsets.UTF_8)));
+        ResponseEntity response = execute(pipeline(streaming), new HashMap<>(Map.of("Accept-Encoding", "deflate")));
+
+        assertTrue(response.isStreaming());
+        assertEquals("deflate", response.getHeaders().get(HeaderName.CONTENT_ENCODING));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getStreamingBody().writeTo(out);
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(JSON, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void compressedBodiesGetTheirOwnStrongETag() {
+        ResponseEntity tagged = json(JSON);
+        tagged.getHeaders().set(HeaderName.ETAG, "\"coins-e-7\"");
+        ResponseEntity compressed = execute(pipeline(tagged), new HashMap<>(Map.of("Accept-Encoding", "gzip")));
+        assertEquals("\"coins-e-7-gzip\"", compressed.getHeaders().get(HeaderName.ETAG));
+
+        // Revalidar con la etiqueta comprimida: coincide, y el 304 la conserva
+        Map<String, String> headers = new HashMap<>(Map.of("Accept-Encoding", "gzip", "If-None-Match", "\"coins-e-7-gzip\""));
+        assertTrue(new HttpRequest("GET", "/coins", headers, "").matchesIfNoneMatch("\"coins-e-7\""));
+        assertFalse(new HttpRequest("GET", "/coins", headers, "").matchesIfNoneMatch("\"coins-e-8\""));
+        Map<String, String> notModifiedHeaders = new HashMap<>();
+        notModifiedHeaders.put("ETag", "\"coins-e-7\"");
+        ResponseEntity notModified = execute(pipeline(new ResponseEntity(304, "Not Modified", notModifiedHeaders, null)), headers);
+        assertEquals("\"coins-e-7-gzip\"", notModified.getHeaders().get(HeaderName.ETAG));
+
+        // Sin comprimir, la etiqueta no cambia
+        ResponseEntity small = json("{}");
+        small.getHeaders().set(HeaderName.ETAG, "\"coins-e-7\"");
+        assertEquals("\"coins-e-7\"", execute(pipeline(small), new HashMap<>(Map.of("Accept-Encoding", "gzip")))
+                .getHeaders().get(HeaderName.ETAG));
+    }
+
+    @Test
+    void sessionResponsesAreCompressedBeforeEncryption() throws Exception {
+        String keyHex = CryptoUtils.bytesToHex(CryptoUtils.generateRandomBytes(16));
+        FilterPipeline pipeline = new FilterPipeline(e -> new ResponseEntity(500, "X", new HashMap<>(), null));
+        pipeline.add(FilterPipeline.ENCRYPT, new EncryptFilter(Map.of("s1", keyHex)))
+                .add(FilterPipeline.COMPRESS, new CompressionFilter())
+                .add("route", (ctx, chain) -> CompletableFuture.completedFuture(json(JSON)));
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Session-Id", "s1");
+        headers.put("Accept-Encoding", "gzip");
+        ResponseEntity response = execute(pipeline, headers);
+
+        assertEquals("1", response.getHeaders().get(HeaderName.X_BODY_ENCRYPTED));
+        assertEquals("gzip", response.getHeaders().get(HeaderName.CONTENT_ENCODING));
+        String cipherHex = new String(response.getBody(), StandardCharsets.US_ASCII);
+        // El texto cifrado en hex ocupa el doble que el gzip: debe seguir siendo menor que el JSON
+        assertTrue(cipherHex.length() < JSON.length(), cipherHex.length() + " >= " + JSON.length());
+        byte[] plain = CryptoUtils.decryptBytes(keyHex, response.getHeaders().get(HeaderName.X_BODY_IV), cipherHex);
+        assertEquals(JSON, gunzip(plain));
+    }
+}
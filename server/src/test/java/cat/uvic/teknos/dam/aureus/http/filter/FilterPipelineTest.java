@@ -0,0 +1,129 @@
+package cat.uvic.teknos.dam.aureus.http.filter;
+
+import cat.uvic.teknos.dam.aureus.http.HeaderName;
+import cat.uvic.teknos.dam.aureus.http.HttpRequest;
+import cat.uvic.teknos.dam.aureus.http.PathParams;
+import cat.uvic.teknos.dam.aureus.http.ResponseEntity;
+import cat.uvic.teknos.dam.aureus.http.Route;
+import cat.uvic.teknos.dam.aureus.http.exception.HttpException;
+import cat.uvic.teknos.dam.aureus.security.CryptoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterPipelineTest {
+
+    private static ResponseEntity entity(int status) {
+        return new ResponseEntity(status, "X", new HashMap<>(), null);
+    }
+
+    private static CompletableFuture<ResponseEntity> response(int status) {
+        return CompletableFuture.completedFuture(entity(status));
+    }
+
+    @Test
+    void stagesRunInOrderAndRecordExclusiveTimes() {
+        List<String> order = new ArrayList<>();
+        FilterPipeline pipeline = new FilterPipeline(e -> entity(500));
+        pipeline.add("outer", (ctx, chain) -> {
+            order.add("outer");
+            return chain.proceed();
+        });
+        pipeline.add("route", (ctx, chain) -> {
+            order.add("route");
+            TimeUnit.MILLISECONDS.sleep(20);
+            return response(200);
+        });
+        pipeline.addBefore("route", "custom", (ctx, chain) -> {
+            order.add("custom");
+            return chain.proceed();
+        });
+
+        RequestContext context = new RequestContext(new HttpRequest("GET", "/", new HashMap<>(), ""), null);
+        assertEquals(200, pipeline.execute(context).join().getStatus());
+        assertEquals(List.of("outer", "custom", "route"), order);
+
+        Map<String, Long> timings = context.getTimings();
+        assertEquals(List.of("outer", "custom", "route"), List.copyOf(timings.keySet()));
+        assertTrue(timings.get("route") >= TimeUnit.MILLISECONDS.toNanos(20));
+        // El tiempo del handler no se atribuye a las etapas que lo envuelven
+        assertTrue(timings.get("outer") < TimeUnit.MILLISECONDS.toNanos(20), timings.toString());
+        assertTrue(timings.get("custom") < TimeUnit.MILLISECONDS.toNanos(20), timings.toString());
+
+        pipeline.record(context);
+        assertTrue(pipeline.summary().contains("route="), pipeline.summary());
+    }
+
+    @Test
+    void exceptionsBecomeResponsesAndRoutesSkipStages() {
+        List<String> order = new ArrayList<>();
+        FilterPipeline pipeline = new FilterPipeline(e -> entity(((HttpException) e).getStatusCode()));
+        pipeline.add("outer", (ctx, chain) -> chain.proceed().thenApply(inner -> {
+            order.add("outer saw " + inner.getStatus());
+            return inner;
+        }));
+        pipeline.add("check", (ctx, chain) -> {
+            throw new HttpException(400, "Bad Request", "rejected");
+        });
+        pipeline.add("route", (ctx, chain) -> response(200));
+
+        RequestContext rejected = new RequestContext(new HttpRequest("GET", "/", new HashMap<>(), ""), null);
+        assertEquals(400, pipeline.execute(rejected).join().getStatus());
+        assertEquals(List.of("outer saw 400"), order);
+
+        RequestContext skipping = new RequestContext(new HttpRequest("GET", "/", new HashMap<>(), ""), null);
+        skipping.setRoute(new Route("GET", "/", new String[0], (r, p) -> response(200), Set.of("check")), PathParams.EMPTY);
+        assertEquals(200, pipeline.execute(skipping).join().getStatus());
+        assertFalse(skipping.getTimings().containsKey("check"));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.add("route", (ctx, chain) -> response(200)));
+    }
+
+    @Test
+    void asynchronousRouteIsTimedUntilItCompletes() {
+        Executor later = CompletableFuture.delayedExecutor(30, TimeUnit.MILLISECONDS);
+        FilterPipeline pipeline = new FilterPipeline(e -> entity(500));
+        pipeline.add("outer", (ctx, chain) -> chain.proceed().thenApply(r -> entity(r.getStatus() + 1)));
+        pipeline.add("route", (ctx, chain) -> CompletableFuture.supplyAsync(() -> entity(200), later));
+
+        RequestContext context = new RequestContext(new HttpRequest("GET", "/", new HashMap<>(), ""), null);
+        CompletableFuture<ResponseEntity> response = pipeline.execute(context);
+        assertFalse(response.isDone(), "The pipeline returns before the handler completes");
+        assertEquals(201, response.join().getStatus());
+
+        Map<String, Long> timings = context.getTimings();
+        assertTrue(timings.get("route") >= TimeUnit.MILLISECONDS.toNanos(30), timings.toString());
+        assertTrue(timings.get("outer") < TimeUnit.MILLISECONDS.toNanos(30), timings.toString());
+    }
+
+    @Test
+    void encryptFilterKeepsStreamingBodiesStreamed() throws Exception {
+        String keyHex = CryptoUtils.bytesToHex(CryptoUtils.generateRandomBytes(16));
+        String plain = "{\"coins\":[" + "1,".repeat(5000) + "2]}";
+        FilterPipeline pipeline = new FilterPipeline(e -> entity(500));
+        pipeline.add(FilterPipeline.ENCRYPT, new EncryptFilter(Map.of("s1", keyHex)));
+        pipeline.add("route", (ctx, chain) -> CompletableFuture.completedFuture(ResponseEntity.streaming(200, "OK", new HashMap<>(),
+                out -> out.write(plain.getBytes(StandardCharsets.UTF_8)))));
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Session-Id", "s1");
+        ResponseEntity response = pipeline.execute(new RequestContext(new HttpRequest("GET", "/", headers, ""), null)).join();
+
+        assertTrue(response.isStreaming());
+        assertEquals("1", response.getHeaders().get(HeaderName.X_BODY_ENCRYPTED));
+        ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+        response.getStreamingBody().writeTo(cipherText);
+        String ivHex = response.getHeaders().get(HeaderName.X_BODY_IV);
+        assertEquals(plain, CryptoUtils.decrypt(keyHex, ivHex, cipherText.toString(StandardCharsets.US_ASCII)));
+    }
+}
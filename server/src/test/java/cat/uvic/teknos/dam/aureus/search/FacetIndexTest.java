@@ -0,0 +1,79 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static cat.uvic.teknos.dam.aureus.search.TestCoins.coin;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FacetIndexTest {
+
+    private FacetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FacetIndex();
+        index.rebuild(List.of(
+                coin(1).material("Gold").country("Spain").year(1520).collection(1).build(),
+                coin(2).material("gold").country("Spain").year(1480).collection(1).build(),
+                coin(3).material("Silver").country("Spain").year(1600).collection(2).build(),
+                coin(4).material("Gold").country("España").year(1700).collection(2).build(),
+                coin(5).material("Silver").country("Rome").year(-300).build(),
+                coin(6).material("Bronze").country("Rome").year(50).build()));
+    }
+
+    @Test
+    void countsEveryFacetWithoutFilters() {
+        FacetIndex.Counts counts = index.count(Map.of(), null, null);
+        assertEquals(6, counts.total());
+        assertEquals(Map.of("Gold", 3, "Silver", 2, "Bronze", 1), counts.facets().get("material"));
+        assertEquals(Map.of("Spain", 3, "Rome", 2, "España", 1), counts.facets().get("country"));
+        assertEquals(Map.of("15", 1, "16", 2, "17", 1, "-3", 1, "1", 1), counts.facets().get("century"));
+        assertEquals(Map.of("1", 2, "2", 2), counts.facets().get("collection"));
+        // Más frecuente primero
+        assertEquals("Gold", counts.facets().get("material").keySet().iterator().next());
+    }
+
+    @Test
+    void filtersAreCombinedWithAndAcrossFacetsAndOrWithinOne() {
+        // "Monedas de oro de España posteriores a 1500"
+        FacetIndex.Counts gold = index.count(Map.of(FacetIndex.Facet.MATERIAL, List.of("GOLD"),
+                FacetIndex.Facet.COUNTRY, List.of("spain", "espana")), 1501, null);
+        assertEquals(2, gold.total());
+        assertEquals(Map.of("16", 1, "17", 1), gold.facets().get("century"));
+
+        FacetIndex.Counts old = index.count(Map.of(FacetIndex.Facet.CENTURY, List.of("-3", "1")), null, null);
+        assertEquals(Map.of("Rome", 2), old.facets().get("country"));
+        assertEquals(0, index.count(Map.of(FacetIndex.Facet.MATERIAL, List.of("platinum")), null, null).total());
+        assertEquals(0, index.count(Map.of(), 2000, 1000).total());
+        assertThrows(IllegalArgumentException.class,
+                () -> index.count(Map.of(FacetIndex.Facet.COLLECTION, List.of("one")), null, null));
+    }
+
+    @Test
+    void changesUpdateTheBitmaps() {
+        index.coinSaved(coin(6).material("Gold").country("Rome").year(50).collection(1).build());
+        index.coinSaved(coin(7).material("Gold").country("Greece").year(-450).build());
+        index.coinDeleted(1);
+        index.coinDeleted(42);
+
+        FacetIndex.Counts counts = index.count(Map.of(FacetIndex.Facet.MATERIAL, List.of("gold")), null, null);
+        assertEquals(4, counts.total());
+        assertEquals(Map.of("Spain", 1, "España", 1, "Rome", 1, "Greece", 1), counts.facets().get("country"));
+        assertEquals(Map.of("Gold", 4, "Silver", 2), index.count(Map.of(), null, null).facets().get("material"));
+    }
+
+    @Test
+    void centuriesBeforeChristAreNegative() {
+        assertEquals(1, FacetIndex.century(1));
+        assertEquals(1, FacetIndex.century(100));
+        assertEquals(16, FacetIndex.century(1501));
+        assertEquals(-1, FacetIndex.century(0));
+        assertEquals(-1, FacetIndex.century(-100));
+        assertEquals(-2, FacetIndex.century(-101));
+    }
+}
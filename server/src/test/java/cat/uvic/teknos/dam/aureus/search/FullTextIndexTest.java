@@ -0,0 +1,148 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static cat.uvic.teknos.dam.aureus.search.TestCoins.coin;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FullTextIndexTest {
+
+    private FullTextIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FullTextIndex();
+        index.rebuild(List.of(
+                coin(1).name("Denarius").material("Silver").country("Rome")
+                        .history("Standard silver coin of the Roman Republic").build(),
+                coin(2).name("Aureus").material("Gold").country("Rome")
+                        .history("Gold coin that replaced the denarius as the Roman store of value").build(),
+                coin(3).name("Drachma").material("Silver").country("Greece").history("Athenian coin").build(),
+                coin(4).name("Dinar").material("Gold").country("Umayyad Caliphate")
+                        .history("Named after the denarius").build()));
+    }
+
+    private static List<Integer> ids(List<FullTextIndex.Hit> hits) {
+        return hits.stream().map(FullTextIndex.Hit::id).toList();
+    }
+
+    @Test
+    void nameMatchesRankAboveHistoryMatches() {
+        List<FullTextIndex.Hit> hits = index.search("denarius", 10);
+        assertEquals(1, hits.get(0).id());
+        assertEquals(List.of(1, 2, 4), ids(hits).stream().sorted().toList());
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+    }
+
+    @Test
+    void termsAreCombinedAndScoresAdded() {
+        // Aureus contiene las dos palabras; Denarius y Drachma sólo "silver"
+        assertEquals(2, index.search("gold roman", 10).get(0).id());
+        assertEquals(List.of(1, 3), ids(index.search("silver", 10)).stream().sorted().toList());
+        assertEquals(List.of(), index.search("sestertius", 10));
+        assertEquals(List.of(), index.search("  ", 10));
+    }
+
+    @Test
+    void caseAndDiacriticsAreIgnored() {
+        assertEquals(List.of(3), ids(index.search("DRÁCHMA", 10)));
+        index.coinSaved(coin(5).name("Solidus").material("Gold").country("Bizâncio").build());
+        assertEquals(List.of(5), ids(index.search("bizancio", 10)));
+    }
+
+    @Test
+    void trailingStarMatchesPrefixes() {
+        assertEquals(List.of(), index.search("dina", 10));
+        assertEquals(List.of(4), ids(index.search("dina*", 10)));
+        assertEquals(List.of(1, 2, 3, 4), ids(index.search("d*", 10)).stream().sorted().toList());
+    }
+
+    @Test
+    void prefixesWithTooManyExpansionsKeepTheMostFrequentTerms() {
+        List<CoinImpl> coins = new ArrayList<>();
+        // 70 términos raros que en orden alfabético van antes que el frecuente
+        for (int id = 1; id <= FullTextIndex.MAX_PREFIX_TERMS + 6; id++) coins.add(coin(id).name("zz" + id).build());
+        for (int id = 100; id < 110; id++) coins.add(coin(id).name("zzcommon").build());
+        index.rebuild(coins);
+
+        List<Integer> hits = ids(index.search("zz*", 1000));
+        assertTrue(hits.containsAll(List.of(100, 101, 102, 103, 104, 105, 106, 107, 108, 109)), hits.toString());
+        assertEquals(10 + FullTextIndex.MAX_PREFIX_TERMS - 1, hits.size());
+    }
+
+    @Test
+    void limitKeepsTheBestHitsInOrder() {
+        List<FullTextIndex.Hit> all = index.search("d*", 10);
+        List<FullTextIndex.Hit> best = index.search("d*", 2);
+        assertEquals(all.subList(0, 2), best);
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).score() >= all.get(i).score());
+        }
+    }
+
+    @Test
+    void prunedSearchReturnsTheSameHitsAsReadingEveryPosting() {
+        Random random = new Random(3);
+        String[] materials = {"Gold", "Silver", "Bronze", "Copper"};
+        String[] countries = {"Rome", "Greece", "Spain", "Egypt", "Persia"};
+        List<CoinImpl> coins = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            coins.add(coin(id).name("Coin " + random.nextInt(200))
+                    .material(materials[random.nextInt(materials.length)])
+                    .country(countries[random.nextInt(countries.length)])
+                    .history("Minted " + "long ".repeat(random.nextInt(6)) + "ago in "
+                            + countries[random.nextInt(countries.length)])
+                    .build());
+        }
+        index.rebuild(coins);
+        for (int id = 1; id <= 300; id++) {
+            index.coinSaved(coin(id).name("Coin " + random.nextInt(200)).material("Gold").country("Spain")
+                    .history(random.nextBoolean() ? "Spain" : null).build());
+        }
+
+        // Sin límite efectivo la búsqueda lee todas las postings
+        for (String query : new String[]{"spain", "gold", "gold spain", "coin 17", "s*", "silver rome long"}) {
+            List<FullTextIndex.Hit> all = index.search(query, Integer.MAX_VALUE);
+            for (int limit : new int[]{1, 10, 100}) {
+                assertEquals(all.subList(0, Math.min(limit, all.size())), index.search(query, limit), query);
+            }
+        }
+    }
+
+    @Test
+    void changesAreAppliedIncrementally() {
+        index.coinSaved(coin(3).name("Tetradrachm").material("Silver").country("Greece")
+                .history("Owl of Athena").build());
+        assertEquals(List.of(), index.search("drachma", 10));
+        assertEquals(List.of(3), ids(index.search("owl", 10)));
+
+        index.coinDeleted(1);
+        index.coinDeleted(99);
+        assertEquals(3, index.size());
+        assertEquals(List.of(2, 4), ids(index.search("denarius", 10)).stream().sorted().toList());
+    }
+
+    @Test
+    void rebuildReplacesTheContentsAndMatchesIncrementalLoading() {
+        List<CoinImpl> coins = new ArrayList<>();
+        FullTextIndex incremental = new FullTextIndex();
+        for (int id = 1; id <= 2000; id++) {
+            CoinImpl coin = coin(id).name("Coin " + id).material(id % 2 == 0 ? "Gold" : "Silver")
+                    .country("Country " + id % 7).history("Minted in year " + id).build();
+            coins.add(coin);
+            incremental.coinSaved(coin);
+        }
+        index.rebuild(coins);
+
+        assertEquals(2000, index.size());
+        assertEquals(List.of(), index.search("denarius", 10));
+        assertEquals(index.search("gold country", 50), incremental.search("gold country", 50));
+        assertEquals(List.of(1234), ids(index.search("1234", 10)).subList(0, 1));
+    }
+}
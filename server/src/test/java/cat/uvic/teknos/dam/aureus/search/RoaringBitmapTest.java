@@ -0,0 +1,103 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoaringBitmapTest {
+
+    // Mezcla tramos dispersos (contenedores array) y densos (mapas de bits) en varios bloques de 65536
+    private static void fill(RoaringBitmap bitmap, BitSet expected, Random random, int count, int bound) {
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(bound);
+            bitmap.add(value);
+            expected.set(value);
+        }
+    }
+
+    private static void assertSame(BitSet expected, RoaringBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.cardinality());
+    }
+
+    @Test
+    void behavesLikeABitSet() {
+        Random random = new Random(1);
+        RoaringBitmap a = new RoaringBitmap();
+        RoaringBitmap b = new RoaringBitmap();
+        BitSet expectedA = new BitSet();
+        BitSet expectedB = new BitSet();
+        fill(a, expectedA, random, 30_000, 70_000);
+        fill(a, expectedA, random, 500, 400_000);
+        fill(b, expectedB, random, 3_000, 140_000);
+        fill(b, expectedB, random, 20_000, 65_536);
+        assertSame(expectedA, a);
+        assertSame(expectedB, b);
+
+        BitSet and = (BitSet) expectedA.clone();
+        and.and(expectedB);
+        assertSame(and, RoaringBitmap.and(a, b));
+        assertEquals(and.cardinality(), RoaringBitmap.andCardinality(a, b));
+
+        BitSet or = (BitSet) expectedA.clone();
+        or.or(expectedB);
+        assertSame(or, RoaringBitmap.or(a, b));
+
+        // Quitar valores devuelve los contenedores densos a arrays y vacía los bloques
+        for (int value = 0; value < 400_000; value += 2) {
+            a.remove(value);
+            expectedA.clear(value);
+        }
+        assertSame(expectedA, a);
+        assertTrue(a.contains(expectedA.nextSetBit(0)));
+        assertFalse(a.contains(0));
+    }
+
+    @Test
+    void operationsDoNotModifyTheirOperands() {
+        RoaringBitmap a = new RoaringBitmap();
+        RoaringBitmap b = new RoaringBitmap();
+        for (int i = 0; i < 10_000; i++) a.add(i);
+        b.add(5);
+        b.add(70_000);
+
+        RoaringBitmap union = RoaringBitmap.or(a, b);
+        union.remove(5);
+        union.add(20_000);
+        assertEquals(10_000, a.cardinality());
+        assertTrue(a.contains(5));
+        assertFalse(a.contains(20_000));
+        assertArrayEquals(new int[]{5}, RoaringBitmap.and(a, b).toArray());
+
+        a.remove(5);
+        b.remove(5);
+        b.remove(70_000);
+        assertTrue(b.isEmpty());
+        assertEquals(0, RoaringBitmap.andCardinality(a, b));
+    }
+
+    @Test
+    void orInPlaceAccumulatesWithoutSharingContainers() {
+        Random random = new Random(2);
+        RoaringBitmap union = new RoaringBitmap();
+        BitSet expected = new BitSet();
+        RoaringBitmap[] parts = new RoaringBitmap[40];
+        BitSet[] expectedParts = new BitSet[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new RoaringBitmap();
+            expectedParts[i] = new BitSet();
+            // Cada parte es pequeña, pero la unión llega a convertir arrays en mapas de bits
+            fill(parts[i], expectedParts[i], random, 1_000, 70_000 + i * 2_000);
+            union.orInPlace(parts[i]);
+            expected.or(expectedParts[i]);
+            assertSame(expected, union);
+        }
+
+        // Cambiar la unión no cambia las partes que se le añadieron
+        for (int value = 0; value < 500_000; value += 3) union.add(value);
+        for (int i = 0; i < parts.length; i++) assertSame(expectedParts[i], parts[i]);
+    }
+}
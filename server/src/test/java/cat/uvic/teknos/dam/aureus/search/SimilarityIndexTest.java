@@ -0,0 +1,138 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static cat.uvic.teknos.dam.aureus.search.TestCoins.coin;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityIndexTest {
+
+    private static List<Integer> ids(List<SimilarityIndex.Neighbour> neighbours) {
+        return neighbours.stream().map(SimilarityIndex.Neighbour::id).toList();
+    }
+
+    @Test
+    void attributesAreComparedOnTheirOwnSpread() {
+        SimilarityIndex index = new SimilarityIndex();
+        index.rebuild(List.of(
+                coin(1).weight(8.0).diameter(20.0).year(100).value(500).build(),
+                // Un siglo de diferencia pesa poco: los años se reparten entre -300 y 1900
+                coin(2).weight(8.1).diameter(20.0).year(200).value(500).build(),
+                // Dos gramos sí: los pesos van de 3 a 30
+                coin(3).weight(10.0).diameter(20.0).year(100).value(500).build(),
+                coin(4).weight(30.0).diameter(40.0).year(1900).value(100000).build(),
+                coin(5).weight(3.0).diameter(15.0).year(-300).value(5).build(),
+                coin(6).weight(8.0).diameter(20.0).value(500).build()));
+
+        assertEquals(5, index.size());
+        assertEquals(List.of(2, 3), ids(index.nearest(1, 2)));
+        assertEquals(List.of(2, 3, 5, 4), ids(index.nearest(1, 10)));
+        assertEquals(List.of(), index.nearest(1, 0));
+        // Sin peso, diámetro, año o valor no está en el índice
+        assertNull(index.nearest(6, 3));
+        assertNull(index.nearest(99, 3));
+    }
+
+    @Test
+    void changesAreFollowedIncrementally() {
+        SimilarityIndex index = new SimilarityIndex();
+        index.rebuild(List.of(
+                coin(1).weight(8.0).diameter(20.0).year(100).value(500).build(),
+                coin(2).weight(20.0).diameter(30.0).year(1500).value(5000).build(),
+                coin(3).weight(3.0).diameter(15.0).year(-300).value(5).build()));
+        assertEquals(List.of(3), ids(index.nearest(1, 1)));
+
+        index.coinSaved(coin(4).weight(8.1).diameter(20.1).year(110).value(510).build());
+        assertEquals(List.of(4), ids(index.nearest(1, 1)));
+
+        // Moverla lejos equivale a quitarla y volver a insertarla
+        index.coinSaved(coin(4).weight(25.0).diameter(35.0).year(1800).value(90000).build());
+        assertEquals(List.of(3), ids(index.nearest(1, 1)));
+        assertEquals(List.of(2), ids(index.nearest(4, 1)));
+
+        index.coinDeleted(3);
+        assertEquals(3, index.size());
+        assertNull(index.nearest(3, 1));
+        assertFalse(ids(index.nearest(1, 10)).contains(3));
+    }
+
+    @Test
+    void matchesALinearScanUnderRandomChanges() {
+        Random random = new Random(11);
+        Map<Integer, CoinImpl> live = new HashMap<>();
+        for (int id = 1; id <= 2000; id++) live.put(id, randomCoin(random, id));
+        SimilarityIndex index = new SimilarityIndex();
+        index.rebuild(live.values());
+
+        // Suficientes cambios para forzar varias reconstrucciones del árbol
+        for (int step = 0; step < 5000; step++) {
+            int id = 1 + random.nextInt(2500);
+            if (random.nextInt(3) == 0) {
+                index.coinDeleted(id);
+                live.remove(id);
+            } else {
+                CoinImpl coin = randomCoin(random, id);
+                index.coinSaved(coin);
+                live.put(id, coin);
+            }
+
+            if (step % 250 == 0) {
+                assertEquals(live.size(), index.size());
+                int reference = live.keySet().iterator().next();
+                int k = 1 + random.nextInt(20);
+                List<Double> expected = linearScan(live, reference, k);
+                List<SimilarityIndex.Neighbour> actual = index.nearest(reference, k);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i), actual.get(i).distance(), 1e-6);
+                }
+            }
+        }
+    }
+
+    private static CoinImpl randomCoin(Random random, int id) {
+        return coin(id)
+                .weight(1 + random.nextInt(3000) / 100.0)
+                .diameter(10 + random.nextInt(3000) / 100.0)
+                .year(random.nextInt(2400) - 500)
+                .value(random.nextInt(10_000_000) / 100.0)
+                .build();
+    }
+
+    // Distancias de los k más cercanos, recalculando la normalización desde cero
+    private static List<Double> linearScan(Map<Integer, CoinImpl> coins, int reference, int k) {
+        List<double[]> points = new ArrayList<>();
+        for (CoinImpl coin : coins.values()) points.add(point(coin));
+        double[] weights = new double[4];
+        for (int d = 0; d < 4; d++) {
+            double mean = 0;
+            for (double[] point : points) mean += point[d] / points.size();
+            double variance = 0;
+            for (double[] point : points) variance += (point[d] - mean) * (point[d] - mean) / points.size();
+            weights[d] = 1 / variance;
+        }
+        double[] target = point(coins.get(reference));
+        List<Double> distances = new ArrayList<>();
+        for (CoinImpl coin : coins.values()) {
+            if (coin.getId() == reference) continue;
+            double[] point = point(coin);
+            double sum = 0;
+            for (int d = 0; d < 4; d++) sum += weights[d] * (point[d] - target[d]) * (point[d] - target[d]);
+            distances.add(Math.sqrt(sum));
+        }
+        distances.sort(null);
+        return distances.subList(0, Math.min(k, distances.size()));
+    }
+
+    private static double[] point(CoinImpl coin) {
+        return new double[]{coin.getCoinWeight().doubleValue(), coin.getCoinDiameter().doubleValue(), coin.getCoinYear(),
+                Math.log1p(coin.getEstimatedValue().doubleValue())};
+    }
+}
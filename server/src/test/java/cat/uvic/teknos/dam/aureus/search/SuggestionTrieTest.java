@@ -0,0 +1,107 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static cat.uvic.teknos.dam.aureus.search.TestCoins.coin;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionTrieTest {
+
+    private SuggestionTrie trie;
+
+    @BeforeEach
+    void setUp() {
+        trie = new SuggestionTrie();
+        trie.rebuild(List.of(
+                coin(1).name("Denarius").value("100").collection(1).build(),
+                coin(2).name("Roman Denarius").value("250").collection(1).build(),
+                coin(3).name("Dinar").value("80").collection(2).build(),
+                coin(4).name("Drachma").value("40").build()),
+                Map.of(1, "Roman Empire", 2, "Islamic Dinars"));
+    }
+
+    private static List<String> names(List<SuggestionTrie.Suggestion> suggestions) {
+        return suggestions.stream().map(SuggestionTrie.Suggestion::name).toList();
+    }
+
+    @Test
+    void prefixesMatchAnyWordMostValuableFirst() {
+        assertEquals(List.of("Roman Denarius", "Denarius"), names(trie.suggest("den", 10, SuggestionTrie.Kind.COIN)));
+        assertEquals(List.of("Roman Denarius", "Denarius", "Dinar", "Drachma"), names(trie.suggest("d", 10, SuggestionTrie.Kind.COIN)));
+        assertEquals(List.of("Roman Denarius"), names(trie.suggest("ROMAN  de", 10, SuggestionTrie.Kind.COIN)));
+        assertEquals(List.of(), trie.suggest("denarii", 10, null));
+        assertEquals(List.of(), trie.suggest(" ", 10, null));
+    }
+
+    @Test
+    void collectionsAreRankedByTheValueOfTheirCoins() {
+        List<SuggestionTrie.Suggestion> all = trie.suggest("r", 10, null);
+        assertEquals(new SuggestionTrie.Suggestion(SuggestionTrie.Kind.COLLECTION, 1, "Roman Empire", 350), all.get(0));
+        assertEquals(new SuggestionTrie.Suggestion(SuggestionTrie.Kind.COIN, 2, "Roman Denarius", 250), all.get(1));
+
+        trie.coinSaved(coin(5).name("Gold Dinar").value("500").collection(2).build());
+        assertEquals(List.of("Islamic Dinars", "Gold Dinar", "Dinar"), names(trie.suggest("dinar", 10, null)));
+        trie.coinDeleted(5);
+        assertEquals(80, trie.suggest("islamic", 10, SuggestionTrie.Kind.COLLECTION).get(0).estimatedValue());
+
+        trie.collectionSaved(3, "Greek Drachmae");
+        assertEquals(List.of("Greek Drachmae"), names(trie.suggest("gr", 10, null)));
+    }
+
+    @Test
+    void updatesReplaceTheOldName() {
+        trie.coinSaved(coin(4).name("Tetradrachm").value("40").build());
+        assertEquals(List.of(), trie.suggest("drachma", 10, null));
+        assertEquals(List.of("Tetradrachm"), names(trie.suggest("tetra", 10, null)));
+
+        trie.coinDeleted(1);
+        trie.coinDeleted(99);
+        assertEquals(List.of("Roman Denarius"), names(trie.suggest("denarius", 10, null)));
+        assertEquals(5, trie.size());
+    }
+
+    // Con muchas monedas los nodos guardan sus mejores; tras cambios aleatorios deben
+    // seguir coincidiendo con una búsqueda lineal
+    @Test
+    void cachedRankingsMatchALinearScanAfterRandomChanges() {
+        Random random = new Random(42);
+        String[] words = {"aureus", "aurelian", "antoninianus", "as", "denarius", "dinar", "drachma", "dupondius"};
+        List<CoinImpl> coins = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            coins.add(coin(id).name(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)])
+                    .value(String.valueOf(random.nextInt(1000))).build());
+        }
+        trie.rebuild(coins, Map.of());
+        for (int i = 0; i < 300; i++) {
+            int index = random.nextInt(coins.size());
+            if (random.nextBoolean()) {
+                CoinImpl changed = coin(coins.get(index).getId()).name(words[random.nextInt(words.length)])
+                        .value(String.valueOf(random.nextInt(1000))).build();
+                coins.set(index, changed);
+                trie.coinSaved(changed);
+            } else {
+                trie.coinDeleted(coins.remove(index).getId());
+            }
+        }
+
+        for (String prefix : new String[]{"a", "au", "aur", "d", "de", "dinar", "as"}) {
+            List<Integer> expected = coins.stream()
+                    .filter(c -> List.of(c.getCoinName().split(" ")).stream().anyMatch(w -> w.startsWith(prefix)))
+                    .sorted(Comparator.comparing(CoinImpl::getEstimatedValue).reversed().thenComparing(CoinImpl::getId))
+                    .limit(SuggestionTrie.MAX_SUGGESTIONS)
+                    .map(CoinImpl::getId)
+                    .toList();
+            List<Integer> actual = trie.suggest(prefix, SuggestionTrie.MAX_SUGGESTIONS, null).stream()
+                    .map(SuggestionTrie.Suggestion::id).toList();
+            assertEquals(expected, actual, prefix);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinCollectionImpl;
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+
+import java.math.BigDecimal;
+
+/**
+ * Builds the coins the index tests feed to the indexes. Only the attributes
+ * a test sets are filled in; the others stay null.
+ */
+final class TestCoins {
+
+    private final CoinImpl coin = new CoinImpl();
+
+    private TestCoins(int id) {
+        coin.setId(id);
+    }
+
+    static TestCoins coin(int id) {
+        return new TestCoins(id);
+    }
+
+    TestCoins name(String name) {
+        coin.setCoinName(name);
+        return this;
+    }
+
+    TestCoins material(String material) {
+        coin.setCoinMaterial(material);
+        return this;
+    }
+
+    TestCoins country(String country) {
+        coin.setOriginCountry(country);
+        return this;
+    }
+
+    TestCoins history(String history) {
+        coin.setHistoricalSignificance(history);
+        return this;
+    }
+
+    TestCoins year(Integer year) {
+        coin.setCoinYear(year);
+        return this;
+    }
+
+    TestCoins weight(double weight) {
+        coin.setCoinWeight(BigDecimal.valueOf(weight));
+        return this;
+    }
+
+    TestCoins diameter(double diameter) {
+        coin.setCoinDiameter(BigDecimal.valueOf(diameter));
+        return this;
+    }
+
+    TestCoins value(String value) {
+        coin.setEstimatedValue(value == null ? null : new BigDecimal(value));
+        return this;
+    }
+
+    TestCoins value(double value) {
+        coin.setEstimatedValue(BigDecimal.valueOf(value));
+        return this;
+    }
+
+    // Sin colección cuando es null
+    TestCoins collection(Integer collectionId) {
+        if (collectionId == null) {
+            coin.setCollection(null);
+        } else {
+            CoinCollectionImpl collection = new CoinCollectionImpl();
+            collection.setId(collectionId);
+            coin.setCollection(collection);
+        }
+        return this;
+    }
+
+    CoinImpl build() {
+        return coin;
+    }
+}
@@ -0,0 +1,128 @@
+package cat.uvic.teknos.dam.aureus.search;
+
+import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import static cat.uvic.teknos.dam.aureus.search.TestCoins.coin;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopValueIndexTest {
+
+    private static List<Integer> ids(List<TopValueIndex.Entry> entries) {
+        return entries.stream().map(TopValueIndex.Entry::id).toList();
+    }
+
+    @Test
+    void ranksByValueGloballyAndPerCollection() {
+        TopValueIndex index = new TopValueIndex();
+        index.rebuild(List.of(
+                coin(1).value("100").collection(1).build(),
+                coin(2).value("2500.50").collection(2).build(),
+                coin(3).value("100.00").build(),
+                coin(4).value("900").collection(1).build(),
+                coin(5).collection(1).build()));
+
+        assertEquals(4, index.size());
+        // A igual valor, por id
+        assertEquals(List.of(2, 4, 1, 3), ids(index.top(10, null)));
+        assertEquals(List.of(2, 4), ids(index.top(2, null)));
+        assertEquals(List.of(4, 1), ids(index.top(10, 1)));
+        assertEquals(List.of(), index.top(10, 99));
+        assertEquals(List.of(), index.top(0, null));
+    }
+
+    @Test
+    void changesMoveCoinsBetweenPositionsAndCollections() {
+        TopValueIndex index = new TopValueIndex();
+        index.rebuild(List.of(
+                coin(1).value("100").collection(1).build(),
+                coin(2).value("200").collection(1).build(),
+                coin(3).value("300").collection(2).build()));
+
+        index.coinSaved(coin(1).value("1000").collection(1).build());
+        assertEquals(List.of(1, 3, 2), ids(index.top(10, null)));
+
+        // Mismo valor, otra colección
+        index.coinSaved(coin(1).value("1000.0").collection(2).build());
+        assertEquals(List.of(2), ids(index.top(10, 1)));
+        assertEquals(List.of(1, 3), ids(index.top(10, 2)));
+        assertEquals(List.of(1, 3, 2), ids(index.top(10, null)));
+
+        // Sin valor deja de estar en el índice
+        index.coinSaved(coin(3).collection(2).build());
+        assertEquals(List.of(1, 2), ids(index.top(10, null)));
+
+        index.coinDeleted(2);
+        assertEquals(List.of(), index.top(10, 1));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void reconcileCorrectsOnlyWhatDiffersUnlessTheServiceChangedMeanwhile() {
+        TopValueIndex index = new TopValueIndex();
+        index.rebuild(List.of(
+                coin(1).value("100").collection(1).build(),
+                coin(2).value("200").collection(1).build(),
+                coin(3).value("300").collection(2).build(),
+                coin(5).value("500").collection(2).build(),
+                coin(7).value("700").build()));
+
+        List<CoinImpl> firstPage = List.of(
+                coin(1).value("100.00").collection(1).build(),
+                coin(2).value("50").collection(1).build(),
+                coin(4).value("400").build());
+        assertEquals(-1, index.reconcilePage(firstPage, null, false, () -> false));
+        assertEquals(List.of(7, 5, 3, 2, 1), ids(index.top(10, null)));
+
+        // 1 no cambia (misma cantidad con otra escala); 2 cambia de valor, 3 desaparece y 4 aparece
+        assertEquals(3, index.reconcilePage(firstPage, null, false, () -> true));
+        // Lo que sigue a la página queda para las siguientes
+        assertEquals(List.of(7, 5, 4, 1, 2), ids(index.top(10, null)));
+        assertEquals(List.of(5), ids(index.top(10, 2)));
+        assertEquals(0, index.reconcilePage(firstPage, null, false, () -> true));
+
+        // La última página cubre todos los ids posteriores: 7 desaparece y 5 pierde el valor
+        assertEquals(2, index.reconcilePage(List.of(coin(5).collection(2).build()), 4, true, () -> true));
+        assertEquals(List.of(4, 1, 2), ids(index.top(10, null)));
+        assertEquals(0, index.reconcilePage(List.of(), 4, true, () -> true));
+    }
+
+    @Test
+    void matchesASortUnderRandomChanges() {
+        Random random = new Random(5);
+        Map<Integer, CoinImpl> live = new HashMap<>();
+        TopValueIndex index = new TopValueIndex();
+        for (int step = 0; step < 5000; step++) {
+            int id = 1 + random.nextInt(500);
+            if (random.nextInt(4) == 0) {
+                index.coinDeleted(id);
+                live.remove(id);
+            } else {
+                String value = random.nextInt(10) == 0 ? null : String.valueOf(random.nextInt(1000));
+                Integer collectionId = random.nextInt(5) == 0 ? null : 1 + random.nextInt(4);
+                CoinImpl coin = coin(id).value(value).collection(collectionId).build();
+                index.coinSaved(coin);
+                live.put(id, coin);
+            }
+        }
+
+        for (Integer collectionId : new Integer[]{null, 1, 2, 3, 4}) {
+            List<Integer> expected = live.values().stream()
+                    .filter(c -> c.getEstimatedValue() != null)
+                    .filter(c -> collectionId == null
+                            || c.getCollection() != null && Objects.equals(c.getCollection().getId(), collectionId))
+                    .sorted(Comparator.comparing(CoinImpl::getEstimatedValue).reversed().thenComparing(CoinImpl::getId))
+                    .limit(50)
+                    .map(CoinImpl::getId)
+                    .toList();
+            assertEquals(expected, ids(index.top(50, collectionId)));
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package cat.uvic.teknos.dam.aureus.service;
 
 import cat.uvic.teknos.dam.aureus.impl.CoinImpl;
+import cat.uvic.teknos.dam.aureus.repositories.CoinSearchCriteria;
 import cat.uvic.teknos.dam.aureus.service.exception.EntityNotFoundException;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -52,6 +54,54 @@ class CoinServiceImplTest {
         assertThrows(EntityNotFoundException.class, () -> svc.findById(created.getId()));
     }
 
+    @Test
+    void changesAdvanceTableAndEntityVersions() {
+        CoinServiceImpl svc = new CoinServiceImpl();
+        VersionTracker versions = svc.getVersionTracker();
+        long table = versions.tableVersion();
+        CoinImpl c = new CoinImpl();
+        c.setCoinName("Versioned");
+        CoinImpl created = svc.create(c);
+        long afterCreate = versions.entityVersion(created.getId());
+        assertTrue(afterCreate > table);
+        assertEquals(0, versions.entityVersion(1), "Untouched seed coin keeps version 0");
+
+        svc.update(created);
+        assertTrue(versions.entityVersion(created.getId()) > afterCreate);
+        assertEquals(versions.tableVersion(), versions.entityVersion(created.getId()));
+
+        // Un cambio fallido no cuenta
+        long beforeFailure = versions.tableVersion();
+        assertThrows(EntityNotFoundException.class, () -> svc.delete(9999));
+        assertEquals(beforeFailure, versions.tableVersion());
+    }
+
+    @Test
+    void searchCombinesFiltersAndSortsWithIdAsTieBreaker() {
+        CoinServiceImpl svc = new CoinServiceImpl();
+        for (String name : List.of("Aureus", "Solidus")) {
+            CoinImpl c = new CoinImpl();
+            c.setCoinName(name);
+            c.setCoinYear(300);
+            c.setCoinMaterial("Gold");
+            c.setEstimatedValue(new BigDecimal("500"));
+            svc.create(c);
+        }
+
+        CoinSearchCriteria gold = new CoinSearchCriteria();
+        gold.setMaterial("gold");
+        gold.setMinYear(0);
+        gold.setMaxValue(new BigDecimal("500"));
+        gold.setSort(CoinSearchCriteria.SortKey.VALUE);
+        gold.setDescending(true);
+        assertEquals(List.of("Solidus", "Aureus"), svc.search(gold).stream().map(CoinImpl::getCoinName).toList());
+
+        CoinSearchCriteria oldest = new CoinSearchCriteria();
+        oldest.setSort(CoinSearchCriteria.SortKey.YEAR);
+        oldest.setLimit(1);
+        assertEquals(List.of("Drachma"), svc.search(oldest).stream().map(CoinImpl::getCoinName).toList());
+    }
+
     @Test
     void updateThrowsWhenIdMissing() {
         CoinServiceImpl svc = new CoinServiceImpl();
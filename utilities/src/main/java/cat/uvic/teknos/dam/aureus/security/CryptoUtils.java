@@ -1,7 +1,9 @@
 package cat.uvic.teknos.dam.aureus.security;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.Certificate;
@@ -12,6 +14,8 @@ import java.util.Properties;
 import java.util.Map;
 import java.util.HashMap;
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -49,13 +53,24 @@ public class CryptoUtils {
 
     public static String hash(byte[] bytes) {
         if (bytes == null) return null;
+        MessageDigest md = newDigest();
+        md.update(bytes);
+        byte[] digest = md.digest();
+        return bytesToHex(digest);
+    }
+
+    /**
+     * Digest configured for {@link #hash(byte[])}, already fed with the salt, so a
+     * body can be hashed incrementally as it is read.
+     *
+     * @return new salted digest
+     */
+    public static MessageDigest newDigest() {
         ensureInitialized();
         try {
             MessageDigest md = MessageDigest.getInstance(algorithm);
             if (saltBytes != null && saltBytes.length > 0) md.update(saltBytes);
-            md.update(bytes);
-            byte[] digest = md.digest();
-            return bytesToHex(digest);
+            return md;
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Invalid hash algorithm configured: " + algorithm, e);
         }
@@ -86,7 +101,14 @@ public class CryptoUtils {
         return out;
     }
 
-    private static synchronized void ensureInitialized() {
+    // Camino rápido sin monitor: hash() se llama en cada petición y un monitor disputado
+    // bloquea (pinned) el hilo portador cuando el servidor usa hilos virtuales.
+    private static void ensureInitialized() {
+        if (initialized) return;
+        initialize();
+    }
+
+    private static synchronized void initialize() {
         if (initialized) return;
         String resource = System.getProperty(RESOURCE_PROP, DEFAULT_RESOURCE);
         Properties props = new Properties();
@@ -217,6 +239,7 @@ public class CryptoUtils {
     }
 
     public static byte[] aesEncrypt(byte[] plaintext, byte[] keyBytes, byte[] ivBytes) throws Exception {
+        ensureInitialized();
         SecretKeySpec sk = new SecretKeySpec(keyBytes, "AES");
         Cipher cipher = Cipher.getInstance(symmetricTransformation);
         IvParameterSpec iv = new IvParameterSpec(ivBytes);
@@ -225,6 +248,7 @@ public class CryptoUtils {
     }
 
     public static byte[] aesDecrypt(byte[] ciphertext, byte[] keyBytes, byte[] ivBytes) throws Exception {
+        ensureInitialized();
         SecretKeySpec sk = new SecretKeySpec(keyBytes, "AES");
         Cipher cipher = Cipher.getInstance(symmetricTransformation);
         IvParameterSpec iv = new IvParameterSpec(ivBytes);
@@ -233,17 +257,129 @@ public class CryptoUtils {
     }
 
     public static String decrypt(String keyHex, String ivHex, String bodyHex) throws Exception {
-        byte[] key = hexToBytes(keyHex);
-        byte[] iv = hexToBytes(ivHex);
-        byte[] ct = hexToBytes(bodyHex);
-        byte[] plain = aesDecrypt(ct, key, iv);
-        return new String(plain, StandardCharsets.UTF_8);
+        return new String(decryptBytes(keyHex, ivHex, bodyHex), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like {@link #decrypt(String, String, String)} but returns the raw
+     * plaintext, for bodies that are not text (e.g. compressed).
+     */
+    public static byte[] decryptBytes(String keyHex, String ivHex, String bodyHex) throws Exception {
+        return aesDecrypt(hexToBytes(bodyHex), hexToBytes(keyHex), hexToBytes(ivHex));
+    }
+
+    /**
+     * Streaming counterpart of {@link #decrypt(String, String, String)}: decodes
+     * the hex ciphertext and decrypts it while it is read, without holding the
+     * whole body in memory.
+     *
+     * @param keyHex AES key (hex)
+     * @param ivHex IV (hex)
+     * @param hexCipherText stream of hex-encoded ciphertext
+     * @return stream of plaintext bytes; padding or hex errors surface as IOException
+     */
+    public static InputStream decryptStream(String keyHex, String ivHex, InputStream hexCipherText) throws Exception {
+        ensureInitialized();
+        SecretKeySpec sk = new SecretKeySpec(hexToBytes(keyHex), "AES");
+        Cipher cipher = Cipher.getInstance(symmetricTransformation);
+        cipher.init(Cipher.DECRYPT_MODE, sk, new IvParameterSpec(hexToBytes(ivHex)));
+        return new CipherInputStream(new HexDecodingInputStream(hexCipherText), cipher);
+    }
+
+    // Decodifica texto hexadecimal a bytes a medida que se lee
+    private static final class HexDecodingInputStream extends InputStream {
+        private final InputStream in;
+        private final byte[] hex = new byte[8192];
+
+        private HexDecodingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int want = Math.min(len, hex.length / 2) * 2;
+            int n = in.readNBytes(hex, 0, want);
+            if (n == 0) return -1;
+            if (n % 2 != 0) throw new IOException("Invalid hex string length");
+            for (int i = 0; i < n; i += 2) {
+                int hi = Character.digit(hex[i], 16);
+                int lo = Character.digit(hex[i + 1], 16);
+                if (hi == -1 || lo == -1) throw new IOException("Invalid hex char");
+                b[off + i / 2] = (byte) ((hi << 4) + lo);
+            }
+            return n / 2;
+        }
+    }
+
+    /**
+     * Streaming counterpart of {@link #encryptWithKeyHex(String, String)}: bytes
+     * written to the returned stream are encrypted and written to
+     * {@code hexCipherText} as hex text. Closing the stream writes the final
+     * block and closes {@code hexCipherText}.
+     *
+     * @param keyHex AES key (hex)
+     * @param ivHex IV (hex), e.g. from {@link #generateRandomBytes(int)}
+     * @param hexCipherText receives the hex-encoded ciphertext
+     * @return stream accepting plaintext bytes
+     */
+    public static OutputStream encryptStream(String keyHex, String ivHex, OutputStream hexCipherText) throws Exception {
+        ensureInitialized();
+        SecretKeySpec sk = new SecretKeySpec(hexToBytes(keyHex), "AES");
+        Cipher cipher = Cipher.getInstance(symmetricTransformation);
+        cipher.init(Cipher.ENCRYPT_MODE, sk, new IvParameterSpec(hexToBytes(ivHex)));
+        return new CipherOutputStream(new HexEncodingOutputStream(hexCipherText), cipher);
+    }
+
+    // Codifica en hexadecimal los bytes a medida que se escriben
+    private static final class HexEncodingOutputStream extends FilterOutputStream {
+        private final byte[] hex = new byte[8192];
+
+        private HexEncodingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(Character.forDigit((b >> 4) & 0xF, 16));
+            out.write(Character.forDigit(b & 0xF, 16));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, hex.length / 2);
+                for (int i = 0; i < n; i++) {
+                    hex[i * 2] = (byte) Character.forDigit((b[off + i] >> 4) & 0xF, 16);
+                    hex[i * 2 + 1] = (byte) Character.forDigit(b[off + i] & 0xF, 16);
+                }
+                out.write(hex, 0, n * 2);
+                off += n;
+                len -= n;
+            }
+        }
     }
 
     public static String[] encryptWithKeyHex(String keyHex, String plainText) throws Exception {
+        return encryptWithKeyHex(keyHex, plainText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Like {@link #encryptWithKeyHex(String, String)} for a binary plaintext.
+     *
+     * @return IV and ciphertext, both in hex
+     */
+    public static String[] encryptWithKeyHex(String keyHex, byte[] plain) throws Exception {
         byte[] key = hexToBytes(keyHex);
         byte[] iv = generateRandomBytes(16);
-        byte[] ct = aesEncrypt(plainText.getBytes(StandardCharsets.UTF_8), key, iv);
+        byte[] ct = aesEncrypt(plain, key, iv);
         return new String[]{bytesToHex(iv), bytesToHex(ct)};
     }
 
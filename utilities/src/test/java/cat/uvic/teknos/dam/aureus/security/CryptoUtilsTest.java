@@ -2,6 +2,10 @@ package cat.uvic.teknos.dam.aureus.security;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 import static org.junit.jupiter.api.Assertions.*;
@@ -94,7 +98,7 @@ class CryptoUtilsTest {
         // If the test resource defines a salt (crypto.salt), we expect a different hash.
         // If the resource is empty (intentionally blank), we skip the inequality assertion.
         java.util.Properties p = new java.util.Properties();
-        try (java.io.InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream("crypto-test.properties")) {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream("crypto-test.properties")) {
             if (in != null) p.load(in);
         } catch (Exception ignored) {}
 
@@ -116,4 +120,34 @@ class CryptoUtilsTest {
 
         assertTrue(HEX_LOWER.matcher(saltAware).matches());
     }
+
+    @Test
+    void decryptStreamMatchesDecrypt() throws Exception {
+        String keyHex = CryptoUtils.bytesToHex(CryptoUtils.generateRandomBytes(16));
+        String plain = "x".repeat(20000) + " ñ";
+        String[] ivAndBody = CryptoUtils.encryptWithKeyHex(keyHex, plain);
+
+        InputStream hex = new ByteArrayInputStream(ivAndBody[1].getBytes(StandardCharsets.US_ASCII));
+        try (InputStream in = CryptoUtils.decryptStream(keyHex, ivAndBody[0], hex)) {
+            assertEquals(plain, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(plain, CryptoUtils.decrypt(keyHex, ivAndBody[0], ivAndBody[1]));
+    }
+
+    @Test
+    void encryptStreamMatchesDecrypt() throws Exception {
+        String keyHex = CryptoUtils.bytesToHex(CryptoUtils.generateRandomBytes(16));
+        String ivHex = CryptoUtils.bytesToHex(CryptoUtils.generateRandomBytes(16));
+        String plain = "y".repeat(20000) + " ñ";
+
+        ByteArrayOutputStream hex = new ByteArrayOutputStream();
+        try (OutputStream out = CryptoUtils.encryptStream(keyHex, ivHex, hex)) {
+            byte[] bytes = plain.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, 7);
+            out.write(bytes, 7, bytes.length - 7);
+        }
+        String bodyHex = hex.toString(StandardCharsets.US_ASCII);
+        assertTrue(HEX_LOWER.matcher(bodyHex).matches());
+        assertEquals(plain, CryptoUtils.decrypt(keyHex, ivHex, bodyHex));
+    }
 }